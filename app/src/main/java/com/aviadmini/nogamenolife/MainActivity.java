@@ -1,40 +1,105 @@
 package com.aviadmini.nogamenolife;
 
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.graphics.SurfaceTexture;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.TextureView;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.aviadmini.nogamenolife.compute.CellStatesDelta;
+import com.aviadmini.nogamenolife.compute.CellStatesExchange;
 import com.aviadmini.nogamenolife.compute.LifeCompute;
+import com.aviadmini.nogamenolife.compute.LifeComputeBits;
 import com.aviadmini.nogamenolife.compute.LifeComputeGL;
+import com.aviadmini.nogamenolife.compute.LifeComputeHashLife;
 import com.aviadmini.nogamenolife.compute.LifeComputeJava;
+import com.aviadmini.nogamenolife.compute.LifeComputeJavaParallel;
+import com.aviadmini.nogamenolife.compute.LifeComputeJavaSparse;
+import com.aviadmini.nogamenolife.compute.Rule;
+import com.aviadmini.nogamenolife.opengl.GLContextPool;
 import com.aviadmini.nogamenolife.views.LifeDrawView;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Locale;
 
 public class MainActivity
         extends AppCompatActivity {
 
-    private static final int COMPUTE_NONE = 0;
-    private static final int COMPUTE_JAVA = 1;
-    private static final int COMPUTE_GL   = 2;
+    private static final String SNAPSHOT_FILE_NAME = "board.snapshot";
+
+    // board before pattern import, restored if the pattern turns out to be malformed
+    private static final String IMPORT_BACKUP_FILE_NAME = "import_backup.snapshot";
+
+    private static final String PATTERN_FILE_NAME_RLE       = "pattern.rle";
+    private static final String PATTERN_FILE_NAME_MACROCELL = "pattern.mc";
+
+    private static final int REQUEST_CODE_IMPORT_PATTERN = 1;
+
+    private static final int COMPUTE_NONE          = 0;
+    private static final int COMPUTE_JAVA          = 1;
+    private static final int COMPUTE_GL            = 2;
+    private static final int COMPUTE_BITS          = 3;
+    private static final int COMPUTE_JAVA_PARALLEL = 4;
+    private static final int COMPUTE_JAVA_SPARSE   = 5;
+    private static final int COMPUTE_HASHLIFE      = 6;
+    private static final int COMPUTE_GL_PACKED     = 7;
 
     private LifeCompute mLifeCompute;
     private LifeCompute mSwapLifeCompute;
 
     private LifeDrawView mLifeDrawView;
 
+    private TextureView mGpuTextureView;
+
+    // surface OpenGL engines draw board to, null while it is not available
+    private SurfaceTexture mGpuSurfaceTexture;
+
+    private boolean mGpuDisplayRequested;
+
+    // board is drawn straight from GPU, so ticks are not read back while simulating
+    private volatile boolean mGpuDisplaying;
+
+    private int mLifeDrawRenderMode;
+
+    // part of the board draw view covers, in cells
+    private float mViewportLeft;
+    private float mViewportTop;
+    private float mViewportRight;
+    private float mViewportBottom;
+
     private final Handler mTickHandler = new Handler();
 
     private int mComputeImplForSwap;
 
+    // painted batch was handed to compute and its onCellStatesChanged did not arrive yet
+    private volatile boolean mPaintBatchPending;
+
+    // rule picked by user, engines that can not compute it fall back to Conway's
+    private Rule mRule = Rule.CONWAY;
+
+    // file last pattern export goes to, reported once it is written
+    private volatile File mPatternExportFile;
+
+    // board was backed up before the import in progress, a backup left from an earlier import is never restored
+    private volatile boolean mImportBackupSaved;
+
     private LifeCompute.Callback mCallback = new LifeCompute.Callback() {
 
         @Override
@@ -58,7 +123,26 @@ public class MainActivity
 
         @Override
         public void onTick() {
-            mLifeCompute.requestCellStates();
+
+            // board drawn from GPU is already on screen, it is read back once simulation stops
+            if (mGpuDisplaying && mSimulating) {
+
+                runOnUiThread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        setStep();
+                    }
+
+                });
+
+                postTick(mTickDelay);
+
+                return;
+            }
+
+            mLifeCompute.requestCellStatesDelta();
+
         }
 
         @Override
@@ -73,14 +157,38 @@ public class MainActivity
         }
 
         @Override
-        public void onCellStates(@NonNull final int[] pCellStates) {
+        public void onCellStates(@NonNull final CellStatesExchange pCellStatesExchange) {
 
             runOnUiThread(new Runnable() {
 
                 @Override
                 public void run() {
 
-                    mLifeDrawView.setCellStates(pCellStates);
+                    mLifeDrawView.setCellStates(pCellStatesExchange);
+
+                    setStep();
+
+                }
+
+            });
+
+            if (mSimulating) {
+                postTick(mTickDelay);
+            }
+
+        }
+
+        @Override
+        public void onCellStatesDelta(@NonNull final CellStatesDelta pCellStatesDelta) {
+
+            runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    mLifeDrawView.applyCellStatesDelta(pCellStatesDelta);
+
+                    pCellStatesDelta.release();
 
                     setStep();
 
@@ -117,6 +225,41 @@ public class MainActivity
                         break;
                     }
 
+                    case COMPUTE_BITS: {
+
+                        mCurrentImplName = "Bitwise";
+
+                        break;
+                    }
+
+                    case COMPUTE_JAVA_PARALLEL: {
+
+                        mCurrentImplName = "Parallel Java";
+
+                        break;
+                    }
+
+                    case COMPUTE_JAVA_SPARSE: {
+
+                        mCurrentImplName = "Sparse Java";
+
+                        break;
+                    }
+
+                    case COMPUTE_HASHLIFE: {
+
+                        mCurrentImplName = "HashLife";
+
+                        break;
+                    }
+
+                    case COMPUTE_GL_PACKED: {
+
+                        mCurrentImplName = "Packed OpenGL";
+
+                        break;
+                    }
+
                     default: {
 
                         mCurrentImplName = null;
@@ -145,18 +288,129 @@ public class MainActivity
 
             if (mSwapLifeCompute != null) {
 
+                mPaintBatchPending = false;
+
                 mLifeCompute = mSwapLifeCompute;
                 mSwapLifeCompute = null;
 
                 mLifeCompute.requestCellStates();
 
+                runOnUiThread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        updateGpuDisplay();
+                    }
+
+                });
+
+            } else if (isFinishing()) {
+
+                // nothing will reuse pooled OpenGL contexts anymore, engine thread has already released its own
+                GLContextPool.clear();
+
             }
 
         }
 
         @Override
         public void onCellStateChanged(final int pCellPosition, final int pNewState) {
+            mLifeCompute.requestCellStatesDelta();
+        }
+
+        @Override
+        public void onCellStatesChanged(final int pCount) {
+
+            mPaintBatchPending = false;
+
+            mLifeCompute.requestCellStatesDelta();
+
+        }
+
+        @Override
+        public void onSnapshotSaved(@NonNull final File pFile, @Nullable final IOException pError) {
+
+            // import backup is not user's to know about, import result is the only message shown
+            if (pFile.equals(getImportBackupFile())) {
+
+                mImportBackupSaved = pError == null;
+
+                return;
+            }
+
+            showSnapshotResult(R.string.toast_snapshot_saved, pError);
+
+        }
+
+        @Override
+        public void onSnapshotLoaded(@NonNull final File pFile, @NonNull final Rule pRule, @Nullable final IOException pError) {
+
             mLifeCompute.requestCellStates();
+
+            runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    mRule = pRule;
+                }
+
+            });
+
+            if (pFile.equals(getImportBackupFile())) {
+                return;
+            }
+
+            showSnapshotResult(R.string.toast_snapshot_restored, pError);
+
+        }
+
+        @Override
+        public void onPatternLoaded(@NonNull final Rule pRule, @Nullable final IOException pError) {
+
+            // malformed pattern may have cleared the board already, bring back the one from before import if it was saved
+            if (pError != null && mImportBackupSaved) {
+                mLifeCompute.requestLoadSnapshot(getImportBackupFile());
+            } else {
+                mLifeCompute.requestCellStates();
+            }
+
+            runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    mRule = pRule;
+
+                    final String message = pError == null ? getString(R.string.toast_pattern_imported)
+                                                          : getString(R.string.toast_pattern_failed, pError.getMessage());
+
+                    Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT)
+                         .show();
+
+                }
+
+            });
+
+        }
+
+        @Override
+        public void onPatternSaved(@Nullable final IOException pError) {
+
+            runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    final String message = pError == null ? getString(R.string.toast_pattern_exported, mPatternExportFile.getAbsolutePath())
+                                                          : getString(R.string.toast_pattern_failed, pError.getMessage());
+
+                    Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG)
+                         .show();
+
+                }
+
+            });
+
         }
 
     };
@@ -165,18 +419,22 @@ public class MainActivity
 
         @Override
         public void run() {
-            mLifeCompute.tick();
+            mLifeCompute.tick(mGenerationsPerTick);
         }
 
     };
 
     private long mTickDelay = 1000L;
 
+    // generations computed back to back on compute thread per published frame
+    private int mGenerationsPerTick = 1;
+
     private boolean mSimulating = false;
 
     private Button   mStartStopButton;
     private TextView mStepTextView;
     private TextView mDelayTextView;
+    private TextView mGenerationsTextView;
 
     private String mCurrentImplName;
 
@@ -194,6 +452,41 @@ public class MainActivity
 
         this.mLifeDrawView = (LifeDrawView) this.findViewById(R.id.activity_main_life);
 
+        this.mLifeDrawRenderMode = this.mLifeDrawView.getRenderMode();
+
+        this.mGpuTextureView = (TextureView) this.findViewById(R.id.activity_main_life_gpu);
+        this.mGpuTextureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+
+            @Override
+            public void onSurfaceTextureAvailable(final SurfaceTexture pSurfaceTexture, final int pWidth, final int pHeight) {
+
+                mGpuSurfaceTexture = pSurfaceTexture;
+
+                updateGpuDisplay();
+
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(final SurfaceTexture pSurfaceTexture, final int pWidth, final int pHeight) {
+                updateGpuDisplay();
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(final SurfaceTexture pSurfaceTexture) {
+
+                mGpuSurfaceTexture = null;
+
+                updateGpuDisplay();
+
+                return true;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(final SurfaceTexture pSurfaceTexture) {
+            }
+
+        });
+
         this.mDelayTextView = (TextView) this.findViewById(R.id.activity_main_tv_delay);
 
         final SeekBar speedSeekBar = (SeekBar) this.findViewById(R.id.activity_main_seek_speed);
@@ -214,6 +507,26 @@ public class MainActivity
 
         });
 
+        this.mGenerationsTextView = (TextView) this.findViewById(R.id.activity_main_tv_generations);
+
+        final SeekBar generationsSeekBar = (SeekBar) this.findViewById(R.id.activity_main_seek_generations);
+        generationsSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+
+            @Override
+            public void onProgressChanged(final SeekBar pSeekBar, final int pProgress, final boolean pFromUser) {
+                setGenerationsPerTick(pProgress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(final SeekBar pSeekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(final SeekBar pSeekBar) {
+            }
+
+        });
+
         // draw view touches
 
         this.mLifeDrawView.setOnCellTouchListener(new LifeDrawView.OnCellTouchListener() {
@@ -234,6 +547,61 @@ public class MainActivity
 
         });
 
+        // painted cells go to compute one batch at a time, the view coalesces everything painted meanwhile into the next one
+
+        this.mLifeDrawView.setOnCellsPaintListener(new LifeDrawView.OnCellsPaintListener() {
+
+            @Override
+            public boolean onCellsPainted(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates) {
+
+                if (mPaintBatchPending || mSwapLifeCompute != null) {
+                    return false;
+                }
+
+                mPaintBatchPending = true;
+
+                mLifeCompute.requestChangeCellStates(pCellPositions, pNewStates);
+
+                return true;
+            }
+
+        });
+
+        // only the part of the board around the viewport is published
+
+        this.mLifeDrawView.setOnViewportChangeListener(new LifeDrawView.OnViewportChangeListener() {
+
+            @Override
+            public void onViewportChanged(final int pLeft, final int pTop, final int pRight, final int pBottom) {
+
+                mLifeCompute.setVisibleRegion(pLeft, pTop, pRight, pBottom);
+
+                mLifeCompute.requestCellStates();
+
+            }
+
+        });
+
+        // board drawn from GPU follows draw view's pan and zoom
+
+        this.mLifeDrawView.setOnViewportMoveListener(new LifeDrawView.OnViewportMoveListener() {
+
+            @Override
+            public void onViewportMoved(final float pLeft, final float pTop, final float pRight, final float pBottom) {
+
+                mViewportLeft = pLeft;
+                mViewportTop = pTop;
+                mViewportRight = pRight;
+                mViewportBottom = pBottom;
+
+                if (mGpuDisplaying && mLifeCompute instanceof LifeComputeGL) {
+                    ((LifeComputeGL) mLifeCompute).setDisplayRegion(pLeft, pTop, pRight, pBottom);
+                }
+
+            }
+
+        });
+
         // start initializing LifeCompute
 
         this.mLifeCompute = new LifeComputeJava(this.mLifeDrawView.getLifeWidth(), this.mLifeDrawView.getLifeHeight(), this.mCallback);
@@ -242,6 +610,8 @@ public class MainActivity
         // initialize step # & tick delay
         this.setStep();
         speedSeekBar.setProgress(480);
+        generationsSeekBar.setProgress(0);
+        this.setGenerationsPerTick(0);
 
         this.mSimulating = false;
 
@@ -269,6 +639,65 @@ public class MainActivity
 
         switch (pMenuItem.getItemId()) {
 
+            case R.id.activity_main_menu_action_rule: {
+
+                this.showRuleDialog();
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_save: {
+
+                // engine is being swapped, new one is not created yet
+                if (this.mSwapLifeCompute != null) {
+                    break;
+                }
+
+                this.stopSimulation();
+
+                this.mLifeCompute.requestSaveSnapshot(this.getSnapshotFile());
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_restore: {
+
+                // engine is being swapped, new one is not created yet
+                if (this.mSwapLifeCompute != null) {
+                    break;
+                }
+
+                this.stopSimulation();
+
+                this.mLifeCompute.requestLoadSnapshot(this.getSnapshotFile());
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_import: {
+
+                final Intent intent = new Intent(Intent.ACTION_GET_CONTENT).setType("*/*")
+                                                                         .addCategory(Intent.CATEGORY_OPENABLE);
+
+                this.startActivityForResult(intent, REQUEST_CODE_IMPORT_PATTERN);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_export_rle: {
+
+                this.exportPattern(LifeCompute.PATTERN_FORMAT_RLE, PATTERN_FILE_NAME_RLE);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_export_macrocell: {
+
+                this.exportPattern(LifeCompute.PATTERN_FORMAT_MACROCELL, PATTERN_FILE_NAME_MACROCELL);
+
+                break;
+            }
+
             case R.id.activity_main_menu_action_java: {
 
                 this.changeImplementation(COMPUTE_JAVA);
@@ -283,6 +712,64 @@ public class MainActivity
                 break;
             }
 
+            case R.id.activity_main_menu_action_bits: {
+
+                this.changeImplementation(COMPUTE_BITS);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_java_parallel: {
+
+                this.changeImplementation(COMPUTE_JAVA_PARALLEL);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_java_sparse: {
+
+                this.changeImplementation(COMPUTE_JAVA_SPARSE);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_hashlife: {
+
+                this.changeImplementation(COMPUTE_HASHLIFE);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_gl_packed: {
+
+                this.changeImplementation(COMPUTE_GL_PACKED);
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_paint: {
+
+                pMenuItem.setChecked(!pMenuItem.isChecked());
+
+                this.mLifeDrawView.setPaintMode(pMenuItem.isChecked());
+
+                break;
+            }
+
+            case R.id.activity_main_menu_action_gpu_display: {
+
+                pMenuItem.setChecked(!pMenuItem.isChecked());
+
+                this.mGpuDisplayRequested = pMenuItem.isChecked();
+
+                // surface is created once view is shown and reported to listener
+                this.mGpuTextureView.setVisibility(this.mGpuDisplayRequested ? View.VISIBLE : View.GONE);
+
+                this.updateGpuDisplay();
+
+                break;
+            }
+
         }
 
         return super.onOptionsItemSelected(pMenuItem);
@@ -310,12 +797,289 @@ public class MainActivity
                 break;
             }
 
+            case COMPUTE_BITS: {
+
+                this.mSwapLifeCompute = new LifeComputeBits(this.mLifeCompute);
+
+                break;
+            }
+
+            case COMPUTE_JAVA_PARALLEL: {
+
+                this.mSwapLifeCompute = new LifeComputeJavaParallel(this.mLifeCompute);
+
+                break;
+            }
+
+            case COMPUTE_JAVA_SPARSE: {
+
+                this.mSwapLifeCompute = new LifeComputeJavaSparse(this.mLifeCompute);
+
+                break;
+            }
+
+            case COMPUTE_HASHLIFE: {
+
+                this.mSwapLifeCompute = new LifeComputeHashLife(this.mLifeCompute);
+
+                break;
+            }
+
+            case COMPUTE_GL_PACKED: {
+
+                // falls back to a cell per texel where OpenGL ES 3.0 is not available
+                this.mSwapLifeCompute = new LifeComputeGL(this.mLifeCompute, LifeComputeGL.MODE_PACKED);
+
+                break;
+            }
+
+        }
+
+        // new engine copies rule of the current one if it can compute it
+        if (!this.mSwapLifeCompute.isRuleSupported(this.mRule)) {
+
+            this.mRule = Rule.CONWAY;
+
+            Toast.makeText(this, R.string.toast_rule_reset, Toast.LENGTH_SHORT)
+                 .show();
+
         }
 
         this.mLifeCompute.destroy();
 
     }
 
+    private void showRuleDialog() {
+
+        final String[] names = this.getResources()
+                                   .getStringArray(R.array.rule_preset_names);
+        final String[] rules = this.getResources()
+                                   .getStringArray(R.array.rule_presets);
+
+        final String[] items = new String[names.length + 1];
+        System.arraycopy(names, 0, items, 0, names.length);
+        items[names.length] = this.getString(R.string.dialog_rule_custom);
+
+        new AlertDialog.Builder(this).setTitle(R.string.dialog_rule_title)
+                                     .setItems(items, new DialogInterface.OnClickListener() {
+
+                                         @Override
+                                         public void onClick(final DialogInterface pDialog, final int pWhich) {
+
+                                             if (pWhich < rules.length) {
+                                                 changeRule(rules[pWhich]);
+                                             } else {
+                                                 showCustomRuleDialog();
+                                             }
+
+                                         }
+
+                                     })
+                                     .show();
+
+    }
+
+    private void showCustomRuleDialog() {
+
+        final EditText ruleEditText = new EditText(this);
+        ruleEditText.setSingleLine(true);
+        ruleEditText.setText(this.mRule.toString());
+
+        new AlertDialog.Builder(this).setTitle(R.string.dialog_rule_custom_title)
+                                     .setView(ruleEditText)
+                                     .setPositiveButton(R.string.dialog_rule_apply, new DialogInterface.OnClickListener() {
+
+                                         @Override
+                                         public void onClick(final DialogInterface pDialog, final int pWhich) {
+                                             changeRule(ruleEditText.getText()
+                                                                    .toString());
+                                         }
+
+                                     })
+                                     .setNegativeButton(R.string.dialog_rule_cancel, null)
+                                     .show();
+
+    }
+
+    private void changeRule(@NonNull final String pRule) {
+
+        // engine is being swapped, new one is not created yet
+        if (this.mSwapLifeCompute != null) {
+            return;
+        }
+
+        final Rule rule;
+
+        try {
+            rule = Rule.parse(pRule);
+        } catch (final IllegalArgumentException e) {
+
+            Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT)
+                 .show();
+
+            return;
+        }
+
+        if (!this.mLifeCompute.isRuleSupported(rule)) {
+
+            Toast.makeText(this, R.string.toast_rule_not_supported, Toast.LENGTH_SHORT)
+                 .show();
+
+            return;
+        }
+
+        this.mRule = rule;
+
+        this.mLifeCompute.setRule(rule);
+
+    }
+
+    @Override
+    protected void onActivityResult(final int pRequestCode, final int pResultCode, final Intent pData) {
+        super.onActivityResult(pRequestCode, pResultCode, pData);
+
+        if (pRequestCode != REQUEST_CODE_IMPORT_PATTERN || pResultCode != RESULT_OK || pData == null || pData.getData() == null) {
+            return;
+        }
+
+        // engine is being swapped, new one is not created yet
+        if (this.mSwapLifeCompute != null) {
+            return;
+        }
+
+        final InputStream inputStream;
+
+        try {
+            inputStream = this.getContentResolver()
+                              .openInputStream(pData.getData());
+        } catch (final FileNotFoundException e) {
+
+            Toast.makeText(this, this.getString(R.string.toast_pattern_failed, e.getMessage()), Toast.LENGTH_SHORT)
+                 .show();
+
+            return;
+        }
+
+        this.stopSimulation();
+
+        this.mImportBackupSaved = false;
+
+        // runs before import on compute thread
+        this.mLifeCompute.requestSaveSnapshot(this.getImportBackupFile());
+
+        this.mLifeCompute.requestLoadPattern(inputStream);
+
+    }
+
+    /**
+     * Writes board to app's external files, where it can be picked up over USB
+     */
+    private void exportPattern(final int pFormat, @NonNull final String pFileName) {
+
+        // engine is being swapped, new one is not created yet
+        if (this.mSwapLifeCompute != null) {
+            return;
+        }
+
+        final File directory = this.getExternalFilesDir(null);
+
+        final File file = new File(directory != null ? directory : this.getFilesDir(), pFileName);
+
+        final FileOutputStream outputStream;
+
+        try {
+            outputStream = new FileOutputStream(file);
+        } catch (final FileNotFoundException e) {
+
+            Toast.makeText(this, this.getString(R.string.toast_pattern_failed, e.getMessage()), Toast.LENGTH_SHORT)
+                 .show();
+
+            return;
+        }
+
+        this.stopSimulation();
+
+        this.mPatternExportFile = file;
+
+        this.mLifeCompute.requestSavePattern(outputStream, pFormat);
+
+    }
+
+    @NonNull
+    private File getSnapshotFile() {
+        return new File(this.getFilesDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    @NonNull
+    private File getImportBackupFile() {
+        return new File(this.getFilesDir(), IMPORT_BACKUP_FILE_NAME);
+    }
+
+    /**
+     * Shows outcome of a snapshot request, may be called from any thread
+     *
+     * @param pSuccessResId message shown when there was no error
+     */
+    private void showSnapshotResult(final int pSuccessResId, @Nullable final IOException pError) {
+
+        runOnUiThread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                final String message = pError == null ? getString(pSuccessResId)
+                                                      : getString(R.string.toast_snapshot_failed, pError.getMessage());
+
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT)
+                     .show();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Draws board straight from GPU when it is requested, current engine is an OpenGL one and its surface is available, otherwise board
+     * is read back and drawn by draw view
+     */
+    private void updateGpuDisplay() {
+
+        // new engine picks display up once it is created
+        if (this.mSwapLifeCompute != null) {
+            return;
+        }
+
+        final boolean displaying = this.mGpuDisplayRequested && this.mGpuSurfaceTexture != null &&
+                this.mLifeCompute instanceof LifeComputeGL;
+
+        if (this.mLifeCompute instanceof LifeComputeGL) {
+
+            final LifeComputeGL lifeComputeGL = (LifeComputeGL) this.mLifeCompute;
+
+            if (displaying) {
+                lifeComputeGL.setDisplayRegion(this.mViewportLeft, this.mViewportTop, this.mViewportRight, this.mViewportBottom);
+            }
+
+            lifeComputeGL.setDisplaySurface(displaying ? this.mGpuSurfaceTexture : null);
+
+        }
+
+        if (displaying == this.mGpuDisplaying) {
+            return;
+        }
+
+        this.mGpuDisplaying = displaying;
+
+        this.mLifeDrawView.setRenderMode(displaying ? LifeDrawView.RENDER_MODE_NONE : this.mLifeDrawRenderMode);
+
+        // draw view did not get generations computed meanwhile
+        if (!displaying) {
+            this.mLifeCompute.requestCellStates();
+        }
+
+    }
+
     @Override
     protected void onDestroy() {
 
@@ -336,6 +1100,15 @@ public class MainActivity
 
     }
 
+    private void setGenerationsPerTick(final int pProgress) {
+
+        this.mGenerationsPerTick = pProgress + 1;
+
+        this.mGenerationsTextView.setText(
+                String.format(Locale.US, "%s: %s", this.getString(R.string.activity_main_tv_generations_text), this.mGenerationsPerTick));
+
+    }
+
     public void btnClick(final View pView) {
 
         switch (pView.getId()) {
@@ -354,7 +1127,8 @@ public class MainActivity
             case R.id.activity_main_btn_next: {
 
                 this.mTickHandler.removeCallbacks(this.mTickRunnable);
-                this.mTickHandler.post(this.mTickRunnable);
+
+                this.mLifeCompute.tick();
 
                 break;
             }
@@ -407,6 +1181,11 @@ public class MainActivity
 
         this.mTickHandler.removeCallbacks(this.mTickRunnable);
 
+        // catch draw view's copy of the board up, e.g. for painting
+        if (this.mSimulating && this.mGpuDisplaying) {
+            this.mLifeCompute.requestCellStatesDelta();
+        }
+
         this.mSimulating = false;
 
         this.mStartStopButton.setText(R.string.activity_main_btn_start_text);
@@ -0,0 +1,106 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Positions and new states of cells that changed between two published snapshots. Applies only to a snapshot with
+ * {@link #getBaseSequence()} and turns it into the one with {@link #getSequence()}
+ * <p>
+ * Deltas are pooled by {@link CellStatesExchange} the same way snapshot buffers are, so reader should {@link #release()} one as soon
+ * as it is applied or skipped
+ */
+public class CellStatesDelta {
+
+    private final CellStatesExchange mCellStatesExchange;
+
+    private final int[] mPositions;
+    private final int[] mStates;
+
+    private int mCount;
+
+    private long mSequence;
+
+    CellStatesDelta(@NonNull final CellStatesExchange pCellStatesExchange, final int pCapacity) {
+
+        this.mCellStatesExchange = pCellStatesExchange;
+
+        this.mPositions = new int[pCapacity];
+        this.mStates = new int[pCapacity];
+
+    }
+
+    /**
+     * @return max number of changed cells delta can hold
+     */
+    int getCapacity() {
+        return this.mPositions.length;
+    }
+
+    /**
+     * Writer only. Sets number of changed cells filled in and sequence of snapshot delta results in
+     */
+    void set(final int pCount, final long pSequence) {
+
+        this.mCount = pCount;
+        this.mSequence = pSequence;
+
+    }
+
+    /**
+     * @return number of changed cells
+     */
+    public int getCount() {
+        return this.mCount;
+    }
+
+    /**
+     * @return positions of changed cells, only first {@link #getCount()} are valid, must not be modified
+     */
+    @NonNull
+    public int[] getPositions() {
+        return this.mPositions;
+    }
+
+    /**
+     * @return new states of changed cells, one per position, must not be modified
+     */
+    @NonNull
+    public int[] getStates() {
+        return this.mStates;
+    }
+
+    /**
+     * @return sequence of snapshot this delta applies to
+     */
+    public long getBaseSequence() {
+        return this.mSequence - 1L;
+    }
+
+    /**
+     * @return sequence of snapshot this delta results in
+     */
+    public long getSequence() {
+        return this.mSequence;
+    }
+
+    /**
+     * Sets changed cells of given snapshot. Cells are not just flipped, dying states of generations rules change too
+     *
+     * @param pCellStates snapshot with {@link #getBaseSequence()}
+     */
+    public void applyTo(@NonNull final int[] pCellStates) {
+
+        for (int i = 0; i < this.mCount; i++) {
+            pCellStates[this.mPositions[i]] = this.mStates[i];
+        }
+
+    }
+
+    /**
+     * Reader only. Hands delta back to the exchange for reuse, it must not be accessed afterwards
+     */
+    public void release() {
+        this.mCellStatesExchange.recycleDelta(this);
+    }
+
+}
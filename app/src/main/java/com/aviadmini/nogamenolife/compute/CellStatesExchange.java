@@ -0,0 +1,170 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free triple buffer for passing complete cell states snapshots from compute thread to a single reader (usually UI thread).
+ * <p>
+ * Writer always has a buffer of its own to fill, reader always has a buffer of its own to draw and the third one holds latest
+ * published snapshot. Publishing and acquiring just swap buffer indices, so nothing is copied twice, nothing is allocated after
+ * construction and reader can never see a partially written snapshot
+ * <p>
+ * Every snapshot and every {@link CellStatesDelta} gets the next sequence number, so reader can tell which deltas apply to its buffer.
+ * Deltas reader has released are kept in a small lock-free pool for writer to fill again
+ */
+public class CellStatesExchange {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH      = 0x4;
+
+    // deltas in flight to reader rarely outnumber this, extra ones are left to garbage collector
+    private static final int DELTA_POOL_SIZE = 4;
+
+    private final int[][] mBuffers;
+
+    // sequence of snapshot held by each buffer, written before the buffer is published
+    private final long[] mSequences = new long[3];
+
+    // sequence of latest snapshot or delta published by writer
+    private long mPublishedSequence = 0L;
+
+    // index of buffer owned by writer
+    private int mWriteIndex = 0;
+
+    // index of buffer with latest published snapshot, FRESH bit is set if reader has not acquired it yet
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+
+    // index of buffer owned by reader
+    private int mReadIndex = 2;
+
+    // released deltas, empty slots are null
+    private final AtomicReferenceArray<CellStatesDelta> mDeltaPool = new AtomicReferenceArray<CellStatesDelta>(DELTA_POOL_SIZE);
+
+    /**
+     * @param pSize number of cells in a snapshot
+     */
+    public CellStatesExchange(final int pSize) {
+
+        if (pSize <= 0) {
+            throw new IllegalArgumentException("Size should be >0");
+        }
+
+        this.mBuffers = new int[3][pSize];
+
+    }
+
+    /**
+     * Writer only
+     *
+     * @return buffer to fill with snapshot before calling {@link #publish()}
+     */
+    @NonNull
+    public int[] getWriteBuffer() {
+        return this.mBuffers[this.mWriteIndex];
+    }
+
+    /**
+     * Writer only. Makes snapshot in write buffer the latest one and takes another buffer for writing
+     */
+    public void publish() {
+
+        this.mSequences[this.mWriteIndex] = ++this.mPublishedSequence;
+
+        this.mWriteIndex = this.mMiddle.getAndSet(this.mWriteIndex | FRESH) & INDEX_MASK;
+
+    }
+
+    /**
+     * Writer only. Takes a released delta that can hold given number of cells from the pool, allocates one only if there is none
+     *
+     * @param pCapacity max number of changed cells
+     * @return delta to fill before calling {@link #publishDelta(CellStatesDelta, int)}
+     */
+    @NonNull
+    CellStatesDelta obtainDelta(final int pCapacity) {
+
+        for (int i = 0; i < DELTA_POOL_SIZE; i++) {
+
+            final CellStatesDelta delta = this.mDeltaPool.getAndSet(i, null);
+
+            // deltas sized for a larger visible region before it has shrunk fit too, smaller ones are dropped
+            if (delta != null && delta.getCapacity() >= pCapacity) {
+                return delta;
+            }
+
+        }
+
+        return new CellStatesDelta(this, pCapacity);
+    }
+
+    /**
+     * Writer only. Assigns delta the next sequence, after that it can be delivered to reader outside of the exchange
+     *
+     * @param pDelta delta with positions and states filled in
+     * @param pCount number of changed cells filled in
+     */
+    void publishDelta(@NonNull final CellStatesDelta pDelta, final int pCount) {
+        pDelta.set(pCount, ++this.mPublishedSequence);
+    }
+
+    /**
+     * Returns delta to the pool, dropped if the pool is full
+     */
+    void recycleDelta(@NonNull final CellStatesDelta pDelta) {
+
+        for (int i = 0; i < DELTA_POOL_SIZE; i++) {
+
+            if (this.mDeltaPool.compareAndSet(i, null, pDelta)) {
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Reader only. Takes latest published snapshot as read buffer if there is one that was not acquired yet
+     *
+     * @return true if read buffer has changed
+     */
+    public boolean acquire() {
+
+        if ((this.mMiddle.get() & FRESH) == 0) {
+            return false;
+        }
+
+        this.mReadIndex = this.mMiddle.getAndSet(this.mReadIndex) & INDEX_MASK;
+
+        return true;
+    }
+
+    /**
+     * Reader only
+     *
+     * @return latest acquired snapshot
+     */
+    @NonNull
+    public int[] getReadBuffer() {
+        return this.mBuffers[this.mReadIndex];
+    }
+
+    /**
+     * Reader only
+     *
+     * @return sequence of latest acquired snapshot, deltas with the same base sequence can be applied to read buffer in place
+     */
+    public long getReadSequence() {
+        return this.mSequences[this.mReadIndex];
+    }
+
+    /**
+     * @return number of cells in a snapshot
+     */
+    public int getSize() {
+        return this.mBuffers[0].length;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs {@link LifeCompute} tasks one by one in the order they were submitted, on a single thread of its own. This is the only part of
+ * LifeCompute that deals with threading, so implementations decide what that thread is
+ */
+public interface ComputeExecutor {
+
+    /**
+     * @param pTask task to run after all previously submitted ones. Ignored after {@link #shutdown()}
+     */
+    void execute(@NonNull final Runnable pTask);
+
+    /**
+     * Lets the thread finish after the currently running task, tasks that did not start yet are dropped. May be called from a task
+     */
+    void shutdown();
+
+    /**
+     * Creates executors, one per LifeCompute
+     */
+    interface Factory {
+
+        /**
+         * @param pThreadName name for the thread
+         * @return executor that has its thread running
+         */
+        @NonNull
+        ComputeExecutor create(@NonNull final String pThreadName);
+
+    }
+
+}
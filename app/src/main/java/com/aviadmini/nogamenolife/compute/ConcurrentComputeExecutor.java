@@ -0,0 +1,83 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs tasks on a single {@link java.util.concurrent} thread, doesn't need Android at all. Use it to run engines on a plain JVM
+ */
+public class ConcurrentComputeExecutor
+        implements ComputeExecutor {
+
+    public static final Factory FACTORY = new Factory() {
+
+        @NonNull
+        @Override
+        public ComputeExecutor create(@NonNull final String pThreadName) {
+            return new ConcurrentComputeExecutor(pThreadName);
+        }
+
+    };
+
+    private final ExecutorService mExecutorService;
+
+    // tasks queued before shutdown must not run, the way Handler drops its pending messages
+    private volatile boolean mShutdown;
+
+    public ConcurrentComputeExecutor(@NonNull final String pThreadName) {
+
+        this.mExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(@NonNull final Runnable pRunnable) {
+
+                final Thread thread = new Thread(pRunnable, pThreadName);
+
+                // do not keep JVM alive because of a LifeCompute that was never destroyed
+                thread.setDaemon(true);
+
+                return thread;
+            }
+
+        });
+
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable pTask) {
+
+        try {
+
+            this.mExecutorService.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if (!mShutdown) {
+                        pTask.run();
+                    }
+
+                }
+
+            });
+
+        } catch (final RejectedExecutionException e) {
+            // already shut down
+        }
+
+    }
+
+    @Override
+    public void shutdown() {
+
+        this.mShutdown = true;
+
+        this.mExecutorService.shutdown();
+
+    }
+
+}
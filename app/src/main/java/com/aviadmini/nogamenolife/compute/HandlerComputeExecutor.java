@@ -0,0 +1,46 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+
+/**
+ * Runs tasks on an Android {@link HandlerThread}
+ */
+public class HandlerComputeExecutor
+        implements ComputeExecutor {
+
+    public static final Factory FACTORY = new Factory() {
+
+        @NonNull
+        @Override
+        public ComputeExecutor create(@NonNull final String pThreadName) {
+            return new HandlerComputeExecutor(pThreadName);
+        }
+
+    };
+
+    private final HandlerThread mHandlerThread;
+
+    private final Handler mHandler;
+
+    public HandlerComputeExecutor(@NonNull final String pThreadName) {
+
+        this.mHandlerThread = new HandlerThread(pThreadName);
+        this.mHandlerThread.start();
+
+        this.mHandler = new Handler(this.mHandlerThread.getLooper());
+
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable pTask) {
+        this.mHandler.post(pTask);
+    }
+
+    @Override
+    public void shutdown() {
+        this.mHandlerThread.quit();
+    }
+
+}
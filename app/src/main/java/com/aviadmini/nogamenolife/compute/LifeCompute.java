@@ -1,14 +1,25 @@
 package com.aviadmini.nogamenolife.compute;
 
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public abstract class LifeCompute {
+/**
+ * Asynchronous engine: every request is run as a task on engine's own {@link ComputeExecutor} and reports back through {@link Callback}.
+ * The same engine can be driven synchronously through {@link LifeKernel} methods
+ */
+public abstract class LifeCompute
+        implements LifeKernel {
 
     private static final String COMPUTE_THREAD_NAME = "[LifeComputeThread %s]";
 
@@ -17,18 +28,78 @@ public abstract class LifeCompute {
     public static final int STATE_DEAD  = 0;
     public static final int STATE_ALIVE = 1;
 
+    /**
+     * Opposite edges are joined as they are
+     */
+    public static final int TOPOLOGY_TORUS        = 0;
+    /**
+     * Everything beyond the edges is dead
+     */
+    public static final int TOPOLOGY_BOUNDED      = 1;
+    /**
+     * Left and right edges are joined as they are, top and bottom ones are joined mirrored, so that a cell leaving the board at the top
+     * comes back at the bottom on the opposite side
+     */
+    public static final int TOPOLOGY_KLEIN_BOTTLE = 2;
+    /**
+     * Board is a window into an unbounded plane, cells that leave it keep living outside of it and may come back
+     */
+    public static final int TOPOLOGY_PLANE        = 3;
+
+    /**
+     * Run length encoded pattern, .rle
+     */
+    public static final int PATTERN_FORMAT_RLE       = 0;
+    /**
+     * Golly's quadtree pattern, .mc
+     */
+    public static final int PATTERN_FORMAT_MACROCELL = 1;
+
     private final int mWidth;
     private final int mHeight;
 
-    private HandlerThread mComputeHandlerThread;
+    private final ComputeExecutor.Factory mComputeExecutorFactory;
 
-    private Handler mComputeHandler;
+    private ComputeExecutor mComputeExecutor;
 
     private final Callback mCallback;
 
+    private final CellStatesExchange mCellStatesExchange;
+
     private int[] mCachedCellStates;
 
+    // only this part of the board is published, right and bottom are exclusive. Owned by compute thread
+    private int mVisibleLeft;
+    private int mVisibleTop;
+    private int mVisibleRight;
+    private int mVisibleBottom;
+
+    // owned by compute thread
+    private int  mTopology;
+    private Rule mRule = Rule.CONWAY;
+
+    private LifeCompute mOtherCompute;
+
+    // last published cell states as seen by compute thread, allocated when first delta is requested
+    private int[] mPublishedCellStates;
+    private int[] mDeltaCellStates;
+
+    // set when published cell states can no longer serve as delta base
+    private boolean mPublishRequired;
+
+    /**
+     * Runs on Android {@link HandlerComputeExecutor}
+     */
     public LifeCompute(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on, e.g. {@link ConcurrentComputeExecutor#FACTORY} to
+     *                                run without Android
+     */
+    public LifeCompute(final int pWidth, final int pHeight, @NonNull final Callback pCallback,
+                       @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
 
         if (pWidth <= 0 || pHeight <= 0 || pWidth + pHeight < 3) {
             throw new IllegalArgumentException("Both width and height should be >0 and their sum should be >=3");
@@ -36,15 +107,25 @@ public abstract class LifeCompute {
 
         this.mCallback = pCallback;
 
+        this.mComputeExecutorFactory = pComputeExecutorFactory;
+
         this.mWidth = pWidth;
         this.mHeight = pHeight;
 
+        this.mCellStatesExchange = new CellStatesExchange(pWidth * pHeight);
+
+        this.mVisibleRight = pWidth;
+        this.mVisibleBottom = pHeight;
+
+        this.mTopology = this.getDefaultTopology();
+
         this.initThread();
 
     }
 
     /**
-     * Constructs LifeCompute from another LifeCompute, useful when need to swap implementations. Need to call {@link #create()} afterwards
+     * Constructs LifeCompute from another LifeCompute, useful when need to swap implementations. Need to call {@link #create()} afterwards.
+     * Cell states exchange is shared with the other LifeCompute, so readers can keep using it
      *
      * @param pOther old LifeCompute
      */
@@ -55,26 +136,54 @@ public abstract class LifeCompute {
 
         this.mCallback = pOther.getCallback();
 
+        this.mComputeExecutorFactory = pOther.mComputeExecutorFactory;
+
+        this.mCellStatesExchange = pOther.getCellStatesExchange();
+
+        this.mOtherCompute = pOther;
+
     }
 
     /**
-     * After changing implementation need to use this to create the internals
+     * After changing implementation need to use this to create the internals. Call after the other LifeCompute is destroyed
      */
     public void create() {
+
+        // the other LifeCompute's thread is done by now, so its visible region can be taken as is
+        if (this.mOtherCompute != null) {
+
+            this.mVisibleLeft = this.mOtherCompute.mVisibleLeft;
+            this.mVisibleTop = this.mOtherCompute.mVisibleTop;
+            this.mVisibleRight = this.mOtherCompute.mVisibleRight;
+            this.mVisibleBottom = this.mOtherCompute.mVisibleBottom;
+
+            // implementations that can not keep the other one's topology fall back to their default one
+            final int otherTopology = this.mOtherCompute.mTopology;
+
+            this.mTopology = this.isTopologySupported(otherTopology) ? otherTopology : this.getDefaultTopology();
+
+            // same for rule, falling back to Conway's
+            if (this.isRuleSupported(this.mOtherCompute.mRule)) {
+                this.mRule = this.mOtherCompute.mRule;
+            }
+
+            this.mOtherCompute = null;
+
+        }
+
         this.initThread();
+
     }
 
     /**
-     * Creates HandlerThread which will compute things in background and runs {@link #init()} in the thread
+     * Creates executor which will compute things in background and runs {@link #init()} on it
      */
     private void initThread() {
 
-        // create HandlerThread which will be responsible for processing
-        this.mComputeHandlerThread = new HandlerThread(String.format(Locale.US, "%s %s", COMPUTE_THREAD_NAME, THREAD_ID.getAndIncrement()));
-        this.mComputeHandlerThread.start();
-        this.mComputeHandler = new Handler(this.mComputeHandlerThread.getLooper());
+        this.mComputeExecutor = this.mComputeExecutorFactory.create(
+                String.format(Locale.US, "%s %s", COMPUTE_THREAD_NAME, THREAD_ID.getAndIncrement()));
 
-        this.mComputeHandler.post(new Runnable() {
+        this.mComputeExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -98,13 +207,59 @@ public abstract class LifeCompute {
      * Initiates tick and calls  {@link Callback#onTick()}  when it's complete
      */
     public final void tick() {
+        this.tick(1);
+    }
+
+    /**
+     * Initiates advancing board by given number of generations and calls {@link Callback#onTick()} once when all of them are complete
+     *
+     * @param pGenerations number of generations to advance
+     */
+    public final void tick(final int pGenerations) {
+
+        if (pGenerations <= 0) {
+            throw new IllegalArgumentException("Number of generations should be >0");
+        }
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                tickInternal(pGenerations);
+
+                mCallback.onTick();
+
+            }
+
+        });
+
+    }
 
-        this.mComputeHandler.post(new Runnable() {
+    /**
+     * Initiates advancing board until given step is reached and calls {@link Callback#onTick()} once when it's complete. Nothing is
+     * computed if board is already at or past that step
+     *
+     * @param pStep step to advance to
+     */
+    public final void runUntil(final long pStep) {
+
+        this.mComputeExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
 
-                tickInternal();
+                long remaining = pStep - getStep();
+
+                while (remaining > 0L) {
+
+                    final int generations = (int) Math.min(remaining, Integer.MAX_VALUE);
+
+                    tickInternal(generations);
+
+                    remaining -= generations;
+
+                }
 
                 mCallback.onTick();
 
@@ -119,6 +274,19 @@ public abstract class LifeCompute {
      */
     protected abstract void tickInternal();
 
+    /**
+     * Advances board by given number of generations. Computes them one by one by default, override if implementation can do better
+     *
+     * @param pGenerations number of generations to advance, >0
+     */
+    protected void tickInternal(final int pGenerations) {
+
+        for (int i = 0; i < pGenerations; i++) {
+            this.tickInternal();
+        }
+
+    }
+
     /**
      * Requests to change cell state and calls {@link Callback#onCellStateChanged(int, int)} when it's complete
      *
@@ -140,7 +308,7 @@ public abstract class LifeCompute {
 
         this.checkCellCoordinates(pCellPosition);
 
-        this.mComputeHandler.post(new Runnable() {
+        this.mComputeExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -158,6 +326,124 @@ public abstract class LifeCompute {
      */
     protected abstract int changeCellStateInternal(final int pCellPosition, final int pNewState);
 
+    /**
+     * Requests to change states of many cells in one go and calls {@link Callback#onCellStatesChanged(int)} once when all of them are
+     * changed. Arrays are copied, so caller can reuse them right away
+     *
+     * @param pCellPositions cell positions
+     * @param pNewStates     states to assign, one per position
+     */
+    public final void requestChangeCellStates(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates) {
+
+        if (pCellPositions.length != pNewStates.length) {
+            throw new IllegalArgumentException("There should be one state per cell position");
+        }
+
+        for (final int cellPosition : pCellPositions) {
+            this.checkCellCoordinates(cellPosition);
+        }
+
+        final int[] cellPositions = pCellPositions.clone();
+        final int[] newStates = pNewStates.clone();
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                changeCellStatesInternal(cellPositions, newStates);
+
+                mCallback.onCellStatesChanged(cellPositions.length);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Requests to change states of all cells in a rectangular part of the board and calls {@link Callback#onCellStatesChanged(int)}
+     * once when it's complete. Array is copied, so caller can reuse it right away
+     *
+     * @param pLeft      left column of the part
+     * @param pTop       top row of the part
+     * @param pWidth     width of the part
+     * @param pHeight    height of the part
+     * @param pNewStates states to assign, row by row, pWidth * pHeight in size
+     */
+    public final void requestChangeCellStates(final int pLeft, final int pTop, final int pWidth, final int pHeight,
+                                              @NonNull final int[] pNewStates) {
+
+        this.checkRegion(pLeft, pTop, pWidth, pHeight);
+
+        if (pNewStates.length != pWidth * pHeight) {
+            throw new IllegalArgumentException("There should be one state per cell of the part");
+        }
+
+        final int[] newStates = pNewStates.clone();
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                changeCellStatesInternal(pLeft, pTop, pWidth, pHeight, newStates);
+
+                mCallback.onCellStatesChanged(newStates.length);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Changes cells one by one by default, override if implementation can do better
+     *
+     * @param pCellPositions cell positions
+     * @param pNewStates     states to assign, one per position
+     */
+    protected void changeCellStatesInternal(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates) {
+
+        for (int i = 0; i < pCellPositions.length; i++) {
+            this.changeCellStateInternal(pCellPositions[i], pNewStates[i]);
+        }
+
+    }
+
+    /**
+     * Changes cells one by one by default, override if implementation can do better
+     *
+     * @param pLeft      left column of the part
+     * @param pTop       top row of the part
+     * @param pWidth     width of the part
+     * @param pHeight    height of the part
+     * @param pNewStates states to assign, row by row
+     */
+    protected void changeCellStatesInternal(final int pLeft, final int pTop, final int pWidth, final int pHeight,
+                                            @NonNull final int[] pNewStates) {
+
+        for (int y = 0; y < pHeight; y++) {
+
+            for (int x = 0; x < pWidth; x++) {
+                this.changeCellStateInternal((pTop + y) * this.mWidth + pLeft + x, pNewStates[y * pWidth + x]);
+            }
+
+        }
+
+    }
+
+    /**
+     * @throws IllegalArgumentException if part is empty or not entirely on board
+     */
+    private void checkRegion(final int pLeft, final int pTop, final int pWidth, final int pHeight) {
+
+        if (pLeft < 0 || pTop < 0 || pWidth <= 0 || pHeight <= 0 || pLeft + pWidth > this.mWidth || pTop + pHeight > this.mHeight) {
+            throw new IllegalArgumentException("Region should be a non empty part of the board");
+        }
+
+    }
+
     /**
      * @param pCellPosition cell position to check
      * @throws IllegalArgumentException if cell position is not on board
@@ -189,7 +475,7 @@ public abstract class LifeCompute {
 
         this.checkCellCoordinates(pCellPosition);
 
-        this.mComputeHandler.post(new Runnable() {
+        this.mComputeExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -207,15 +493,16 @@ public abstract class LifeCompute {
     protected abstract int getCellStateInternal(final int pCellPosition);
 
     /**
-     * Requests to get cell states which are returned in {@link Callback#onCellStates(int[])}
+     * Requests to publish cell states snapshot to {@link CellStatesExchange} and calls {@link Callback#onCellStates(CellStatesExchange)}
+     * when it's complete
      */
     public final void requestCellStates() {
 
-        this.mComputeHandler.post(new Runnable() {
+        this.mComputeExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
-                mCallback.onCellStates(getCellStates());
+                publishCellStates();
             }
 
         });
@@ -223,38 +510,84 @@ public abstract class LifeCompute {
     }
 
     /**
-     * @return cell states
+     * Requests to report cells that changed since last publish and calls {@link Callback#onCellStatesDelta(CellStatesDelta)} when it's
+     * complete. Falls back to full snapshot and {@link Callback#onCellStates(CellStatesExchange)} if there is no previous publish to
+     * compare with or if delta would not be much smaller than snapshot
      */
-    @NonNull
-    protected abstract int[] getCellStates();
+    public final void requestCellStatesDelta() {
 
-    /**
-     * @return board width
-     */
-    public final int getWidth() {
-        return this.mWidth;
-    }
+        this.mComputeExecutor.execute(new Runnable() {
 
-    /**
-     * @return board height
-     */
-    public final int getHeight() {
-        return this.mHeight;
-    }
+            @Override
+            public void run() {
 
-    /**
-     * Clears board and calls {@link Callback#onCleared()} when done
-     */
-    public final void clear() {
+                if (mPublishedCellStates == null) {
 
-        this.mComputeHandler.post(new Runnable() {
+                    final int size = mWidth * mHeight;
 
-            @Override
-            public void run() {
+                    mPublishedCellStates = new int[size];
+                    mDeltaCellStates = new int[size];
 
-                clearInternal();
+                    publishCellStates();
 
-                mCallback.onCleared();
+                    return;
+                }
+
+                if (mPublishRequired) {
+
+                    publishCellStates();
+
+                    return;
+                }
+
+                getVisibleCellStates(mDeltaCellStates);
+
+                final int[] published = mPublishedCellStates;
+                final int[] current = mDeltaCellStates;
+
+                // deltas are for low churn boards, beyond an eighth of visible cells snapshot is cheaper to deliver and to apply
+                final int limit = ((mVisibleRight - mVisibleLeft) * (mVisibleBottom - mVisibleTop)) >>> 3;
+
+                // one extra cell tells that limit is exceeded
+                final CellStatesDelta delta = mCellStatesExchange.obtainDelta(limit + 1);
+
+                final int[] positions = delta.getPositions();
+                final int[] states = delta.getStates();
+
+                int count = 0;
+
+                for (int y = mVisibleTop; y < mVisibleBottom; y++) {
+
+                    final int to = y * mWidth + mVisibleRight;
+
+                    for (int i = y * mWidth + mVisibleLeft; i < to; i++) {
+
+                        if (current[i] != published[i]) {
+
+                            positions[count] = i;
+                            states[count] = current[i];
+
+                            if (++count > limit) {
+
+                                mCellStatesExchange.recycleDelta(delta);
+
+                                publishCellStates();
+
+                                return;
+                            }
+
+                        }
+
+                    }
+
+                }
+
+                mPublishedCellStates = current;
+                mDeltaCellStates = published;
+
+                mCellStatesExchange.publishDelta(delta, count);
+
+                mCallback.onCellStatesDelta(delta);
 
             }
 
@@ -263,95 +596,829 @@ public abstract class LifeCompute {
     }
 
     /**
-     * Call that indicates that board should be cleared.
+     * Publishes cell states snapshot to {@link CellStatesExchange} and calls {@link Callback#onCellStates(CellStatesExchange)}
      */
-    protected abstract void clearInternal();
+    private void publishCellStates() {
 
-    /**
-     * @return current Game of Life step
-     */
-    public abstract int getStep();
+        final int[] writeBuffer = this.mCellStatesExchange.getWriteBuffer();
 
-    /**
-     * Destroys everything and calls {@link Callback#onDestroyed()} when done
-     */
-    public final void destroy() {
+        this.getVisibleCellStates(writeBuffer);
 
-        this.mComputeHandler.post(new Runnable() {
+        if (this.mPublishedCellStates != null) {
 
-            @Override
-            public void run() {
+            for (int y = this.mVisibleTop; y < this.mVisibleBottom; y++) {
 
-                cacheCellStates(getCellStates());
+                final int from = y * this.mWidth + this.mVisibleLeft;
 
-                destroyInternal();
+                System.arraycopy(writeBuffer, from, this.mPublishedCellStates, from, this.mVisibleRight - this.mVisibleLeft);
+
+            }
 
-                mComputeHandlerThread.quit();
+        }
 
-                mCallback.onDestroyed();
+        this.mPublishRequired = false;
 
-            }
+        this.mCellStatesExchange.publish();
 
-        });
+        this.mCallback.onCellStates(this.mCellStatesExchange);
 
     }
 
     /**
-     * Call that indicates that this LifeCompute will be not used anymore. Destroy/clear everything that needs to be destroyed/cleared
+     * Copies cell states of the whole board
+     *
+     * @param pCellStates destination, width * height in size
      */
-    protected abstract void destroyInternal();
+    @Override
+    public abstract void getCellStates(@NonNull final int[] pCellStates);
 
     /**
-     * Caches cell states so that they can be accessed synchronously
+     * Copies cell states of a part of the board to their positions in destination, leaving the rest of it untouched. Copies the whole
+     * board by default, override if implementation can read a part of it cheaper
      *
-     * @param pCellStates cell states to cache
+     * @param pCellStates destination, width * height in size
+     * @param pLeft       left column of the part
+     * @param pTop        top row of the part
+     * @param pRight      column after the right one of the part
+     * @param pBottom     row after the bottom one of the part
      */
-    private void cacheCellStates(@NonNull final int[] pCellStates) {
-        this.mCachedCellStates = pCellStates.clone();
+    protected void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight, final int pBottom) {
+        this.getCellStates(pCellStates);
     }
 
     /**
-     * @return cached cell states or null if caching was not performed
+     * @return left column of the published part of the board. Compute thread only, same for the other visible region getters
      */
-    @Nullable
-    protected final int[] getCachedCellStates() {
-        return this.mCachedCellStates;
+    protected final int getVisibleLeft() {
+        return this.mVisibleLeft;
+    }
+
+    protected final int getVisibleTop() {
+        return this.mVisibleTop;
     }
 
     /**
-     * @return Callback that is set
+     * @return column after the right one of the published part of the board
      */
-    public final Callback getCallback() {
-        return this.mCallback;
+    protected final int getVisibleRight() {
+        return this.mVisibleRight;
     }
 
     /**
-     * Allows subclasses to post events to compute thread
-     *
-     * @param pRunnable event to post
+     * @return row after the bottom one of the published part of the board
      */
-    protected void postEvent(@NonNull final Runnable pRunnable) {
-        this.mComputeHandler.post(pRunnable);
+    protected final int getVisibleBottom() {
+        return this.mVisibleBottom;
+    }
+
+    private void getVisibleCellStates(@NonNull final int[] pCellStates) {
+
+        if (this.mVisibleLeft == 0 && this.mVisibleTop == 0 && this.mVisibleRight == this.mWidth && this.mVisibleBottom == this.mHeight) {
+            this.getCellStates(pCellStates);
+        } else {
+            this.getCellStates(pCellStates, this.mVisibleLeft, this.mVisibleTop, this.mVisibleRight, this.mVisibleBottom);
+        }
+
     }
 
     /**
-     * Callback of LifeCompute - methods are triggered on main events
+     * Requests to publish only a part of the board from now on, both in snapshots and in deltas. Cells outside of it keep whatever
+     * values published buffers had. Does not publish anything by itself
+     *
+     * @param pLeft   left column of the part
+     * @param pTop    top row of the part
+     * @param pRight  column after the right one of the part
+     * @param pBottom row after the bottom one of the part
      */
-    public interface Callback {
+    public final void setVisibleRegion(final int pLeft, final int pTop, final int pRight, final int pBottom) {
 
-        void onInit();
+        if (pLeft < 0 || pTop < 0 || pRight > this.mWidth || pBottom > this.mHeight || pLeft >= pRight || pTop >= pBottom) {
+            throw new IllegalArgumentException("Visible region should be a non empty part of the board");
+        }
 
-        void onTick();
+        this.mComputeExecutor.execute(new Runnable() {
 
-        void onCleared();
+            @Override
+            public void run() {
 
-        void onCellState(final int pCellPosition, final int pCellState);
+                mVisibleLeft = pLeft;
+                mVisibleTop = pTop;
+                mVisibleRight = pRight;
+                mVisibleBottom = pBottom;
 
-        void onCellStates(@NonNull final int[] pCellStates);
+                // cells that just became visible were never compared
+                mPublishRequired = true;
 
-        void onDestroyed();
+            }
 
-        void onCellStateChanged(final int pCellPosition, final int pNewState);
+        });
+
+    }
+
+    /**
+     * @param pTopology one of TOPOLOGY_ constants
+     * @return true if board can have given topology. Only {@link #TOPOLOGY_TORUS} by default, override if implementation can do more
+     */
+    public boolean isTopologySupported(final int pTopology) {
+        return pTopology == TOPOLOGY_TORUS;
+    }
+
+    /**
+     * @return topology new board has, one of TOPOLOGY_ constants. {@link #TOPOLOGY_TORUS} by default, override if implementation does
+     * not support it
+     */
+    protected int getDefaultTopology() {
+        return TOPOLOGY_TORUS;
+    }
+
+    /**
+     * Requests to change what happens at the edges of the board from next generation on. Cells are kept as they are
+     *
+     * @param pTopology one of TOPOLOGY_ constants
+     * @throws IllegalArgumentException if implementation does not support given topology
+     */
+    public final void setTopology(final int pTopology) {
+
+        if (!this.isTopologySupported(pTopology)) {
+            throw new IllegalArgumentException("Topology not supported by this implementation");
+        }
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (mTopology == pTopology) {
+                    return;
+                }
+
+                mTopology = pTopology;
+
+                onTopologyChanged();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * @return one of TOPOLOGY_ constants. Compute thread only
+     */
+    protected final int getTopology() {
+        return this.mTopology;
+    }
+
+    /**
+     * Called on compute thread after topology has changed, override if implementation keeps anything that depends on it
+     */
+    protected void onTopologyChanged() {
+    }
+
+    /**
+     * @return true if implementation can compute given rule. Only {@link Rule#CONWAY} by default, override if implementation can do more
+     */
+    public boolean isRuleSupported(@NonNull final Rule pRule) {
+        return Rule.CONWAY.equals(pRule);
+    }
+
+    /**
+     * Requests to compute given rule from next generation on. Cells are kept as they are
+     *
+     * @throws IllegalArgumentException if implementation does not support given rule
+     */
+    public final void setRule(@NonNull final Rule pRule) {
+
+        if (!this.isRuleSupported(pRule)) {
+            throw new IllegalArgumentException("Rule not supported by this implementation");
+        }
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (mRule.equals(pRule)) {
+                    return;
+                }
+
+                mRule = pRule;
+
+                onRuleChanged();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * @return rule that is computed. Compute thread only
+     */
+    @NonNull
+    protected final Rule getRule() {
+        return this.mRule;
+    }
+
+    /**
+     * @return given state if current rule has it, dead otherwise. Compute thread only
+     */
+    protected final int toRuleState(final int pState) {
+        return pState > STATE_DEAD && pState < this.mRule.getStates() ? pState : STATE_DEAD;
+    }
+
+    /**
+     * Called on compute thread after rule has changed, override if implementation keeps anything that depends on it
+     */
+    protected void onRuleChanged() {
+    }
+
+    /**
+     * @return exchange cell states snapshots are published to
+     */
+    @NonNull
+    public final CellStatesExchange getCellStatesExchange() {
+        return this.mCellStatesExchange;
+    }
+
+    @Override
+    public final void step(final int pGenerations) {
+
+        if (pGenerations <= 0) {
+            throw new IllegalArgumentException("Number of generations should be >0");
+        }
+
+        this.tickInternal(pGenerations);
+
+    }
+
+    @Override
+    public final int getCellState(final int pCellPosition) {
+
+        this.checkCellCoordinates(pCellPosition);
+
+        return this.getCellStateInternal(pCellPosition);
+    }
+
+    @Override
+    public final int setCellState(final int pCellPosition, final int pNewState) {
+
+        this.checkCellCoordinates(pCellPosition);
+
+        return this.changeCellStateInternal(pCellPosition, pNewState);
+    }
+
+    @Override
+    public final void setCellStates(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates) {
+
+        if (pCellPositions.length != pNewStates.length) {
+            throw new IllegalArgumentException("There should be one state per cell position");
+        }
+
+        for (final int cellPosition : pCellPositions) {
+            this.checkCellCoordinates(cellPosition);
+        }
+
+        this.changeCellStatesInternal(pCellPositions, pNewStates);
+
+    }
+
+    @Override
+    public final void clearCells() {
+        this.clearInternal();
+    }
+
+    /**
+     * @return board width
+     */
+    @Override
+    public final int getWidth() {
+        return this.mWidth;
+    }
+
+    /**
+     * @return board height
+     */
+    @Override
+    public final int getHeight() {
+        return this.mHeight;
+    }
+
+    /**
+     * Clears board and calls {@link Callback#onCleared()} when done
+     */
+    public final void clear() {
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                clearInternal();
+
+                mCallback.onCleared();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Call that indicates that board should be cleared.
+     */
+    protected abstract void clearInternal();
+
+    /**
+     * Requests to write board to a {@link Snapshot} file and calls {@link Callback#onSnapshotSaved(File, IOException)} when done
+     *
+     * @param pFile file to write, replaced if it exists
+     */
+    public final void requestSaveSnapshot(@NonNull final File pFile) {
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                IOException error = null;
+
+                try {
+                    saveSnapshot(pFile);
+                } catch (final IOException e) {
+                    error = e;
+                }
+
+                mCallback.onSnapshotSaved(pFile, error);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Requests to replace board with one from a {@link Snapshot} file and calls {@link Callback#onSnapshotLoaded(File, Rule, IOException)}
+     * when done
+     *
+     * @param pFile file to read
+     */
+    public final void requestLoadSnapshot(@NonNull final File pFile) {
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                IOException error = null;
+
+                try {
+                    loadSnapshot(pFile);
+                } catch (final IOException e) {
+                    error = e;
+                }
+
+                mCallback.onSnapshotLoaded(pFile, mRule, error);
+
+            }
+
+        });
+
+    }
+
+    @Override
+    public final void saveSnapshot(@NonNull final File pFile) throws IOException {
+
+        final Snapshot snapshot = Snapshot.create(pFile, this.mWidth, this.mHeight, this.mRule, this.mTopology, this.getStep());
+
+        this.writeSnapshotBody(snapshot);
+
+        snapshot.finish();
+
+    }
+
+    @Override
+    public final void loadSnapshot(@NonNull final File pFile) throws IOException {
+
+        final Snapshot snapshot = Snapshot.open(pFile);
+
+        if (snapshot.getWidth() != this.mWidth || snapshot.getHeight() != this.mHeight) {
+            throw new IOException(String.format(Locale.US, "Snapshot is %sx%s, board is %sx%s", snapshot.getWidth(), snapshot.getHeight(),
+                                                this.mWidth, this.mHeight));
+        }
+
+        this.clearInternal();
+
+        if (snapshot.getTopology() != this.mTopology && this.isTopologySupported(snapshot.getTopology())) {
+
+            this.mTopology = snapshot.getTopology();
+
+            this.onTopologyChanged();
+
+        }
+
+        if (!snapshot.getRule()
+                     .equals(this.mRule) && this.isRuleSupported(snapshot.getRule())) {
+
+            this.mRule = snapshot.getRule();
+
+            this.onRuleChanged();
+
+        }
+
+        this.readSnapshotBody(snapshot);
+
+        this.setStepInternal(snapshot.getStep());
+
+    }
+
+    /**
+     * Puts board into snapshot row by row, through a single row of cell states by default. Override if implementation can write its
+     * own buffers directly
+     */
+    protected void writeSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        final int[] row = new int[this.mWidth];
+
+        for (int y = 0; y < this.mHeight; y++) {
+
+            this.getRowCellStatesInternal(y, row);
+
+            pSnapshot.putRow(y, row, 0);
+
+        }
+
+    }
+
+    /**
+     * Sets cells that are not dead row by row by default, board is already cleared. Override if implementation can read into its own
+     * buffers directly. States current rule does not have should die
+     */
+    protected void readSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        final int[] row = new int[this.mWidth];
+
+        for (int y = 0; y < this.mHeight; y++) {
+
+            pSnapshot.getRow(y, row, 0);
+
+            for (int x = 0; x < this.mWidth; x++) {
+
+                if (row[x] != STATE_DEAD) {
+                    this.changeCellStateInternal(y * this.mWidth + x, row[x]);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * @param pStep step board continues from, e.g. the one of a loaded snapshot
+     */
+    protected abstract void setStepInternal(final long pStep);
+
+    /**
+     * Requests to replace board with a pattern and calls {@link Callback#onPatternLoaded(Rule, IOException)} when done. Stream is
+     * closed afterwards.
+     * <p>
+     * Pattern is streamed to the board, so board is cleared as soon as pattern size is known. Macrocell patterns are read whole before
+     * that, but an RLE pattern that turns out to be malformed later leaves board with part of it. Save a snapshot before to be able to
+     * restore the board then
+     *
+     * @param pInputStream RLE or Macrocell pattern
+     */
+    public final void requestLoadPattern(@NonNull final InputStream pInputStream) {
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                IOException error = null;
+
+                try {
+                    loadPattern(pInputStream);
+                } catch (final IOException e) {
+                    error = e;
+                }
+
+                error = close(pInputStream, error);
+
+                mCallback.onPatternLoaded(mRule, error);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Requests to write board as a pattern and calls {@link Callback#onPatternSaved(IOException)} when done. Stream is closed afterwards
+     *
+     * @param pFormat one of PATTERN_FORMAT_ constants
+     */
+    public final void requestSavePattern(@NonNull final OutputStream pOutputStream, final int pFormat) {
+
+        checkPatternFormat(pFormat);
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                IOException error = null;
+
+                try {
+                    savePattern(pOutputStream, pFormat);
+                } catch (final IOException e) {
+                    error = e;
+                }
+
+                error = close(pOutputStream, error);
+
+                mCallback.onPatternSaved(error);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * @return given error, or the one closing has thrown if there was none
+     */
+    @Nullable
+    private static IOException close(@NonNull final Closeable pCloseable, @Nullable final IOException pError) {
+
+        try {
+            pCloseable.close();
+        } catch (final IOException e) {
+            return pError != null ? pError : e;
+        }
+
+        return pError;
+    }
+
+    private static void checkPatternFormat(final int pFormat) {
+
+        if (pFormat != PATTERN_FORMAT_RLE && pFormat != PATTERN_FORMAT_MACROCELL) {
+            throw new IllegalArgumentException("Unknown pattern format");
+        }
+
+    }
+
+    @Override
+    public final void loadPattern(@NonNull final InputStream pInputStream) throws IOException {
+
+        final PatternInput input = new PatternInput(pInputStream);
+
+        final PatternTarget target = new PatternTarget() {
+
+            private int mLeft;
+            private int mTop;
+
+            @Override
+            public void begin(final int pWidth, final int pHeight, @NonNull final Rule pRule) throws IOException {
+
+                if (pWidth > mWidth || pHeight > mHeight) {
+                    throw new IOException(String.format(Locale.US, "Pattern is %sx%s, board is %sx%s", pWidth, pHeight, mWidth, mHeight));
+                }
+
+                clearInternal();
+
+                if (!pRule.equals(mRule) && isRuleSupported(pRule)) {
+
+                    mRule = pRule;
+
+                    onRuleChanged();
+
+                }
+
+                this.mLeft = (mWidth - pWidth) / 2;
+                this.mTop = (mHeight - pHeight) / 2;
+
+            }
+
+            @Override
+            public void setCellRun(final int pX, final int pY, final int pLength, final int pState) {
+                changeCellRunInternal(this.mLeft + pX, this.mTop + pY, pLength, pState);
+            }
+
+        };
+
+        if (MacrocellPattern.isMacrocell(input)) {
+            MacrocellPattern.read(input, target);
+        } else {
+            RlePattern.read(input, target);
+        }
+
+    }
+
+    @Override
+    public final void savePattern(@NonNull final OutputStream pOutputStream, final int pFormat) throws IOException {
+
+        checkPatternFormat(pFormat);
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(pOutputStream, "US-ASCII"));
+
+        if (pFormat == PATTERN_FORMAT_MACROCELL) {
+            MacrocellPattern.write(this, writer);
+        } else {
+            RlePattern.write(this, writer);
+        }
+
+        writer.flush();
+
+    }
+
+    @Override
+    public final void setCellRun(final int pX, final int pY, final int pLength, final int pState) {
+
+        if (pX < 0 || pY < 0 || pLength <= 0 || pX + pLength > this.mWidth || pY >= this.mHeight) {
+            throw new IllegalArgumentException("Run should be a non empty part of a row");
+        }
+
+        this.changeCellRunInternal(pX, pY, pLength, pState);
+
+    }
+
+    /**
+     * Changes cells one by one by default, override if implementation can do better
+     *
+     * @param pX      left cell of the run
+     * @param pY      row of the run
+     * @param pLength number of cells
+     * @param pState  state to assign
+     */
+    protected void changeCellRunInternal(final int pX, final int pY, final int pLength, final int pState) {
+
+        final int from = pY * this.mWidth + pX;
+
+        for (int i = from; i < from + pLength; i++) {
+            this.changeCellStateInternal(i, pState);
+        }
+
+    }
+
+    @Override
+    public final void getRowCellStates(final int pY, @NonNull final int[] pCellStates) {
+
+        if (pY < 0 || pY >= this.mHeight) {
+            throw new IllegalArgumentException("Row is not on board");
+        }
+
+        if (pCellStates.length < this.mWidth) {
+            throw new IllegalArgumentException("There should be room for a row of cells");
+        }
+
+        this.getRowCellStatesInternal(pY, pCellStates);
+
+    }
+
+    /**
+     * Reads cells one by one by default, override if implementation can do better
+     *
+     * @param pY          row
+     * @param pCellStates destination
+     */
+    protected void getRowCellStatesInternal(final int pY, @NonNull final int[] pCellStates) {
+
+        final int from = pY * this.mWidth;
+
+        for (int x = 0; x < this.mWidth; x++) {
+            pCellStates[x] = this.getCellStateInternal(from + x);
+        }
+
+    }
+
+    /**
+     * @return current Game of Life step
+     */
+    @Override
+    public abstract long getStep();
+
+    /**
+     * Destroys everything and calls {@link Callback#onDestroyed()} when done
+     */
+    public final void destroy() {
+
+        this.mComputeExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                cacheCellStates();
+
+                destroyInternal();
+
+                mComputeExecutor.shutdown();
+
+                mCallback.onDestroyed();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Call that indicates that this LifeCompute will be not used anymore. Destroy/clear everything that needs to be destroyed/cleared
+     */
+    protected abstract void destroyInternal();
+
+    /**
+     * Caches cell states so that they can be accessed synchronously
+     */
+    private void cacheCellStates() {
+
+        this.mCachedCellStates = new int[this.mWidth * this.mHeight];
+
+        this.getCellStates(this.mCachedCellStates);
+
+    }
+
+    /**
+     * @return cached cell states or null if caching was not performed
+     */
+    @Nullable
+    protected final int[] getCachedCellStates() {
+        return this.mCachedCellStates;
+    }
+
+    /**
+     * @return Callback that is set
+     */
+    public final Callback getCallback() {
+        return this.mCallback;
+    }
+
+    /**
+     * Allows subclasses to post events to compute thread
+     *
+     * @param pRunnable event to post
+     */
+    protected void postEvent(@NonNull final Runnable pRunnable) {
+        this.mComputeExecutor.execute(pRunnable);
+    }
+
+    /**
+     * Callback of LifeCompute - methods are triggered on main events
+     */
+    public interface Callback {
+
+        void onInit();
+
+        void onTick();
+
+        void onCleared();
+
+        void onCellState(final int pCellPosition, final int pCellState);
+
+        /**
+         * New snapshot was published, acquire it from the exchange on the reader thread
+         */
+        void onCellStates(@NonNull final CellStatesExchange pCellStatesExchange);
+
+        /**
+         * Cells changed since previous publish, apply to exchange's read buffer on the reader thread in order of arrival, then
+         * {@link CellStatesDelta#release()} it
+         */
+        void onCellStatesDelta(@NonNull final CellStatesDelta pCellStatesDelta);
+
+        void onDestroyed();
+
+        void onCellStateChanged(final int pCellPosition, final int pNewState);
+
+        /**
+         * Batch of cell changes is complete
+         *
+         * @param pCount number of cells in the batch
+         */
+        void onCellStatesChanged(final int pCount);
+
+        /**
+         * @param pError null if snapshot was written
+         */
+        void onSnapshotSaved(@NonNull final File pFile, @Nullable final IOException pError);
+
+        /**
+         * @param pRule  rule that is computed after loading, snapshot's one unless implementation does not support it
+         * @param pError null if board was replaced, board is unchanged otherwise
+         */
+        void onSnapshotLoaded(@NonNull final File pFile, @NonNull final Rule pRule, @Nullable final IOException pError);
+
+        /**
+         * @param pRule  rule that is computed after loading, pattern's one unless implementation does not support it
+         * @param pError null if board was replaced
+         */
+        void onPatternLoaded(@NonNull final Rule pRule, @Nullable final IOException pError);
+
+        /**
+         * @param pError null if pattern was written
+         */
+        void onPatternSaved(@Nullable final IOException pError);
 
     }
 
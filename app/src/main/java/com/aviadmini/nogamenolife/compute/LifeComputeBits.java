@@ -0,0 +1,498 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Stores board as packed longs (64 cells per word, cell X of a row is bit X % 64 of word X / 64) and computes whole words at once
+ * with bit-sliced adders. Board wraps as a torus. Totalistic rules with no dying states are supported: Conway's has its own expression,
+ * the others pick cells by their neighbour count bits
+ */
+public class LifeComputeBits
+        extends LifeCompute {
+
+    private static final int BITS_PER_WORD       = 64;
+    private static final int BITS_PER_WORD_SHIFT = 6;
+    private static final int BITS_PER_WORD_MASK  = BITS_PER_WORD - 1;
+
+    protected final int mWordsPerRow;
+
+    protected final long mLastWordMask;
+
+    protected final long[] mCellsPing;
+    protected final long[] mCellsPong;
+
+    protected boolean mUsingPing;
+
+    // rows shifted by one cell to the west/east, rotated as tick walks over the board
+    private final long[][] mShiftedWest = new long[3][];
+    private final long[][] mShiftedEast = new long[3][];
+
+    private LifeCompute mOtherCompute;
+
+    private long mStep = 0L;
+
+    public LifeComputeBits(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on
+     */
+    public LifeComputeBits(final int pWidth, final int pHeight, @NonNull final Callback pCallback,
+                           @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
+        super(pWidth, pHeight, pCallback, pComputeExecutorFactory);
+
+        this.mWordsPerRow = getWordsPerRow(pWidth);
+        this.mLastWordMask = getLastWordMask(pWidth);
+
+        this.mCellsPing = new long[this.mWordsPerRow * pHeight];
+        this.mCellsPong = new long[this.mWordsPerRow * pHeight];
+
+        this.createShiftedRows();
+
+        this.mUsingPing = true;
+
+    }
+
+    public LifeComputeBits(@NonNull final LifeCompute pOther) {
+        super(pOther);
+
+        this.mOtherCompute = pOther;
+
+        this.mWordsPerRow = getWordsPerRow(pOther.getWidth());
+        this.mLastWordMask = getLastWordMask(pOther.getWidth());
+
+        this.mCellsPing = new long[this.mWordsPerRow * pOther.getHeight()];
+        this.mCellsPong = new long[this.mWordsPerRow * pOther.getHeight()];
+
+        this.createShiftedRows();
+
+        this.mUsingPing = true;
+
+    }
+
+    private static int getWordsPerRow(final int pWidth) {
+        return (pWidth + BITS_PER_WORD_MASK) >>> BITS_PER_WORD_SHIFT;
+    }
+
+    private static long getLastWordMask(final int pWidth) {
+
+        final int bitsInLastWord = pWidth & BITS_PER_WORD_MASK;
+
+        return bitsInLastWord == 0 ? -1L : (1L << bitsInLastWord) - 1L;
+    }
+
+    private void createShiftedRows() {
+
+        for (int i = 0; i < 3; i++) {
+
+            this.mShiftedWest[i] = new long[this.mWordsPerRow];
+            this.mShiftedEast[i] = new long[this.mWordsPerRow];
+
+        }
+
+    }
+
+    @Override
+    protected void init() {
+
+        if (this.mOtherCompute != null) {
+
+            final int[] cellStates = this.mOtherCompute.getCachedCellStates();
+
+            if (cellStates != null) {
+                this.pack(cellStates, this.mCellsPing);
+            }
+
+            this.mOtherCompute = null;
+
+        }
+
+    }
+
+    @Override
+    protected synchronized void tickInternal() {
+
+        this.mStep++;
+
+        final long[] current = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+        final long[] next = this.mUsingPing ? this.mCellsPong : this.mCellsPing;
+
+        final Rule rule = this.getRule();
+
+        final boolean conway = Rule.CONWAY.equals(rule);
+
+        final int birthCounts = rule.getBirthCounts();
+        final int survivalCounts = rule.getSurvivalCounts();
+
+        final int height = this.getHeight();
+        final int wordsPerRow = this.mWordsPerRow;
+        final int lastWord = wordsPerRow - 1;
+
+        long[] westUp = this.mShiftedWest[0];
+        long[] westMid = this.mShiftedWest[1];
+        long[] westDown = this.mShiftedWest[2];
+
+        long[] eastUp = this.mShiftedEast[0];
+        long[] eastMid = this.mShiftedEast[1];
+        long[] eastDown = this.mShiftedEast[2];
+
+        this.shiftRow(current, (height - 1) * wordsPerRow, westUp, eastUp);
+        this.shiftRow(current, 0, westMid, eastMid);
+
+        for (int y = 0; y < height; y++) {
+
+            final int rowUp = (y == 0 ? height - 1 : y - 1) * wordsPerRow;
+            final int row = y * wordsPerRow;
+            final int rowDown = (y == height - 1 ? 0 : y + 1) * wordsPerRow;
+
+            this.shiftRow(current, rowDown, westDown, eastDown);
+
+            for (int w = 0; w < wordsPerRow; w++) {
+
+                final long cell = current[row + w];
+
+                // count neighbours of 64 cells at once: each row of 3 first, then sum the rows
+
+                final long nw = westUp[w];
+                final long n = current[rowUp + w];
+                final long ne = eastUp[w];
+
+                final long sw = westDown[w];
+                final long s = current[rowDown + w];
+                final long se = eastDown[w];
+
+                final long upOnes = nw ^ n ^ ne;
+                final long upTwos = (nw & n) | (ne & (nw ^ n));
+
+                final long midOnes = westMid[w] ^ eastMid[w];
+                final long midTwos = westMid[w] & eastMid[w];
+
+                final long downOnes = sw ^ s ^ se;
+                final long downTwos = (sw & s) | (se & (sw ^ s));
+
+                final long ones = upOnes ^ midOnes ^ downOnes;
+                final long onesCarry = (upOnes & midOnes) | (downOnes & (upOnes ^ midOnes));
+
+                final long twosPartial = upTwos ^ midTwos ^ downTwos;
+                final long twosCarry = (upTwos & midTwos) | (downTwos & (upTwos ^ midTwos));
+
+                final long twos = twosPartial ^ onesCarry;
+                final long foursCarry = twosPartial & onesCarry;
+
+                final long fours = twosCarry ^ foursCarry;
+                final long eights = twosCarry & foursCarry;
+
+                long result;
+
+                if (conway) {
+
+                    // alive with 3 neighbours or alive with 2 neighbours and alive before
+
+                    result = ~eights & ~fours & twos & (ones | cell);
+
+                } else {
+                    result = getNextCells(cell, ones, twos, fours, eights, birthCounts, survivalCounts);
+                }
+
+                if (w == lastWord) {
+                    result &= this.mLastWordMask;
+                }
+
+                next[row + w] = result;
+
+            }
+
+            // rotate shifted rows
+
+            final long[] westTemp = westUp;
+            westUp = westMid;
+            westMid = westDown;
+            westDown = westTemp;
+
+            final long[] eastTemp = eastUp;
+            eastUp = eastMid;
+            eastMid = eastDown;
+            eastDown = eastTemp;
+
+        }
+
+        this.mUsingPing = !this.mUsingPing;
+
+    }
+
+    /**
+     * Applies a totalistic rule to 64 cells at once
+     *
+     * @param pCell           cells
+     * @param pOnes           lowest bits of their neighbour counts, same for the higher bits
+     * @param pBirthCounts    bit n is set if dead cells with n neighbours are born
+     * @param pSurvivalCounts bit n is set if alive cells with n neighbours survive
+     * @return next cells
+     */
+    private static long getNextCells(final long pCell, final long pOnes, final long pTwos, final long pFours, final long pEights,
+                                     final int pBirthCounts, final int pSurvivalCounts) {
+
+        long born = 0L;
+        long survived = 0L;
+
+        for (int count = 0; count <= 8; count++) {
+
+            final int counts = 1 << count;
+
+            if (((pBirthCounts | pSurvivalCounts) & counts) == 0) {
+                continue;
+            }
+
+            // cells whose neighbour count equals this one
+
+            final long equal = ((count & 1) != 0 ? pOnes : ~pOnes) & ((count & 2) != 0 ? pTwos : ~pTwos) &
+                    ((count & 4) != 0 ? pFours : ~pFours) & ((count & 8) != 0 ? pEights : ~pEights);
+
+            if ((pBirthCounts & counts) != 0) {
+                born |= equal;
+            }
+
+            if ((pSurvivalCounts & counts) != 0) {
+                survived |= equal;
+            }
+
+        }
+
+        return (born & ~pCell) | (survived & pCell);
+    }
+
+    @Override
+    public boolean isRuleSupported(@NonNull final Rule pRule) {
+        return pRule.isTotalistic() && pRule.getStates() == 2;
+    }
+
+    /**
+     * Fills arrays with row shifted so that each bit holds its west/east neighbour, wrapping around row edges
+     *
+     * @param pCells     board
+     * @param pRowOffset offset of row's first word
+     * @param pWest      destination for west neighbours
+     * @param pEast      destination for east neighbours
+     */
+    private void shiftRow(@NonNull final long[] pCells, final int pRowOffset, @NonNull final long[] pWest, @NonNull final long[] pEast) {
+
+        final int lastX = this.getWidth() - 1;
+        final int lastWord = this.mWordsPerRow - 1;
+
+        final long lastCell = (pCells[pRowOffset + (lastX >>> BITS_PER_WORD_SHIFT)] >>> (lastX & BITS_PER_WORD_MASK)) & 1L;
+        final long firstCell = pCells[pRowOffset] & 1L;
+
+        for (int w = 0; w <= lastWord; w++) {
+
+            final long word = pCells[pRowOffset + w];
+
+            pWest[w] = (word << 1) | (w == 0 ? lastCell : pCells[pRowOffset + w - 1] >>> BITS_PER_WORD_MASK);
+
+            if (w == lastWord) {
+                pEast[w] = (word >>> 1) | (firstCell << (lastX & BITS_PER_WORD_MASK));
+            } else {
+                pEast[w] = (word >>> 1) | (pCells[pRowOffset + w + 1] << BITS_PER_WORD_MASK);
+            }
+
+        }
+
+    }
+
+    @Override
+    protected synchronized int changeCellStateInternal(final int pCellPosition, final int pNewState) {
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        final int index = this.getWordIndex(pCellPosition);
+        final long bit = this.getBit(pCellPosition);
+
+        if (pNewState == STATE_ALIVE) {
+            cells[index] |= bit;
+        } else {
+            cells[index] &= ~bit;
+        }
+
+        return pNewState;
+    }
+
+    @Override
+    protected synchronized int getCellStateInternal(final int pCellPosition) {
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        return (cells[this.getWordIndex(pCellPosition)] & this.getBit(pCellPosition)) != 0L ? STATE_ALIVE : STATE_DEAD;
+    }
+
+    @Override
+    protected synchronized void changeCellRunInternal(final int pX, final int pY, final int pLength, final int pState) {
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        final int row = pY * this.mWordsPerRow;
+
+        int x = pX;
+        final int to = pX + pLength;
+
+        while (x < to) {
+
+            final int bits = Math.min(BITS_PER_WORD - (x & BITS_PER_WORD_MASK), to - x);
+
+            final long mask = (bits == BITS_PER_WORD ? -1L : (1L << bits) - 1L) << (x & BITS_PER_WORD_MASK);
+
+            if (pState == STATE_ALIVE) {
+                cells[row + (x >>> BITS_PER_WORD_SHIFT)] |= mask;
+            } else {
+                cells[row + (x >>> BITS_PER_WORD_SHIFT)] &= ~mask;
+            }
+
+            x += bits;
+
+        }
+
+    }
+
+    @Override
+    protected synchronized void getRowCellStatesInternal(final int pY, @NonNull final int[] pCellStates) {
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        final int row = pY * this.mWordsPerRow;
+
+        for (int x = 0; x < this.getWidth(); x++) {
+            pCellStates[x] = (int) (cells[row + (x >>> BITS_PER_WORD_SHIFT)] >>> (x & BITS_PER_WORD_MASK)) & 1;
+        }
+
+    }
+
+    private int getWordIndex(final int pCellPosition) {
+
+        final int x = pCellPosition % this.getWidth();
+        final int y = pCellPosition / this.getWidth();
+
+        return y * this.mWordsPerRow + (x >>> BITS_PER_WORD_SHIFT);
+    }
+
+    private long getBit(final int pCellPosition) {
+        return 1L << ((pCellPosition % this.getWidth()) & BITS_PER_WORD_MASK);
+    }
+
+    @Override
+    public synchronized void getCellStates(@NonNull final int[] pCellStates) {
+        this.getCellStates(pCellStates, 0, 0, this.getWidth(), this.getHeight());
+    }
+
+    @Override
+    protected synchronized void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight,
+                                              final int pBottom) {
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        final int width = this.getWidth();
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            final int row = y * this.mWordsPerRow;
+            final int position = y * width;
+
+            for (int x = pLeft; x < pRight; x++) {
+                pCellStates[position + x] = (int) (cells[row + (x >>> BITS_PER_WORD_SHIFT)] >>> (x & BITS_PER_WORD_MASK)) & 1;
+            }
+
+        }
+
+    }
+
+    /**
+     * Snapshot with a bit per cell has the same layout as the board, so it is written in one bulk copy
+     */
+    @Override
+    protected synchronized void writeSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        if (pSnapshot.getBitsPerCell() != 1) {
+
+            super.writeSnapshotBody(pSnapshot);
+
+            return;
+        }
+
+        pSnapshot.putWords(this.mUsingPing ? this.mCellsPing : this.mCellsPong);
+
+    }
+
+    @Override
+    protected synchronized void readSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        if (pSnapshot.getBitsPerCell() != 1) {
+
+            super.readSnapshotBody(pSnapshot);
+
+            return;
+        }
+
+        final long[] cells = this.mUsingPing ? this.mCellsPing : this.mCellsPong;
+
+        pSnapshot.getWords(cells);
+
+        // bits past the right edge must stay clear, shifts carry them into neighbour counts
+        for (int i = this.mWordsPerRow - 1; i < cells.length; i += this.mWordsPerRow) {
+            cells[i] &= this.mLastWordMask;
+        }
+
+    }
+
+    /**
+     * @param pCellStates cell states to pack
+     * @param pCells      destination board
+     */
+    private void pack(@NonNull final int[] pCellStates, @NonNull final long[] pCells) {
+
+        final int width = this.getWidth();
+        final int height = this.getHeight();
+
+        Arrays.fill(pCells, 0L);
+
+        for (int y = 0; y < height; y++) {
+
+            final int row = y * this.mWordsPerRow;
+            final int position = y * width;
+
+            for (int x = 0; x < width; x++) {
+
+                if (pCellStates[position + x] == STATE_ALIVE) {
+                    pCells[row + (x >>> BITS_PER_WORD_SHIFT)] |= 1L << (x & BITS_PER_WORD_MASK);
+                }
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public synchronized long getStep() {
+        return this.mStep;
+    }
+
+    @Override
+    protected synchronized void setStepInternal(final long pStep) {
+        this.mStep = pStep;
+    }
+
+    @Override
+    protected synchronized void destroyInternal() {
+    }
+
+    @Override
+    protected synchronized void clearInternal() {
+
+        this.mStep = 0L;
+
+        Arrays.fill(this.mCellsPing, 0L);
+        Arrays.fill(this.mCellsPong, 0L);
+
+    }
+
+}
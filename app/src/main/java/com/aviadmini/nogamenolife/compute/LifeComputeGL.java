@@ -1,78 +1,349 @@
 package com.aviadmini.nogamenolife.compute;
 
+import android.graphics.SurfaceTexture;
+import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import com.aviadmini.nogamenolife.opengl.CellStatesRenderer;
+import com.aviadmini.nogamenolife.opengl.GLContextPool;
 import com.aviadmini.nogamenolife.opengl.LifeRenderer;
 import com.aviadmini.nogamenolife.opengl.OffscreenGLContextManager;
+import com.aviadmini.nogamenolife.opengl.PackedLifeRenderer;
 
 public class LifeComputeGL
         extends LifeCompute {
 
-    private LifeRenderer mRenderer;
+    /**
+     * A cell per RGBA texel, OpenGL ES 2.0
+     */
+    public static final int MODE_RGBA   = 0;
+    /**
+     * 32 cells per RGBA texel computed bit-parallel, OpenGL ES 3.0. Falls back to {@link #MODE_RGBA} where ES 3.0 is not available
+     */
+    public static final int MODE_PACKED = 1;
+
+    private final int mMode;
+
+    private CellStatesRenderer mRenderer;
 
     private OffscreenGLContextManager mOffscreen;
 
-    private int mStep = 0;
+    private long mStep = 0L;
 
     private LifeCompute mOtherCompute;
 
-    @SuppressWarnings("FieldCanBeLocal")
-    private final LifeRenderer.Callback mRendererCallback = new LifeRenderer.Callback() {
+    // part of the board display surface shows, in cells. Owned by compute thread
+    private float mDisplayLeft;
+    private float mDisplayTop;
+    private float mDisplayRight;
+    private float mDisplayBottom;
+
+    private boolean mDisplayPosted;
+
+    private final Runnable mDisplayRunnable = new Runnable() {
 
         @Override
-        public void onFrameDrawn() {
-            mStep++;
+        public void run() {
+
+            mDisplayPosted = false;
+
+            display();
+
         }
 
     };
 
     public LifeComputeGL(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pCallback, MODE_RGBA);
+    }
+
+    /**
+     * @param pMode one of {@link #MODE_RGBA}, {@link #MODE_PACKED}
+     */
+    public LifeComputeGL(final int pWidth, final int pHeight, @NonNull final Callback pCallback, final int pMode) {
         super(pWidth, pHeight, pCallback);
+
+        this.mMode = checkMode(pMode);
+
     }
 
     public LifeComputeGL(@NonNull final LifeCompute pOther) {
+        this(pOther, MODE_RGBA);
+    }
+
+    /**
+     * @param pMode one of {@link #MODE_RGBA}, {@link #MODE_PACKED}
+     */
+    public LifeComputeGL(@NonNull final LifeCompute pOther, final int pMode) {
         super(pOther);
 
+        this.mMode = checkMode(pMode);
+
         this.mOtherCompute = pOther;
 
     }
 
+    private static int checkMode(final int pMode) {
+
+        if (pMode != MODE_RGBA && pMode != MODE_PACKED) {
+            throw new IllegalArgumentException("Unknown GL compute mode");
+        }
+
+        return pMode;
+    }
+
     @Override
     protected void init() {
 
-        if (this.mOtherCompute != null) {
+        int[] cellStates = null;
 
-            final int[] cellStates = this.mOtherCompute.getCachedCellStates();
+        if (this.mOtherCompute != null) {
 
-            //Timber.v("cell states for init: %s", Arrays.toString(cellStates));
+            cellStates = this.mOtherCompute.getCachedCellStates();
 
+            // the other engine may have run a rule with more states than the one this engine fell back to
             if (cellStates != null) {
-                this.mRenderer = new LifeRenderer(this.mRendererCallback, cellStates);
-            } else {
-                this.mRenderer = new LifeRenderer(this.mRendererCallback);
+
+                cellStates = cellStates.clone();
+
+                for (int i = 0; i < cellStates.length; i++) {
+                    cellStates[i] = this.toRuleState(cellStates[i]);
+                }
+
             }
 
             this.mOtherCompute = null;
 
         }
 
-        this.mOffscreen = new OffscreenGLContextManager(this.mRenderer, this.getWidth(), this.getHeight());
+        this.mDisplayRight = this.getWidth();
+        this.mDisplayBottom = this.getHeight();
 
-        this.mOffscreen.create();
+        this.createRenderer(cellStates);
+
+        // pooled renderer may still have rule of its previous engine
+        this.mRenderer.setRule(this.getRule());
+
+    }
+
+    /**
+     * Takes renderer with its context from the pool or creates them, trying the fastest mode first
+     */
+    private void createRenderer(@Nullable final int[] pCellStates) {
+
+        final boolean es3 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+        if (this.mMode == MODE_PACKED && es3) {
+
+            if (this.reuseOffscreen(PackedLifeRenderer.class, 3, pCellStates)) {
+                return;
+            }
+
+            this.mRenderer = new PackedLifeRenderer(null, pCellStates);
+
+            if (this.createOffscreen(this.mRenderer.getContextClientVersion())) {
+                return;
+            }
+
+        }
+
+        // pool only has an OpenGL ES 2.0 context if 3.0 one could not be created before
+        if ((es3 && this.reuseOffscreen(LifeRenderer.class, 3, pCellStates)) || this.reuseOffscreen(LifeRenderer.class, 2, pCellStates)) {
+            return;
+        }
+
+        this.mRenderer = new LifeRenderer(null, pCellStates);
+
+        // same renderer gets asynchronous readback in an OpenGL ES 3.0 context
+        if (es3 && this.createOffscreen(3)) {
+            return;
+        }
+
+        this.createOffscreen(this.mRenderer.getContextClientVersion());
+
+    }
+
+    /**
+     * @return true for every rule in {@link #MODE_RGBA}, only for totalistic ones with no dying states in {@link #MODE_PACKED}
+     */
+    @Override
+    public boolean isRuleSupported(@NonNull final Rule pRule) {
+        return this.mMode == MODE_RGBA || (pRule.isTotalistic() && pRule.getStates() == 2);
+    }
+
+    @Override
+    protected synchronized void onRuleChanged() {
+        this.mRenderer.setRule(this.getRule());
+    }
+
+    private boolean createOffscreen(final int pClientVersion) {
+
+        this.mOffscreen = new OffscreenGLContextManager(this.mRenderer, this.getWidth(), this.getHeight(), pClientVersion);
+
+        return this.mOffscreen.create();
+    }
+
+    /**
+     * Takes over context a destroyed engine left in {@link GLContextPool}, with its renderer, compiled programs and textures. Textures
+     * are reallocated only if board size differs, then board contents are uploaded
+     *
+     * @return false if pool has no such context
+     */
+    private boolean reuseOffscreen(@NonNull final Class<? extends CellStatesRenderer> pRendererClass, final int pClientVersion,
+                                   final int[] pCellStates) {
+
+        final OffscreenGLContextManager offscreen = GLContextPool.acquire(pRendererClass, pClientVersion);
+
+        if (offscreen == null) {
+            return false;
+        }
+
+        if (!offscreen.makeCurrent()) {
+
+            offscreen.destroy();
+
+            return false;
+        }
+
+        offscreen.resize(this.getWidth(), this.getHeight());
+
+        this.mOffscreen = offscreen;
+
+        this.mRenderer = (CellStatesRenderer) offscreen.getRenderer();
+        this.mRenderer.setCellStates(pCellStates);
+
+        return true;
+    }
+
+    /**
+     * @return mode renderer was actually created with, differs from requested one when device falls back to {@link #MODE_RGBA}. Valid
+     * after init
+     */
+    public synchronized int getMode() {
+        return this.mRenderer instanceof PackedLifeRenderer ? MODE_PACKED : MODE_RGBA;
+    }
+
+    /**
+     * Makes engine draw board straight from GPU to given surface after every change, so that it can be shown without reading it back.
+     * Call after {@link #create()} for an engine constructed from another one. Surface stays blank where context cannot draw to it
+     *
+     * @param pSurfaceTexture surface to draw to, e.g. TextureView's, or null to stop drawing to the previous one
+     */
+    public final void setDisplaySurface(@Nullable final SurfaceTexture pSurfaceTexture) {
+
+        this.postEvent(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (mOffscreen != null && mOffscreen.setWindow(pSurfaceTexture)) {
+                    requestDisplay();
+                }
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Sets part of the board display surface shows and redraws it
+     *
+     * @param pLeft   board X at the left edge of the surface, in cells, may be fractional or off board. Same for the other edges
+     * @param pTop    board Y at the top edge of the surface
+     * @param pRight  board X at the right edge of the surface
+     * @param pBottom board Y at the bottom edge of the surface
+     */
+    public final void setDisplayRegion(final float pLeft, final float pTop, final float pRight, final float pBottom) {
+
+        this.postEvent(new Runnable() {
+
+            @Override
+            public void run() {
+
+                mDisplayLeft = pLeft;
+                mDisplayTop = pTop;
+                mDisplayRight = pRight;
+                mDisplayBottom = pBottom;
+
+                requestDisplay();
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Schedules drawing to display surface after tasks that are already queued, so that a burst of changes is drawn once. Compute
+     * thread only
+     */
+    private void requestDisplay() {
+
+        if (!this.mDisplayPosted && this.mOffscreen != null && this.mOffscreen.hasWindow()) {
+
+            this.mDisplayPosted = true;
+
+            this.postEvent(this.mDisplayRunnable);
+
+        }
+
+    }
+
+    private synchronized void display() {
+
+        if (this.mOffscreen.beginWindowFrame()) {
+
+            this.mRenderer.drawCellStates(this.mDisplayLeft, this.mDisplayTop, this.mDisplayRight, this.mDisplayBottom);
+
+            this.mOffscreen.endWindowFrame();
+
+        }
 
     }
 
     @Override
     protected synchronized void tickInternal() {
+
         this.mOffscreen.render();
+
+        this.mStep++;
+
+        this.requestDisplay();
+
+    }
+
+    /**
+     * All generations are drawn as one batch of passes, board is only read back when cell states are requested afterwards. Readback of
+     * published part starts right away though, so that GPU copies it while callbacks make their way back to request it. Nothing is
+     * read back while board is drawn to display surface, it is only read on request then
+     */
+    @Override
+    protected synchronized void tickInternal(final int pGenerations) {
+
+        this.mRenderer.drawGenerations(pGenerations);
+
+        this.mStep += pGenerations;
+
+        if (this.mOffscreen.hasWindow()) {
+            this.requestDisplay();
+        } else {
+            this.mRenderer.prefetchCellStates(this.getVisibleLeft(), this.getVisibleTop(), this.getVisibleRight(), this.getVisibleBottom());
+        }
+
     }
 
     @Override
     protected synchronized int changeCellStateInternal(final int pCellPosition, final int pNewState) {
 
-        this.mRenderer.changeCellState(pCellPosition, pNewState);
+        final int newState = this.toRuleState(pNewState);
+
+        this.mRenderer.changeCellState(pCellPosition, newState);
 
-        return pNewState;
+        this.requestDisplay();
+
+        return newState;
     }
 
     @Override
@@ -80,29 +351,79 @@ public class LifeComputeGL
         return this.mRenderer.getCellState(pCellPosition);
     }
 
-    @NonNull
     @Override
-    protected synchronized int[] getCellStates() {
-        return this.mRenderer.getCellStates();
+    public synchronized void getCellStates(@NonNull final int[] pCellStates) {
+        this.mRenderer.getCellStates(pCellStates);
+    }
+
+    @Override
+    protected synchronized void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight,
+                                              final int pBottom) {
+        this.mRenderer.getCellStates(pCellStates, pLeft, pTop, pRight, pBottom);
+    }
+
+    @Override
+    protected synchronized void getRowCellStatesInternal(final int pY, @NonNull final int[] pCellStates) {
+        this.mRenderer.getRowCellStates(pY, pCellStates);
+    }
+
+    /**
+     * Rows go straight from snapshot to GPU, so that nothing board sized is allocated on host
+     */
+    @Override
+    protected synchronized void readSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        final int width = this.getWidth();
+
+        final byte[] row = new byte[width];
+
+        for (int y = 0; y < this.getHeight(); y++) {
+
+            pSnapshot.getRow(y, row, 0);
+
+            for (int x = 0; x < width; x++) {
+                row[x] = (byte) this.toRuleState(row[x] & 0xFF);
+            }
+
+            this.mRenderer.setRow(y, row, 0);
+
+        }
+
+        this.requestDisplay();
+
     }
 
     @Override
     protected synchronized void clearInternal() {
 
-        this.mStep = 0;
+        this.mStep = 0L;
 
         this.mRenderer.clear();
 
+        this.requestDisplay();
+
     }
 
     @Override
-    public synchronized int getStep() {
+    public synchronized long getStep() {
         return this.mStep;
     }
 
+    @Override
+    protected synchronized void setStepInternal(final long pStep) {
+        this.mStep = pStep;
+    }
+
     @Override
     protected synchronized void destroyInternal() {
-        this.mOffscreen.destroy();
+
+        // context outlives the engine, so that the next OpenGL one starts without setting it up again
+        this.mOffscreen.setWindow(null);
+
+        this.mOffscreen.releaseCurrent();
+
+        GLContextPool.release(this.mOffscreen);
+
     }
 
 }
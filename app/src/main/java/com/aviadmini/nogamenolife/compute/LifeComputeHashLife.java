@@ -0,0 +1,846 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * HashLife: board is a quadtree of hash-consed nodes and results of advancing every node are memoized, so repetitive patterns can
+ * be advanced by 2^k generations in one call.
+ * <p>
+ * Unlike other implementations the universe is unbounded, {@link #TOPOLOGY_PLANE}: board is only a window centered on the origin of
+ * an infinite plane and cells that leave it keep living outside of it. Node cache is limited by memory budget: when it is exceeded,
+ * even in the middle of a jump, all nodes not reachable from the current pattern or from the jump in progress are dropped. Memoized
+ * results survive when the nodes they point to do. If the live pattern alone takes more than the budget, next collection waits for
+ * the cache to double instead of running on every step
+ */
+public class LifeComputeHashLife
+        extends LifeCompute {
+
+    /**
+     * Default node cache memory budget in bytes
+     */
+    public static final long MEMORY_BUDGET_DEFAULT = 32L * 1024L * 1024L;
+
+    // rough size of a node with its object header, references and hash table slot
+    private static final int NODE_SIZE_BYTES = 64;
+
+    private static final int TABLE_SIZE_INITIAL = 1 << 12;
+
+    private static final float TABLE_LOAD_FACTOR = 0.75f;
+
+    private static final int ROOT_LEVEL_MIN = 3;
+
+    private static final Node LEAF_DEAD  = new Node(STATE_DEAD);
+    private static final Node LEAF_ALIVE = new Node(STATE_ALIVE);
+
+    private final long mMaxNodes;
+
+    // node count that triggers next collection, raised above the budget while live nodes alone exceed it
+    private long mCollectThreshold;
+
+    // nodes a jump in progress still needs, they are not reachable from the root yet
+    private Node[] mJumpNodes = new Node[64];
+    private int    mJumpNodeCount;
+
+    private Node[] mTable;
+    private int    mTableSize;
+    private int    mTableThreshold;
+
+    private Node[] mEmptyNodes;
+
+    private Node mRoot;
+
+    private LifeCompute mOtherCompute;
+
+    private long mStep = 0L;
+
+    public LifeComputeHashLife(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, MEMORY_BUDGET_DEFAULT, pCallback);
+    }
+
+    /**
+     * @param pMemoryBudget approximate node cache memory budget in bytes
+     */
+    public LifeComputeHashLife(final int pWidth, final int pHeight, final long pMemoryBudget, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pMemoryBudget, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pMemoryBudget           approximate node cache memory budget in bytes
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on
+     */
+    public LifeComputeHashLife(final int pWidth, final int pHeight, final long pMemoryBudget, @NonNull final Callback pCallback,
+                               @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
+        super(pWidth, pHeight, pCallback, pComputeExecutorFactory);
+
+        this.mMaxNodes = getMaxNodes(pMemoryBudget);
+
+    }
+
+    public LifeComputeHashLife(@NonNull final LifeCompute pOther) {
+        this(pOther, MEMORY_BUDGET_DEFAULT);
+    }
+
+    /**
+     * @param pMemoryBudget approximate node cache memory budget in bytes
+     */
+    public LifeComputeHashLife(@NonNull final LifeCompute pOther, final long pMemoryBudget) {
+        super(pOther);
+
+        this.mOtherCompute = pOther;
+
+        this.mMaxNodes = getMaxNodes(pMemoryBudget);
+
+    }
+
+    private static long getMaxNodes(final long pMemoryBudget) {
+
+        if (pMemoryBudget < TABLE_SIZE_INITIAL * NODE_SIZE_BYTES) {
+            throw new IllegalArgumentException("Memory budget is too small");
+        }
+
+        return pMemoryBudget / NODE_SIZE_BYTES;
+    }
+
+    @Override
+    protected synchronized void init() {
+
+        this.mEmptyNodes = new Node[ROOT_LEVEL_MIN + 1];
+
+        this.createTable(TABLE_SIZE_INITIAL);
+
+        this.mCollectThreshold = this.mMaxNodes;
+
+        this.mRoot = this.getEmpty(ROOT_LEVEL_MIN);
+
+        if (this.mOtherCompute != null) {
+
+            final int[] cellStates = this.mOtherCompute.getCachedCellStates();
+
+            if (cellStates != null) {
+
+                for (int i = cellStates.length - 1; i >= 0; i--) {
+
+                    if (cellStates[i] == STATE_ALIVE) {
+                        this.changeCellStateInternal(i, STATE_ALIVE);
+                    }
+
+                }
+
+            }
+
+            this.mOtherCompute = null;
+
+        }
+
+    }
+
+    @Override
+    protected synchronized void tickInternal() {
+        this.advance(1L);
+    }
+
+    @Override
+    protected synchronized void tickInternal(final int pGenerations) {
+        this.advance(pGenerations);
+    }
+
+    /**
+     * Advances pattern by decomposing number of generations into powers of two and doing one memoized jump per set bit
+     *
+     * @param pGenerations number of generations, >0
+     */
+    private void advance(final long pGenerations) {
+
+        for (int j = 0; j < Long.SIZE - 1; j++) {
+
+            if ((pGenerations & (1L << j)) == 0L) {
+                continue;
+            }
+
+            // result of a jump is the centre half of the root, so pattern needs enough empty space around to not get cut off
+
+            while (this.mRoot.mLevel < j + 3 || !this.isInCentre(this.mRoot, 2)) {
+                this.mRoot = this.expand(this.mRoot);
+            }
+
+            this.mRoot = this.getSuccessor(this.mRoot, j);
+
+            this.mStep += 1L << j;
+
+            this.shrinkRoot();
+
+            if (this.mTableSize > this.mCollectThreshold) {
+                this.collectGarbage(true);
+            }
+
+        }
+
+    }
+
+    /**
+     * @param pNode  node to compute, level k >= 2
+     * @param pPower advance by 2^power generations, power <= k - 2
+     * @return centre of the node, level k - 1, advanced by 2^power generations
+     */
+    private Node getSuccessor(@NonNull final Node pNode, final int pPower) {
+
+        if (pNode.mResult != null && pNode.mResultPower == pPower) {
+            return pNode.mResult;
+        }
+
+        final int level = pNode.mLevel;
+
+        final int jumpNodeCount = this.mJumpNodeCount;
+
+        // every node this frame holds is pushed before anything that may collect garbage runs
+        this.pushJumpNode(pNode);
+
+        if (this.mTableSize > this.mCollectThreshold) {
+            this.collectGarbage(true);
+        }
+
+        final Node result;
+
+        if (pNode.mPopulation == 0L) {
+            result = this.getEmpty(level - 1);
+        } else if (level == 2) {
+            result = this.computeBase(pNode);
+        } else {
+
+            // 9 overlapping subnodes of level k - 1, their centres or successors are computed one by one and kept pushed
+
+            final boolean fullSpeed = pPower == level - 2;
+
+            final Node c00 = this.getSubnodeResult(pNode.mNW, pPower, fullSpeed);
+            final Node c01 = this.getSubnodeResult(this.createNode(pNode.mNW.mNE, pNode.mNE.mNW, pNode.mNW.mSE, pNode.mNE.mSW), pPower,
+                    fullSpeed);
+            final Node c02 = this.getSubnodeResult(pNode.mNE, pPower, fullSpeed);
+            final Node c10 = this.getSubnodeResult(this.createNode(pNode.mNW.mSW, pNode.mNW.mSE, pNode.mSW.mNW, pNode.mSW.mNE), pPower,
+                    fullSpeed);
+            final Node c11 = this.getSubnodeResult(this.createNode(pNode.mNW.mSE, pNode.mNE.mSW, pNode.mSW.mNE, pNode.mSE.mNW), pPower,
+                    fullSpeed);
+            final Node c12 = this.getSubnodeResult(this.createNode(pNode.mNE.mSW, pNode.mNE.mSE, pNode.mSE.mNW, pNode.mSE.mNE), pPower,
+                    fullSpeed);
+            final Node c20 = this.getSubnodeResult(pNode.mSW, pPower, fullSpeed);
+            final Node c21 = this.getSubnodeResult(this.createNode(pNode.mSW.mNE, pNode.mSE.mNW, pNode.mSW.mSE, pNode.mSE.mSW), pPower,
+                    fullSpeed);
+            final Node c22 = this.getSubnodeResult(pNode.mSE, pPower, fullSpeed);
+
+            // full speed jump advances both halves by 2^(k - 3), slower jumps took centres first and advance only once
+
+            final int remainingPower = fullSpeed ? pPower - 1 : pPower;
+
+            final Node nw = this.pushJumpNode(this.getSuccessor(this.createNode(c00, c01, c10, c11), remainingPower));
+            final Node ne = this.pushJumpNode(this.getSuccessor(this.createNode(c01, c02, c11, c12), remainingPower));
+            final Node sw = this.pushJumpNode(this.getSuccessor(this.createNode(c10, c11, c20, c21), remainingPower));
+            final Node se = this.getSuccessor(this.createNode(c11, c12, c21, c22), remainingPower);
+
+            result = this.createNode(nw, ne, sw, se);
+
+        }
+
+        pNode.mResult = result;
+        pNode.mResultPower = pPower;
+
+        this.popJumpNodes(jumpNodeCount);
+
+        return result;
+    }
+
+    /**
+     * @return successor of subnode for a full speed jump, its centre otherwise, pushed as a node jump in progress needs
+     */
+    private Node getSubnodeResult(@NonNull final Node pNode, final int pPower, final boolean pFullSpeed) {
+        return this.pushJumpNode(pFullSpeed ? this.getSuccessor(pNode, pPower - 1) : this.getCentre(pNode));
+    }
+
+    private Node pushJumpNode(@NonNull final Node pNode) {
+
+        if (this.mJumpNodeCount == this.mJumpNodes.length) {
+            this.mJumpNodes = Arrays.copyOf(this.mJumpNodes, this.mJumpNodeCount * 2);
+        }
+
+        this.mJumpNodes[this.mJumpNodeCount++] = pNode;
+
+        return pNode;
+    }
+
+    private void popJumpNodes(final int pCount) {
+
+        Arrays.fill(this.mJumpNodes, pCount, this.mJumpNodeCount, null);
+
+        this.mJumpNodeCount = pCount;
+
+    }
+
+    /**
+     * @param pNode level 2 node (4x4 cells)
+     * @return level 1 node with 2x2 centre cells advanced by one generation
+     */
+    private Node computeBase(@NonNull final Node pNode) {
+
+        // bit y * 4 + x holds cell (x, y)
+
+        int cells = 0;
+
+        for (int y = 0; y < 4; y++) {
+
+            for (int x = 0; x < 4; x++) {
+
+                if (this.getCell(pNode, x, y) == STATE_ALIVE) {
+                    cells |= 1 << (y * 4 + x);
+                }
+
+            }
+
+        }
+
+        final Rule rule = this.getRule();
+
+        return this.createNode(//
+                getNextLeaf(rule, cells, 1, 1),//
+                getNextLeaf(rule, cells, 2, 1),//
+                getNextLeaf(rule, cells, 1, 2),//
+                getNextLeaf(rule, cells, 2, 2));
+    }
+
+    private static Node getNextLeaf(@NonNull final Rule pRule, final int pCells, final int pX, final int pY) {
+
+        int neighbourhood = 0;
+
+        for (int dy = -1; dy <= 1; dy++) {
+
+            for (int dx = -1; dx <= 1; dx++) {
+                neighbourhood |= ((pCells >>> ((pY + dy) * 4 + pX + dx)) & 1) << ((dy + 1) * 3 + dx + 1);
+            }
+
+        }
+
+        return pRule.getNextState(neighbourhood) == STATE_ALIVE ? LEAF_ALIVE : LEAF_DEAD;
+    }
+
+    private Node getCentre(@NonNull final Node pNode) {
+        return this.createNode(pNode.mNW.mSE, pNode.mNE.mSW, pNode.mSW.mNE, pNode.mSE.mNW);
+    }
+
+    /**
+     * @param pNode  node to check, level >= depth + 1
+     * @param pDepth 1 checks centre half (level k - 1), 2 checks centre quarter (level k - 2)
+     * @return true if all alive cells of the node are in its centre
+     */
+    private boolean isInCentre(@NonNull final Node pNode, final int pDepth) {
+
+        if (pNode.mLevel <= pDepth) {
+            return false;
+        }
+
+        Node nw = pNode.mNW;
+        Node ne = pNode.mNE;
+        Node sw = pNode.mSW;
+        Node se = pNode.mSE;
+
+        for (int i = 1; i < pDepth; i++) {
+
+            nw = nw.mSE;
+            ne = ne.mSW;
+            sw = sw.mNE;
+            se = se.mNW;
+
+        }
+
+        return pNode.mNW.mPopulation == nw.mSE.mPopulation && pNode.mNE.mPopulation == ne.mSW.mPopulation &&
+                pNode.mSW.mPopulation == sw.mNE.mPopulation && pNode.mSE.mPopulation == se.mNW.mPopulation;
+    }
+
+    /**
+     * @return node one level higher with given node in centre and empty border
+     */
+    private Node expand(@NonNull final Node pNode) {
+
+        final Node empty = this.getEmpty(pNode.mLevel - 1);
+
+        return this.createNode(//
+                this.createNode(empty, empty, empty, pNode.mNW),//
+                this.createNode(empty, empty, pNode.mNE, empty),//
+                this.createNode(empty, pNode.mSW, empty, empty),//
+                this.createNode(pNode.mSE, empty, empty, empty));
+    }
+
+    private void shrinkRoot() {
+
+        while (this.mRoot.mLevel > ROOT_LEVEL_MIN && this.isInCentre(this.mRoot, 1)) {
+            this.mRoot = this.getCentre(this.mRoot);
+        }
+
+    }
+
+    private Node getEmpty(final int pLevel) {
+
+        if (pLevel >= this.mEmptyNodes.length) {
+            this.mEmptyNodes = Arrays.copyOf(this.mEmptyNodes, pLevel + 1);
+        }
+
+        if (this.mEmptyNodes[pLevel] == null) {
+
+            if (pLevel == 0) {
+                this.mEmptyNodes[pLevel] = LEAF_DEAD;
+            } else {
+
+                final Node child = this.getEmpty(pLevel - 1);
+
+                this.mEmptyNodes[pLevel] = this.createNode(child, child, child, child);
+
+            }
+
+        }
+
+        return this.mEmptyNodes[pLevel];
+    }
+
+    // hash consing
+
+    private void createTable(final int pSize) {
+
+        this.mTable = new Node[pSize];
+        this.mTableSize = 0;
+        this.mTableThreshold = (int) (pSize * TABLE_LOAD_FACTOR);
+
+    }
+
+    /**
+     * @return canonical node with given children
+     */
+    private Node createNode(@NonNull final Node pNW, @NonNull final Node pNE, @NonNull final Node pSW, @NonNull final Node pSE) {
+
+        final int hash = getHash(pNW, pNE, pSW, pSE);
+        final int index = hash & (this.mTable.length - 1);
+
+        for (Node node = this.mTable[index]; node != null; node = node.mNextInBucket) {
+
+            if (node.mNW == pNW && node.mNE == pNE && node.mSW == pSW && node.mSE == pSE) {
+                return node;
+            }
+
+        }
+
+        final Node node = new Node(pNW, pNE, pSW, pSE, hash);
+
+        this.insert(node);
+
+        return node;
+    }
+
+    private void insert(@NonNull final Node pNode) {
+
+        final int index = pNode.mHash & (this.mTable.length - 1);
+
+        pNode.mNextInBucket = this.mTable[index];
+        this.mTable[index] = pNode;
+
+        if (++this.mTableSize > this.mTableThreshold) {
+            this.resizeTable();
+        }
+
+    }
+
+    private boolean contains(@NonNull final Node pNode) {
+
+        for (Node node = this.mTable[pNode.mHash & (this.mTable.length - 1)]; node != null; node = node.mNextInBucket) {
+
+            if (node == pNode) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    private void resizeTable() {
+
+        final Node[] oldTable = this.mTable;
+
+        this.createTable(oldTable.length << 1);
+
+        for (Node bucket : oldTable) {
+
+            while (bucket != null) {
+
+                final Node next = bucket.mNextInBucket;
+
+                this.insert(bucket);
+
+                bucket = next;
+
+            }
+
+        }
+
+    }
+
+    private static int getHash(@NonNull final Node pNW, @NonNull final Node pNE, @NonNull final Node pSW, @NonNull final Node pSE) {
+
+        int hash = pNW.mHash;
+        hash = hash * 31 + pNE.mHash;
+        hash = hash * 31 + pSW.mHash;
+        hash = hash * 31 + pSE.mHash;
+
+        // spread bits, table index uses the lowest ones
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+
+        return hash;
+    }
+
+    /**
+     * @return true for {@link #TOPOLOGY_PLANE} only, edges of the board are not edges of the universe
+     */
+    @Override
+    public boolean isTopologySupported(final int pTopology) {
+        return pTopology == TOPOLOGY_PLANE;
+    }
+
+    @Override
+    protected int getDefaultTopology() {
+        return TOPOLOGY_PLANE;
+    }
+
+    /**
+     * @return true for every rule with dead and alive states only, quadtree leaves have no room for dying ones
+     */
+    @Override
+    public boolean isRuleSupported(@NonNull final Rule pRule) {
+        return pRule.getStates() == 2;
+    }
+
+    @Override
+    protected synchronized void onRuleChanged() {
+
+        // memoized results were computed with the old rule. Empty nodes stay empty under every supported rule, so shortcut for them holds
+        this.collectGarbage(false);
+
+    }
+
+    /**
+     * Drops every node that is not reachable from the root or from a jump in progress. Then raises next collection threshold above
+     * the budget if live nodes alone take more than half of it, so that collection does not run on every step
+     *
+     * @param pKeepResults keep memoized results that point to nodes that are kept, drop all otherwise
+     */
+    private void collectGarbage(final boolean pKeepResults) {
+
+        this.createTable(TABLE_SIZE_INITIAL);
+
+        for (final Node empty : this.mEmptyNodes) {
+
+            if (empty != null) {
+                this.keep(empty);
+            }
+
+        }
+
+        this.keep(this.mRoot);
+
+        for (int i = 0; i < this.mJumpNodeCount; i++) {
+            this.keep(this.mJumpNodes[i]);
+        }
+
+        // a result that is not kept would otherwise live on as a duplicate of canonical node created later
+        for (Node bucket : this.mTable) {
+
+            for (; bucket != null; bucket = bucket.mNextInBucket) {
+
+                if (bucket.mResult != null && (!pKeepResults || !this.contains(bucket.mResult))) {
+                    bucket.mResult = null;
+                }
+
+            }
+
+        }
+
+        this.mCollectThreshold = Math.max(this.mMaxNodes, this.mTableSize * 2L);
+
+    }
+
+    private void keep(@NonNull final Node pNode) {
+
+        if (pNode.mLevel == 0 || this.contains(pNode)) {
+            return;
+        }
+
+        this.keep(pNode.mNW);
+        this.keep(pNode.mNE);
+        this.keep(pNode.mSW);
+        this.keep(pNode.mSE);
+
+        this.insert(pNode);
+
+    }
+
+    // cell access, board cell (x, y) is cell (x - width / 2, y - height / 2) of the plane
+
+    private int getCell(@NonNull final Node pNode, final long pX, final long pY) {
+
+        Node node = pNode;
+
+        long x = pX;
+        long y = pY;
+
+        while (node.mLevel > 0) {
+
+            if (node.mPopulation == 0L) {
+                return STATE_DEAD;
+            }
+
+            final long half = 1L << (node.mLevel - 1);
+
+            if (y < half) {
+                node = x < half ? node.mNW : node.mNE;
+            } else {
+                node = x < half ? node.mSW : node.mSE;
+                y -= half;
+            }
+
+            if (x >= half) {
+                x -= half;
+            }
+
+        }
+
+        return node.mState;
+    }
+
+    private Node setCell(@NonNull final Node pNode, final long pX, final long pY, final int pState) {
+
+        if (pNode.mLevel == 0) {
+            return pState == STATE_ALIVE ? LEAF_ALIVE : LEAF_DEAD;
+        }
+
+        final long half = 1L << (pNode.mLevel - 1);
+
+        if (pY < half) {
+
+            if (pX < half) {
+                return this.createNode(this.setCell(pNode.mNW, pX, pY, pState), pNode.mNE, pNode.mSW, pNode.mSE);
+            } else {
+                return this.createNode(pNode.mNW, this.setCell(pNode.mNE, pX - half, pY, pState), pNode.mSW, pNode.mSE);
+            }
+
+        } else {
+
+            if (pX < half) {
+                return this.createNode(pNode.mNW, pNode.mNE, this.setCell(pNode.mSW, pX, pY - half, pState), pNode.mSE);
+            } else {
+                return this.createNode(pNode.mNW, pNode.mNE, pNode.mSW, this.setCell(pNode.mSE, pX - half, pY - half, pState));
+            }
+
+        }
+
+    }
+
+    private long getPlaneX(final int pCellPosition) {
+        return pCellPosition % this.getWidth() - this.getWidth() / 2;
+    }
+
+    private long getPlaneY(final int pCellPosition) {
+        return pCellPosition / this.getWidth() - this.getHeight() / 2;
+    }
+
+    @Override
+    protected synchronized int changeCellStateInternal(final int pCellPosition, final int pNewState) {
+
+        final long x = this.getPlaneX(pCellPosition);
+        final long y = this.getPlaneY(pCellPosition);
+
+        // grow until the cell is inside of the root
+        while (x < -this.getRootHalf() || x >= this.getRootHalf() || y < -this.getRootHalf() || y >= this.getRootHalf()) {
+            this.mRoot = this.expand(this.mRoot);
+        }
+
+        this.mRoot = this.setCell(this.mRoot, x + this.getRootHalf(), y + this.getRootHalf(), pNewState);
+
+        return pNewState;
+    }
+
+    @Override
+    protected synchronized int getCellStateInternal(final int pCellPosition) {
+
+        final long x = this.getPlaneX(pCellPosition);
+        final long y = this.getPlaneY(pCellPosition);
+
+        if (x < -this.getRootHalf() || x >= this.getRootHalf() || y < -this.getRootHalf() || y >= this.getRootHalf()) {
+            return STATE_DEAD;
+        }
+
+        return this.getCell(this.mRoot, x + this.getRootHalf(), y + this.getRootHalf());
+    }
+
+    private long getRootHalf() {
+        return 1L << (this.mRoot.mLevel - 1);
+    }
+
+    @Override
+    public synchronized void getCellStates(@NonNull final int[] pCellStates) {
+        this.getCellStates(pCellStates, 0, 0, this.getWidth(), this.getHeight());
+    }
+
+    @Override
+    protected synchronized void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight,
+                                              final int pBottom) {
+
+        final int width = this.getWidth();
+
+        for (int y = pTop; y < pBottom; y++) {
+            Arrays.fill(pCellStates, y * width + pLeft, y * width + pRight, STATE_DEAD);
+        }
+
+        // board is centred at the origin of the plane
+        final long boardLeft = -(width / 2);
+        final long boardTop = -(this.getHeight() / 2);
+
+        this.fillCellStates(pCellStates, this.mRoot, -this.getRootHalf(), -this.getRootHalf(), boardLeft + pLeft, boardTop + pTop,
+                boardLeft + pRight, boardTop + pBottom);
+
+    }
+
+    /**
+     * Writes alive cells of node that fall into given part of the board
+     *
+     * @param pCellStates destination
+     * @param pNode       node
+     * @param pX          plane X of node's top left cell
+     * @param pY          plane Y of node's top left cell
+     * @param pLeft       plane X of the part's left column
+     * @param pTop        plane Y of the part's top row
+     * @param pRight      plane X of the column after the part's right one
+     * @param pBottom     plane Y of the row after the part's bottom one
+     */
+    private void fillCellStates(@NonNull final int[] pCellStates, @NonNull final Node pNode, final long pX, final long pY, final long pLeft,
+                                final long pTop, final long pRight, final long pBottom) {
+
+        if (pNode.mPopulation == 0L) {
+            return;
+        }
+
+        final long size = 1L << pNode.mLevel;
+
+        if (pX >= pRight || pY >= pBottom || pX + size <= pLeft || pY + size <= pTop) {
+            return;
+        }
+
+        if (pNode.mLevel == 0) {
+
+            pCellStates[(int) ((pY + this.getHeight() / 2) * this.getWidth() + (pX + this.getWidth() / 2))] = STATE_ALIVE;
+
+            return;
+        }
+
+        final long half = size >> 1;
+
+        this.fillCellStates(pCellStates, pNode.mNW, pX, pY, pLeft, pTop, pRight, pBottom);
+        this.fillCellStates(pCellStates, pNode.mNE, pX + half, pY, pLeft, pTop, pRight, pBottom);
+        this.fillCellStates(pCellStates, pNode.mSW, pX, pY + half, pLeft, pTop, pRight, pBottom);
+        this.fillCellStates(pCellStates, pNode.mSE, pX + half, pY + half, pLeft, pTop, pRight, pBottom);
+
+    }
+
+    @Override
+    protected synchronized void clearInternal() {
+
+        this.mStep = 0L;
+
+        this.mRoot = this.getEmpty(ROOT_LEVEL_MIN);
+
+        this.collectGarbage(true);
+
+    }
+
+    @Override
+    public synchronized long getStep() {
+        return this.mStep;
+    }
+
+    @Override
+    protected synchronized void setStepInternal(final long pStep) {
+        this.mStep = pStep;
+    }
+
+    /**
+     * @return number of alive cells in the whole universe, including ones outside of the board
+     */
+    public synchronized long getPopulation() {
+        return this.mRoot.mPopulation;
+    }
+
+    /**
+     * @return number of nodes currently cached
+     */
+    public synchronized int getCachedNodeCount() {
+        return this.mTableSize;
+    }
+
+    @Override
+    protected synchronized void destroyInternal() {
+
+        this.mTable = null;
+        this.mRoot = null;
+
+    }
+
+    private static final class Node {
+
+        final int mLevel;
+
+        final Node mNW;
+        final Node mNE;
+        final Node mSW;
+        final Node mSE;
+
+        // only meaningful for leaves
+        final int mState;
+
+        final long mPopulation;
+
+        final int mHash;
+
+        Node mNextInBucket;
+
+        Node mResult;
+        int  mResultPower;
+
+        Node(final int pState) {
+
+            this.mLevel = 0;
+
+            this.mNW = null;
+            this.mNE = null;
+            this.mSW = null;
+            this.mSE = null;
+
+            this.mState = pState;
+            this.mPopulation = pState == STATE_ALIVE ? 1L : 0L;
+            this.mHash = pState == STATE_ALIVE ? 0x2545F491 : 0x1B873593;
+
+        }
+
+        Node(@NonNull final Node pNW, @NonNull final Node pNE, @NonNull final Node pSW, @NonNull final Node pSE, final int pHash) {
+
+            this.mLevel = pNW.mLevel + 1;
+
+            this.mNW = pNW;
+            this.mNE = pNE;
+            this.mSW = pSW;
+            this.mSE = pSE;
+
+            this.mState = STATE_DEAD;
+            this.mPopulation = pNW.mPopulation + pNE.mPopulation + pSW.mPopulation + pSE.mPopulation;
+            this.mHash = pHash;
+
+        }
+
+    }
+
+}
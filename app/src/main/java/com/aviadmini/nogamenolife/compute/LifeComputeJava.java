@@ -2,27 +2,50 @@ package com.aviadmini.nogamenolife.compute;
 
 import android.support.annotation.NonNull;
 
+import java.util.Arrays;
+
+/**
+ * Keeps the board padded with a halo: one ghost row above and below it and one ghost column on each side. Halo is refreshed once per
+ * generation according to topology, so that every cell is computed from its eight array neighbours with no wrapping checks.
+ * <p>
+ * Cell at X, Y is at (Y + 1) * stride + X + 1 in cell states arrays, where stride is width + 2. Every cell is a byte, which fits any
+ * state of generations rules and takes a quarter of int storage. Any {@link Rule} is supported, next states come from its lookup tables
+ */
 public class LifeComputeJava
         extends LifeCompute {
 
-    protected final int mCellStatesSize;
+    // padded row length
+    protected final int mStride;
 
-    protected final int[] mCellStatesPing;
-    protected final int[] mCellStatesPong;
+    protected final byte[] mCellStatesPing;
+    protected final byte[] mCellStatesPong;
+
+    // scratch row of computeDyingCells(), reused every generation
+    private final int[] mColumns;
 
     private LifeCompute mOtherCompute;
 
     protected boolean mUsingPing;
 
-    private int mStep = 0;
+    private long mStep = 0L;
 
     public LifeComputeJava(final int pWidth, final int pHeight, final Callback pCallback) {
-        super(pWidth, pHeight, pCallback);
+        this(pWidth, pHeight, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on
+     */
+    public LifeComputeJava(final int pWidth, final int pHeight, final Callback pCallback,
+                           @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
+        super(pWidth, pHeight, pCallback, pComputeExecutorFactory);
 
-        this.mCellStatesSize = pWidth * pHeight;
+        this.mStride = pWidth + 2;
 
-        this.mCellStatesPing = new int[this.mCellStatesSize];
-        this.mCellStatesPong = new int[this.mCellStatesSize];
+        this.mCellStatesPing = new byte[this.mStride * (pHeight + 2)];
+        this.mCellStatesPong = new byte[this.mStride * (pHeight + 2)];
+
+        this.mColumns = new int[this.mStride];
 
         this.clear();
 
@@ -35,10 +58,12 @@ public class LifeComputeJava
 
         this.mOtherCompute = pOther;
 
-        this.mCellStatesSize = pOther.getWidth() * pOther.getHeight();
+        this.mStride = pOther.getWidth() + 2;
+
+        this.mCellStatesPing = new byte[this.mStride * (pOther.getHeight() + 2)];
+        this.mCellStatesPong = new byte[this.mStride * (pOther.getHeight() + 2)];
 
-        this.mCellStatesPing = new int[this.mCellStatesSize];
-        this.mCellStatesPong = new int[this.mCellStatesSize];
+        this.mColumns = new int[this.mStride];
 
         this.mUsingPing = true;
 
@@ -52,7 +77,20 @@ public class LifeComputeJava
             final int[] cellStates = this.mOtherCompute.getCachedCellStates();
 
             if (cellStates != null) {
-                System.arraycopy(cellStates, 0, this.mCellStatesPing, 0, this.mCellStatesSize);
+
+                final int width = this.getWidth();
+
+                // the other engine may have run a rule with more states than the one this engine fell back to
+                for (int y = this.getHeight() - 1; y >= 0; y--) {
+
+                    final int row = (y + 1) * this.mStride + 1;
+
+                    for (int x = 0; x < width; x++) {
+                        this.mCellStatesPing[row + x] = (byte) this.toRuleState(cellStates[y * width + x]);
+                    }
+
+                }
+
             }
 
             this.mOtherCompute = null;
@@ -64,108 +102,401 @@ public class LifeComputeJava
     @Override
     protected synchronized void tickInternal() {
 
-        // Definitely not the most efficient algorithm ever
+        final byte[] current = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+        final byte[] next = this.mUsingPing ? this.mCellStatesPong : this.mCellStatesPing;
+
+        this.updateHalo(current);
+
+        // generation that could not be completed throws, so board and step stay as they were
+        this.computeGeneration(current, next);
+
+        this.mUsingPing = !this.mUsingPing;
 
         this.mStep++;
 
-        final int[] current = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
-        final int[] next = this.mUsingPing ? this.mCellStatesPong : this.mCellStatesPing;
+    }
 
-        for (int i = this.mCellStatesSize - 1; i >= 0; i--) {
+    /**
+     * Fills ghost rows and columns around the board from its edges according to topology. Halo of next generation is left stale, it is
+     * refreshed before that generation is computed from
+     *
+     * @param pCellStates padded cell states
+     */
+    private void updateHalo(@NonNull final byte[] pCellStates) {
 
-            int aliveCellsNearby = 0;
+        final int width = this.getWidth();
+        final int height = this.getHeight();
+        final int stride = this.mStride;
 
-            aliveCellsNearby += this.getAddFromNeighbour(i + 1);
-            aliveCellsNearby += this.getAddFromNeighbour(i - 1);
+        final int bottomHalo = (height + 1) * stride;
 
-            aliveCellsNearby += this.getAddFromNeighbour(i + this.getWidth());
-            aliveCellsNearby += this.getAddFromNeighbour(i - this.getWidth());
+        final int topology = this.getTopology();
 
-            aliveCellsNearby += this.getAddFromNeighbour(i - this.getWidth() + 1);
-            aliveCellsNearby += this.getAddFromNeighbour(i - this.getWidth() - 1);
+        if (topology == TOPOLOGY_BOUNDED) {
 
-            aliveCellsNearby += this.getAddFromNeighbour(i + this.getWidth() + 1);
-            aliveCellsNearby += this.getAddFromNeighbour(i + this.getWidth() - 1);
+            Arrays.fill(pCellStates, 0, stride, (byte) STATE_DEAD);
+            Arrays.fill(pCellStates, bottomHalo, bottomHalo + stride, (byte) STATE_DEAD);
 
-            if (current[i] == STATE_ALIVE) {
+            for (int row = stride; row < bottomHalo; row += stride) {
+
+                pCellStates[row] = STATE_DEAD;
+                pCellStates[row + width + 1] = STATE_DEAD;
+
+            }
+
+            return;
+        }
+
+        // left and right edges are joined as they are in both remaining topologies
+
+        for (int row = stride; row < bottomHalo; row += stride) {
+
+            pCellStates[row] = pCellStates[row + width];
+            pCellStates[row + width + 1] = pCellStates[row + 1];
+
+        }
+
+        // ghost rows are copied from padded rows, so corners come with them
+
+        if (topology == TOPOLOGY_KLEIN_BOTTLE) {
+
+            final int lastRow = height * stride;
+
+            for (int x = 0; x < stride; x++) {
+
+                pCellStates[x] = pCellStates[lastRow + stride - 1 - x];
+                pCellStates[bottomHalo + x] = pCellStates[stride + stride - 1 - x];
+
+            }
+
+        } else {
+
+            System.arraycopy(pCellStates, height * stride, pCellStates, 0, stride);
+            System.arraycopy(pCellStates, stride, pCellStates, bottomHalo, stride);
+
+        }
+
+    }
+
+    /**
+     * Computes next generation of the whole board. Override to split the work differently
+     *
+     * @param pCurrent current padded cell states, halo is up to date
+     * @param pNext    destination for next generation
+     * @throws IllegalStateException if generation could not be completed, current cell states are untouched then
+     */
+    protected void computeGeneration(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext) {
+        this.computeCells(pCurrent, pNext, 0, 0, this.getWidth(), this.getHeight());
+    }
+
+    /**
+     * Computes next generation of a part of the board. Reads only from current and writes only to given part of next, so that
+     * disjoint parts can be computed concurrently
+     *
+     * @param pCurrent current padded cell states, halo is up to date
+     * @param pNext    destination for next generation
+     * @param pLeft    left column of the part
+     * @param pTop     top row of the part
+     * @param pRight   column after the right one of the part
+     * @param pBottom  row after the bottom one of the part
+     */
+    protected final void computeCells(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext, final int pLeft, final int pTop,
+                                      final int pRight, final int pBottom) {
+        this.computeCells(pCurrent, pNext, pLeft, pTop, pRight, pBottom, this.mColumns);
+    }
+
+    /**
+     * {@link #computeCells(byte[], byte[], int, int, int, int)} with scratch row of its own, for parts computed concurrently
+     *
+     * @param pColumns scratch row for generations rules, at least {@link #getWidth()} + 2 long
+     */
+    protected final void computeCells(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext, final int pLeft, final int pTop,
+                                      final int pRight, final int pBottom, @NonNull final int[] pColumns) {
+
+        final int stride = this.mStride;
+
+        final Rule rule = this.getRule();
+
+        if (rule.getStates() > 2) {
+
+            this.computeDyingCells(pCurrent, pNext, pLeft, pTop, pRight, pBottom, pColumns);
+
+            return;
+        }
+
+        // cells are only ever dead (0) or alive (1), so states of neighbours add up to the number of alive ones
+
+        if (rule.isTotalistic()) {
+
+            final byte[] nextStates = rule.getCountTable();
+
+            for (int y = pTop; y < pBottom; y++) {
+
+                final int row = (y + 1) * stride + 1;
+
+                final int to = row + pRight;
+
+                for (int i = row + pLeft; i < to; i++) {
+
+                    final int aliveCellsNearby = pCurrent[i - stride - 1] + pCurrent[i - stride] + pCurrent[i - stride + 1] +
+                            pCurrent[i - 1] + pCurrent[i + 1] + pCurrent[i + stride - 1] + pCurrent[i + stride] + pCurrent[i + stride + 1];
+
+                    pNext[i] = nextStates[(pCurrent[i] << 4) + aliveCellsNearby];
 
-                if (aliveCellsNearby == 2 || aliveCellsNearby == 3) {
-                    next[i] = STATE_ALIVE;
-                } else {
-                    next[i] = STATE_DEAD;
                 }
 
-            } else if (current[i] == STATE_DEAD && aliveCellsNearby == 3) {
-                next[i] = STATE_ALIVE;
-            } else {
-                next[i] = STATE_DEAD;
             }
 
+            return;
         }
 
-        this.mUsingPing = !this.mUsingPing;
+        // and shifted by their neighbourhood bits they add up to the neighbourhood
+
+        final byte[] nextStates = rule.getNeighbourhoodTable();
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            final int row = (y + 1) * stride + 1;
+
+            final int to = row + pRight;
+
+            for (int i = row + pLeft; i < to; i++) {
+
+                final int neighbourhood = pCurrent[i - stride - 1] + (pCurrent[i - stride] << 1) + (pCurrent[i - stride + 1] << 2) +
+                        (pCurrent[i - 1] << 3) + (pCurrent[i] << 4) + (pCurrent[i + 1] << 5) + (pCurrent[i + stride - 1] << 6) +
+                        (pCurrent[i + stride] << 7) + (pCurrent[i + stride + 1] << 8);
+
+                pNext[i] = nextStates[neighbourhood];
+
+            }
+
+        }
 
     }
 
-    private int getAddFromNeighbour(final int pNew) {
+    /**
+     * {@link #computeCells} for generations rules. Dying cells must not be counted, so every row is first turned into alive flags of
+     * its column of three cells. A cell then takes three of those instead of eight neighbour reads and compares
+     */
+    private void computeDyingCells(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext, final int pLeft, final int pTop,
+                                   final int pRight, final int pBottom, @NonNull final int[] pColumns) {
 
-        int index;
+        final int stride = this.mStride;
+
+        final Rule rule = this.getRule();
+
+        final boolean totalistic = rule.isTotalistic();
+
+        final byte[] countStates = rule.getCountTable();
+        final byte[] neighbourhoodStates = rule.getNeighbourhoodTable();
+
+        // alive cells in every column of the row and the rows around it, neighbourhood bits of the column in the other case
+        final int[] columns = pColumns;
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            final int row = (y + 1) * stride + 1;
+
+            for (int x = pLeft - 1, c = 0; x <= pRight; x++, c++) {
+
+                final int above = pCurrent[row + x - stride] == STATE_ALIVE ? 1 : 0;
+                final int cell = pCurrent[row + x] == STATE_ALIVE ? 1 : 0;
+                final int below = pCurrent[row + x + stride] == STATE_ALIVE ? 1 : 0;
+
+                columns[c] = totalistic ? above + cell + below : above | (cell << 3) | (below << 6);
+
+            }
+
+            for (int x = pLeft, c = 1; x < pRight; x++, c++) {
+
+                final int i = row + x;
+
+                final int state = pCurrent[i] & 0xFF;
+
+                if (totalistic) {
+
+                    // cell counts itself in its column, take it out
+                    final int aliveCellsNearby = columns[c - 1] + columns[c] + columns[c + 1] - (state == STATE_ALIVE ? 1 : 0);
+
+                    pNext[i] = countStates[(state << 4) + aliveCellsNearby];
+
+                } else if (state > STATE_ALIVE) {
+                    pNext[i] = countStates[state << 4];
+                } else {
+                    pNext[i] = neighbourhoodStates[columns[c - 1] | (columns[c] << 1) | (columns[c + 1] << 2)];
+                }
+
+            }
 
-        if (pNew < 0) {
-            index = pNew + this.mCellStatesSize;
-        } else if (pNew > this.mCellStatesSize - 1) {
-            index = pNew - this.mCellStatesSize;
-        } else {
-            index = pNew;
         }
 
-        return this.getCellStates()[index] == STATE_ALIVE ? 1 : 0;
+    }
+
+    /**
+     * @return position of the cell in padded cell states
+     */
+    protected final int toPaddedPosition(final int pCellPosition) {
+
+        final int width = this.getWidth();
+
+        return (pCellPosition / width + 1) * this.mStride + pCellPosition % width + 1;
     }
 
     @Override
     protected synchronized int changeCellStateInternal(final int pCellPosition, final int pNewState) {
 
+        // states the rule does not have are stored as dead, neighbour counting relies on it
+        final int newState = this.toRuleState(pNewState);
+
         if (this.mUsingPing) {
-            this.mCellStatesPing[pCellPosition] = pNewState;
+            this.mCellStatesPing[this.toPaddedPosition(pCellPosition)] = (byte) newState;
         } else {
-            this.mCellStatesPong[pCellPosition] = pNewState;
+            this.mCellStatesPong[this.toPaddedPosition(pCellPosition)] = (byte) newState;
         }
 
-        return pNewState;
+        return newState;
     }
 
     @Override
     protected synchronized int getCellStateInternal(final int pCellPosition) {
-        return this.mUsingPing ? this.mCellStatesPing[pCellPosition] : this.mCellStatesPong[pCellPosition];
+        return (this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong)[this.toPaddedPosition(pCellPosition)] & 0xFF;
     }
 
-    @NonNull
     @Override
-    protected synchronized int[] getCellStates() {
-        return this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+    public synchronized void getCellStates(@NonNull final int[] pCellStates) {
+        this.getCellStates(pCellStates, 0, 0, this.getWidth(), this.getHeight());
     }
 
     @Override
-    public synchronized int getStep() {
-        return this.mStep;
+    protected synchronized void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight,
+                                              final int pBottom) {
+
+        final byte[] cellStates = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+
+        final int width = this.getWidth();
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            final int from = (y + 1) * this.mStride + 1;
+            final int to = y * width;
+
+            for (int x = pLeft; x < pRight; x++) {
+                pCellStates[to + x] = cellStates[from + x] & 0xFF;
+            }
+
+        }
+
     }
 
     @Override
-    protected synchronized void destroyInternal() {
+    protected synchronized void changeCellRunInternal(final int pX, final int pY, final int pLength, final int pState) {
+
+        final int from = (pY + 1) * this.mStride + pX + 1;
+
+        Arrays.fill(this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong, from, from + pLength, (byte) this.toRuleState(pState));
+
     }
 
     @Override
-    protected synchronized void clearInternal() {
+    protected synchronized void getRowCellStatesInternal(final int pY, @NonNull final int[] pCellStates) {
 
-        this.mStep = 0;
+        final byte[] cellStates = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
 
-        for (int i = this.mCellStatesSize - 1; i >= 0; i--) {
+        final int from = (pY + 1) * this.mStride + 1;
 
-            this.mCellStatesPing[i] = STATE_DEAD;
-            this.mCellStatesPong[i] = STATE_DEAD;
+        for (int x = 0; x < this.getWidth(); x++) {
+            pCellStates[x] = cellStates[from + x] & 0xFF;
+        }
 
+    }
+
+    /**
+     * Rows go straight between the current array and the mapped file
+     */
+    @Override
+    protected synchronized void writeSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        final byte[] cellStates = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+
+        for (int y = 0; y < this.getHeight(); y++) {
+            pSnapshot.putRow(y, cellStates, (y + 1) * this.mStride + 1);
         }
 
     }
 
+    @Override
+    protected synchronized void readSnapshotBody(@NonNull final Snapshot pSnapshot) {
+
+        final byte[] cellStates = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+
+        final int width = this.getWidth();
+
+        // a bit per cell only holds states every rule has
+        final boolean clamp = pSnapshot.getBitsPerCell() > 1 && this.getRule()
+                                                                     .getStates() < Rule.STATES_MAX;
+
+        for (int y = 0; y < this.getHeight(); y++) {
+
+            final int from = (y + 1) * this.mStride + 1;
+
+            pSnapshot.getRow(y, cellStates, from);
+
+            if (clamp) {
+
+                for (int i = from; i < from + width; i++) {
+                    cellStates[i] = (byte) this.toRuleState(cellStates[i] & 0xFF);
+                }
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public boolean isTopologySupported(final int pTopology) {
+        return pTopology == TOPOLOGY_TORUS || pTopology == TOPOLOGY_BOUNDED || pTopology == TOPOLOGY_KLEIN_BOTTLE;
+    }
+
+    @Override
+    public boolean isRuleSupported(@NonNull final Rule pRule) {
+        return true;
+    }
+
+    @Override
+    protected synchronized void onRuleChanged() {
+
+        final byte[] cellStates = this.mUsingPing ? this.mCellStatesPing : this.mCellStatesPong;
+
+        // cells in states the new rule does not have die, next generation is computed over the other array as a whole anyway
+        for (int i = 0; i < cellStates.length; i++) {
+            cellStates[i] = (byte) this.toRuleState(cellStates[i] & 0xFF);
+        }
+
+    }
+
+    @Override
+    public synchronized long getStep() {
+        return this.mStep;
+    }
+
+    @Override
+    protected synchronized void setStepInternal(final long pStep) {
+        this.mStep = pStep;
+    }
+
+    @Override
+    protected synchronized void destroyInternal() {
+    }
+
+    @Override
+    protected synchronized void clearInternal() {
+
+        this.mStep = 0L;
+
+        Arrays.fill(this.mCellStatesPing, (byte) STATE_DEAD);
+        Arrays.fill(this.mCellStatesPong, (byte) STATE_DEAD);
+
+    }
+
 }
\ No newline at end of file
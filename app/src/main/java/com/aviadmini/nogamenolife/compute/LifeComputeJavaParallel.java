@@ -0,0 +1,260 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link LifeComputeJava} that splits every generation into horizontal bands of rows and computes them on a fixed pool of worker
+ * threads. Compute thread waits for all bands before the generation is considered complete, so {@link Callback#onTick()} contract
+ * stays the same
+ */
+public class LifeComputeJavaParallel
+        extends LifeComputeJava {
+
+    private static final String WORKER_THREAD_NAME = "[LifeComputeWorker %s]";
+
+    private static final AtomicInteger WORKER_ID = new AtomicInteger();
+
+    private final int mParallelism;
+
+    private final List<Band> mBands = new ArrayList<Band>();
+
+    private final ExecutorService mExecutor;
+
+    public LifeComputeJavaParallel(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, getDefaultParallelism(), pCallback);
+    }
+
+    /**
+     * @param pParallelism number of worker threads and row bands to use
+     */
+    public LifeComputeJavaParallel(final int pWidth, final int pHeight, final int pParallelism, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pParallelism, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pParallelism           number of worker threads and row bands to use
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on
+     */
+    public LifeComputeJavaParallel(final int pWidth, final int pHeight, final int pParallelism, @NonNull final Callback pCallback,
+                                   @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
+        super(pWidth, pHeight, pCallback, pComputeExecutorFactory);
+
+        this.mParallelism = checkParallelism(pParallelism);
+
+        this.createBands();
+
+        this.mExecutor = this.createExecutor();
+
+    }
+
+    public LifeComputeJavaParallel(@NonNull final LifeCompute pOther) {
+        this(pOther, getDefaultParallelism());
+    }
+
+    /**
+     * @param pParallelism number of worker threads and row bands to use
+     */
+    public LifeComputeJavaParallel(@NonNull final LifeCompute pOther, final int pParallelism) {
+        super(pOther);
+
+        this.mParallelism = checkParallelism(pParallelism);
+
+        this.createBands();
+
+        this.mExecutor = this.createExecutor();
+
+    }
+
+    /**
+     * @return number of available processors
+     */
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime()
+                      .availableProcessors();
+    }
+
+    private static int checkParallelism(final int pParallelism) {
+
+        if (pParallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism should be >0");
+        }
+
+        return pParallelism;
+    }
+
+    /**
+     * Splits board into bands of whole rows. There are never more bands than rows
+     */
+    private void createBands() {
+
+        final int height = this.getHeight();
+
+        final int bandCount = Math.min(this.mParallelism, height);
+
+        for (int i = 0; i < bandCount; i++) {
+
+            final int fromRow = (int) ((long) height * i / bandCount);
+            final int toRow = (int) ((long) height * (i + 1) / bandCount);
+
+            this.mBands.add(new Band(fromRow, toRow));
+
+        }
+
+    }
+
+    /**
+     * Worker threads are started lazily by the pool, so it is safe to create it even before {@link #init()}, which may already be
+     * running on compute thread while this constructor is not finished
+     */
+    private ExecutorService createExecutor() {
+
+        return Executors.newFixedThreadPool(this.mBands.size(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(@NonNull final Runnable pRunnable) {
+
+                final Thread thread = new Thread(pRunnable, String.format(Locale.US, WORKER_THREAD_NAME, WORKER_ID.getAndIncrement()));
+                thread.setDaemon(true);
+
+                return thread;
+            }
+
+        });
+
+    }
+
+    @Override
+    protected void computeGeneration(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext) {
+
+        for (final Band band : this.mBands) {
+            band.set(pCurrent, pNext);
+        }
+
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(this.mBands.size());
+
+        for (final Band band : this.mBands) {
+            futures.add(this.mExecutor.submit(band));
+        }
+
+        try {
+
+            // waiting for every band is the per-generation barrier
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+
+        } catch (final InterruptedException e) {
+
+            // bands that already run would keep writing next generation behind the back of whatever uses the board next
+            for (final Future<Void> future : futures) {
+                future.cancel(false);
+            }
+
+            awaitUninterruptibly(futures);
+
+            Thread.currentThread()
+                  .interrupt();
+
+            throw new IllegalStateException("Generation computation interrupted", e);
+
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Band computation failed", e.getCause());
+        }
+
+    }
+
+    /**
+     * Waits for bands that could not be cancelled, ignoring interrupts
+     */
+    private static void awaitUninterruptibly(@NonNull final List<Future<Void>> pFutures) {
+
+        for (final Future<Void> future : pFutures) {
+
+            while (true) {
+
+                try {
+
+                    future.get();
+
+                    break;
+
+                } catch (final InterruptedException e) {
+                    // caller restores interrupt status
+                } catch (final ExecutionException e) {
+                    break;
+                } catch (final CancellationException e) {
+                    break;
+                }
+
+            }
+
+        }
+
+    }
+
+    @Override
+    protected synchronized void destroyInternal() {
+        super.destroyInternal();
+
+        this.mExecutor.shutdown();
+
+    }
+
+    /**
+     * @return number of worker threads used
+     */
+    public int getParallelism() {
+        return this.mParallelism;
+    }
+
+    private class Band
+            implements Callable<Void> {
+
+        // rows, last one exclusive
+        private final int mFrom;
+        private final int mTo;
+
+        private byte[] mCurrent;
+        private byte[] mNext;
+
+        // bands run concurrently, so each has scratch row of its own
+        private final int[] mColumns = new int[getWidth() + 2];
+
+        Band(final int pFrom, final int pTo) {
+
+            this.mFrom = pFrom;
+            this.mTo = pTo;
+
+        }
+
+        void set(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext) {
+
+            this.mCurrent = pCurrent;
+            this.mNext = pNext;
+
+        }
+
+        @Override
+        public Void call() {
+
+            computeCells(this.mCurrent, this.mNext, 0, this.mFrom, getWidth(), this.mTo, this.mColumns);
+
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+/**
+ * {@link LifeComputeJava} that divides board into square tiles and recomputes only active tiles: the ones that changed in previous
+ * generation or border a changed one. Everything else is stable and is skipped, so tick costs are proportional to activity on the
+ * board instead of its area
+ */
+public class LifeComputeJavaSparse
+        extends LifeComputeJava {
+
+    private static final int TILE_SIZE_SHIFT = 4;
+    private static final int TILE_SIZE       = 1 << TILE_SIZE_SHIFT;
+    private static final int TILE_SIZE_MASK  = TILE_SIZE - 1;
+
+    private int mTilesX;
+    private int mTilesY;
+
+    // active tiles are kept both as flags and as a list so that neither marking nor iterating depends on board size
+
+    private boolean[] mActiveFlags;
+    private int[]     mActiveList;
+    private int       mActiveCount;
+
+    private boolean[] mNextActiveFlags;
+    private int[]     mNextActiveList;
+    private int       mNextActiveCount;
+
+    public LifeComputeJavaSparse(final int pWidth, final int pHeight, @NonNull final Callback pCallback) {
+        this(pWidth, pHeight, pCallback, HandlerComputeExecutor.FACTORY);
+    }
+
+    /**
+     * @param pComputeExecutorFactory creates executor to run this LifeCompute on
+     */
+    public LifeComputeJavaSparse(final int pWidth, final int pHeight, @NonNull final Callback pCallback,
+                                 @NonNull final ComputeExecutor.Factory pComputeExecutorFactory) {
+        super(pWidth, pHeight, pCallback, pComputeExecutorFactory);
+
+        this.createTiles();
+
+    }
+
+    public LifeComputeJavaSparse(@NonNull final LifeCompute pOther) {
+        super(pOther);
+
+        this.createTiles();
+
+    }
+
+    private void createTiles() {
+
+        // super constructor may have already posted clear to compute thread, so publish tiles under the same lock it uses
+        synchronized (this) {
+
+            this.mTilesX = (this.getWidth() + TILE_SIZE_MASK) >>> TILE_SIZE_SHIFT;
+            this.mTilesY = (this.getHeight() + TILE_SIZE_MASK) >>> TILE_SIZE_SHIFT;
+
+            final int tiles = this.mTilesX * this.mTilesY;
+
+            this.mActiveFlags = new boolean[tiles];
+            this.mActiveList = new int[tiles];
+
+            this.mNextActiveFlags = new boolean[tiles];
+            this.mNextActiveList = new int[tiles];
+
+            this.activateAllTiles();
+
+        }
+
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+
+        synchronized (this) {
+            this.activateAllTiles();
+        }
+
+    }
+
+    @Override
+    protected void computeGeneration(@NonNull final byte[] pCurrent, @NonNull final byte[] pNext) {
+
+        final int width = this.getWidth();
+        final int height = this.getHeight();
+
+        for (int t = 0; t < this.mActiveCount; t++) {
+
+            final int tile = this.mActiveList[t];
+
+            final int fromX = (tile % this.mTilesX) << TILE_SIZE_SHIFT;
+            final int fromY = (tile / this.mTilesX) << TILE_SIZE_SHIFT;
+
+            final int toX = Math.min(fromX + TILE_SIZE, width);
+            final int toY = Math.min(fromY + TILE_SIZE, height);
+
+            this.computeCells(pCurrent, pNext, fromX, fromY, toX, toY);
+
+            for (int y = fromY; y < toY; y++) {
+
+                final int row = (y + 1) * this.mStride + 1;
+
+                for (int x = fromX; x < toX; x++) {
+
+                    if (pNext[row + x] != pCurrent[row + x]) {
+                        this.markChanged(y * width + x, this.mNextActiveFlags, this.mNextActiveList);
+                    }
+
+                }
+
+            }
+
+        }
+
+        // next active tiles become current, current ones are reset for reuse
+
+        for (int t = 0; t < this.mActiveCount; t++) {
+            this.mActiveFlags[this.mActiveList[t]] = false;
+        }
+
+        final boolean[] flags = this.mActiveFlags;
+        this.mActiveFlags = this.mNextActiveFlags;
+        this.mNextActiveFlags = flags;
+
+        final int[] list = this.mActiveList;
+        this.mActiveList = this.mNextActiveList;
+        this.mNextActiveList = list;
+
+        this.mActiveCount = this.mNextActiveCount;
+        this.mNextActiveCount = 0;
+
+    }
+
+    /**
+     * Activates tile of changed cell and tiles of all its neighbours
+     *
+     * @param pCellPosition changed cell position
+     * @param pFlags        active tile flags to update
+     * @param pList         active tile list to update
+     */
+    private void markChanged(final int pCellPosition, @NonNull final boolean[] pFlags, @NonNull final int[] pList) {
+
+        final int width = this.getWidth();
+        final int height = this.getHeight();
+
+        final int x = pCellPosition % width;
+        final int y = pCellPosition / width;
+
+        this.markActive(this.getTile(pCellPosition), pFlags, pList);
+
+        final int inTileX = x & TILE_SIZE_MASK;
+        final int inTileY = y & TILE_SIZE_MASK;
+
+        // neighbours of inner cells never leave the tile
+
+        if (inTileX != 0 && inTileX != TILE_SIZE_MASK && x != width - 1 && inTileY != 0 && inTileY != TILE_SIZE_MASK && y != height - 1) {
+            return;
+        }
+
+        // same neighbourhood and edges as the halo gives computeCells()
+
+        final int topology = this.getTopology();
+
+        for (int dy = -1; dy <= 1; dy++) {
+
+            int neighbourY = y + dy;
+
+            final boolean crossedRow = neighbourY < 0 || neighbourY >= height;
+
+            if (crossedRow) {
+
+                if (topology == TOPOLOGY_BOUNDED) {
+                    continue;
+                }
+
+                neighbourY = neighbourY < 0 ? neighbourY + height : neighbourY - height;
+
+            }
+
+            for (int dx = -1; dx <= 1; dx++) {
+
+                int neighbourX = x + dx;
+
+                if (crossedRow && topology == TOPOLOGY_KLEIN_BOTTLE) {
+                    neighbourX = width - 1 - neighbourX;
+                }
+
+                if (neighbourX < 0 || neighbourX >= width) {
+
+                    if (topology == TOPOLOGY_BOUNDED) {
+                        continue;
+                    }
+
+                    neighbourX = neighbourX < 0 ? neighbourX + width : neighbourX - width;
+
+                }
+
+                this.markActive(this.getTile(neighbourY * width + neighbourX), pFlags, pList);
+
+            }
+
+        }
+
+    }
+
+    private void markActive(final int pTile, @NonNull final boolean[] pFlags, @NonNull final int[] pList) {
+
+        if (pFlags[pTile]) {
+            return;
+        }
+
+        pFlags[pTile] = true;
+
+        if (pFlags == this.mActiveFlags) {
+            pList[this.mActiveCount++] = pTile;
+        } else {
+            pList[this.mNextActiveCount++] = pTile;
+        }
+
+    }
+
+    private int getTile(final int pCellPosition) {
+
+        final int x = pCellPosition % this.getWidth();
+        final int y = pCellPosition / this.getWidth();
+
+        return (y >>> TILE_SIZE_SHIFT) * this.mTilesX + (x >>> TILE_SIZE_SHIFT);
+    }
+
+    private void activateAllTiles() {
+
+        final int tiles = this.mTilesX * this.mTilesY;
+
+        for (int i = 0; i < tiles; i++) {
+
+            this.mActiveFlags[i] = true;
+            this.mActiveList[i] = i;
+
+        }
+
+        this.mActiveCount = tiles;
+
+    }
+
+    @Override
+    protected synchronized void onTopologyChanged() {
+
+        // cells at the edges now have different neighbours
+        this.activateAllTiles();
+
+    }
+
+    @Override
+    protected synchronized void onRuleChanged() {
+        super.onRuleChanged();
+
+        // tiles that were stable may not be under the new rule
+        this.activateAllTiles();
+
+    }
+
+    @Override
+    protected synchronized void changeCellRunInternal(final int pX, final int pY, final int pLength, final int pState) {
+        super.changeCellRunInternal(pX, pY, pLength, pState);
+
+        final int row = pY * this.getWidth();
+        final int to = pX + pLength - 1;
+
+        // cells between tile edges have the same tiles around as the edge ones
+        for (int x = pX; x <= to; x++) {
+
+            if (x == pX || x == to || (x & TILE_SIZE_MASK) == 0 || (x & TILE_SIZE_MASK) == TILE_SIZE_MASK) {
+                this.markChanged(row + x, this.mActiveFlags, this.mActiveList);
+            }
+
+        }
+
+    }
+
+    @Override
+    protected synchronized void readSnapshotBody(@NonNull final Snapshot pSnapshot) {
+        super.readSnapshotBody(pSnapshot);
+
+        this.activateAllTiles();
+
+    }
+
+    @Override
+    protected synchronized int changeCellStateInternal(final int pCellPosition, final int pNewState) {
+
+        final int result = super.changeCellStateInternal(pCellPosition, pNewState);
+
+        this.markChanged(pCellPosition, this.mActiveFlags, this.mActiveList);
+
+        return result;
+    }
+
+    @Override
+    protected synchronized void clearInternal() {
+        super.clearInternal();
+
+        // may be called before tiles are created, in which case they will start all active anyway
+        if (this.mActiveFlags == null) {
+            return;
+        }
+
+        for (int t = 0; t < this.mActiveCount; t++) {
+            this.mActiveFlags[this.mActiveList[t]] = false;
+        }
+
+        this.mActiveCount = 0;
+
+    }
+
+    /**
+     * @return number of tiles that will be computed on next tick
+     */
+    public synchronized int getActiveTileCount() {
+        return this.mActiveCount;
+    }
+
+}
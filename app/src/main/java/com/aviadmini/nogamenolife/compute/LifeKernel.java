@@ -0,0 +1,124 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Synchronous core of a Game of Life engine: board state, advancing it and cell access, with no threads or callbacks involved.
+ * <p>
+ * Calls are not queued, so they should come from one thread at a time: either a task running on engine's {@link ComputeExecutor} or
+ * any thread while no asynchronous {@link LifeCompute} requests are in flight
+ */
+public interface LifeKernel {
+
+    /**
+     * @return board width
+     */
+    int getWidth();
+
+    /**
+     * @return board height
+     */
+    int getHeight();
+
+    /**
+     * @return number of generations computed so far
+     */
+    long getStep();
+
+    /**
+     * Advances board right away
+     *
+     * @param pGenerations number of generations to advance, >0
+     */
+    void step(final int pGenerations);
+
+    /**
+     * @param pCellPosition cell position
+     * @return cell state
+     */
+    int getCellState(final int pCellPosition);
+
+    /**
+     * @param pCellPosition cell position
+     * @param pNewState     state to assign
+     * @return state that was assigned
+     */
+    int setCellState(final int pCellPosition, final int pNewState);
+
+    /**
+     * @param pCellPositions cell positions
+     * @param pNewStates     states to assign, one per position
+     */
+    void setCellStates(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates);
+
+    /**
+     * Assigns one state to a horizontal run of cells, the bulk path patterns are loaded through
+     *
+     * @param pX      left cell of the run
+     * @param pY      row of the run
+     * @param pLength number of cells, >0
+     * @param pState  state to assign
+     */
+    void setCellRun(final int pX, final int pY, final int pLength, final int pState);
+
+    /**
+     * Copies cell states of a row
+     *
+     * @param pY          row
+     * @param pCellStates destination, at least width in size
+     */
+    void getRowCellStates(final int pY, @NonNull final int[] pCellStates);
+
+    /**
+     * Copies cell states of the whole board
+     *
+     * @param pCellStates destination, width * height in size
+     */
+    void getCellStates(@NonNull final int[] pCellStates);
+
+    /**
+     * Kills all cells and resets step
+     */
+    void clearCells();
+
+    /**
+     * Writes board with its rule, topology and step to a {@link Snapshot} file
+     *
+     * @param pFile file to write, replaced if it exists
+     * @throws IOException if file can not be written
+     */
+    void saveSnapshot(@NonNull final File pFile) throws IOException;
+
+    /**
+     * Replaces board with one from a {@link Snapshot} file. Snapshot rule and topology are taken if implementation supports them,
+     * otherwise current ones are kept and cells in states current rule does not have die
+     *
+     * @param pFile file to read
+     * @throws IOException if file can not be read, is not a snapshot or is of a different board size
+     */
+    void loadSnapshot(@NonNull final File pFile) throws IOException;
+
+    /**
+     * Replaces board with an RLE or Macrocell pattern, format is detected from the content. Pattern is centered on the board and its
+     * rule is taken if implementation supports it, otherwise current one is kept and cells in states it does not have die. Stream is
+     * parsed as it is read and is not closed
+     *
+     * @throws IOException if stream can not be read, is not a valid pattern or pattern is larger than the board. Board is unchanged
+     *                     unless pattern turns out to be malformed after its header
+     */
+    void loadPattern(@NonNull final InputStream pInputStream) throws IOException;
+
+    /**
+     * Writes board as a pattern with its rule. Stream is not closed
+     *
+     * @param pFormat one of PATTERN_FORMAT_ constants of {@link LifeCompute}
+     * @throws IOException if stream can not be written
+     */
+    void savePattern(@NonNull final OutputStream pOutputStream, final int pFormat) throws IOException;
+
+}
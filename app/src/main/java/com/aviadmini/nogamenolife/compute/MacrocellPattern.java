@@ -0,0 +1,691 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Golly's Macrocell patterns: the board as a quadtree with identical subtrees written once. Every line after the header is a node,
+ * numbered from 1, and refers to earlier nodes by number, 0 being an empty one. A node is either an 8x8 leaf written as rows of . and *
+ * ended by $, or "level nw ne sw se". Generations rules have no 8x8 leaves, their level 1 nodes have cell states instead of children.
+ * The last node is the root.
+ * <p>
+ * Reading keeps only the node table, cells are emitted as runs while the tree is walked. Writing builds the tree bottom up from rows
+ * of the board, keeping a row of nodes per level
+ */
+final class MacrocellPattern {
+
+    private static final String HEADER = "[M2]";
+
+    private static final int LEAF_LEVEL = 3;
+    private static final int LEAF_SIZE  = 1 << LEAF_LEVEL;
+
+    private static final int LEVEL_MAX = 62;
+
+    private MacrocellPattern() {
+    }
+
+    /**
+     * @return true if input starts like a Macrocell pattern
+     */
+    static boolean isMacrocell(@NonNull final PatternInput pInput) throws IOException {
+        return pInput.peek() == HEADER.charAt(0);
+    }
+
+    /**
+     * @throws IOException if input is not a valid Macrocell pattern or the target can not take it
+     */
+    static void read(@NonNull final PatternInput pInput, @NonNull final PatternTarget pTarget) throws IOException {
+
+        final String header = pInput.readLine();
+
+        if (header == null || !header.startsWith(HEADER)) {
+            throw pInput.error("Macrocell header expected");
+        }
+
+        final NodeTable nodes = new NodeTable();
+
+        Rule rule = Rule.CONWAY;
+
+        int c;
+
+        while ((c = pInput.peek()) != PatternInput.EOF) {
+
+            if (c == '#') {
+
+                final String line = pInput.readLine();
+
+                if (line.startsWith("#R")) {
+                    rule = pInput.parseRule(line.substring(2));
+                }
+
+            } else if (c == '.' || c == '*' || c == '$') {
+                nodes.addLeaf(readLeaf(pInput));
+            } else if (c >= '0' && c <= '9') {
+                readNode(pInput, nodes);
+            } else if (Character.isWhitespace(c)) {
+                pInput.read();
+            } else {
+                throw pInput.error(String.format(Locale.US, "Unexpected character '%s'", (char) c));
+            }
+
+        }
+
+        final int root = nodes.getCount();
+
+        if (root == 0) {
+
+            pTarget.begin(0, 0, rule);
+
+            return;
+        }
+
+        final long[] bounds = new long[4];
+
+        if (!nodes.getBounds(root, bounds)) {
+
+            pTarget.begin(0, 0, rule);
+
+            return;
+        }
+
+        final long width = bounds[2] - bounds[0] + 1;
+        final long height = bounds[3] - bounds[1] + 1;
+
+        if (width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            throw new IOException("Pattern is too large");
+        }
+
+        pTarget.begin((int) width, (int) height, rule);
+
+        nodes.emit(root, -bounds[0], -bounds[1], pTarget);
+
+    }
+
+    /**
+     * @return cells of 8x8 leaf, bit X + 8 * Y
+     */
+    private static long readLeaf(@NonNull final PatternInput pInput) throws IOException {
+
+        long bits = 0L;
+
+        int x = 0;
+        int y = 0;
+
+        int c;
+
+        while ((c = pInput.read()) != PatternInput.EOF && c != '\n') {
+
+            if (c == '.') {
+                x++;
+            } else if (c == '*') {
+
+                if (x >= LEAF_SIZE || y >= LEAF_SIZE) {
+                    throw pInput.error("Leaf is larger than 8x8");
+                }
+
+                bits |= 1L << (y * LEAF_SIZE + x);
+
+                x++;
+
+            } else if (c == '$') {
+
+                x = 0;
+                y++;
+
+            } else if (c != '\r') {
+                throw pInput.error(String.format(Locale.US, "Unexpected character '%s'", (char) c));
+            }
+
+        }
+
+        return bits;
+    }
+
+    private static void readNode(@NonNull final PatternInput pInput, @NonNull final NodeTable pNodes) throws IOException {
+
+        final int level = pInput.readInt();
+
+        if (level < 1 || level > LEVEL_MAX) {
+            throw pInput.error("Node level is out of range");
+        }
+
+        final int[] children = new int[4];
+
+        for (int i = 0; i < 4; i++) {
+
+            pInput.skipBlanks();
+
+            children[i] = pInput.readInt();
+
+            if (level == 1) {
+
+                if (children[i] >= Rule.STATES_MAX) {
+                    throw pInput.error("Cell state is out of range");
+                }
+
+                continue;
+            }
+
+            if (children[i] > pNodes.getCount() || (children[i] != 0 && pNodes.getLevel(children[i]) != level - 1)) {
+                throw pInput.error("Node refers to a node that is not defined before it or is of wrong level");
+            }
+
+        }
+
+        pInput.skipLine();
+
+        pNodes.add(level, children[0], children[1], children[2], children[3]);
+
+    }
+
+    /**
+     * Writes the whole board, top left corner of the root is the top left corner of the board
+     */
+    static void write(@NonNull final LifeCompute pCompute, @NonNull final Writer pWriter) throws IOException {
+
+        final Rule rule = pCompute.getRule();
+
+        pWriter.write(HEADER + " (nogamenolife)\n");
+        pWriter.write("#R " + rule + "\n");
+        pWriter.write(String.format(Locale.US, "#G %s\n", pCompute.getStep()));
+
+        new TreeWriter(pCompute, pWriter, rule.getStates() > 2).write();
+
+    }
+
+    /**
+     * Nodes of a pattern being read, level and children or leaf cells per node number
+     */
+    private static final class NodeTable {
+
+        private int[]     mLevels    = new int[1024];
+        private int[]     mChildren  = new int[4 * 1024];
+        private boolean[] mLeafFlags = new boolean[1024];
+        private long[]    mLeaves    = new long[1024];
+
+        // bounding box of cells per node relative to its top left corner, left is -1 for no cells and -2 until it is computed
+        private long[] mBounds = new long[4 * 1024];
+
+        private int mCount;
+
+        int getCount() {
+            return this.mCount;
+        }
+
+        int getLevel(final int pNode) {
+            return this.mLevels[pNode];
+        }
+
+        /**
+         * @param pLeaf cells, bit X + 8 * Y
+         */
+        void addLeaf(final long pLeaf) {
+
+            final int node = this.add(LEAF_LEVEL, 0, 0, 0, 0);
+
+            this.mLeafFlags[node] = true;
+            this.mLeaves[node] = pLeaf;
+
+        }
+
+        /**
+         * @return number of added node
+         */
+        int add(final int pLevel, final int pNw, final int pNe, final int pSw, final int pSe) {
+
+            final int node = ++this.mCount;
+
+            if (node == this.mLevels.length) {
+
+                this.mLevels = Arrays.copyOf(this.mLevels, node * 2);
+                this.mChildren = Arrays.copyOf(this.mChildren, node * 8);
+                this.mLeafFlags = Arrays.copyOf(this.mLeafFlags, node * 2);
+                this.mLeaves = Arrays.copyOf(this.mLeaves, node * 2);
+                this.mBounds = Arrays.copyOf(this.mBounds, node * 8);
+
+            }
+
+            this.mLevels[node] = pLevel;
+
+            this.mChildren[node * 4] = pNw;
+            this.mChildren[node * 4 + 1] = pNe;
+            this.mChildren[node * 4 + 2] = pSw;
+            this.mChildren[node * 4 + 3] = pSe;
+
+            this.mBounds[node * 4] = -2L;
+
+            return node;
+        }
+
+        /**
+         * Computes bounding box of node cells, each node once
+         *
+         * @param pBounds left, top, right and bottom relative to node's top left corner
+         * @return false if node has no cells
+         */
+        boolean getBounds(final int pNode, @NonNull final long[] pBounds) {
+
+            if (!this.hasCells(pNode)) {
+                return false;
+            }
+
+            System.arraycopy(this.mBounds, pNode * 4, pBounds, 0, 4);
+
+            return true;
+        }
+
+        private boolean hasCells(final int pNode) {
+
+            if (this.mBounds[pNode * 4] == -2L) {
+                this.computeBounds(pNode);
+            }
+
+            return this.mBounds[pNode * 4] >= 0L;
+        }
+
+        private void computeBounds(final int pNode) {
+
+            final int level = this.mLevels[pNode];
+
+            long left = Long.MAX_VALUE;
+            long top = Long.MAX_VALUE;
+            long right = -1L;
+            long bottom = -1L;
+
+            if (this.mLeafFlags[pNode]) {
+
+                final long leaf = this.mLeaves[pNode];
+
+                for (int i = 0; i < LEAF_SIZE * LEAF_SIZE; i++) {
+
+                    if ((leaf & 1L << i) != 0L) {
+
+                        left = Math.min(left, i % LEAF_SIZE);
+                        top = Math.min(top, i / LEAF_SIZE);
+                        right = Math.max(right, i % LEAF_SIZE);
+                        bottom = Math.max(bottom, i / LEAF_SIZE);
+
+                    }
+
+                }
+
+            } else {
+
+                final long half = level == 1 ? 1L : 1L << (level - 1);
+
+                final long[] child = new long[4];
+
+                for (int i = 0; i < 4; i++) {
+
+                    final int node = this.mChildren[pNode * 4 + i];
+
+                    if (node == 0 || (level != 1 && !this.getBounds(node, child))) {
+                        continue;
+                    }
+
+                    if (level == 1) {
+                        Arrays.fill(child, 0L);
+                    }
+
+                    final long dx = (i & 1) * half;
+                    final long dy = (i >> 1) * half;
+
+                    left = Math.min(left, child[0] + dx);
+                    top = Math.min(top, child[1] + dy);
+                    right = Math.max(right, child[2] + dx);
+                    bottom = Math.max(bottom, child[3] + dy);
+
+                }
+
+            }
+
+            final int offset = pNode * 4;
+
+            this.mBounds[offset] = right < 0L ? -1L : left;
+            this.mBounds[offset + 1] = top;
+            this.mBounds[offset + 2] = right;
+            this.mBounds[offset + 3] = bottom;
+
+        }
+
+        /**
+         * Walks node and sends its cells to target as runs
+         *
+         * @param pX node's left edge relative to the pattern bounding box
+         * @param pY node's top edge relative to the pattern bounding box
+         */
+        void emit(final int pNode, final long pX, final long pY, @NonNull final PatternTarget pTarget) {
+
+            final int level = this.mLevels[pNode];
+
+            if (this.mLeafFlags[pNode]) {
+
+                this.emitLeaf(this.mLeaves[pNode], (int) pX, (int) pY, pTarget);
+
+                return;
+            }
+
+            final long half = level == 1 ? 1L : 1L << (level - 1);
+
+            for (int i = 0; i < 4; i++) {
+
+                final int node = this.mChildren[pNode * 4 + i];
+
+                final long x = pX + (i & 1) * half;
+                final long y = pY + (i >> 1) * half;
+
+                if (level == 1) {
+
+                    if (node != 0) {
+                        pTarget.setCellRun((int) x, (int) y, 1, node);
+                    }
+
+                } else if (node != 0 && this.hasCells(node)) {
+                    this.emit(node, x, y, pTarget);
+                }
+
+            }
+
+        }
+
+        private void emitLeaf(final long pLeaf, final int pX, final int pY, @NonNull final PatternTarget pTarget) {
+
+            for (int y = 0; y < LEAF_SIZE; y++) {
+
+                int row = (int) (pLeaf >>> (y * LEAF_SIZE)) & 0xFF;
+
+                int x = 0;
+
+                while (row != 0) {
+
+                    final int skip = Integer.numberOfTrailingZeros(row);
+
+                    row >>>= skip;
+                    x += skip;
+
+                    final int length = Integer.numberOfTrailingZeros(~row);
+
+                    pTarget.setCellRun(pX + x, pY + y, length, LifeCompute.STATE_ALIVE);
+
+                    row >>>= length;
+                    x += length;
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Builds quadtree from board rows bottom up and writes every distinct node as soon as it is complete. Each level keeps a row of
+     * nodes waiting for the row below it, two rows of a level become a row of the level above
+     */
+    private static final class TreeWriter {
+
+        private final LifeCompute mCompute;
+        private final Writer      mWriter;
+
+        private final boolean mMultiState;
+
+        private final int mBaseLevel;
+        private final int mRootLevel;
+
+        private final int[][] mPendingRows;
+
+        private final Map<Long, Integer> mLeafNodes = new HashMap<Long, Integer>();
+
+        private final Map<NodeKey, Integer> mNodes = new HashMap<NodeKey, Integer>();
+
+        private final StringBuilder mLine = new StringBuilder();
+
+        private int mNodeCount;
+
+        TreeWriter(@NonNull final LifeCompute pCompute, @NonNull final Writer pWriter, final boolean pMultiState) {
+
+            this.mCompute = pCompute;
+            this.mWriter = pWriter;
+
+            this.mMultiState = pMultiState;
+
+            // generations cells can not be bits of a leaf, they go into level 1 nodes
+            this.mBaseLevel = pMultiState ? 1 : LEAF_LEVEL;
+
+            final int size = Math.max(pCompute.getWidth(), pCompute.getHeight());
+
+            int rootLevel = this.mBaseLevel;
+
+            while (1L << rootLevel < size) {
+                rootLevel++;
+            }
+
+            // root is never a leaf, so that the pattern has at least one node line readers can take as its level
+            this.mRootLevel = Math.max(rootLevel, this.mBaseLevel + 1);
+
+            this.mPendingRows = new int[this.mRootLevel + 1][];
+
+        }
+
+        void write() throws IOException {
+
+            final int width = this.mCompute.getWidth();
+            final int height = this.mCompute.getHeight();
+
+            final int baseSize = 1 << this.mBaseLevel;
+            final int baseNodesPerRow = (int) ((1L << this.mRootLevel) >>> this.mBaseLevel);
+
+            final int[][] rows = new int[baseSize][width];
+
+            for (int band = 0; band < baseNodesPerRow; band++) {
+
+                final int top = band * baseSize;
+
+                final int[] nodes = new int[baseNodesPerRow];
+
+                if (top < height) {
+
+                    for (int y = 0; y < baseSize; y++) {
+
+                        if (top + y < height) {
+                            this.mCompute.getRowCellStates(top + y, rows[y]);
+                        } else {
+                            Arrays.fill(rows[y], LifeCompute.STATE_DEAD);
+                        }
+
+                    }
+
+                    for (int i = 0; i < baseNodesPerRow && i * baseSize < width; i++) {
+                        nodes[i] = this.getBaseNode(rows, i * baseSize, width);
+                    }
+
+                }
+
+                this.addRow(this.mBaseLevel, nodes);
+
+            }
+        }
+
+        private int getBaseNode(@NonNull final int[][] pRows, final int pLeft, final int pWidth) throws IOException {
+
+            if (this.mMultiState) {
+
+                final int ne = pLeft + 1 < pWidth ? pRows[0][pLeft + 1] : LifeCompute.STATE_DEAD;
+                final int se = pLeft + 1 < pWidth ? pRows[1][pLeft + 1] : LifeCompute.STATE_DEAD;
+
+                return this.getNode(1, pRows[0][pLeft], ne, pRows[1][pLeft], se);
+            }
+
+            long leaf = 0L;
+
+            for (int y = 0; y < LEAF_SIZE; y++) {
+
+                for (int x = 0; x < LEAF_SIZE && pLeft + x < pWidth; x++) {
+
+                    if (pRows[y][pLeft + x] == LifeCompute.STATE_ALIVE) {
+                        leaf |= 1L << (y * LEAF_SIZE + x);
+                    }
+
+                }
+
+            }
+
+            if (leaf == 0L) {
+                return 0;
+            }
+
+            final Integer existing = this.mLeafNodes.get(leaf);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            this.mLine.setLength(0);
+
+            for (int y = 0, lastRow = (63 - Long.numberOfLeadingZeros(leaf)) / LEAF_SIZE; y <= lastRow; y++) {
+
+                final int row = (int) (leaf >>> (y * LEAF_SIZE)) & 0xFF;
+
+                for (int x = 0, lastX = 31 - Integer.numberOfLeadingZeros(row); x <= lastX; x++) {
+                    this.mLine.append((row & 1 << x) != 0 ? '*' : '.');
+                }
+
+                this.mLine.append('$');
+
+            }
+
+            this.mLine.append('\n');
+
+            this.writeLine();
+
+            this.mLeafNodes.put(leaf, this.mNodeCount);
+
+            return this.mNodeCount;
+        }
+
+        private void addRow(final int pLevel, @NonNull final int[] pNodes) throws IOException {
+
+            // root level has a single node and nothing to combine it with
+            if (pLevel == this.mRootLevel) {
+                return;
+            }
+
+            final int[] north = this.mPendingRows[pLevel];
+
+            if (north == null) {
+
+                this.mPendingRows[pLevel] = pNodes;
+
+                return;
+            }
+
+            this.mPendingRows[pLevel] = null;
+
+            final int[] nodes = new int[pNodes.length / 2];
+
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = this.getNode(pLevel + 1, north[2 * i], north[2 * i + 1], pNodes[2 * i], pNodes[2 * i + 1]);
+            }
+
+            this.addRow(pLevel + 1, nodes);
+
+        }
+
+        /**
+         * @return number of node with given children, written if it is new, 0 if it is empty
+         */
+        private int getNode(final int pLevel, final int pNw, final int pNe, final int pSw, final int pSe) throws IOException {
+
+            if ((pNw | pNe | pSw | pSe) == 0 && pLevel != this.mRootLevel) {
+                return 0;
+            }
+
+            final NodeKey key = new NodeKey(pLevel, pNw, pNe, pSw, pSe);
+
+            final Integer existing = this.mNodes.get(key);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            this.writeNode(pLevel, pNw, pNe, pSw, pSe);
+
+            this.mNodes.put(key, this.mNodeCount);
+
+            return this.mNodeCount;
+        }
+
+        private void writeNode(final int pLevel, final int pNw, final int pNe, final int pSw, final int pSe) throws IOException {
+
+            this.mLine.setLength(0);
+
+            this.mLine.append(pLevel)
+                      .append(' ')
+                      .append(pNw)
+                      .append(' ')
+                      .append(pNe)
+                      .append(' ')
+                      .append(pSw)
+                      .append(' ')
+                      .append(pSe)
+                      .append('\n');
+
+            this.writeLine();
+
+        }
+
+        private void writeLine() throws IOException {
+
+            this.mWriter.append(this.mLine);
+
+            this.mNodeCount++;
+
+        }
+
+    }
+
+    private static final class NodeKey {
+
+        private final int mLevel;
+        private final int mNw;
+        private final int mNe;
+        private final int mSw;
+        private final int mSe;
+
+        NodeKey(final int pLevel, final int pNw, final int pNe, final int pSw, final int pSe) {
+
+            this.mLevel = pLevel;
+            this.mNw = pNw;
+            this.mNe = pNe;
+            this.mSw = pSw;
+            this.mSe = pSe;
+
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+
+            if (!(pOther instanceof NodeKey)) {
+                return false;
+            }
+
+            final NodeKey other = (NodeKey) pOther;
+
+            return this.mLevel == other.mLevel && this.mNw == other.mNw && this.mNe == other.mNe && this.mSw == other.mSw &&
+                   this.mSe == other.mSe;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((this.mLevel * 31 + this.mNw) * 31 + this.mNe) * 31 + this.mSw) * 31 + this.mSe;
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered byte by byte access to a pattern file. Pattern formats are ASCII, so bytes are read as characters with no decoding, and
+ * nothing is kept but the buffer
+ */
+final class PatternInput {
+
+    static final int EOF = -1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream mInputStream;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    private int mPosition;
+    private int mLimit;
+
+    private int mLine = 1;
+
+    PatternInput(@NonNull final InputStream pInputStream) {
+        this.mInputStream = pInputStream;
+    }
+
+    /**
+     * @return next character without consuming it, or {@link #EOF}
+     */
+    int peek() throws IOException {
+
+        if (this.mPosition == this.mLimit && !this.fill()) {
+            return EOF;
+        }
+
+        return this.mBuffer[this.mPosition] & 0xFF;
+    }
+
+    /**
+     * @return next character, or {@link #EOF}
+     */
+    int read() throws IOException {
+
+        if (this.mPosition == this.mLimit && !this.fill()) {
+            return EOF;
+        }
+
+        final int c = this.mBuffer[this.mPosition++] & 0xFF;
+
+        if (c == '\n') {
+            this.mLine++;
+        }
+
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+
+        final int read = this.mInputStream.read(this.mBuffer, 0, BUFFER_SIZE);
+
+        if (read <= 0) {
+            return false;
+        }
+
+        this.mPosition = 0;
+        this.mLimit = read;
+
+        return true;
+    }
+
+    /**
+     * @return rest of the current line without line break, or null at the end of input
+     */
+    String readLine() throws IOException {
+
+        if (this.peek() == EOF) {
+            return null;
+        }
+
+        final StringBuilder line = new StringBuilder();
+
+        int c;
+
+        while ((c = this.read()) != EOF && c != '\n') {
+
+            if (c != '\r') {
+                line.append((char) c);
+            }
+
+        }
+
+        return line.toString();
+    }
+
+    /**
+     * Consumes rest of the current line, line break included
+     */
+    void skipLine() throws IOException {
+
+        int c;
+
+        do {
+            c = this.read();
+        } while (c != EOF && c != '\n');
+
+    }
+
+    /**
+     * Skips spaces and tabs, not line breaks
+     */
+    void skipBlanks() throws IOException {
+
+        int c;
+
+        while ((c = this.peek()) == ' ' || c == '\t' || c == '\r') {
+            this.read();
+        }
+
+    }
+
+    /**
+     * Reads decimal number at current position
+     *
+     * @throws IOException if there is no number or it does not fit into an int
+     */
+    int readInt() throws IOException {
+
+        int c = this.peek();
+
+        if (c < '0' || c > '9') {
+            throw this.error("Number expected");
+        }
+
+        long value = 0L;
+
+        while ((c = this.peek()) >= '0' && c <= '9') {
+
+            value = value * 10L + c - '0';
+
+            if (value > Integer.MAX_VALUE) {
+                throw this.error("Number is too large");
+            }
+
+            this.read();
+
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Parses rule of a pattern. Golly appends bounded grid size to it, e.g. B3/S23:T20,20, that suffix is ignored as patterns are
+     * placed on the board as they are
+     *
+     * @throws IOException if rule is not valid
+     */
+    @NonNull
+    Rule parseRule(@NonNull final String pRule) throws IOException {
+
+        final int suffix = pRule.indexOf(':');
+
+        try {
+            return Rule.parse((suffix < 0 ? pRule : pRule.substring(0, suffix)).trim());
+        } catch (final IllegalArgumentException e) {
+            throw this.error(e.getMessage());
+        }
+
+    }
+
+    /**
+     * @return exception with current line number appended to the message
+     */
+    @NonNull
+    IOException error(@NonNull final String pMessage) {
+        return new IOException(pMessage + " at line " + this.mLine);
+    }
+
+}
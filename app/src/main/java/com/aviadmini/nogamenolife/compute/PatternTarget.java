@@ -0,0 +1,32 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Receives a pattern as it is parsed, so that cells go to the board with no intermediate copy of it
+ */
+interface PatternTarget {
+
+    /**
+     * Called once before any cells
+     *
+     * @param pWidth  width of the pattern bounding box
+     * @param pHeight height of the pattern bounding box
+     * @param pRule   rule the pattern is for, {@link Rule#CONWAY} if file does not say
+     * @throws IOException if pattern can not be placed
+     */
+    void begin(final int pWidth, final int pHeight, @NonNull final Rule pRule) throws IOException;
+
+    /**
+     * Assigns state to a horizontal run of cells, any cell not assigned is dead
+     *
+     * @param pX      left cell of the run, relative to the bounding box
+     * @param pY      row of the run, relative to the bounding box
+     * @param pLength number of cells, >0
+     * @param pState  state, not dead
+     */
+    void setCellRun(final int pX, final int pY, final int pLength, final int pState);
+
+}
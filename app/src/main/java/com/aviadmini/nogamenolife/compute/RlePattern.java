@@ -0,0 +1,337 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Run length encoded patterns: a header line with the size and the rule, then runs of cells row by row. Dead and alive cells are b and
+ * o for rules with only these states, and ., A, B ... X, pA ... yO for generations rules.
+ * <p>
+ * Runs are read and written as they come, so neither side keeps more than a row of the board
+ */
+final class RlePattern {
+
+    private static final int LINE_LENGTH_MAX = 70;
+
+    // multi-state cells are a letter for every 24 states after the first one, prefixed by p..y for every 24 before it
+    private static final int STATES_PER_LETTER = 24;
+
+    private RlePattern() {
+    }
+
+    /**
+     * @throws IOException if input is not a valid RLE pattern or the target can not take it
+     */
+    static void read(@NonNull final PatternInput pInput, @NonNull final PatternTarget pTarget) throws IOException {
+
+        String line;
+
+        // comments come before the header
+        while (true) {
+
+            line = pInput.readLine();
+
+            if (line == null) {
+                throw pInput.error("RLE header expected");
+            }
+
+            line = line.trim();
+
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                break;
+            }
+
+        }
+
+        int width = -1;
+        int height = -1;
+        Rule rule = Rule.CONWAY;
+
+        int offset = 0;
+
+        while (offset < line.length()) {
+
+            final int comma = line.indexOf(',', offset);
+            final int end = comma < 0 ? line.length() : comma;
+
+            final String part = line.substring(offset, end);
+
+            final int equals = part.indexOf('=');
+
+            if (equals < 0) {
+                throw pInput.error("RLE header expected");
+            }
+
+            final String key = part.substring(0, equals)
+                                   .trim();
+            final String value = part.substring(equals + 1)
+                                     .trim();
+
+            try {
+
+                if ("x".equals(key)) {
+                    width = Integer.parseInt(value);
+                } else if ("y".equals(key)) {
+                    height = Integer.parseInt(value);
+                } else if ("rule".equals(key)) {
+
+                    // rule is the last field, commas of Golly's bounded grid suffix belong to it
+                    rule = pInput.parseRule(line.substring(offset + equals + 1));
+
+                    break;
+                }
+
+            } catch (final NumberFormatException e) {
+                throw pInput.error(e.getMessage());
+            }
+
+            offset = end + 1;
+
+        }
+
+        if (width < 0 || height < 0) {
+            throw pInput.error("RLE header should have pattern size");
+        }
+
+        pTarget.begin(width, height, rule);
+
+        int x = 0;
+        int y = 0;
+
+        int count = 0;
+        int prefix = 0;
+
+        int c;
+
+        while ((c = pInput.read()) != '!') {
+
+            if (c >= '0' && c <= '9') {
+
+                count = count * 10 + c - '0';
+
+                if (count > width && count > height) {
+                    throw pInput.error("Run is longer than pattern");
+                }
+
+                continue;
+            }
+
+            if (prefix != 0 && (c < 'A' || c > 'X')) {
+                throw pInput.error("Cell state letter expected");
+            }
+
+            final int length = count == 0 ? 1 : count;
+
+            if (c == 'b' || c == '.') {
+                x += length;
+            } else if (c == 'o' || (c >= 'A' && c <= 'X')) {
+
+                final int state = c == 'o' ? LifeCompute.STATE_ALIVE : prefix * STATES_PER_LETTER + c - 'A' + 1;
+
+                if (x + length > width || y >= height) {
+                    throw pInput.error("Cells are outside of pattern size");
+                }
+
+                pTarget.setCellRun(x, y, length, state);
+
+                x += length;
+
+                prefix = 0;
+
+            } else if (c >= 'p' && c <= 'y') {
+
+                prefix = c - 'p' + 1;
+
+                // count belongs to the letter that follows
+                continue;
+
+            } else if (c == '$') {
+
+                x = 0;
+                y += length;
+
+            } else if (c == PatternInput.EOF) {
+                throw pInput.error("RLE pattern should end with !");
+            } else if (Character.isWhitespace(c)) {
+                continue;
+            } else {
+                throw pInput.error(String.format(Locale.US, "Unexpected character '%s'", (char) c));
+            }
+
+            count = 0;
+
+        }
+
+    }
+
+    /**
+     * Writes bounding box of board's cells that are not dead. Board is read twice, row by row, first to find the box and then to write it
+     */
+    static void write(@NonNull final LifeCompute pCompute, @NonNull final Writer pWriter) throws IOException {
+
+        final int width = pCompute.getWidth();
+        final int height = pCompute.getHeight();
+
+        final Rule rule = pCompute.getRule();
+
+        final int[] row = new int[width];
+
+        int left = width;
+        int top = height;
+        int right = -1;
+        int bottom = -1;
+
+        for (int y = 0; y < height; y++) {
+
+            pCompute.getRowCellStates(y, row);
+
+            for (int x = 0; x < width; x++) {
+
+                if (row[x] != LifeCompute.STATE_DEAD) {
+
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+
+                    top = Math.min(top, y);
+                    bottom = y;
+
+                }
+
+            }
+
+        }
+
+        final boolean empty = right < 0;
+
+        pWriter.write(String.format(Locale.US, "x = %s, y = %s, rule = %s\n", empty ? 0 : right - left + 1, empty ? 0 : bottom - top + 1,
+                rule));
+
+        final RunWriter runWriter = new RunWriter(pWriter, rule.getStates() > 2);
+
+        for (int y = top; y <= bottom; y++) {
+
+            pCompute.getRowCellStates(y, row);
+
+            int x = left;
+
+            while (x <= right) {
+
+                final int state = row[x];
+
+                int end = x + 1;
+
+                while (end <= right && row[end] == state) {
+                    end++;
+                }
+
+                // dead cells at the end of a row are implied
+                if (state != LifeCompute.STATE_DEAD || end <= right) {
+                    runWriter.writeRun(end - x, state);
+                }
+
+                x = end;
+
+            }
+
+            runWriter.endRow();
+
+        }
+
+        runWriter.end();
+
+    }
+
+    /**
+     * Writes runs wrapping lines, rows ends are held back so that empty rows collapse into one run and the last one is dropped
+     */
+    private static final class RunWriter {
+
+        private final Writer  mWriter;
+        private final boolean mMultiState;
+
+        private final StringBuilder mToken = new StringBuilder();
+
+        private int mLineLength;
+        private int mPendingRowEnds;
+
+        RunWriter(@NonNull final Writer pWriter, final boolean pMultiState) {
+
+            this.mWriter = pWriter;
+            this.mMultiState = pMultiState;
+
+        }
+
+        void writeRun(final int pLength, final int pState) throws IOException {
+
+            if (this.mPendingRowEnds > 0) {
+
+                this.writeToken(this.mPendingRowEnds, "$");
+
+                this.mPendingRowEnds = 0;
+
+            }
+
+            this.writeToken(pLength, this.getStateTag(pState));
+
+        }
+
+        private String getStateTag(final int pState) {
+
+            if (pState == LifeCompute.STATE_DEAD) {
+                return this.mMultiState ? "." : "b";
+            }
+
+            if (!this.mMultiState) {
+                return "o";
+            }
+
+            final int prefix = (pState - 1) / STATES_PER_LETTER;
+            final char letter = (char) ('A' + (pState - 1) % STATES_PER_LETTER);
+
+            return prefix == 0 ? String.valueOf(letter) : String.valueOf((char) ('p' + prefix - 1)) + letter;
+        }
+
+        void endRow() {
+            this.mPendingRowEnds++;
+        }
+
+        void end() throws IOException {
+
+            this.mPendingRowEnds = 0;
+
+            this.writeToken(1, "!");
+
+            this.mWriter.write('\n');
+
+        }
+
+        private void writeToken(final int pCount, @NonNull final String pTag) throws IOException {
+
+            this.mToken.setLength(0);
+
+            if (pCount > 1) {
+                this.mToken.append(pCount);
+            }
+
+            this.mToken.append(pTag);
+
+            if (this.mLineLength + this.mToken.length() > LINE_LENGTH_MAX) {
+
+                this.mWriter.write('\n');
+
+                this.mLineLength = 0;
+
+            }
+
+            this.mWriter.append(this.mToken);
+
+            this.mLineLength += this.mToken.length();
+
+        }
+
+    }
+
+}
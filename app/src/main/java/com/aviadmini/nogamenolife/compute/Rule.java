@@ -0,0 +1,482 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Life-like rule: which dead cells are born and which alive cells survive, depending on their 8 neighbours. Parsed from B/S notation,
+ * e.g. "B3/S23" or "B36/S23", legacy S/B notation like "23/3" and isotropic non-totalistic Hensel notation, e.g. "B2n3/S23-q", where
+ * letters after a neighbour count pick configurations of that many neighbours and a leading minus excludes them instead.
+ * <p>
+ * Generations rules add a number of states, e.g. "B2/S/C3" or legacy "/2/3". Alive cells that do not survive then decay through
+ * dying states 2, 3 and so on until they are dead again. Dying cells are not counted as alive neighbours and are not born on.
+ * <p>
+ * Rule is compiled to lookup tables, so engines get next state of a cell with a single array read whatever the rule is. Rules that
+ * give birth to cells with no neighbours (B0) are rejected: they would turn empty space alive on every other generation
+ */
+public final class Rule {
+
+    /**
+     * Neighbourhood bit of the cell itself in {@link #getNextState(int)}
+     */
+    public static final int NEIGHBOURHOOD_BIT_CELL = 4;
+
+    /**
+     * Most states a generations rule can have, so that every state fits into a byte
+     */
+    public static final int STATES_MAX = 256;
+
+    private static final int NEIGHBOURS = 8;
+
+    // Hensel letters of every neighbour count up to 4, configurations of 5 and more are complements of the ones of 8 - count
+    private static final String[] LETTERS = {"", "ce", "aceikn", "aceijknqry", "aceijknqrtwyz"};
+
+    // configuration of every letter above as a ring mask: bit i is neighbour i clockwise from north, N, NE, E, SE, S, SW, W, NW
+    private static final int[][] CONFIGURATIONS = {//
+            {},//
+            {0x02, 0x01},//
+            {0x03, 0x0A, 0x05, 0x11, 0x09, 0x22},//
+            {0x07, 0x2A, 0x15, 0x83, 0x43, 0x25, 0x0B, 0x23, 0x13, 0x29},//
+            {0x0F, 0xAA, 0x55, 0x1B, 0x53, 0x4B, 0x8B, 0x27, 0x17, 0x93, 0x63, 0x2B, 0x33},//
+    };
+
+    // neighbourhood bit of every ring neighbour, see getNextState(int)
+    private static final int[] RING_BITS = {1, 2, 5, 8, 7, 6, 3, 0};
+
+    // after the tables above, parsing needs them
+    public static final Rule CONWAY = parse("B3/S23");
+
+    private final String mString;
+
+    private final int mStates;
+
+    // indexed by ring mask
+    private final boolean[] mBirth    = new boolean[1 << NEIGHBOURS];
+    private final boolean[] mSurvival = new boolean[1 << NEIGHBOURS];
+
+    private boolean mTotalistic;
+
+    private int mBirthCounts;
+    private int mSurvivalCounts;
+
+    private final byte[] mNeighbourhoodTable = new byte[1 << (NEIGHBOURS + 1)];
+    private final byte[] mCountTable;
+
+    private Rule(@NonNull final String pBirth, @NonNull final String pSurvival, final int pStates) {
+
+        this.mStates = pStates;
+
+        this.mCountTable = new byte[pStates << 4];
+
+        parseConditions(pBirth, this.mBirth);
+        parseConditions(pSurvival, this.mSurvival);
+
+        if (this.mBirth[0]) {
+            throw new IllegalArgumentException("Rules with birth on 0 neighbours are not supported");
+        }
+
+        this.compile();
+
+        this.mString = "B" + this.toConditions(this.mBirth) + "/S" + this.toConditions(this.mSurvival) +
+                (pStates > 2 ? "/C" + pStates : "");
+
+    }
+
+    /**
+     * @param pRule rule string in B/S, S/B or Hensel notation, optionally with number of states, case insensitive
+     * @return parsed rule
+     * @throws IllegalArgumentException if rule can not be parsed or is not supported
+     */
+    @NonNull
+    public static Rule parse(@NonNull final String pRule) {
+
+        String rule = pRule.replace(" ", "")
+                           .toLowerCase(Locale.US);
+
+        int states = 2;
+
+        // number of states is the third part, or the second one if it is marked, e.g. B3S23/C3
+        final int lastSlash = rule.lastIndexOf('/');
+
+        if (lastSlash >= 0 && (lastSlash != rule.indexOf('/') || isStates(rule.substring(lastSlash + 1)))) {
+
+            states = parseStates(rule.substring(lastSlash + 1));
+
+            rule = rule.substring(0, lastSlash);
+
+        }
+
+        final int birth = rule.indexOf('b');
+        final int survival = rule.indexOf('s');
+
+        if (birth < 0 && survival < 0) {
+
+            // legacy S/B
+            final int slash = rule.indexOf('/');
+
+            if (slash < 0) {
+                throw new IllegalArgumentException("Rule should be in B/S or S/B notation");
+            }
+
+            return new Rule(rule.substring(slash + 1), rule.substring(0, slash), states);
+        }
+
+        if (birth < 0 || survival < 0) {
+            throw new IllegalArgumentException("Rule should have both B and S parts");
+        }
+
+        if (birth < survival) {
+            return new Rule(trimSeparator(rule.substring(birth + 1, survival)), rule.substring(survival + 1), states);
+        } else {
+            return new Rule(rule.substring(birth + 1), trimSeparator(rule.substring(survival + 1, birth)), states);
+        }
+
+    }
+
+    private static boolean isStates(@NonNull final String pPart) {
+        return pPart.startsWith("c") || pPart.startsWith("g");
+    }
+
+    private static int parseStates(@NonNull final String pStates) {
+
+        final int states;
+
+        try {
+            states = Integer.parseInt(isStates(pStates) ? pStates.substring(1) : pStates);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Number of states should be a number: " + pStates);
+        }
+
+        if (states < 2 || states > STATES_MAX) {
+            throw new IllegalArgumentException(String.format(Locale.US, "Number of states should be within 2..%s", STATES_MAX));
+        }
+
+        return states;
+    }
+
+    private static String trimSeparator(@NonNull final String pConditions) {
+        return pConditions.endsWith("/") ? pConditions.substring(0, pConditions.length() - 1) : pConditions;
+    }
+
+    /**
+     * @param pConditions neighbour counts, each optionally followed by Hensel letters
+     * @param pTable      table to set matching ring masks in
+     */
+    private static void parseConditions(@NonNull final String pConditions, @NonNull final boolean[] pTable) {
+
+        int i = 0;
+
+        while (i < pConditions.length()) {
+
+            final int count = pConditions.charAt(i) - '0';
+
+            if (count < 0 || count > NEIGHBOURS) {
+                throw new IllegalArgumentException("Unexpected character in rule: " + pConditions.charAt(i));
+            }
+
+            i++;
+
+            final boolean excluding = i < pConditions.length() && pConditions.charAt(i) == '-';
+
+            if (excluding) {
+                i++;
+            }
+
+            final int lettersStart = i;
+
+            while (i < pConditions.length() && Character.isLetter(pConditions.charAt(i))) {
+                i++;
+            }
+
+            final String letters = pConditions.substring(lettersStart, i);
+
+            if (letters.isEmpty() && excluding) {
+                throw new IllegalArgumentException("Minus should be followed by letters");
+            }
+
+            final boolean[] picked = new boolean[1 << NEIGHBOURS];
+
+            for (int l = 0; l < letters.length(); l++) {
+                setLetter(count, letters.charAt(l), picked);
+            }
+
+            for (int mask = 0; mask < pTable.length; mask++) {
+
+                if (Integer.bitCount(mask) == count && (letters.isEmpty() || picked[mask] != excluding)) {
+                    pTable[mask] = true;
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Sets ring masks of every rotation and reflection of the letter's configuration
+     */
+    private static void setLetter(final int pCount, final char pLetter, @NonNull final boolean[] pTable) {
+
+        final boolean complement = pCount > NEIGHBOURS / 2;
+
+        final int index = complement ? NEIGHBOURS - pCount : pCount;
+
+        final int letter = LETTERS[index].indexOf(pLetter);
+
+        if (letter < 0) {
+            throw new IllegalArgumentException(String.format(Locale.US, "No configuration %s%s", pCount, pLetter));
+        }
+
+        final int configuration = complement ? ~CONFIGURATIONS[index][letter] & 0xFF : CONFIGURATIONS[index][letter];
+
+        for (int rotation = 0; rotation < NEIGHBOURS; rotation += 2) {
+
+            final int rotated = rotate(configuration, rotation);
+
+            pTable[rotated] = true;
+            pTable[reflect(rotated)] = true;
+
+        }
+
+    }
+
+    private static int rotate(final int pMask, final int pSteps) {
+        return ((pMask << pSteps) | (pMask >>> (NEIGHBOURS - pSteps))) & 0xFF;
+    }
+
+    /**
+     * Mirrors ring mask left to right, north stays in place
+     */
+    private static int reflect(final int pMask) {
+
+        int reflected = 0;
+
+        for (int i = 0; i < NEIGHBOURS; i++) {
+
+            if ((pMask & (1 << i)) != 0) {
+                reflected |= 1 << ((NEIGHBOURS - i) % NEIGHBOURS);
+            }
+
+        }
+
+        return reflected;
+    }
+
+    private void compile() {
+
+        this.mTotalistic = true;
+
+        // alive cells that do not survive start dying, if there are dying states at all
+        final byte notSurviving = (byte) (this.mStates > 2 ? 2 : LifeCompute.STATE_DEAD);
+
+        for (int mask = 0; mask < 1 << NEIGHBOURS; mask++) {
+
+            final int count = Integer.bitCount(mask);
+
+            if (this.mBirth[mask]) {
+                this.mBirthCounts |= 1 << count;
+            }
+
+            if (this.mSurvival[mask]) {
+                this.mSurvivalCounts |= 1 << count;
+            }
+
+            int neighbourhood = 0;
+
+            for (int i = 0; i < NEIGHBOURS; i++) {
+
+                if ((mask & (1 << i)) != 0) {
+                    neighbourhood |= 1 << RING_BITS[i];
+                }
+
+            }
+
+            this.mNeighbourhoodTable[neighbourhood] = (byte) (this.mBirth[mask] ? LifeCompute.STATE_ALIVE : LifeCompute.STATE_DEAD);
+            this.mNeighbourhoodTable[neighbourhood | 1 << NEIGHBOURHOOD_BIT_CELL] =
+                    this.mSurvival[mask] ? LifeCompute.STATE_ALIVE : notSurviving;
+
+        }
+
+        // totalistic if every count is either fully in or fully out
+        for (int mask = 0; mask < 1 << NEIGHBOURS; mask++) {
+
+            final int count = Integer.bitCount(mask);
+
+            if (this.mBirth[mask] != ((this.mBirthCounts & (1 << count)) != 0) ||
+                    this.mSurvival[mask] != ((this.mSurvivalCounts & (1 << count)) != 0)) {
+
+                this.mTotalistic = false;
+
+                break;
+            }
+
+        }
+
+        for (int count = 0; count <= NEIGHBOURS; count++) {
+
+            this.mCountTable[count] = (byte) ((this.mBirthCounts & (1 << count)) != 0 ? LifeCompute.STATE_ALIVE : LifeCompute.STATE_DEAD);
+            this.mCountTable[16 + count] = (this.mSurvivalCounts & (1 << count)) != 0 ? LifeCompute.STATE_ALIVE : notSurviving;
+
+        }
+
+        // dying cells decay whatever their neighbours are, the last dying state is followed by dead
+        for (int state = 2; state < this.mStates; state++) {
+
+            final int next = state + 1 < this.mStates ? state + 1 : LifeCompute.STATE_DEAD;
+
+            Arrays.fill(this.mCountTable, state << 4, (state + 1) << 4, (byte) next);
+
+        }
+
+    }
+
+    /**
+     * @return conditions in Hensel notation, whichever of picking and excluding letters is shorter for every count
+     */
+    private String toConditions(@NonNull final boolean[] pTable) {
+
+        final StringBuilder builder = new StringBuilder();
+
+        for (int count = 0; count <= NEIGHBOURS; count++) {
+
+            final int index = count > NEIGHBOURS / 2 ? NEIGHBOURS - count : count;
+
+            // no letters, the only configuration is either all dead or all alive
+            if (index == 0) {
+
+                if (pTable[count == 0 ? 0 : 0xFF]) {
+                    builder.append(count);
+                }
+
+                continue;
+            }
+
+            final StringBuilder picked = new StringBuilder();
+            final StringBuilder excluded = new StringBuilder();
+
+            for (int l = 0; l < LETTERS[index].length(); l++) {
+
+                final char letter = LETTERS[index].charAt(l);
+
+                final boolean[] configurations = new boolean[1 << NEIGHBOURS];
+
+                setLetter(count, letter, configurations);
+
+                for (int mask = 0; mask < configurations.length; mask++) {
+
+                    if (configurations[mask]) {
+
+                        (pTable[mask] ? picked : excluded).append(letter);
+
+                        break;
+                    }
+
+                }
+
+            }
+
+            if (picked.length() == 0) {
+                continue;
+            }
+
+            builder.append(count);
+
+            if (excluded.length() == 0) {
+                continue;
+            }
+
+            if (excluded.length() < picked.length()) {
+                builder.append('-')
+                       .append(excluded);
+            } else {
+                builder.append(picked);
+            }
+
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return true if next state depends only on the number of alive neighbours, not on where they are
+     */
+    public boolean isTotalistic() {
+        return this.mTotalistic;
+    }
+
+    /**
+     * @return number of states: 2 for dead and alive only, more for generations rules, up to {@link #STATES_MAX}
+     */
+    public int getStates() {
+        return this.mStates;
+    }
+
+    /**
+     * @return bit n is set if dead cells with n alive neighbours are born. Only meaningful for totalistic rules
+     */
+    public int getBirthCounts() {
+        return this.mBirthCounts;
+    }
+
+    /**
+     * @return bit n is set if alive cells with n alive neighbours survive. Only meaningful for totalistic rules
+     */
+    public int getSurvivalCounts() {
+        return this.mSurvivalCounts;
+    }
+
+    /**
+     * @param pNeighbourhood 3x3 neighbourhood, bit (dy + 1) * 3 + dx + 1 is the cell at dx, dy from the centre, so bit
+     *                       {@link #NEIGHBOURHOOD_BIT_CELL} is the cell itself
+     * @return next state of a dead or alive cell, alive cells that do not survive get the first dying state of generations rules
+     */
+    public int getNextState(final int pNeighbourhood) {
+        return this.mNeighbourhoodTable[pNeighbourhood];
+    }
+
+    /**
+     * @param pState dying state, 2 or more
+     * @return next state of a dying cell, the same whatever its neighbours are
+     */
+    public int getNextDyingState(final int pState) {
+        return this.mCountTable[pState << 4] & 0xFF;
+    }
+
+    /**
+     * @return next state by neighbourhood, see {@link #getNextState(int)}. Not a copy, must not be modified
+     */
+    @NonNull
+    byte[] getNeighbourhoodTable() {
+        return this.mNeighbourhoodTable;
+    }
+
+    /**
+     * @return next state by state times 16 plus number of alive neighbours, the latter only matters for totalistic rules and cells that
+     * are dead or alive. Not a copy, must not be modified
+     */
+    @NonNull
+    byte[] getCountTable() {
+        return this.mCountTable;
+    }
+
+    @Override
+    public boolean equals(final Object pOther) {
+        return this == pOther || (pOther instanceof Rule && this.mString.equals(((Rule) pOther).mString));
+    }
+
+    @Override
+    public int hashCode() {
+        return this.mString.hashCode();
+    }
+
+    /**
+     * @return canonical B/S notation of the rule
+     */
+    @Override
+    public String toString() {
+        return this.mString;
+    }
+
+}
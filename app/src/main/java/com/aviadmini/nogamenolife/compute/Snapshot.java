@@ -0,0 +1,435 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Board saved to a file that is memory mapped while it is written or read, so cells go between engine buffers and the file with no
+ * copies in between. Little-endian layout:
+ * <pre>
+ *  0 int  magic, "NGNL"
+ *  4 int  format version
+ *  8 int  width
+ * 12 int  height
+ * 16 int  bits per cell, 1 for rules with dead and alive states only, 8 for generations rules
+ * 20 int  topology
+ * 24 long step
+ * 32 int  length of rule string
+ * 36      rule string in B/S notation, ASCII
+ *         padding to a multiple of 8 bytes
+ *         body, row after row
+ * </pre>
+ * With a bit per cell every row is whole longs, cell X is bit X % 64 of long X / 64, which is also how {@link LifeComputeBits} keeps
+ * its board. With 8 bits every row is a byte per cell
+ */
+public final class Snapshot {
+
+    private static final int MAGIC   = 0x4C4E474E;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 36;
+
+    private static final int BITS_PER_WORD       = 64;
+    private static final int BITS_PER_WORD_SHIFT = 6;
+    private static final int BITS_PER_WORD_MASK  = BITS_PER_WORD - 1;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private final int mBitsPerCell;
+
+    private final int  mTopology;
+    private final long mStep;
+    private final Rule mRule;
+
+    private final MappedByteBuffer mMapped;
+
+    // body only, a byte per cell, or a long per 64 cells
+    private final ByteBuffer mBody;
+    private final LongBuffer mBodyWords;
+
+    private final int mWordsPerRow;
+
+    private Snapshot(final int pWidth, final int pHeight, final int pBitsPerCell, final int pTopology, final long pStep,
+                     @NonNull final Rule pRule, @NonNull final MappedByteBuffer pMapped, final int pBodyOffset) {
+
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+
+        this.mBitsPerCell = pBitsPerCell;
+
+        this.mTopology = pTopology;
+        this.mStep = pStep;
+        this.mRule = pRule;
+
+        this.mMapped = pMapped;
+
+        this.mMapped.position(pBodyOffset);
+
+        this.mBody = this.mMapped.slice()
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+        this.mBodyWords = pBitsPerCell == 1 ? this.mBody.asLongBuffer() : null;
+
+        this.mWordsPerRow = (pWidth + BITS_PER_WORD_MASK) >>> BITS_PER_WORD_SHIFT;
+
+    }
+
+    /**
+     * Creates snapshot file, replacing an existing one, and maps it for writing. Body is empty until rows are put
+     *
+     * @throws IOException if file can not be created or board does not fit into a single mapping
+     */
+    @NonNull
+    public static Snapshot create(@NonNull final File pFile, final int pWidth, final int pHeight, @NonNull final Rule pRule,
+                                  final int pTopology, final long pStep) throws IOException {
+
+        final int bitsPerCell = pRule.getStates() > 2 ? 8 : 1;
+
+        final byte[] rule = pRule.toString()
+                                 .getBytes(ASCII);
+
+        final int bodyOffset = getBodyOffset(rule.length);
+
+        final long size = bodyOffset + getBodySize(pWidth, pHeight, bitsPerCell);
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Board is too large for a snapshot");
+        }
+
+        final MappedByteBuffer mapped = map(pFile, "rw", FileChannel.MapMode.READ_WRITE, size);
+
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        mapped.putInt(MAGIC)
+              .putInt(VERSION)
+              .putInt(pWidth)
+              .putInt(pHeight)
+              .putInt(bitsPerCell)
+              .putInt(pTopology)
+              .putLong(pStep)
+              .putInt(rule.length)
+              .put(rule);
+
+        return new Snapshot(pWidth, pHeight, bitsPerCell, pTopology, pStep, pRule, mapped, bodyOffset);
+    }
+
+    /**
+     * Maps existing snapshot file for reading and reads its header
+     *
+     * @throws IOException if file can not be read or is not a snapshot of this format version
+     */
+    @NonNull
+    public static Snapshot open(@NonNull final File pFile) throws IOException {
+
+        final MappedByteBuffer mapped = map(pFile, "r", FileChannel.MapMode.READ_ONLY, -1L);
+
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapped.remaining() < HEADER_SIZE || mapped.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+
+        final int version = mapped.getInt();
+
+        if (version != VERSION) {
+            throw new IOException(String.format(Locale.US, "Unsupported snapshot version %s", version));
+        }
+
+        final int width = mapped.getInt();
+        final int height = mapped.getInt();
+        final int bitsPerCell = mapped.getInt();
+        final int topology = mapped.getInt();
+        final long step = mapped.getLong();
+        final int ruleLength = mapped.getInt();
+
+        if (width <= 0 || height <= 0 || (bitsPerCell != 1 && bitsPerCell != 8) || ruleLength < 0 || ruleLength > mapped.remaining()) {
+            throw new IOException("Corrupt snapshot header");
+        }
+
+        final byte[] ruleBytes = new byte[ruleLength];
+        mapped.get(ruleBytes);
+
+        final Rule rule;
+
+        try {
+            rule = Rule.parse(new String(ruleBytes, ASCII));
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Snapshot rule is not supported: " + e.getMessage());
+        }
+
+        final int bodyOffset = getBodyOffset(ruleLength);
+
+        if (mapped.capacity() < bodyOffset + getBodySize(width, height, bitsPerCell)) {
+            throw new IOException("Snapshot is truncated");
+        }
+
+        return new Snapshot(width, height, bitsPerCell, topology, step, rule, mapped, bodyOffset);
+    }
+
+    /**
+     * @param pSize size to map, file is resized to it, or -1 to map the whole file as it is
+     */
+    private static MappedByteBuffer map(@NonNull final File pFile, @NonNull final String pAccess, @NonNull final FileChannel.MapMode pMode,
+                                        final long pSize) throws IOException {
+
+        final RandomAccessFile file = new RandomAccessFile(pFile, pAccess);
+
+        // mapping stays valid after file is closed
+        try {
+
+            if (pSize >= 0L) {
+                file.setLength(pSize);
+            }
+
+            return file.getChannel()
+                       .map(pMode, 0L, pSize >= 0L ? pSize : file.length());
+
+        } finally {
+            file.close();
+        }
+
+    }
+
+    /**
+     * @return body offset, so that body longs are aligned
+     */
+    private static int getBodyOffset(final int pRuleLength) {
+        return (HEADER_SIZE + pRuleLength + 7) & ~7;
+    }
+
+    private static long getBodySize(final int pWidth, final int pHeight, final int pBitsPerCell) {
+        return pBitsPerCell == 1 ? (long) ((pWidth + BITS_PER_WORD_MASK) >>> BITS_PER_WORD_SHIFT) * pHeight * 8L : (long) pWidth * pHeight;
+    }
+
+    public int getWidth() {
+        return this.mWidth;
+    }
+
+    public int getHeight() {
+        return this.mHeight;
+    }
+
+    /**
+     * @return 1 or 8
+     */
+    public int getBitsPerCell() {
+        return this.mBitsPerCell;
+    }
+
+    public int getTopology() {
+        return this.mTopology;
+    }
+
+    public long getStep() {
+        return this.mStep;
+    }
+
+    @NonNull
+    public Rule getRule() {
+        return this.mRule;
+    }
+
+    /**
+     * Reads a row of cell states
+     *
+     * @param pY           row
+     * @param pCellStates  destination, a byte per cell
+     * @param pOffset      index of the first cell of the row in destination
+     */
+    public void getRow(final int pY, @NonNull final byte[] pCellStates, final int pOffset) {
+
+        if (this.mBitsPerCell == 8) {
+
+            this.mBody.position(pY * this.mWidth);
+            this.mBody.get(pCellStates, pOffset, this.mWidth);
+
+            return;
+        }
+
+        final int row = pY * this.mWordsPerRow;
+
+        for (int w = 0; w < this.mWordsPerRow; w++) {
+
+            long word = this.mBodyWords.get(row + w);
+
+            for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(x + BITS_PER_WORD, this.mWidth); x < to; x++) {
+
+                pCellStates[pOffset + x] = (byte) (word & 1L);
+
+                word >>>= 1;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes a row of cell states. Snapshot with a bit per cell only keeps alive ones
+     *
+     * @param pY           row
+     * @param pCellStates  source, a byte per cell
+     * @param pOffset      index of the first cell of the row in source
+     */
+    public void putRow(final int pY, @NonNull final byte[] pCellStates, final int pOffset) {
+
+        if (this.mBitsPerCell == 8) {
+
+            this.mBody.position(pY * this.mWidth);
+            this.mBody.put(pCellStates, pOffset, this.mWidth);
+
+            return;
+        }
+
+        final int row = pY * this.mWordsPerRow;
+
+        for (int w = 0; w < this.mWordsPerRow; w++) {
+
+            long word = 0L;
+
+            for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(x + BITS_PER_WORD, this.mWidth); x < to; x++) {
+
+                if (pCellStates[pOffset + x] == LifeCompute.STATE_ALIVE) {
+                    word |= 1L << x;
+                }
+
+            }
+
+            this.mBodyWords.put(row + w, word);
+
+        }
+
+    }
+
+    /**
+     * Same as {@link #getRow(int, byte[], int)}, an int per cell
+     */
+    public void getRow(final int pY, @NonNull final int[] pCellStates, final int pOffset) {
+
+        if (this.mBitsPerCell == 8) {
+
+            final int row = pY * this.mWidth;
+
+            for (int x = 0; x < this.mWidth; x++) {
+                pCellStates[pOffset + x] = this.mBody.get(row + x) & 0xFF;
+            }
+
+            return;
+        }
+
+        final int row = pY * this.mWordsPerRow;
+
+        for (int w = 0; w < this.mWordsPerRow; w++) {
+
+            long word = this.mBodyWords.get(row + w);
+
+            for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(x + BITS_PER_WORD, this.mWidth); x < to; x++) {
+
+                pCellStates[pOffset + x] = (int) (word & 1L);
+
+                word >>>= 1;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Same as {@link #putRow(int, byte[], int)}, an int per cell
+     */
+    public void putRow(final int pY, @NonNull final int[] pCellStates, final int pOffset) {
+
+        if (this.mBitsPerCell == 8) {
+
+            final int row = pY * this.mWidth;
+
+            for (int x = 0; x < this.mWidth; x++) {
+                this.mBody.put(row + x, (byte) pCellStates[pOffset + x]);
+            }
+
+            return;
+        }
+
+        final int row = pY * this.mWordsPerRow;
+
+        for (int w = 0; w < this.mWordsPerRow; w++) {
+
+            long word = 0L;
+
+            for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(x + BITS_PER_WORD, this.mWidth); x < to; x++) {
+
+                if (pCellStates[pOffset + x] == LifeCompute.STATE_ALIVE) {
+                    word |= 1L << x;
+                }
+
+            }
+
+            this.mBodyWords.put(row + w, word);
+
+        }
+
+    }
+
+    /**
+     * Reads the whole body of a snapshot with a bit per cell in one bulk copy
+     *
+     * @param pWords destination, rows of (width + 63) / 64 longs
+     * @throws IllegalStateException if snapshot has more bits per cell
+     */
+    public void getWords(@NonNull final long[] pWords) {
+
+        this.checkWords();
+
+        this.mBodyWords.position(0);
+        this.mBodyWords.get(pWords, 0, this.mWordsPerRow * this.mHeight);
+
+    }
+
+    /**
+     * Writes the whole body of a snapshot with a bit per cell in one bulk copy
+     *
+     * @param pWords source, rows of (width + 63) / 64 longs
+     * @throws IllegalStateException if snapshot has more bits per cell
+     */
+    public void putWords(@NonNull final long[] pWords) {
+
+        this.checkWords();
+
+        this.mBodyWords.position(0);
+        this.mBodyWords.put(pWords, 0, this.mWordsPerRow * this.mHeight);
+
+    }
+
+    private void checkWords() {
+
+        if (this.mBitsPerCell != 1) {
+            throw new IllegalStateException("Snapshot is not a bit per cell");
+        }
+
+    }
+
+    /**
+     * Flushes written rows to the file. Mapping itself is released once snapshot is no longer referenced
+     */
+    public void finish() {
+
+        if (!this.mMapped.isReadOnly()) {
+            this.mMapped.force();
+        }
+
+    }
+
+}
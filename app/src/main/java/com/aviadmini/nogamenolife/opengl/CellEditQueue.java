@@ -0,0 +1,104 @@
+package com.aviadmini.nogamenolife.opengl;
+
+import java.util.Arrays;
+
+/**
+ * Cell edits waiting to be applied to GPU as one batch, kept in the order they were made so that a later edit of the same cell wins.
+ * Tracks bounding rectangle of edited cells
+ */
+public class CellEditQueue {
+
+    private static final int CAPACITY_INITIAL = 64;
+
+    private int[] mPositions = new int[CAPACITY_INITIAL];
+    private int[] mStates    = new int[CAPACITY_INITIAL];
+
+    private int mSize;
+
+    // right and bottom are exclusive
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+    private int mBottom;
+
+    /**
+     * @param pCellPosition position of the cell, y * width + x
+     * @param pX            column of the cell
+     * @param pY            row of the cell
+     * @param pState        state to set
+     */
+    public void add(final int pCellPosition, final int pX, final int pY, final int pState) {
+
+        if (this.mSize == this.mPositions.length) {
+
+            this.mPositions = Arrays.copyOf(this.mPositions, this.mSize * 2);
+            this.mStates = Arrays.copyOf(this.mStates, this.mSize * 2);
+
+        }
+
+        this.mPositions[this.mSize] = pCellPosition;
+        this.mStates[this.mSize] = pState;
+
+        if (this.mSize == 0) {
+
+            this.mLeft = pX;
+            this.mTop = pY;
+            this.mRight = pX + 1;
+            this.mBottom = pY + 1;
+
+        } else {
+
+            this.mLeft = Math.min(this.mLeft, pX);
+            this.mTop = Math.min(this.mTop, pY);
+            this.mRight = Math.max(this.mRight, pX + 1);
+            this.mBottom = Math.max(this.mBottom, pY + 1);
+
+        }
+
+        this.mSize++;
+
+    }
+
+    public int size() {
+        return this.mSize;
+    }
+
+    public boolean isEmpty() {
+        return this.mSize == 0;
+    }
+
+    public int getCellPosition(final int pIndex) {
+        return this.mPositions[pIndex];
+    }
+
+    public int getState(final int pIndex) {
+        return this.mStates[pIndex];
+    }
+
+    public int getLeft() {
+        return this.mLeft;
+    }
+
+    public int getTop() {
+        return this.mTop;
+    }
+
+    /**
+     * @return column after the rightmost edited one
+     */
+    public int getRight() {
+        return this.mRight;
+    }
+
+    /**
+     * @return row after the bottom edited one
+     */
+    public int getBottom() {
+        return this.mBottom;
+    }
+
+    public void clear() {
+        this.mSize = 0;
+    }
+
+}
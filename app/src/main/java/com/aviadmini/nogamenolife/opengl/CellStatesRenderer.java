@@ -0,0 +1,108 @@
+package com.aviadmini.nogamenolife.opengl;
+
+import android.opengl.GLSurfaceView;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.nogamenolife.compute.Rule;
+
+/**
+ * Renderer that keeps Game of Life board on GPU and computes a generation per frame. All methods must be called on the thread its GL
+ * context is current on. Reporting the same size to {@link #onSurfaceChanged} again keeps textures and board as they are
+ */
+public interface CellStatesRenderer
+        extends GLSurfaceView.Renderer {
+
+    /**
+     * @return lowest OpenGL ES version the context can be created with
+     */
+    int getContextClientVersion();
+
+    /**
+     * Computes given number of generations as back to back passes, without reading anything back in between. Passes are only submitted,
+     * GPU may still be busy with them when this returns
+     *
+     * @param pGenerations number of generations, >0
+     */
+    void drawGenerations(final int pGenerations);
+
+    /**
+     * Sets cell state. Implementations may queue the edit and apply all queued ones as one batch before board is next computed, read or
+     * drawn
+     */
+    void changeCellState(final int pCellPosition, final int pNewState);
+
+    /**
+     * @return cell state, edits that are still queued included
+     */
+    int getCellState(final int pCellPosition);
+
+    /**
+     * Reads cell states back from GPU
+     *
+     * @param pCellStates destination, width * height in size
+     */
+    void getCellStates(@NonNull final int[] pCellStates);
+
+    /**
+     * Reads cell states of a part of the board back from GPU
+     *
+     * @param pCellStates destination, width * height in size, cells outside of the part are left untouched
+     * @param pLeft       left column of the part
+     * @param pTop        top row of the part
+     * @param pRight      column after the right one of the part
+     * @param pBottom     row after the bottom one of the part
+     */
+    void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight, final int pBottom);
+
+    /**
+     * Reads cell states of a single row back from GPU
+     *
+     * @param pY          row
+     * @param pCellStates destination, width in size at least
+     */
+    void getRowCellStates(final int pY, @NonNull final int[] pCellStates);
+
+    /**
+     * Starts reading a part of the board back without waiting for GPU, so that {@link #getCellStates(int[], int, int, int, int)} for the
+     * same part finds it ready unless board changes in between. Does nothing where asynchronous readback is not available
+     */
+    void prefetchCellStates(final int pLeft, final int pTop, final int pRight, final int pBottom);
+
+    void clear();
+
+    /**
+     * Replaces the whole board, e.g. when renderer is reused by another engine. Textures are kept
+     *
+     * @param pCellStates cell states, width * height in size, or null for an empty board
+     */
+    void setCellStates(@Nullable final int[] pCellStates);
+
+    /**
+     * Replaces a single row of the board, e.g. when a snapshot is streamed in. Edits queued before are applied first
+     *
+     * @param pY          row
+     * @param pCellStates source, a byte per cell
+     * @param pOffset     index of the first cell of the row in source
+     */
+    void setRow(final int pY, @NonNull final byte[] pCellStates, final int pOffset);
+
+    /**
+     * Sets rule next generations are computed with, {@link Rule#CONWAY} until then. Board is kept
+     *
+     * @throws IllegalArgumentException if renderer can not compute given rule
+     */
+    void setRule(@NonNull final Rule pRule);
+
+    /**
+     * Draws current generation straight from its texture into the bound framebuffer, scaled so that given part of the board fills the
+     * viewport. Alive cells are black, dead cells and anything outside of the board are light gray
+     *
+     * @param pLeft   board X at the left edge of the viewport, in cells, may be fractional or off board. Same for the other edges
+     * @param pTop    board Y at the top edge of the viewport
+     * @param pRight  board X at the right edge of the viewport
+     * @param pBottom board Y at the bottom edge of the viewport
+     */
+    void drawCellStates(final float pLeft, final float pTop, final float pRight, final float pBottom);
+
+}
@@ -0,0 +1,75 @@
+package com.aviadmini.nogamenolife.opengl;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps offscreen contexts of destroyed OpenGL engines for the next ones, together with their renderers, compiled shader programs and
+ * textures. An engine swap or activity restart then only uploads board contents instead of setting EGL and GL state up again.
+ * <p>
+ * At most one idle context is kept per renderer class and OpenGL ES version. Contexts are not current on any thread while idle
+ */
+public class GLContextPool {
+
+    private static final Map<String, OffscreenGLContextManager> IDLE = new HashMap<String, OffscreenGLContextManager>();
+
+    /**
+     * Takes an idle context out of the pool. Caller makes it current on its thread
+     *
+     * @param pRendererClass  class of renderer the context was created with
+     * @param pClientVersion  OpenGL ES version the context was created with
+     * @return context with its renderer or null if there is no such context
+     */
+    @Nullable
+    public static synchronized OffscreenGLContextManager acquire(@NonNull final Class<?> pRendererClass, final int pClientVersion) {
+        return IDLE.remove(getKey(pRendererClass, pClientVersion));
+    }
+
+    /**
+     * Puts context back to the pool for the next engine. Context should not be current on any thread, calling one included. Destroys it
+     * instead if the pool already has an idle context of the same kind
+     */
+    public static synchronized void release(@NonNull final OffscreenGLContextManager pOffscreen) {
+
+        if (!pOffscreen.isCreated()) {
+            return;
+        }
+
+        final String key = getKey(pOffscreen.getRenderer()
+                                            .getClass(), pOffscreen.getClientVersion());
+
+        if (IDLE.containsKey(key)) {
+
+            pOffscreen.destroy();
+
+            return;
+        }
+
+        IDLE.put(key, pOffscreen);
+
+    }
+
+    /**
+     * Destroys all idle contexts and everything in them, e.g. when app is finishing. Calling thread should have no context current
+     */
+    public static synchronized void clear() {
+
+        for (final OffscreenGLContextManager offscreen : IDLE.values()) {
+            offscreen.destroy();
+        }
+
+        IDLE.clear();
+
+    }
+
+    private static String getKey(@NonNull final Class<?> pRendererClass, final int pClientVersion) {
+        return pRendererClass.getName() + ':' + pClientVersion;
+    }
+
+    private GLContextPool() {
+    }
+
+}
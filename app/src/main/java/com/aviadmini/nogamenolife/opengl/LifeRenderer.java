@@ -1,22 +1,24 @@
 package com.aviadmini.nogamenolife.opengl;
 
-import android.graphics.Color;
 import android.opengl.GLES20;
-import android.opengl.GLSurfaceView;
+import android.opengl.GLES30;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.aviadmini.nogamenolife.compute.LifeCompute;
+import com.aviadmini.nogamenolife.compute.Rule;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Locale;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class LifeRenderer
-        implements GLSurfaceView.Renderer {
+        implements CellStatesRenderer {
 
     private static final int HANDLE_INVALID = -1;
 
@@ -35,7 +37,8 @@ public class LifeRenderer
                     "}";
 
 
-    // For easier processing black is dead, white is alive
+    // For easier processing black is dead, white is alive. Conway's rule. Neighbours wrap around the edges in the shader, so the board is
+    // a torus like in the other engines: ES 2.0 does not repeat textures that are not a power of two in size
     private static final String FRAGMENT_SHADER = //
             "precision mediump float;\n" +
                     "precision lowp sampler2D;\n" +
@@ -47,7 +50,7 @@ public class LifeRenderer
                     "varying vec2 v_texture_coord;\n" +
                     "\n" +
                     "float get(float x, float y) {\n" +
-                    "    return texture2D(t_texture, v_texture_coord + vec2(x, y)).r;\n" +
+                    "    return texture2D(t_texture, fract(v_texture_coord + vec2(x, y))).r;\n" +
                     "}\n" +
                     "\n" +
                     "void main() {\n" +
@@ -69,6 +72,149 @@ public class LifeRenderer
                     "    }\n" +
                     "}";
 
+    // Other totalistic rules, RULE_BIRTH and RULE_SURVIVAL are replaced with conditions on the sum. Only alive cells are counted, dying
+    // ones of generations rules are in between black and white and move one texel value down per generation, see toTexel(int)
+    private static final String TOTALISTIC_FRAGMENT_SHADER = //
+            "precision mediump float;\n" +
+                    "precision lowp sampler2D;\n" +
+                    "\n" +
+                    "uniform sampler2D t_texture;\n" +
+                    "\n" +
+                    "uniform vec2 u_chunk_size;\n" +
+                    "\n" +
+                    "varying vec2 v_texture_coord;\n" +
+                    "\n" +
+                    "float get(float x, float y) {\n" +
+                    "    return step(0.998, texture2D(t_texture, fract(v_texture_coord + vec2(x, y))).r);\n" +
+                    "}\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    float sum = get(-u_chunk_size.x, -u_chunk_size.y) +\n" +
+                    "                get(-u_chunk_size.x, 0.0) +\n" +
+                    "                get(-u_chunk_size.x, u_chunk_size.y) +\n" +
+                    "                get(0.0, -u_chunk_size.y) +\n" +
+                    "                get(0.0,  u_chunk_size.y) +\n" +
+                    "                get(u_chunk_size.x, -u_chunk_size.y) +\n" +
+                    "                get(u_chunk_size.x, 0.0) +\n" +
+                    "                get(u_chunk_size.x, u_chunk_size.y);\n" +
+                    "    float cell = texture2D(t_texture, v_texture_coord).r;\n" +
+                    "    float next;\n" +
+                    "    if (cell > 0.998) {\n" +
+                    "        next = (RULE_SURVIVAL) ? 1.0 : RULE_DYING;\n" +
+                    "    } else if (cell < 0.002) {\n" +
+                    "        next = (RULE_BIRTH) ? 1.0 : 0.0;\n" +
+                    "    } else {\n" +
+                    "        next = cell * 255.0 > RULE_LAST_DYING ? cell - 1.0 / 255.0 : 0.0;\n" +
+                    "    }\n" +
+                    "    gl_FragColor = vec4(next, next, next, 1.0);\n" +
+                    "}";
+
+    // Rules that are not totalistic: alive cells weighted by their neighbourhood bits add up to a texel of 32x16 table of next states.
+    // Dying cells decay as above
+    private static final String NEIGHBOURHOOD_FRAGMENT_SHADER = //
+            "precision mediump float;\n" +
+                    "precision lowp sampler2D;\n" +
+                    "\n" +
+                    "uniform sampler2D t_texture;\n" +
+                    "uniform sampler2D t_rule;\n" +
+                    "\n" +
+                    "uniform vec2 u_chunk_size;\n" +
+                    "\n" +
+                    "varying vec2 v_texture_coord;\n" +
+                    "\n" +
+                    "float get(float x, float y) {\n" +
+                    "    return step(0.998, texture2D(t_texture, fract(v_texture_coord + vec2(x, y))).r);\n" +
+                    "}\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    float n = get(-u_chunk_size.x, -u_chunk_size.y) +\n" +
+                    "              get(0.0, -u_chunk_size.y) * 2.0 +\n" +
+                    "              get(u_chunk_size.x, -u_chunk_size.y) * 4.0 +\n" +
+                    "              get(-u_chunk_size.x, 0.0) * 8.0 +\n" +
+                    "              get(0.0, 0.0) * 16.0 +\n" +
+                    "              get(u_chunk_size.x, 0.0) * 32.0 +\n" +
+                    "              get(-u_chunk_size.x, u_chunk_size.y) * 64.0 +\n" +
+                    "              get(0.0, u_chunk_size.y) * 128.0 +\n" +
+                    "              get(u_chunk_size.x, u_chunk_size.y) * 256.0;\n" +
+                    "    float row = floor(n / 32.0);\n" +
+                    "    float next = texture2D(t_rule, vec2((n - row * 32.0 + 0.5) / 32.0, (row + 0.5) / 16.0)).r;\n" +
+                    "    float cell = texture2D(t_texture, v_texture_coord).r;\n" +
+                    "    if (cell > 0.002 && cell < 0.998) {\n" +
+                    "        next = cell * 255.0 > RULE_LAST_DYING ? cell - 1.0 / 255.0 : 0.0;\n" +
+                    "    }\n" +
+                    "    gl_FragColor = vec4(next, next, next, 1.0);\n" +
+                    "}";
+
+    private static final int RULE_TEXTURE_WIDTH  = 32;
+    private static final int RULE_TEXTURE_HEIGHT = 16;
+
+    // Fragments get board coordinates of the point they cover, interpolated between viewport edges
+    private static final String DISPLAY_VERTEX_SHADER = //
+            "attribute vec4 a_vertex_coord;\n" +
+                    "\n" +
+                    "uniform vec4 u_region;\n" +
+                    "\n" +
+                    "varying vec2 v_cell;\n" +
+                    "\n" +
+                    "void main()\n" +
+                    "{\n" +
+                    "    vec2 f = a_vertex_coord.xy * 0.5 + 0.5;\n" +
+                    "    v_cell = vec2(mix(u_region.x, u_region.z, f.x), mix(u_region.w, u_region.y, f.y));\n" +
+                    "    gl_Position = a_vertex_coord;\n" +
+                    "}";
+
+    // Board coordinates need more than mediump on large boards where available
+    private static final String DISPLAY_FRAGMENT_SHADER = //
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+                    "precision highp float;\n" +
+                    "#else\n" +
+                    "precision mediump float;\n" +
+                    "#endif\n" +
+                    "\n" +
+                    "uniform sampler2D t_texture;\n" +
+                    "\n" +
+                    "uniform vec2 u_board_size;\n" +
+                    "\n" +
+                    "varying vec2 v_cell;\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    vec2 uv = v_cell / u_board_size;\n" +
+                    "    float cell = texture2D(t_texture, uv).r;\n" +
+                    "    if (uv.x < 0.0 || uv.y < 0.0 || uv.x >= 1.0 || uv.y >= 1.0) {\n" +
+                    "        cell = 0.0;\n" +
+                    "    }\n" +
+                    "    vec4 dead = vec4(0.8, 0.8, 0.8, 1.0);\n" +
+                    "    if (cell > 0.998) {\n" +
+                    "        gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);\n" +
+                    "    } else {\n" +
+                    "        gl_FragColor = mix(dead, vec4(0.2, 0.3, 0.8, 1.0), cell);\n" +
+                    "    }\n" +
+                    "}";
+
+    // Every edit is a point in framebuffer coordinates with state as the third component
+    private static final String EDIT_VERTEX_SHADER = //
+            "attribute vec3 a_point;\n" +
+                    "\n" +
+                    "varying float v_state;\n" +
+                    "\n" +
+                    "void main()\n" +
+                    "{\n" +
+                    "    v_state = a_point.z;\n" +
+                    "    gl_PointSize = 1.0;\n" +
+                    "    gl_Position = vec4(a_point.xy, 0.0, 1.0);\n" +
+                    "}";
+
+    private static final String EDIT_FRAGMENT_SHADER = //
+            "precision mediump float;\n" +
+                    "\n" +
+                    "varying float v_state;\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    gl_FragColor = vec4(v_state, v_state, v_state, 1.0);\n" +
+                    "}";
+
+    private static final int EDIT_POINT_FLOATS = 3;
+
     private final Callback mCallback;
 
     private int[] mInitialStates;
@@ -89,19 +235,68 @@ public class LifeRenderer
 
     private boolean mUsingOne;
 
+    // rule compute program is built for, its table texture only exists for rules that are not totalistic
+    private Rule mRule = Rule.CONWAY;
+
+    private int mRuleTextureHandle = HANDLE_INVALID;
+
     private int mGLSamplerTextureLocation;
+    private int mGLSamplerRuleLocation;
     private int mGLUniformChunkSizeLocation;
     private int mGLAttributeVertexCoordinateLocation;
     private int mGLAttributeTextureCoordinateLocation;
 
+    // draws board to screen, built on first use
+    private int mDisplayProgramHandle = HANDLE_INVALID;
+
+    private int mGLDisplaySamplerTextureLocation;
+    private int mGLDisplayUniformRegionLocation;
+    private int mGLDisplayUniformBoardSizeLocation;
+    private int mGLDisplayAttributeVertexCoordinateLocation;
+
     private final float[] mQuad = UtilsGL.getQuadFbo();
     protected final FloatBuffer mAttributeBuffer;
 
-    private IntBuffer mPixelsIntBuffer;
-    private IntBuffer mOnePixelIntBuffer;
+    // a byte per cell in OpenGL ES 3.0 context, RGBA otherwise since ES 2.0 cannot render to single channel textures
+    private int mTextureInternalFormat = GLES20.GL_RGBA;
+    private int mTextureFormat         = GLES20.GL_RGBA;
+    private int mTextureBytesPerPixel  = 4;
+
+    // a byte per cell where implementation reads single channel framebuffer as GL_RED, RGBA otherwise
+    private int mReadFormat        = GLES20.GL_RGBA;
+    private int mReadBytesPerPixel = 4;
+
+    // red channel comes first in every format, it alone tells the state
+    private ByteBuffer mPixelsByteBuffer;
+    private ByteBuffer mOnePixelByteBuffer;
 
-    private int[] mCellStatesGL;
-    private int[] mConvertedCellStates;
+    // a row of read back pixels, copied out of buffer in bulk before conversion
+    private byte[] mPixelsRow;
+
+    // edits not on GPU yet, drawn as one batch of points into current generation before anything else uses it
+    private final CellEditQueue mEdits = new CellEditQueue();
+
+    private FloatBuffer mEditPointsBuffer;
+
+    private int mEditProgramHandle = HANDLE_INVALID;
+
+    private int mGLEditAttributePointLocation;
+
+    // host copy of cell states, a byte per cell, current within shadow rectangle while valid. Serves single cell reads without GPU
+    private byte[] mShadow;
+
+    private boolean mShadowValid;
+
+    private int mShadowLeft;
+    private int mShadowTop;
+    private int mShadowRight;
+    private int mShadowBottom;
+
+    // asynchronous readback, null where context is not OpenGL ES 3.0
+    private PixelPackReader mPixelPackReader;
+
+    // changes with every generation and edit, tells whether a readback started earlier is still current
+    private long mStateVersion;
 
     public LifeRenderer(final Callback pCallback) {
         this(pCallback, null);
@@ -129,9 +324,19 @@ public class LifeRenderer
 
         this.clearBlack();
 
-        final ByteBuffer onePixelByteBuffer = ByteBuffer.allocateDirect(UtilsGL.BYTES_PER_FLOAT);
-        onePixelByteBuffer.order(ByteOrder.nativeOrder());
-        this.mOnePixelIntBuffer = onePixelByteBuffer.asIntBuffer();
+        this.mOnePixelByteBuffer = ByteBuffer.allocateDirect(UtilsGL.BYTES_PER_FLOAT);
+
+        if (UtilsGL.isContextES3()) {
+
+            this.mTextureInternalFormat = GLES30.GL_R8;
+            this.mTextureFormat = GLES30.GL_RED;
+            this.mTextureBytesPerPixel = 1;
+
+        }
+
+        // single channel rows are not 4-byte aligned
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 1);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
 
         this.createShaderProgram();
 
@@ -144,44 +349,60 @@ public class LifeRenderer
     @Override
     public void onSurfaceChanged(final GL10 pGL10Unused, final int pWidth, final int pHeight) {
 
+        // textures are only reallocated when board size actually changes
+        if (pWidth == this.mWidth && pHeight == this.mHeight && this.mTextureOneHandle != HANDLE_INVALID) {
+            return;
+        }
+
         this.mWidth = pWidth;
         this.mHeight = pHeight;
 
         this.mChunkX = 1.0f / pWidth;
         this.mChunkY = 1.0f / pHeight;
 
-        final ByteBuffer pixelsByteBuffer = ByteBuffer.allocateDirect(pWidth * pHeight * UtilsGL.BYTES_PER_FLOAT);
-        pixelsByteBuffer.order(ByteOrder.nativeOrder());
-        this.mPixelsIntBuffer = pixelsByteBuffer.asIntBuffer();
+        this.mShadow = new byte[pWidth * pHeight];
+
+        this.mEdits.clear();
+
+        GLES20.glViewport(0, 0, pWidth, pHeight);
+
+        this.createTextures();
+
+        this.createFramebuffers();
+
+        this.chooseReadFormat();
+
+        // uploads take texture format, readbacks that do not go through pixel pack buffer take read format
+        final int bytesPerPixel = Math.max(this.mTextureBytesPerPixel, this.mReadBytesPerPixel);
+
+        this.mPixelsByteBuffer = ByteBuffer.allocateDirect(pWidth * pHeight * bytesPerPixel);
 
-        this.mCellStatesGL = new int[pWidth * pHeight];
-        this.mConvertedCellStates = new int[pWidth * pHeight];
+        this.mPixelsRow = new byte[pWidth * this.mReadBytesPerPixel];
 
         if (this.mInitialStates != null && this.mInitialStates.length == pWidth * pHeight) {
-            // Timber.v("initWithCellStates: %s", Arrays.toString(this.mInitialStates));
             this.initWithCellStates(this.mInitialStates);
         } else {
-            //            Timber.v("init blank");
+            this.initWithCellStates(null);
+        }
 
-            for (int i = this.mCellStatesGL.length - 1; i >= 0; i--) {
+        // renderer may outlive the engine it was created for, so initial states are not kept
+        this.mInitialStates = null;
 
-                this.mCellStatesGL[i] = Color.BLACK;
-                this.convertCellStates();
+        this.applyInitialStates();
 
-            }
+        if (this.mPixelPackReader != null) {
 
-        }
+            this.mPixelPackReader.destroy();
 
-        this.mPixelsIntBuffer.rewind();
-        this.mPixelsIntBuffer.put(this.mCellStatesGL);
+            this.mPixelPackReader = null;
 
-        GLES20.glViewport(0, 0, pWidth, pHeight);
-
-        this.createTextures();
+        }
 
-        this.createFramebuffers();
+        if (UtilsGL.isContextES3()) {
+            this.mPixelPackReader = new PixelPackReader(pWidth * pHeight, this.mReadFormat, this.mReadBytesPerPixel);
+        }
 
-        this.applyInitialStates();
+        this.mStateVersion++;
 
         UtilsGL.logErrorGL("onSurfaceChanged end");
 
@@ -189,10 +410,21 @@ public class LifeRenderer
 
     @Override
     public void onDrawFrame(final GL10 pGL10Unused) {
+        this.drawGenerations(1);
+    }
+
+    @Override
+    public void drawGenerations(final int pGenerations) {
 
-        // framebuffer bind
+        this.flushEdits();
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getToFBO());
+        this.mStateVersion++;
+
+        this.mShadowValid = false;
+
+        // board may have been drawn to a window of another size since last batch
+
+        GLES20.glViewport(0, 0, this.mWidth, this.mHeight);
 
         // shader program
 
@@ -201,7 +433,6 @@ public class LifeRenderer
         // texture
 
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
 
         GLES20.glUniform1i(this.mGLSamplerTextureLocation, 0);
 
@@ -220,34 +451,350 @@ public class LifeRenderer
 
         GLES20.glUniform2f(this.mGLUniformChunkSizeLocation, this.mChunkX, this.mChunkY);
 
-        // draw call
+        if (this.mRuleTextureHandle != HANDLE_INVALID) {
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, this.mQuad.length / 4);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.mRuleTextureHandle);
+
+            GLES20.glUniform1i(this.mGLSamplerRuleLocation, 1);
+
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        }
+
+        // ping-pong passes, state above is shared by all of them
+
+        for (int i = 0; i < pGenerations; i++) {
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getToFBO());
+
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
 
-        // swap from & to FBOs
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, this.mQuad.length / 4);
 
-        this.mUsingOne = !this.mUsingOne;
+            // swap from & to FBOs
+
+            this.mUsingOne = !this.mUsingOne;
+
+            if (this.mCallback != null) {
+                this.mCallback.onFrameDrawn();
+            }
+
+        }
 
         // deactivate attributes
 
         this.deactivateAttributes();
 
-        // framebuffer unbind
+        // texture & framebuffer unbind
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        if (this.mRuleTextureHandle != HANDLE_INVALID) {
+
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        }
 
         GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
 
-        // callback
+        // submit passes without waiting for them, nothing is read back until cell states are requested
+
+        GLES20.glFlush();
+
+        UtilsGL.logErrorGL("drawGenerations end");
+
+    }
+
+    @Override
+    public int getContextClientVersion() {
+        return 2;
+    }
+
+    @Override
+    public void drawCellStates(final float pLeft, final float pTop, final float pRight, final float pBottom) {
+
+        if (!this.mEdits.isEmpty()) {
+
+            // edits are drawn to board's framebuffer, window's one and its viewport need to be restored afterwards
+            final int[] viewport = new int[4];
+
+            GLES20.glGetIntegerv(GLES20.GL_VIEWPORT, viewport, 0);
+
+            this.flushEdits();
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            GLES20.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
 
-        if (this.mCallback != null) {
-            this.mCallback.onFrameDrawn();
         }
 
-        UtilsGL.logErrorGL("onDrawFrame end");
+        if (this.mDisplayProgramHandle == HANDLE_INVALID) {
+            this.createDisplayProgram();
+        }
+
+        GLES20.glUseProgram(this.mDisplayProgramHandle);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glUniform1i(this.mGLDisplaySamplerTextureLocation, 0);
+
+        GLES20.glUniform4f(this.mGLDisplayUniformRegionLocation, pLeft, pTop, pRight, pBottom);
+        GLES20.glUniform2f(this.mGLDisplayUniformBoardSizeLocation, this.mWidth, this.mHeight);
+
+        GLES20.glEnableVertexAttribArray(this.mGLDisplayAttributeVertexCoordinateLocation);
+
+        this.mAttributeBuffer.position(0);
+        GLES20.glVertexAttribPointer(this.mGLDisplayAttributeVertexCoordinateLocation, 2, GLES20.GL_FLOAT, false,
+                4 * UtilsGL.BYTES_PER_FLOAT, this.mAttributeBuffer);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, this.mQuad.length / 4);
+
+        GLES20.glDisableVertexAttribArray(this.mGLDisplayAttributeVertexCoordinateLocation);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        UtilsGL.logErrorGL("drawCellStates end");
 
     }
 
+    /**
+     * Draws queued edits into current generation as one batch of points, so that any number of them costs a single draw call and no
+     * readback
+     */
+    private void flushEdits() {
+
+        if (this.mEdits.isEmpty()) {
+            return;
+        }
+
+        if (this.mEditProgramHandle == HANDLE_INVALID) {
+
+            this.mEditProgramHandle = UtilsGL.createShaderProgram(EDIT_VERTEX_SHADER, EDIT_FRAGMENT_SHADER);
+
+            this.mGLEditAttributePointLocation = GLES20.glGetAttribLocation(this.mEditProgramHandle, "a_point");
+
+        }
+
+        final int count = this.mEdits.size();
+
+        if (this.mEditPointsBuffer == null || this.mEditPointsBuffer.capacity() < count * EDIT_POINT_FLOATS) {
+            this.mEditPointsBuffer = ByteBuffer.allocateDirect(count * 2 * EDIT_POINT_FLOATS * UtilsGL.BYTES_PER_FLOAT)
+                                               .order(ByteOrder.nativeOrder())
+                                               .asFloatBuffer();
+        }
+
+        final FloatBuffer points = this.mEditPointsBuffer;
+
+        points.clear();
+
+        // centres of cells in normalized device coordinates, framebuffer row y holds board row y
+        final float scaleX = 2.0f / this.mWidth;
+        final float scaleY = 2.0f / this.mHeight;
+
+        for (int i = 0; i < count; i++) {
+
+            final int position = this.mEdits.getCellPosition(i);
+
+            points.put((position % this.mWidth + 0.5f) * scaleX - 1.0f)
+                  .put((position / this.mWidth + 0.5f) * scaleY - 1.0f)
+                  .put((toTexel(this.mEdits.getState(i)) & 0xFF) / 255.0f);
+
+        }
+
+        points.position(0);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+
+        GLES20.glViewport(0, 0, this.mWidth, this.mHeight);
+
+        GLES20.glUseProgram(this.mEditProgramHandle);
+
+        GLES20.glEnableVertexAttribArray(this.mGLEditAttributePointLocation);
+
+        GLES20.glVertexAttribPointer(this.mGLEditAttributePointLocation, EDIT_POINT_FLOATS, GLES20.GL_FLOAT, false,
+                EDIT_POINT_FLOATS * UtilsGL.BYTES_PER_FLOAT, points);
+
+        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, count);
+
+        GLES20.glDisableVertexAttribArray(this.mGLEditAttributePointLocation);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        this.mEdits.clear();
+
+        UtilsGL.logErrorGL("flushEdits end");
+
+    }
+
+    private void createDisplayProgram() {
+
+        this.mDisplayProgramHandle = UtilsGL.createShaderProgram(DISPLAY_VERTEX_SHADER, DISPLAY_FRAGMENT_SHADER);
+
+        this.mGLDisplayAttributeVertexCoordinateLocation = GLES20.glGetAttribLocation(this.mDisplayProgramHandle, "a_vertex_coord");
+
+        this.mGLDisplaySamplerTextureLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "t_texture");
+        this.mGLDisplayUniformRegionLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "u_region");
+        this.mGLDisplayUniformBoardSizeLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "u_board_size");
+
+    }
+
+    /**
+     * Builds compute program for current rule, along with its table texture if rule needs one
+     */
     private void createShaderProgram() {
-        this.mShaderProgramHandle = UtilsGL.createShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+
+        this.destroyRuleTexture();
+
+        final String fragmentShader;
+
+        if (Rule.CONWAY.equals(this.mRule)) {
+            fragmentShader = FRAGMENT_SHADER;
+        } else if (this.mRule.isTotalistic()) {
+            fragmentShader = TOTALISTIC_FRAGMENT_SHADER.replace("RULE_BIRTH", getSumCondition(this.mRule.getBirthCounts()))
+                                                       .replace("RULE_SURVIVAL", getSumCondition(this.mRule.getSurvivalCounts()))
+                                                       .replace("RULE_DYING", this.mRule.getStates() > 2 ? "254.0 / 255.0" : "0.0")
+                                                       .replace("RULE_LAST_DYING", getLastDyingCondition(this.mRule));
+        } else {
+
+            fragmentShader = NEIGHBOURHOOD_FRAGMENT_SHADER.replace("RULE_LAST_DYING", getLastDyingCondition(this.mRule));
+
+            this.createRuleTexture();
+
+        }
+
+        this.mShaderProgramHandle = UtilsGL.createShaderProgram(VERTEX_SHADER, fragmentShader);
+
+    }
+
+    /**
+     * @param pCounts bit n is set if sum of n matches
+     * @return GLSL condition on the sum
+     */
+    private static String getSumCondition(final int pCounts) {
+
+        final StringBuilder condition = new StringBuilder();
+
+        for (int count = 0; count <= 8; count++) {
+
+            if ((pCounts & (1 << count)) == 0) {
+                continue;
+            }
+
+            if (condition.length() > 0) {
+                condition.append(" || ");
+            }
+
+            condition.append("sum == ")
+                     .append(count)
+                     .append(".0");
+
+        }
+
+        return condition.length() > 0 ? condition.toString() : "false";
+    }
+
+    /**
+     * @return texel value times 255 dying cells have to be above to decay to the next dying state rather than to dead
+     */
+    private static String getLastDyingCondition(@NonNull final Rule pRule) {
+
+        // dying state s is 256 - s, so the last one, states - 1, is 257 - states
+        return String.format(Locale.US, "%.1f", 257.5f - pRule.getStates());
+    }
+
+    private void createRuleTexture() {
+
+        final ByteBuffer table = ByteBuffer.allocateDirect(RULE_TEXTURE_WIDTH * RULE_TEXTURE_HEIGHT);
+
+        for (int neighbourhood = 0; neighbourhood < RULE_TEXTURE_WIDTH * RULE_TEXTURE_HEIGHT; neighbourhood++) {
+            table.put(toTexel(this.mRule.getNextState(neighbourhood)));
+        }
+
+        table.position(0);
+
+        final int[] ids = new int[1];
+
+        GLES20.glGenTextures(1, ids, 0);
+
+        this.mRuleTextureHandle = ids[0];
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.mRuleTextureHandle);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, RULE_TEXTURE_WIDTH, RULE_TEXTURE_HEIGHT, 0, GLES20.GL_LUMINANCE,
+                GLES20.GL_UNSIGNED_BYTE, table);
+
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    }
+
+    private void destroyRuleTexture() {
+
+        if (this.mRuleTextureHandle != HANDLE_INVALID) {
+
+            final int[] ids = {this.mRuleTextureHandle};
+            GLES20.glDeleteTextures(1, ids, 0);
+
+            this.mRuleTextureHandle = HANDLE_INVALID;
+
+        }
+
+    }
+
+    /**
+     * Rebuilds compute program if rule differs from the one it was built for. Cells in states new rule does not have die
+     */
+    @Override
+    public void setRule(@NonNull final Rule pRule) {
+
+        if (this.mRule.equals(pRule)) {
+            return;
+        }
+
+        final boolean fewerStates = pRule.getStates() < this.mRule.getStates();
+
+        this.mRule = pRule;
+
+        // program is built in onSurfaceCreated() if it was not yet
+        if (this.mShaderProgramHandle == HANDLE_INVALID) {
+            return;
+        }
+
+        if (fewerStates) {
+
+            // rare enough to go through host memory
+            final int[] cellStates = new int[this.mWidth * this.mHeight];
+
+            this.getCellStates(cellStates);
+
+            for (int i = 0; i < cellStates.length; i++) {
+
+                if (cellStates[i] >= pRule.getStates()) {
+                    cellStates[i] = LifeCompute.STATE_DEAD;
+                }
+
+            }
+
+            this.setCellStates(cellStates);
+
+        }
+
+        GLES20.glDeleteProgram(this.mShaderProgramHandle);
+
+        this.createShaderProgram();
+
+        this.createAttributesAndUniforms();
+
+        UtilsGL.logErrorGL("setRule end");
+
     }
 
     private void createAttributesAndUniforms() {
@@ -258,6 +805,7 @@ public class LifeRenderer
         this.mGLUniformChunkSizeLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "u_chunk_size");
 
         this.mGLSamplerTextureLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "t_texture");
+        this.mGLSamplerRuleLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "t_rule");
 
     }
 
@@ -289,8 +837,8 @@ public class LifeRenderer
         this.mTextureTwoHandle = ids[1];
 
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.mTextureOneHandle);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, this.mWidth, this.mHeight, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
-                null);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, this.mTextureInternalFormat, this.mWidth, this.mHeight, 0, this.mTextureFormat,
+                GLES20.GL_UNSIGNED_BYTE, null);
 
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
@@ -298,8 +846,8 @@ public class LifeRenderer
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.mTextureTwoHandle);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, this.mWidth, this.mHeight, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
-                null);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, this.mTextureInternalFormat, this.mWidth, this.mHeight, 0, this.mTextureFormat,
+                GLES20.GL_UNSIGNED_BYTE, null);
 
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
@@ -347,14 +895,45 @@ public class LifeRenderer
 
     }
 
+    /**
+     * Reads single channel where implementation offers GL_RED as its preferred read format for the framebuffer, GL_RGBA is the only one
+     * guaranteed otherwise
+     */
+    private void chooseReadFormat() {
+
+        this.mReadFormat = GLES20.GL_RGBA;
+        this.mReadBytesPerPixel = 4;
+
+        if (this.mTextureFormat != GLES30.GL_RED) {
+            return;
+        }
+
+        final int[] value = new int[2];
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferOneHandle);
+
+        GLES20.glGetIntegerv(GLES20.GL_IMPLEMENTATION_COLOR_READ_FORMAT, value, 0);
+        GLES20.glGetIntegerv(GLES20.GL_IMPLEMENTATION_COLOR_READ_TYPE, value, 1);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        if (value[0] == GLES30.GL_RED && value[1] == GLES20.GL_UNSIGNED_BYTE) {
+
+            this.mReadFormat = GLES30.GL_RED;
+            this.mReadBytesPerPixel = 1;
+
+        }
+
+    }
+
     private void applyInitialStates() {
 
-        this.mPixelsIntBuffer.rewind();
+        this.mPixelsByteBuffer.rewind();
 
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
 
-        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, this.mWidth, this.mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
-                this.mPixelsIntBuffer);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, this.mWidth, this.mHeight, this.mTextureFormat, GLES20.GL_UNSIGNED_BYTE,
+                this.mPixelsByteBuffer);
 
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
 
@@ -420,51 +999,61 @@ public class LifeRenderer
         return this.mUsingOne ? this.mTextureOneHandle : this.mTextureTwoHandle;
     }
 
+    /**
+     * Only queues the edit, it reaches GPU with the rest of the batch before board is used next time
+     */
+    @Override
     public synchronized void changeCellState(final int pCellPosition, final int pNewState) {
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
-
-        final int newStateGL = pNewState == LifeCompute.STATE_ALIVE ? Color.WHITE : Color.BLACK;
-        this.mOnePixelIntBuffer.put(0, newStateGL);
-
-        this.mOnePixelIntBuffer.rewind();
-
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
-
-        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, pCellPosition % this.mWidth, pCellPosition / this.mWidth, 1, 1, GLES20.GL_RGBA,
-                GLES20.GL_UNSIGNED_BYTE, this.mOnePixelIntBuffer);
+        final int x = pCellPosition % this.mWidth;
+        final int y = pCellPosition / this.mWidth;
 
-        //        Timber.v("pos = [" + pCellPosition % this.mWidth + ", " + pCellPosition / this.mWidth + "]");
+        this.mStateVersion++;
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        this.mEdits.add(pCellPosition, x, y, pNewState);
 
-        this.mCellStatesGL[pCellPosition] = newStateGL;
-        this.mConvertedCellStates[pCellPosition] = pNewState;
+        if (this.isShadowed(x, y)) {
+            this.mShadow[pCellPosition] = (byte) pNewState;
+        }
 
     }
 
+    /**
+     * Served from host copy when it is current for the cell, read from GPU otherwise
+     */
+    @Override
     public synchronized int getCellState(final int pCellPosition) {
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+        if (this.isShadowed(pCellPosition % this.mWidth, pCellPosition / this.mWidth)) {
+            return this.mShadow[pCellPosition] & 0xFF;
+        }
 
-        this.mOnePixelIntBuffer.rewind();
+        this.flushEdits();
 
-        GLES20.glReadPixels(pCellPosition % this.mWidth, pCellPosition / this.mWidth, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
-                this.mOnePixelIntBuffer);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        this.mOnePixelByteBuffer.rewind();
 
-        this.mCellStatesGL[pCellPosition] = this.mOnePixelIntBuffer.get(0);
-        this.mConvertedCellStates[pCellPosition] =
-                this.mCellStatesGL[pCellPosition] == Color.WHITE ? LifeCompute.STATE_ALIVE : LifeCompute.STATE_DEAD;
+        GLES20.glReadPixels(pCellPosition % this.mWidth, pCellPosition / this.mWidth, 1, 1, this.mReadFormat, GLES20.GL_UNSIGNED_BYTE,
+                this.mOnePixelByteBuffer);
 
-        //        Timber.v("cell pos = [%s, %s], value = %s", pCellPosition % this.mWidth, pCellPosition / this.mWidth, this.mCellStatesGL[pCellPosition]);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
 
-        return this.mConvertedCellStates[pCellPosition];
+        return toState(this.mOnePixelByteBuffer.get(0));
     }
 
+    @Override
     public synchronized void clear() {
 
+        this.mStateVersion++;
+
+        // queued edits are cleared along with the rest of the board
+        this.mEdits.clear();
+
+        Arrays.fill(this.mShadow, (byte) 0);
+
+        this.setShadowRegion(0, 0, this.mWidth, this.mHeight);
+
         GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferOneHandle);
         this.clearBlack();
 
@@ -475,6 +1064,55 @@ public class LifeRenderer
 
     }
 
+    @Override
+    public synchronized void setCellStates(@Nullable final int[] pCellStates) {
+
+        this.mStateVersion++;
+
+        this.mEdits.clear();
+
+        this.initWithCellStates(pCellStates);
+
+        this.applyInitialStates();
+
+    }
+
+    /**
+     * Uploads the row on its own, so that nothing board sized is needed on host
+     */
+    @Override
+    public synchronized void setRow(final int pY, @NonNull final byte[] pCellStates, final int pOffset) {
+
+        this.flushEdits();
+
+        this.mStateVersion++;
+
+        final int position = pY * this.mWidth;
+
+        this.mPixelsByteBuffer.clear();
+
+        for (int x = 0; x < this.mWidth; x++) {
+
+            final int state = pCellStates[pOffset + x] & 0xFF;
+
+            this.putPixel(this.mPixelsByteBuffer, state);
+
+            // host copy is current wherever it was, the row included
+            this.mShadow[position + x] = (byte) state;
+
+        }
+
+        this.mPixelsByteBuffer.rewind();
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, pY, this.mWidth, 1, this.mTextureFormat, GLES20.GL_UNSIGNED_BYTE,
+                this.mPixelsByteBuffer);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    }
+
     private void clearBlack() {
 
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
@@ -482,58 +1120,195 @@ public class LifeRenderer
 
     }
 
-    @NonNull
-    public int[] getCellStates() {
+    @Override
+    public void getCellStates(@NonNull final int[] pCellStates) {
+        this.getCellStates(pCellStates, 0, 0, this.mWidth, this.mHeight);
+    }
 
-        this.mPixelsIntBuffer.rewind();
+    @Override
+    public void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight, final int pBottom) {
+        this.readCellStates(pCellStates, 0, pLeft, pTop, pRight, pBottom);
+    }
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+    @Override
+    public void getRowCellStates(final int pY, @NonNull final int[] pCellStates) {
+        this.readCellStates(pCellStates, pY * this.mWidth, 0, pY, this.mWidth, pY + 1);
+    }
 
-        GLES20.glReadPixels(0, 0, this.mWidth, this.mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, this.mPixelsIntBuffer);
+    /**
+     * Reads a part of the board back into destination and host copy
+     *
+     * @param pFirstPosition position of the cell destination starts with
+     */
+    private void readCellStates(@NonNull final int[] pCellStates, final int pFirstPosition, final int pLeft, final int pTop,
+                                final int pRight, final int pBottom) {
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        final int width = pRight - pLeft;
+        final int height = pBottom - pTop;
+
+        final ByteBuffer pixels = this.readPixels(pLeft, pTop, width, height);
+
+        final int bytesPerPixel = this.mReadBytesPerPixel;
+        final int stride = width * bytesPerPixel;
+
+        final byte[] row = this.mPixelsRow;
+        final byte[] shadow = this.mShadow;
 
-        this.mPixelsIntBuffer.rewind();
-        this.mPixelsIntBuffer.get(this.mCellStatesGL);
+        for (int y = 0; y < height; y++) {
 
-        this.convertCellStates();
+            pixels.position(y * stride);
+            pixels.get(row, 0, stride);
 
-        //Timber.v( "1. gl result: " + Arrays.toString(this.mCellStatesGL));
-        //Timber.v( "1. converted result: " + Arrays.toString(this.mConvertedCellStates));
+            final int position = (pTop + y) * this.mWidth + pLeft;
+
+            // state is in red channel, see toTexel(int)
+            for (int x = 0, i = 0; x < width; x++, i += bytesPerPixel) {
+
+                final int state = toState(row[i]);
+
+                pCellStates[position - pFirstPosition + x] = state;
+                shadow[position + x] = (byte) state;
+
+            }
+
+        }
+
+        if (this.mPixelPackReader != null) {
+            this.mPixelPackReader.unmap();
+        }
+
+        this.setShadowRegion(pLeft, pTop, pRight, pBottom);
 
-        return this.mConvertedCellStates;
     }
 
-    private void convertCellStates() {
+    @Override
+    public void prefetchCellStates(final int pLeft, final int pTop, final int pRight, final int pBottom) {
 
-        for (int i = this.mCellStatesGL.length - 1; i >= 0; i--) {
+        this.flushEdits();
 
-            if (this.mCellStatesGL[i] == Color.WHITE) {
-                this.mConvertedCellStates[i] = LifeCompute.STATE_ALIVE;
-            } else {
-                this.mConvertedCellStates[i] = LifeCompute.STATE_DEAD;
+        if (this.mPixelPackReader != null) {
+            this.mPixelPackReader.read(this.getFromFBO(), pLeft, pTop, pRight - pLeft, pBottom - pTop, this.mStateVersion);
+        }
+
+    }
+
+    /**
+     * Reads pixels of current generation, from a prefetched pixel pack buffer if there is one for this region. Pixel pack buffer stays
+     * mapped until caller unmaps it
+     */
+    private ByteBuffer readPixels(final int pX, final int pY, final int pWidth, final int pHeight) {
+
+        this.flushEdits();
+
+        if (this.mPixelPackReader != null) {
+
+            int slot = this.mPixelPackReader.find(this.mStateVersion, pX, pY, pWidth, pHeight);
+
+            if (slot == PixelPackReader.SLOT_NONE) {
+                slot = this.mPixelPackReader.read(this.getFromFBO(), pX, pY, pWidth, pHeight, this.mStateVersion);
             }
 
+            return this.mPixelPackReader.map(slot);
         }
 
+        this.mPixelsByteBuffer.clear();
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+
+        GLES20.glReadPixels(pX, pY, pWidth, pHeight, this.mReadFormat, GLES20.GL_UNSIGNED_BYTE, this.mPixelsByteBuffer);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        return this.mPixelsByteBuffer;
     }
 
+    /**
+     * Marks a freshly read part of the board as current in host copy. Host copy is current wherever it was read since last generation,
+     * but only one rectangle is tracked, the larger one
+     */
+    private void setShadowRegion(final int pLeft, final int pTop, final int pRight, final int pBottom) {
+
+        if (this.mShadowValid && (pRight - pLeft) * (pBottom - pTop) <
+                (this.mShadowRight - this.mShadowLeft) * (this.mShadowBottom - this.mShadowTop)) {
+            return;
+        }
+
+        this.mShadowLeft = pLeft;
+        this.mShadowTop = pTop;
+        this.mShadowRight = pRight;
+        this.mShadowBottom = pBottom;
+
+        this.mShadowValid = true;
+
+    }
+
+    private boolean isShadowed(final int pX, final int pY) {
+        return this.mShadowValid && pX >= this.mShadowLeft && pX < this.mShadowRight && pY >= this.mShadowTop && pY < this.mShadowBottom;
+    }
+
+    /**
+     * Fills pixels buffer with given cell states in texture format
+     *
+     * @param pCellStates cell states, width * height in size, or null for an empty board
+     */
     private void initWithCellStates(final int[] pCellStates) {
 
-        this.mConvertedCellStates = pCellStates.clone();
+        this.mPixelsByteBuffer.clear();
 
-        for (int i = this.mConvertedCellStates.length - 1; i >= 0; i--) {
+        for (int i = 0, size = this.mWidth * this.mHeight; i < size; i++) {
 
-            if (this.mConvertedCellStates[i] == LifeCompute.STATE_ALIVE) {
-                this.mCellStatesGL[i] = Color.WHITE;
-            } else {
-                this.mCellStatesGL[i] = Color.BLACK;
-            }
+            final int state = pCellStates != null && pCellStates[i] < Rule.STATES_MAX ? pCellStates[i] : LifeCompute.STATE_DEAD;
+
+            this.putPixel(this.mPixelsByteBuffer, state);
+
+            this.mShadow[i] = (byte) state;
+
+        }
+
+        this.mPixelsByteBuffer.rewind();
+
+        this.mShadowValid = false;
+
+        this.setShadowRegion(0, 0, this.mWidth, this.mHeight);
+
+    }
+
+    /**
+     * Puts a pixel in texture format, see {@link #toTexel(int)}
+     */
+    private void putPixel(@NonNull final ByteBuffer pPixels, final int pState) {
+
+        final byte value = toTexel(pState);
+
+        pPixels.put(value);
+
+        if (this.mTextureBytesPerPixel == 4) {
+
+            pPixels.put(value)
+                   .put(value)
+                   .put((byte) 0xFF);
 
         }
 
     }
 
+    /**
+     * Dead is black, alive is white and dying states of generations rules count down from just below white: state s is 256 - s. Alive
+     * stays the only texel at full intensity, and a dying cell decays by moving one value down
+     *
+     * @return red channel value of given state
+     */
+    private static byte toTexel(final int pState) {
+        return (byte) -pState;
+    }
+
+    /**
+     * @return state of given red channel value, see {@link #toTexel(int)}
+     */
+    private static int toState(final byte pTexel) {
+        return -pTexel & 0xFF;
+    }
+
     public interface Callback {
         void onFrameDrawn();
     }
@@ -1,7 +1,9 @@
 package com.aviadmini.nogamenolife.opengl;
 
+import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -10,14 +12,20 @@ import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.egl.EGLSurface;
 
 /**
- * Not every device supports this because of OpenGL extension it uses
+ * Not every device supports this because of OpenGL extension it uses. Context can also draw to a window surface, such as a
+ * TextureView's, between {@link #beginWindowFrame()} and {@link #endWindowFrame()}
  */
 public class OffscreenGLContextManager {
 
     private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
 
-    private final int mWidth;
-    private final int mHeight;
+    private static final int EGL_OPENGL_ES2_BIT     = 0x0004;
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+
+    private int mWidth;
+    private int mHeight;
+
+    private final int mClientVersion;
 
     private final GLSurfaceView.Renderer mRenderer;
 
@@ -26,21 +34,40 @@ public class OffscreenGLContextManager {
     private EGLContext mEGLContext;
     private EGLSurface mEGLSurface;
 
+    private EGLConfig  mEGLConfig;
+    private EGLSurface mEGLWindowSurface;
+
+    // config can back window surfaces as well as the pbuffer
+    private boolean mWindowSupported;
+
     private boolean mCreated;
 
     public OffscreenGLContextManager(@NonNull final GLSurfaceView.Renderer pRenderer, final int pWidth, final int pHeight) {
+        this(pRenderer, pWidth, pHeight, 2);
+    }
+
+    /**
+     * @param pClientVersion OpenGL ES version to create context with, 2 or 3
+     */
+    public OffscreenGLContextManager(@NonNull final GLSurfaceView.Renderer pRenderer, final int pWidth, final int pHeight,
+                                     final int pClientVersion) {
 
         this.mRenderer = pRenderer;
 
         this.mWidth = pWidth;
         this.mHeight = pHeight;
 
+        this.mClientVersion = pClientVersion;
+
     }
 
-    public void create() {
+    /**
+     * @return false if device does not support requested OpenGL ES version, nothing is created then
+     */
+    public boolean create() {
 
         if (this.mCreated) {
-            return;
+            return true;
         }
 
         final int[] version = new int[2];
@@ -49,12 +76,34 @@ public class OffscreenGLContextManager {
         this.mEGLDisplay = this.mEGL.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
         this.mEGL.eglInitialize(this.mEGLDisplay, version);
 
-        final EGLConfig eglConfig = this.chooseConfig();
+        // prefer a config that can draw to windows too, but do not require it
+        this.mWindowSupported = true;
+
+        EGLConfig eglConfig = this.chooseConfig(EGL10.EGL_PBUFFER_BIT | EGL10.EGL_WINDOW_BIT);
+
+        if (eglConfig == null) {
+
+            this.mWindowSupported = false;
 
-        final int[] eglContextAttributeList = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
+            eglConfig = this.chooseConfig(EGL10.EGL_PBUFFER_BIT);
+
+        }
+
+        if (eglConfig == null) {
+            return false;
+        }
+
+        this.mEGLConfig = eglConfig;
+
+        final int[] eglContextAttributeList = {EGL_CONTEXT_CLIENT_VERSION, this.mClientVersion, EGL10.EGL_NONE};
         this.mEGLContext = this.mEGL.eglCreateContext(this.mEGLDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, eglContextAttributeList);
 
-        final int[] eglSurfaceAttributeList = {EGL10.EGL_WIDTH, this.mWidth, EGL10.EGL_HEIGHT, this.mHeight, EGL10.EGL_NONE};
+        if (this.mEGLContext == null || this.mEGLContext == EGL10.EGL_NO_CONTEXT) {
+            return false;
+        }
+
+        // renderers draw into their own framebuffers, so the surface only needs to make context current and can be as small as possible
+        final int[] eglSurfaceAttributeList = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
         this.mEGLSurface = this.mEGL.eglCreatePbufferSurface(this.mEGLDisplay, eglConfig, eglSurfaceAttributeList);
 
         this.mEGL.eglMakeCurrent(this.mEGLDisplay, this.mEGLSurface, this.mEGLSurface, this.mEGLContext);
@@ -64,29 +113,159 @@ public class OffscreenGLContextManager {
 
         this.mCreated = true;
 
+        return true;
     }
 
     public void render() {
         this.mRenderer.onDrawFrame(null);
     }
 
+    /**
+     * Makes context current on calling thread, e.g. when it is taken over by another thread after {@link #releaseCurrent()}
+     *
+     * @return false if context could not be made current
+     */
+    public boolean makeCurrent() {
+        return this.mCreated && this.mEGL.eglMakeCurrent(this.mEGLDisplay, this.mEGLSurface, this.mEGLSurface, this.mEGLContext);
+    }
+
+    /**
+     * Detaches context from calling thread, so that another thread can make it current. Context and everything in it is kept
+     */
+    public void releaseCurrent() {
+
+        if (this.mCreated) {
+            this.mEGL.eglMakeCurrent(this.mEGLDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        }
+
+    }
+
+    /**
+     * Reports new size to renderer, context must be current
+     */
+    public void resize(final int pWidth, final int pHeight) {
+
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+
+        this.mRenderer.onSurfaceChanged(null, pWidth, pHeight);
+
+    }
+
+    /**
+     * Sets window to draw frames to, replacing the previous one
+     *
+     * @param pNativeWindow SurfaceTexture, Surface or SurfaceHolder, null to only remove the previous window
+     * @return false if window surface could not be created, there is no window then
+     */
+    public boolean setWindow(@Nullable final Object pNativeWindow) {
+
+        if (!this.mCreated) {
+            return false;
+        }
+
+        this.destroyWindowSurface();
+
+        if (pNativeWindow == null) {
+            return true;
+        }
+
+        if (!this.mWindowSupported) {
+            return false;
+        }
+
+        final EGLSurface windowSurface = this.mEGL.eglCreateWindowSurface(this.mEGLDisplay, this.mEGLConfig, pNativeWindow, null);
+
+        if (windowSurface == null || windowSurface == EGL10.EGL_NO_SURFACE) {
+            return false;
+        }
+
+        this.mEGLWindowSurface = windowSurface;
+
+        return true;
+    }
+
+    public boolean hasWindow() {
+        return this.mEGLWindowSurface != null;
+    }
+
+    /**
+     * Makes window current, so that default framebuffer is the window, and sets viewport to its size
+     *
+     * @return false if there is no window or it can not be drawn to, nothing is changed then
+     */
+    public boolean beginWindowFrame() {
+
+        if (this.mEGLWindowSurface == null) {
+            return false;
+        }
+
+        if (!this.mEGL.eglMakeCurrent(this.mEGLDisplay, this.mEGLWindowSurface, this.mEGLWindowSurface, this.mEGLContext)) {
+            return false;
+        }
+
+        final int[] width = new int[1];
+        final int[] height = new int[1];
+
+        // window may have been resized since last frame
+        this.mEGL.eglQuerySurface(this.mEGLDisplay, this.mEGLWindowSurface, EGL10.EGL_WIDTH, width);
+        this.mEGL.eglQuerySurface(this.mEGLDisplay, this.mEGLWindowSurface, EGL10.EGL_HEIGHT, height);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, width[0], height[0]);
+
+        return true;
+    }
+
+    /**
+     * Posts frame drawn since {@link #beginWindowFrame()} to the window and makes pbuffer current again
+     */
+    public void endWindowFrame() {
+
+        this.mEGL.eglSwapBuffers(this.mEGLDisplay, this.mEGLWindowSurface);
+
+        this.mEGL.eglMakeCurrent(this.mEGLDisplay, this.mEGLSurface, this.mEGLSurface, this.mEGLContext);
+
+    }
+
+    private void destroyWindowSurface() {
+
+        if (this.mEGLWindowSurface == null) {
+            return;
+        }
+
+        this.mEGL.eglMakeCurrent(this.mEGLDisplay, this.mEGLSurface, this.mEGLSurface, this.mEGLContext);
+
+        this.mEGL.eglDestroySurface(this.mEGLDisplay, this.mEGLWindowSurface);
+
+        this.mEGLWindowSurface = null;
+
+    }
+
     public void destroy() {
 
         if (!this.mCreated) {
             return;
         }
 
+        this.destroyWindowSurface();
+
         this.mEGL.eglMakeCurrent(this.mEGLDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
 
         this.mEGL.eglDestroySurface(this.mEGLDisplay, this.mEGLSurface);
 
         this.mEGL.eglDestroyContext(this.mEGLDisplay, this.mEGLContext);
 
-        this.mEGL.eglTerminate(this.mEGLDisplay);
+        // display is not terminated, it is shared with every other context of the process, pooled ones included
+
+        this.mCreated = false;
 
     }
 
-    private EGLConfig chooseConfig() {
+    /**
+     * @param pSurfaceType surface types config should support
+     */
+    private EGLConfig chooseConfig(final int pSurfaceType) {
 
         final int[] attributeList = {EGL10.EGL_DEPTH_SIZE, 16,//
                 EGL10.EGL_STENCIL_SIZE, 0,//
@@ -94,20 +273,34 @@ public class OffscreenGLContextManager {
                 EGL10.EGL_GREEN_SIZE, 8,//
                 EGL10.EGL_BLUE_SIZE, 8,//
                 EGL10.EGL_ALPHA_SIZE, 8,//
-                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,//
-                EGL10.EGL_RENDERABLE_TYPE, 4,//
+                EGL10.EGL_SURFACE_TYPE, pSurfaceType,//
+                EGL10.EGL_RENDERABLE_TYPE, this.mClientVersion >= 3 ? EGL_OPENGL_ES3_BIT_KHR : EGL_OPENGL_ES2_BIT,//
                 EGL10.EGL_NONE,//
         };
 
         final int[] numConfig = new int[1];
         this.mEGL.eglChooseConfig(this.mEGLDisplay, attributeList, null, 0, numConfig);
         final int configSize = numConfig[0];
+
+        if (configSize <= 0) {
+            return null;
+        }
+
         final EGLConfig[] eglConfigs = new EGLConfig[configSize];
         this.mEGL.eglChooseConfig(this.mEGLDisplay, attributeList, eglConfigs, configSize, numConfig);
 
         return eglConfigs[0];
     }
 
+    @NonNull
+    public GLSurfaceView.Renderer getRenderer() {
+        return this.mRenderer;
+    }
+
+    public int getClientVersion() {
+        return this.mClientVersion;
+    }
+
     public int getWidth() {
         return this.mWidth;
     }
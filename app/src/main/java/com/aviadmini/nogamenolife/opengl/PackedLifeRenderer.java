@@ -0,0 +1,945 @@
+package com.aviadmini.nogamenolife.opengl;
+
+import android.annotation.TargetApi;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.nogamenolife.compute.LifeCompute;
+import com.aviadmini.nogamenolife.compute.Rule;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Locale;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * OpenGL ES 3.0 renderer that packs 32 cells into every RGBA8 texel (cell X of a row is bit X % 32 of texel X / 32, red channel holds
+ * the lowest bits) and computes whole texels at once with the same bit-sliced adder as LifeComputeBits. Board wraps as a torus.
+ * Totalistic rules are supported, compute shader is generated for every rule other than Conway's
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class PackedLifeRenderer
+        implements CellStatesRenderer {
+
+    private static final int HANDLE_INVALID = -1;
+
+    private static final int BITS_PER_WORD       = 32;
+    private static final int BITS_PER_WORD_SHIFT = 5;
+    private static final int BITS_PER_WORD_MASK  = BITS_PER_WORD - 1;
+
+    private static final String VERTEX_SHADER = //
+            "#version 300 es\n" +
+                    "\n" +
+                    "in vec4 a_vertex_coord;\n" +
+                    "\n" +
+                    "void main()\n" +
+                    "{\n" +
+                    "    gl_Position = a_vertex_coord;\n" +
+                    "}";
+
+    // Texels are normalized RGBA8 so that they can be read back as plain bytes, shader converts them to words and back. RULE_RESULT
+    // line is Conway's rule, it is replaced for other rules
+    private static final String RULE_RESULT = "    uint result = ~eights & ~fours & twos & (ones | cell);\n";
+
+    private static final String FRAGMENT_SHADER = //
+            "#version 300 es\n" +
+                    "precision highp float;\n" +
+                    "precision highp int;\n" +
+                    "precision highp sampler2D;\n" +
+                    "\n" +
+                    "uniform sampler2D t_texture;\n" +
+                    "\n" +
+                    "uniform int u_words;\n" +
+                    "uniform int u_height;\n" +
+                    "uniform uint u_last_bit;\n" +
+                    "uniform uint u_last_mask;\n" +
+                    "\n" +
+                    "out vec4 o_color;\n" +
+                    "\n" +
+                    "uint get(int x, int y) {\n" +
+                    "    uvec4 b = uvec4(texelFetch(t_texture, ivec2(x, y), 0) * 255.0 + 0.5);\n" +
+                    "    return b.r | (b.g << 8u) | (b.b << 16u) | (b.a << 24u);\n" +
+                    "}\n" +
+                    "\n" +
+                    "void row(int x, int y, out uint west, out uint mid, out uint east) {\n" +
+                    "    int last = u_words - 1;\n" +
+                    "    uint prev = get(x == 0 ? last : x - 1, y);\n" +
+                    "    uint next = get(x == last ? 0 : x + 1, y);\n" +
+                    "    mid = get(x, y);\n" +
+                    "    west = (mid << 1u) | (x == 0 ? (prev >> u_last_bit) & 1u : prev >> 31u);\n" +
+                    "    east = (mid >> 1u) | (x == last ? (next & 1u) << u_last_bit : next << 31u);\n" +
+                    "}\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    int x = int(gl_FragCoord.x);\n" +
+                    "    int y = int(gl_FragCoord.y);\n" +
+                    "    uint nw, n, ne, w, cell, e, sw, s, se;\n" +
+                    "    row(x, y == 0 ? u_height - 1 : y - 1, nw, n, ne);\n" +
+                    "    row(x, y, w, cell, e);\n" +
+                    "    row(x, y == u_height - 1 ? 0 : y + 1, sw, s, se);\n" +
+                    "    uint upOnes = nw ^ n ^ ne;\n" +
+                    "    uint upTwos = (nw & n) | (ne & (nw ^ n));\n" +
+                    "    uint midOnes = w ^ e;\n" +
+                    "    uint midTwos = w & e;\n" +
+                    "    uint downOnes = sw ^ s ^ se;\n" +
+                    "    uint downTwos = (sw & s) | (se & (sw ^ s));\n" +
+                    "    uint ones = upOnes ^ midOnes ^ downOnes;\n" +
+                    "    uint onesCarry = (upOnes & midOnes) | (downOnes & (upOnes ^ midOnes));\n" +
+                    "    uint twosPartial = upTwos ^ midTwos ^ downTwos;\n" +
+                    "    uint twosCarry = (upTwos & midTwos) | (downTwos & (upTwos ^ midTwos));\n" +
+                    "    uint twos = twosPartial ^ onesCarry;\n" +
+                    "    uint foursCarry = twosPartial & onesCarry;\n" +
+                    "    uint fours = twosCarry ^ foursCarry;\n" +
+                    "    uint eights = twosCarry & foursCarry;\n" +
+                    RULE_RESULT +
+                    "    if (x == u_words - 1) {\n" +
+                    "        result &= u_last_mask;\n" +
+                    "    }\n" +
+                    "    o_color = vec4(uvec4(result, result >> 8u, result >> 16u, result >> 24u) & 0xFFu) / 255.0;\n" +
+                    "}";
+
+    private static final String DISPLAY_VERTEX_SHADER = //
+            "#version 300 es\n" +
+                    "\n" +
+                    "in vec4 a_vertex_coord;\n" +
+                    "\n" +
+                    "uniform vec4 u_region;\n" +
+                    "\n" +
+                    "out vec2 v_cell;\n" +
+                    "\n" +
+                    "void main()\n" +
+                    "{\n" +
+                    "    vec2 f = a_vertex_coord.xy * 0.5 + 0.5;\n" +
+                    "    v_cell = vec2(mix(u_region.x, u_region.z, f.x), mix(u_region.w, u_region.y, f.y));\n" +
+                    "    gl_Position = a_vertex_coord;\n" +
+                    "}";
+
+    // Every fragment finds the texel and bit of the cell it covers
+    private static final String DISPLAY_FRAGMENT_SHADER = //
+            "#version 300 es\n" +
+                    "precision highp float;\n" +
+                    "precision highp int;\n" +
+                    "precision highp sampler2D;\n" +
+                    "\n" +
+                    "uniform sampler2D t_texture;\n" +
+                    "\n" +
+                    "uniform ivec2 u_board_size;\n" +
+                    "\n" +
+                    "in vec2 v_cell;\n" +
+                    "\n" +
+                    "out vec4 o_color;\n" +
+                    "\n" +
+                    "void main() {\n" +
+                    "    ivec2 cell = ivec2(floor(v_cell));\n" +
+                    "    float alive = 0.0;\n" +
+                    "    if (cell.x >= 0 && cell.y >= 0 && cell.x < u_board_size.x && cell.y < u_board_size.y) {\n" +
+                    "        vec4 texel = texelFetch(t_texture, ivec2(cell.x >> 5, cell.y), 0);\n" +
+                    "        uint channel = uint(texel[(cell.x >> 3) & 3] * 255.0 + 0.5);\n" +
+                    "        alive = float((channel >> uint(cell.x & 7)) & 1u);\n" +
+                    "    }\n" +
+                    "    o_color = mix(vec4(0.8, 0.8, 0.8, 1.0), vec4(0.0, 0.0, 0.0, 1.0), alive);\n" +
+                    "}";
+
+    private final LifeRenderer.Callback mCallback;
+
+    private int[] mInitialStates;
+
+    private int mWidth  = 1;
+    private int mHeight = 1;
+
+    // texels per row
+    private int mWords = 1;
+
+    private int mLastBit;
+    private int mLastMask;
+
+    private int mShaderProgramHandle = HANDLE_INVALID;
+
+    private int mTextureOneHandle = HANDLE_INVALID;
+    private int mTextureTwoHandle = HANDLE_INVALID;
+
+    private int mFramebufferOneHandle = HANDLE_INVALID;
+    private int mFramebufferTwoHandle = HANDLE_INVALID;
+
+    private boolean mUsingOne;
+
+    // rule compute program is built for
+    private Rule mRule = Rule.CONWAY;
+
+    private int mGLSamplerTextureLocation;
+    private int mGLUniformWordsLocation;
+    private int mGLUniformHeightLocation;
+    private int mGLUniformLastBitLocation;
+    private int mGLUniformLastMaskLocation;
+    private int mGLAttributeVertexCoordinateLocation;
+
+    // draws board to screen, built on first use
+    private int mDisplayProgramHandle = HANDLE_INVALID;
+
+    private int mGLDisplaySamplerTextureLocation;
+    private int mGLDisplayUniformRegionLocation;
+    private int mGLDisplayUniformBoardSizeLocation;
+    private int mGLDisplayAttributeVertexCoordinateLocation;
+
+    private final float[] mQuad = UtilsGL.getQuadFbo();
+    protected final FloatBuffer mAttributeBuffer;
+
+    // texels as words, red channel comes first in memory so byte order is fixed rather than native. Doubles as host copy of the board,
+    // current within shadow rectangle (in words) while valid, which serves single cell reads and edits without GPU
+    private IntBuffer mWordsIntBuffer;
+    private IntBuffer mOneWordIntBuffer;
+
+    private boolean mShadowValid;
+
+    private int mShadowLeft;
+    private int mShadowTop;
+    private int mShadowRight;
+    private int mShadowBottom;
+
+    // edits not on GPU yet, merged into host copy and uploaded as one rectangle before anything else uses current generation
+    private final CellEditQueue mEdits = new CellEditQueue();
+
+    private PixelPackReader mPixelPackReader;
+
+    // changes with every generation and edit, tells whether a readback started earlier is still current
+    private long mStateVersion;
+
+    public PackedLifeRenderer(final LifeRenderer.Callback pCallback) {
+        this(pCallback, null);
+    }
+
+    public PackedLifeRenderer(final LifeRenderer.Callback pCallback, final int[] pInitialStates) {
+
+        this.mCallback = pCallback;
+
+        this.mAttributeBuffer = ByteBuffer.allocateDirect(this.mQuad.length * UtilsGL.BYTES_PER_FLOAT)
+                                          .order(ByteOrder.nativeOrder())
+                                          .asFloatBuffer();
+        this.mAttributeBuffer.put(this.mQuad)
+                             .position(0);
+
+        this.mInitialStates = pInitialStates;
+
+    }
+
+    @Override
+    public int getContextClientVersion() {
+        return 3;
+    }
+
+    @Override
+    public void onSurfaceCreated(final GL10 pGL10Unused, final EGLConfig pEGLConfig) {
+
+        this.mOneWordIntBuffer = ByteBuffer.allocateDirect(UtilsGL.BYTES_PER_FLOAT)
+                                           .order(ByteOrder.LITTLE_ENDIAN)
+                                           .asIntBuffer();
+
+        this.createShaderProgram();
+
+        UtilsGL.logErrorGL("onSurfaceCreated end");
+
+    }
+
+    private void createShaderProgram() {
+
+        final String fragmentShader = Rule.CONWAY.equals(this.mRule) ? FRAGMENT_SHADER : FRAGMENT_SHADER.replace(RULE_RESULT,
+                getRuleResult(this.mRule));
+
+        this.mShaderProgramHandle = UtilsGL.createShaderProgram(VERTEX_SHADER, fragmentShader);
+
+        this.mGLAttributeVertexCoordinateLocation = GLES20.glGetAttribLocation(this.mShaderProgramHandle, "a_vertex_coord");
+
+        this.mGLSamplerTextureLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "t_texture");
+        this.mGLUniformWordsLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "u_words");
+        this.mGLUniformHeightLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "u_height");
+        this.mGLUniformLastBitLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "u_last_bit");
+        this.mGLUniformLastMaskLocation = GLES20.glGetUniformLocation(this.mShaderProgramHandle, "u_last_mask");
+
+    }
+
+    /**
+     * @return GLSL statement that picks born and surviving cells by bits of their neighbour counts
+     */
+    private static String getRuleResult(@NonNull final Rule pRule) {
+
+        final StringBuilder born = new StringBuilder();
+        final StringBuilder survived = new StringBuilder();
+
+        for (int count = 0; count <= 8; count++) {
+
+            // cells whose neighbour count equals this one
+            final String equal = String.format(Locale.US, "(%sones & %stwos & %sfours & %seights)", (count & 1) != 0 ? "" : "~",
+                    (count & 2) != 0 ? "" : "~", (count & 4) != 0 ? "" : "~", (count & 8) != 0 ? "" : "~");
+
+            if ((pRule.getBirthCounts() & (1 << count)) != 0) {
+                born.append(born.length() > 0 ? " | " : "")
+                    .append(equal);
+            }
+
+            if ((pRule.getSurvivalCounts() & (1 << count)) != 0) {
+                survived.append(survived.length() > 0 ? " | " : "")
+                        .append(equal);
+            }
+
+        }
+
+        return String.format(Locale.US, "    uint result = ((%s) & ~cell) | ((%s) & cell);\n", born.length() > 0 ? born : "0u",
+                survived.length() > 0 ? survived : "0u");
+    }
+
+    /**
+     * Rebuilds compute program if rule differs from the one it was built for
+     *
+     * @throws IllegalArgumentException if rule is not totalistic or has dying states, a cell is a single bit
+     */
+    @Override
+    public void setRule(@NonNull final Rule pRule) {
+
+        if (!pRule.isTotalistic() || pRule.getStates() != 2) {
+            throw new IllegalArgumentException("Only totalistic rules with no dying states are supported");
+        }
+
+        if (this.mRule.equals(pRule)) {
+            return;
+        }
+
+        this.mRule = pRule;
+
+        // program is built in onSurfaceCreated() if it was not yet
+        if (this.mShaderProgramHandle == HANDLE_INVALID) {
+            return;
+        }
+
+        GLES20.glDeleteProgram(this.mShaderProgramHandle);
+
+        this.createShaderProgram();
+
+        UtilsGL.logErrorGL("setRule end");
+
+    }
+
+    @Override
+    public void onSurfaceChanged(final GL10 pGL10Unused, final int pWidth, final int pHeight) {
+
+        // textures are only reallocated when board size actually changes
+        if (pWidth == this.mWidth && pHeight == this.mHeight && this.mTextureOneHandle != HANDLE_INVALID) {
+            return;
+        }
+
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+
+        this.mWords = (pWidth + BITS_PER_WORD_MASK) >>> BITS_PER_WORD_SHIFT;
+
+        this.mLastBit = (pWidth - 1) & BITS_PER_WORD_MASK;
+        this.mLastMask = this.mLastBit == BITS_PER_WORD_MASK ? -1 : (1 << (this.mLastBit + 1)) - 1;
+
+        this.mWordsIntBuffer = ByteBuffer.allocateDirect(this.mWords * pHeight * UtilsGL.BYTES_PER_FLOAT)
+                                         .order(ByteOrder.LITTLE_ENDIAN)
+                                         .asIntBuffer();
+
+        if (this.mInitialStates != null && this.mInitialStates.length == pWidth * pHeight) {
+            this.pack(this.mInitialStates);
+        }
+
+        this.mInitialStates = null;
+
+        this.mEdits.clear();
+
+        // words buffer holds exactly what the first texture is created with
+        this.mShadowValid = false;
+
+        this.setShadowRegion(0, 0, this.mWords, pHeight);
+
+        this.createTextures();
+
+        this.createFramebuffers();
+
+        if (this.mPixelPackReader != null) {
+            this.mPixelPackReader.destroy();
+        }
+
+        this.mPixelPackReader = new PixelPackReader(this.mWords * pHeight, GLES20.GL_RGBA, UtilsGL.BYTES_PER_FLOAT);
+
+        this.mStateVersion++;
+
+        UtilsGL.logErrorGL("onSurfaceChanged end");
+
+    }
+
+    @Override
+    public void onDrawFrame(final GL10 pGL10Unused) {
+        this.drawGenerations(1);
+    }
+
+    @Override
+    public void drawGenerations(final int pGenerations) {
+
+        this.flushEdits();
+
+        this.mStateVersion++;
+
+        this.mShadowValid = false;
+
+        GLES20.glViewport(0, 0, this.mWords, this.mHeight);
+
+        GLES20.glUseProgram(this.mShaderProgramHandle);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        GLES20.glUniform1i(this.mGLSamplerTextureLocation, 0);
+
+        GLES20.glUniform1i(this.mGLUniformWordsLocation, this.mWords);
+        GLES20.glUniform1i(this.mGLUniformHeightLocation, this.mHeight);
+        GLES30.glUniform1ui(this.mGLUniformLastBitLocation, this.mLastBit);
+        GLES30.glUniform1ui(this.mGLUniformLastMaskLocation, this.mLastMask);
+
+        GLES20.glEnableVertexAttribArray(this.mGLAttributeVertexCoordinateLocation);
+
+        this.mAttributeBuffer.position(0);
+        GLES20.glVertexAttribPointer(this.mGLAttributeVertexCoordinateLocation, 2, GLES20.GL_FLOAT, false, 4 * UtilsGL.BYTES_PER_FLOAT,
+                this.mAttributeBuffer);
+
+        for (int i = 0; i < pGenerations; i++) {
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getToFBO());
+
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, this.mQuad.length / 4);
+
+            this.mUsingOne = !this.mUsingOne;
+
+            if (this.mCallback != null) {
+                this.mCallback.onFrameDrawn();
+            }
+
+        }
+
+        GLES20.glDisableVertexAttribArray(this.mGLAttributeVertexCoordinateLocation);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        GLES20.glFlush();
+
+        UtilsGL.logErrorGL("drawGenerations end");
+
+    }
+
+    @Override
+    public void drawCellStates(final float pLeft, final float pTop, final float pRight, final float pBottom) {
+
+        // uploads leave framebuffer and viewport alone
+        this.flushEdits();
+
+        if (this.mDisplayProgramHandle == HANDLE_INVALID) {
+            this.createDisplayProgram();
+        }
+
+        GLES20.glUseProgram(this.mDisplayProgramHandle);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glUniform1i(this.mGLDisplaySamplerTextureLocation, 0);
+
+        GLES20.glUniform4f(this.mGLDisplayUniformRegionLocation, pLeft, pTop, pRight, pBottom);
+        GLES20.glUniform2i(this.mGLDisplayUniformBoardSizeLocation, this.mWidth, this.mHeight);
+
+        GLES20.glEnableVertexAttribArray(this.mGLDisplayAttributeVertexCoordinateLocation);
+
+        this.mAttributeBuffer.position(0);
+        GLES20.glVertexAttribPointer(this.mGLDisplayAttributeVertexCoordinateLocation, 2, GLES20.GL_FLOAT, false,
+                4 * UtilsGL.BYTES_PER_FLOAT, this.mAttributeBuffer);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, this.mQuad.length / 4);
+
+        GLES20.glDisableVertexAttribArray(this.mGLDisplayAttributeVertexCoordinateLocation);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        UtilsGL.logErrorGL("drawCellStates end");
+
+    }
+
+    private void createDisplayProgram() {
+
+        this.mDisplayProgramHandle = UtilsGL.createShaderProgram(DISPLAY_VERTEX_SHADER, DISPLAY_FRAGMENT_SHADER);
+
+        this.mGLDisplayAttributeVertexCoordinateLocation = GLES20.glGetAttribLocation(this.mDisplayProgramHandle, "a_vertex_coord");
+
+        this.mGLDisplaySamplerTextureLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "t_texture");
+        this.mGLDisplayUniformRegionLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "u_region");
+        this.mGLDisplayUniformBoardSizeLocation = GLES20.glGetUniformLocation(this.mDisplayProgramHandle, "u_board_size");
+
+    }
+
+    private void createTextures() {
+
+        this.destroyTextures();
+
+        final int[] ids = new int[2];
+
+        GLES20.glGenTextures(2, ids, 0);
+
+        this.mTextureOneHandle = ids[0];
+        this.mTextureTwoHandle = ids[1];
+
+        this.mWordsIntBuffer.rewind();
+
+        // initial states go to the texture that is read first
+        this.createTexture(this.mTextureOneHandle, this.mWordsIntBuffer);
+        this.createTexture(this.mTextureTwoHandle, null);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    }
+
+    private void createTexture(final int pTextureHandle, final IntBuffer pWords) {
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pTextureHandle);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, this.mWords, this.mHeight, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                pWords);
+
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+    }
+
+    private void createFramebuffers() {
+
+        this.destroyFramebuffers();
+
+        final int[] ids = new int[2];
+
+        GLES20.glGenFramebuffers(2, ids, 0);
+
+        this.mFramebufferOneHandle = ids[0];
+        this.mFramebufferTwoHandle = ids[1];
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferOneHandle);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, this.mTextureOneHandle, 0);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferTwoHandle);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, this.mTextureTwoHandle, 0);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        this.mUsingOne = true;
+
+    }
+
+    private void destroyTextures() {
+
+        if (this.mTextureOneHandle != HANDLE_INVALID) {
+
+            GLES20.glDeleteTextures(2, new int[]{this.mTextureOneHandle, this.mTextureTwoHandle}, 0);
+
+            this.mTextureOneHandle = HANDLE_INVALID;
+            this.mTextureTwoHandle = HANDLE_INVALID;
+
+        }
+
+    }
+
+    private void destroyFramebuffers() {
+
+        if (this.mFramebufferOneHandle != HANDLE_INVALID) {
+
+            GLES20.glDeleteFramebuffers(2, new int[]{this.mFramebufferOneHandle, this.mFramebufferTwoHandle}, 0);
+
+            this.mFramebufferOneHandle = HANDLE_INVALID;
+            this.mFramebufferTwoHandle = HANDLE_INVALID;
+
+        }
+
+    }
+
+    private int getFromFBO() {
+        return this.mUsingOne ? this.mFramebufferOneHandle : this.mFramebufferTwoHandle;
+    }
+
+    private int getToFBO() {
+        return this.mUsingOne ? this.mFramebufferTwoHandle : this.mFramebufferOneHandle;
+    }
+
+    private int getFromTexture() {
+        return this.mUsingOne ? this.mTextureOneHandle : this.mTextureTwoHandle;
+    }
+
+    /**
+     * @return word holding given cell, read back from GPU
+     */
+    private int readWord(final int pX, final int pY) {
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+
+        this.mOneWordIntBuffer.rewind();
+
+        GLES20.glReadPixels(pX >>> BITS_PER_WORD_SHIFT, pY, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, this.mOneWordIntBuffer);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        return this.mOneWordIntBuffer.get(0);
+    }
+
+    /**
+     * Only queues the edit, it reaches GPU with the rest of the batch before board is used next time
+     */
+    @Override
+    public synchronized void changeCellState(final int pCellPosition, final int pNewState) {
+
+        final int x = pCellPosition % this.mWidth;
+        final int y = pCellPosition / this.mWidth;
+
+        this.mStateVersion++;
+
+        this.mEdits.add(pCellPosition, x, y, pNewState);
+
+        if (this.isShadowed(x >>> BITS_PER_WORD_SHIFT, y)) {
+            this.applyEdit(x, y, pNewState);
+        }
+
+    }
+
+    /**
+     * Served from host copy when it is current for the cell, read from GPU otherwise
+     */
+    @Override
+    public synchronized int getCellState(final int pCellPosition) {
+
+        final int x = pCellPosition % this.mWidth;
+        final int y = pCellPosition / this.mWidth;
+
+        final int word;
+
+        if (this.isShadowed(x >>> BITS_PER_WORD_SHIFT, y)) {
+            word = this.mWordsIntBuffer.get(y * this.mWords + (x >>> BITS_PER_WORD_SHIFT));
+        } else {
+
+            this.flushEdits();
+
+            word = this.readWord(x, y);
+
+        }
+
+        return (word >>> (x & BITS_PER_WORD_MASK)) & 1;
+    }
+
+    /**
+     * Sets or clears cell's bit in host copy
+     */
+    private void applyEdit(final int pX, final int pY, final int pNewState) {
+
+        final int index = pY * this.mWords + (pX >>> BITS_PER_WORD_SHIFT);
+        final int bit = 1 << (pX & BITS_PER_WORD_MASK);
+
+        final int word = this.mWordsIntBuffer.get(index);
+
+        this.mWordsIntBuffer.put(index, pNewState == LifeCompute.STATE_ALIVE ? word | bit : word & ~bit);
+
+    }
+
+    /**
+     * Merges queued edits into host copy of the words they touch and uploads their bounding rectangle in one call. Words host copy is
+     * not current for are read back first, also in one call
+     */
+    private void flushEdits() {
+
+        if (this.mEdits.isEmpty()) {
+            return;
+        }
+
+        final int left = this.mEdits.getLeft() >>> BITS_PER_WORD_SHIFT;
+        final int top = this.mEdits.getTop();
+        final int right = ((this.mEdits.getRight() - 1) >>> BITS_PER_WORD_SHIFT) + 1;
+        final int bottom = this.mEdits.getBottom();
+
+        final int width = right - left;
+        final int height = bottom - top;
+
+        // rows of the rectangle are spread over words buffer, one board row apart
+        this.mWordsIntBuffer.position(top * this.mWords + left);
+
+        if (!this.isShadowed(left, top) || !this.isShadowed(right - 1, bottom - 1)) {
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.getFromFBO());
+
+            GLES20.glPixelStorei(GLES30.GL_PACK_ROW_LENGTH, this.mWords);
+
+            GLES20.glReadPixels(left, top, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, this.mWordsIntBuffer);
+
+            GLES20.glPixelStorei(GLES30.GL_PACK_ROW_LENGTH, 0);
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+            // edits already applied to host copy were just overwritten, so all of them are applied again in order
+            for (int i = 0, size = this.mEdits.size(); i < size; i++) {
+
+                final int position = this.mEdits.getCellPosition(i);
+
+                this.applyEdit(position % this.mWidth, position / this.mWidth, this.mEdits.getState(i));
+
+            }
+
+            this.setShadowRegion(left, top, right, bottom);
+
+        }
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, this.mWords);
+
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, left, top, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                this.mWordsIntBuffer);
+
+        GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        this.mWordsIntBuffer.rewind();
+
+        this.mEdits.clear();
+
+        UtilsGL.logErrorGL("flushEdits end");
+
+    }
+
+    /**
+     * Marks a freshly read part of the board, in words, as current in host copy. Host copy is current wherever it was read since last
+     * generation, but only one rectangle is tracked, the larger one
+     */
+    private void setShadowRegion(final int pLeft, final int pTop, final int pRight, final int pBottom) {
+
+        if (this.mShadowValid && (pRight - pLeft) * (pBottom - pTop) <
+                (this.mShadowRight - this.mShadowLeft) * (this.mShadowBottom - this.mShadowTop)) {
+            return;
+        }
+
+        this.mShadowLeft = pLeft;
+        this.mShadowTop = pTop;
+        this.mShadowRight = pRight;
+        this.mShadowBottom = pBottom;
+
+        this.mShadowValid = true;
+
+    }
+
+    private boolean isShadowed(final int pWordX, final int pY) {
+        return this.mShadowValid && pWordX >= this.mShadowLeft && pWordX < this.mShadowRight && pY >= this.mShadowTop &&
+                pY < this.mShadowBottom;
+    }
+
+    @Override
+    public synchronized void clear() {
+
+        this.mStateVersion++;
+
+        // queued edits are cleared along with the rest of the board
+        this.mEdits.clear();
+
+        for (int i = 0, size = this.mWords * this.mHeight; i < size; i++) {
+            this.mWordsIntBuffer.put(i, 0);
+        }
+
+        this.setShadowRegion(0, 0, this.mWords, this.mHeight);
+
+        // alpha is a part of the word too
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferOneHandle);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, this.mFramebufferTwoHandle);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+    }
+
+    @Override
+    public synchronized void setCellStates(@Nullable final int[] pCellStates) {
+
+        this.mStateVersion++;
+
+        this.mEdits.clear();
+
+        if (pCellStates != null) {
+            this.pack(pCellStates);
+        } else {
+
+            for (int i = 0, size = this.mWords * this.mHeight; i < size; i++) {
+                this.mWordsIntBuffer.put(i, 0);
+            }
+
+        }
+
+        this.mWordsIntBuffer.rewind();
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, this.mWords, this.mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                this.mWordsIntBuffer);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        this.mShadowValid = false;
+
+        this.setShadowRegion(0, 0, this.mWords, this.mHeight);
+
+    }
+
+    /**
+     * Packs the row into host copy and uploads only its words
+     */
+    @Override
+    public synchronized void setRow(final int pY, @NonNull final byte[] pCellStates, final int pOffset) {
+
+        this.flushEdits();
+
+        this.mStateVersion++;
+
+        for (int w = 0; w < this.mWords; w++) {
+
+            int word = 0;
+
+            for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(this.mWidth, x + BITS_PER_WORD); x < to; x++) {
+
+                if (pCellStates[pOffset + x] == LifeCompute.STATE_ALIVE) {
+                    word |= 1 << (x & BITS_PER_WORD_MASK);
+                }
+
+            }
+
+            this.mWordsIntBuffer.put(pY * this.mWords + w, word);
+
+        }
+
+        this.mWordsIntBuffer.position(pY * this.mWords);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, this.getFromTexture());
+
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, pY, this.mWords, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                this.mWordsIntBuffer);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        this.mWordsIntBuffer.rewind();
+
+    }
+
+    @Override
+    public void getCellStates(@NonNull final int[] pCellStates) {
+        this.getCellStates(pCellStates, 0, 0, this.mWidth, this.mHeight);
+    }
+
+    @Override
+    public void getCellStates(@NonNull final int[] pCellStates, final int pLeft, final int pTop, final int pRight, final int pBottom) {
+        this.readCellStates(pCellStates, 0, pLeft, pTop, pRight, pBottom);
+    }
+
+    @Override
+    public void getRowCellStates(final int pY, @NonNull final int[] pCellStates) {
+        this.readCellStates(pCellStates, pY * this.mWidth, 0, pY, this.mWidth, pY + 1);
+    }
+
+    /**
+     * Reads a part of the board back into destination and host copy
+     *
+     * @param pFirstPosition position of the cell destination starts with
+     */
+    private void readCellStates(@NonNull final int[] pCellStates, final int pFirstPosition, final int pLeft, final int pTop,
+                                final int pRight, final int pBottom) {
+
+        this.flushEdits();
+
+        final int wordLeft = pLeft >>> BITS_PER_WORD_SHIFT;
+        final int words = ((pRight - 1) >>> BITS_PER_WORD_SHIFT) - wordLeft + 1;
+
+        int slot = this.mPixelPackReader.find(this.mStateVersion, wordLeft, pTop, words, pBottom - pTop);
+
+        if (slot == PixelPackReader.SLOT_NONE) {
+            slot = this.mPixelPackReader.read(this.getFromFBO(), wordLeft, pTop, words, pBottom - pTop, this.mStateVersion);
+        }
+
+        final IntBuffer texels = this.mPixelPackReader.map(slot)
+                                                      .order(ByteOrder.LITTLE_ENDIAN)
+                                                      .asIntBuffer();
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            final int row = (y - pTop) * words - wordLeft;
+            final int position = y * this.mWidth - pFirstPosition;
+
+            for (int w = wordLeft, to = wordLeft + words; w < to; w++) {
+                this.mWordsIntBuffer.put(y * this.mWords + w, texels.get(row + w));
+            }
+
+            for (int x = pLeft; x < pRight; x++) {
+                pCellStates[position + x] = (texels.get(row + (x >>> BITS_PER_WORD_SHIFT)) >>> (x & BITS_PER_WORD_MASK)) & 1;
+            }
+
+        }
+
+        this.mPixelPackReader.unmap();
+
+        this.setShadowRegion(wordLeft, pTop, wordLeft + words, pBottom);
+
+    }
+
+    @Override
+    public void prefetchCellStates(final int pLeft, final int pTop, final int pRight, final int pBottom) {
+
+        this.flushEdits();
+
+        final int wordLeft = pLeft >>> BITS_PER_WORD_SHIFT;
+        final int words = ((pRight - 1) >>> BITS_PER_WORD_SHIFT) - wordLeft + 1;
+
+        this.mPixelPackReader.read(this.getFromFBO(), wordLeft, pTop, words, pBottom - pTop, this.mStateVersion);
+
+    }
+
+    /**
+     * Packs cell states into words buffer
+     *
+     * @param pCellStates cell states, width * height in size
+     */
+    private void pack(@NonNull final int[] pCellStates) {
+
+        for (int y = 0; y < this.mHeight; y++) {
+
+            final int position = y * this.mWidth;
+
+            for (int w = 0; w < this.mWords; w++) {
+
+                int word = 0;
+
+                for (int x = w << BITS_PER_WORD_SHIFT, to = Math.min(this.mWidth, x + BITS_PER_WORD); x < to; x++) {
+
+                    if (pCellStates[position + x] == LifeCompute.STATE_ALIVE) {
+                        word |= 1 << (x & BITS_PER_WORD_MASK);
+                    }
+
+                }
+
+                this.mWordsIntBuffer.put(y * this.mWords + w, word);
+
+            }
+
+        }
+
+    }
+
+}
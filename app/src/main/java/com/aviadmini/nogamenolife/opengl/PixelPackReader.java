@@ -0,0 +1,182 @@
+package com.aviadmini.nogamenolife.opengl;
+
+import android.annotation.TargetApi;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads framebuffer regions into a pair of pixel pack buffers without waiting for GPU. Every read is fenced and only waited for
+ * when its data is mapped, and next read goes to the other buffer, so it never waits for the previous one. OpenGL ES 3.0 only
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class PixelPackReader {
+
+    public static final int SLOT_NONE = -1;
+
+    private static final int SLOTS = 2;
+
+    private static final long FENCE_TIMEOUT_NANOS = 1000000000L;
+
+    private static final long TAG_NONE = Long.MIN_VALUE;
+
+    private final int mFormat;
+    private final int mBytesPerTexel;
+
+    private final int[] mBufferHandles = new int[SLOTS];
+
+    private final long[] mFences = new long[SLOTS];
+
+    // what every slot holds: tag given by the caller and region
+    private final long[]  mTags    = new long[SLOTS];
+    private final int[][] mRegions = new int[SLOTS][4];
+
+    private int mNextSlot;
+
+    /**
+     * Creates buffers, context must be current
+     *
+     * @param pCapacityTexels largest region to be read, in texels
+     * @param pFormat         pixel format to read, of GL_UNSIGNED_BYTE type
+     * @param pBytesPerTexel  size of a texel in given format
+     */
+    public PixelPackReader(final int pCapacityTexels, final int pFormat, final int pBytesPerTexel) {
+
+        this.mFormat = pFormat;
+        this.mBytesPerTexel = pBytesPerTexel;
+
+        GLES20.glGenBuffers(SLOTS, this.mBufferHandles, 0);
+
+        for (int i = 0; i < SLOTS; i++) {
+
+            GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, this.mBufferHandles[i]);
+            GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, pCapacityTexels * pBytesPerTexel, null, GLES30.GL_STREAM_READ);
+
+            this.mTags[i] = TAG_NONE;
+
+        }
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+    }
+
+    /**
+     * Starts reading region of framebuffer and returns right away
+     *
+     * @param pFramebufferHandle framebuffer to read
+     * @param pTag               caller's version of framebuffer contents, to find this read later
+     * @return slot the region is read to
+     */
+    public int read(final int pFramebufferHandle, final int pX, final int pY, final int pWidth, final int pHeight, final long pTag) {
+
+        final int slot = this.mNextSlot;
+
+        this.mNextSlot = (slot + 1) % SLOTS;
+
+        this.deleteFence(slot);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, pFramebufferHandle);
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, this.mBufferHandles[slot]);
+
+        GLES30.glReadPixels(pX, pY, pWidth, pHeight, this.mFormat, GLES20.GL_UNSIGNED_BYTE, 0);
+
+        this.mFences[slot] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        // get the copy going now rather than when it is waited for
+        GLES20.glFlush();
+
+        this.mTags[slot] = pTag;
+
+        final int[] region = this.mRegions[slot];
+        region[0] = pX;
+        region[1] = pY;
+        region[2] = pWidth;
+        region[3] = pHeight;
+
+        return slot;
+    }
+
+    /**
+     * @return slot a read of exactly this region with given tag went to, or {@link #SLOT_NONE}
+     */
+    public int find(final long pTag, final int pX, final int pY, final int pWidth, final int pHeight) {
+
+        for (int i = 0; i < SLOTS; i++) {
+
+            final int[] region = this.mRegions[i];
+
+            if (this.mTags[i] == pTag && region[0] == pX && region[1] == pY && region[2] == pWidth && region[3] == pHeight) {
+                return i;
+            }
+
+        }
+
+        return SLOT_NONE;
+    }
+
+    /**
+     * Waits for read to complete and maps its data. Call {@link #unmap()} before any other GL call touching pixel pack buffers
+     *
+     * @param pSlot slot returned by {@link #read(int, int, int, int, int, long)} or {@link #find(long, int, int, int, int)}
+     * @return texels, row by row
+     */
+    @NonNull
+    public ByteBuffer map(final int pSlot) {
+
+        if (this.mFences[pSlot] != 0L) {
+
+            GLES30.glClientWaitSync(this.mFences[pSlot], GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+
+            this.deleteFence(pSlot);
+
+        }
+
+        final int[] region = this.mRegions[pSlot];
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, this.mBufferHandles[pSlot]);
+
+        return (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, region[2] * region[3] * this.mBytesPerTexel,
+                GLES30.GL_MAP_READ_BIT);
+    }
+
+    public void unmap() {
+
+        GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+    }
+
+    private void deleteFence(final int pSlot) {
+
+        if (this.mFences[pSlot] != 0L) {
+
+            GLES30.glDeleteSync(this.mFences[pSlot]);
+
+            this.mFences[pSlot] = 0L;
+
+        }
+
+    }
+
+    public void destroy() {
+
+        for (int i = 0; i < SLOTS; i++) {
+
+            this.deleteFence(i);
+
+            this.mTags[i] = TAG_NONE;
+
+        }
+
+        GLES20.glDeleteBuffers(SLOTS, this.mBufferHandles, 0);
+
+    }
+
+}
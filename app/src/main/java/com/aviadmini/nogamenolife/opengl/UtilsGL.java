@@ -2,6 +2,7 @@ package com.aviadmini.nogamenolife.opengl;
 
 import android.opengl.GLES20;
 import android.opengl.GLU;
+import android.os.Build;
 
 import timber.log.Timber;
 
@@ -72,6 +73,22 @@ public class UtilsGL {
         return (pNumber & -pNumber) == pNumber;
     }
 
+    /**
+     * <p> Checks whether current context is OpenGL ES 3.0 or later and can be used through GLES30 </p>
+     *
+     * @return true if GLES30 calls are available
+     */
+    public static boolean isContextES3() {
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+
+        final String version = GLES20.glGetString(GLES20.GL_VERSION);
+
+        return version != null && version.startsWith("OpenGL ES ") && !version.startsWith("OpenGL ES 2");
+    }
+
     /**
      * <p> Queries OpenGL for errors and if there have been some - shows all found information in logs </p>
      *
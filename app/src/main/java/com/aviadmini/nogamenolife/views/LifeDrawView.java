@@ -2,18 +2,26 @@ package com.aviadmini.nogamenolife.views;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 
 import com.aviadmini.nogamenolife.R;
+import com.aviadmini.nogamenolife.compute.CellStatesDelta;
+import com.aviadmini.nogamenolife.compute.CellStatesExchange;
 import com.aviadmini.nogamenolife.compute.LifeCompute;
 
+import java.util.Arrays;
 import java.util.Locale;
 
 public class LifeDrawView
@@ -23,22 +31,154 @@ public class LifeDrawView
 
     public static final int CELL_POSITION_INVALID = -1;
 
+    /**
+     * Draws every cell as a separate rectangle with grid lines
+     */
+    public static final int RENDER_MODE_RECTS  = 0;
+    /**
+     * Keeps a bitmap with a pixel per cell, updates only changed pixels and draws it scaled in one call
+     */
+    public static final int RENDER_MODE_BITMAP = 1;
+    /**
+     * Uses {@link #RENDER_MODE_BITMAP} for boards larger than 100x100 cells and {@link #RENDER_MODE_RECTS} otherwise
+     */
+    public static final int RENDER_MODE_AUTO   = 2;
+    /**
+     * Draws neither cells nor background, for when board is drawn by a view underneath, e.g. straight from GPU. Touches and viewport
+     * work as usual
+     */
+    public static final int RENDER_MODE_NONE   = 3;
+
+    private static final int RENDER_MODE_AUTO_BITMAP_CELLS_MIN = 100 * 100;
+
+    // zooming in stops when this many cells fit into the view along the shorter board side
+    private static final int VIEWPORT_VISIBLE_CELLS_MIN = 8;
+
+    private static final int PAINT_STATE_UNDECIDED = -1;
+
+    private static final int PAINT_BATCH_CAPACITY_INITIAL = 64;
+
+    private static final int BITMAP_COLOR_ALIVE = Color.BLACK;
+    private static final int BITMAP_COLOR_DEAD  = Color.LTGRAY;
+
+    // dying cells of generations rules fade from this colour to dead one as they decay, same as on GPU
+    private static final int COLOR_DYING_RED   = 51;
+    private static final int COLOR_DYING_GREEN = 77;
+    private static final int COLOR_DYING_BLUE  = 204;
+
+    // colour of every state a cell can be in
+    private static final int[] STATE_COLORS = new int[256];
+
+    static {
+
+        STATE_COLORS[LifeCompute.STATE_DEAD] = BITMAP_COLOR_DEAD;
+        STATE_COLORS[LifeCompute.STATE_ALIVE] = BITMAP_COLOR_ALIVE;
+
+        final int dead = Color.red(BITMAP_COLOR_DEAD);
+
+        for (int state = 2; state < STATE_COLORS.length; state++) {
+
+            // same intensity as the state has in GPU textures
+            final float intensity = (256 - state) / 255.0f;
+
+            STATE_COLORS[state] = Color.rgb(Math.round(dead + (COLOR_DYING_RED - dead) * intensity),
+                    Math.round(dead + (COLOR_DYING_GREEN - dead) * intensity), Math.round(dead + (COLOR_DYING_BLUE - dead) * intensity));
+
+        }
+
+    }
+
     private int mLifeWidth  = LIFE_SIZE_DEFAULT;
     private int mLifeHeight = LIFE_SIZE_DEFAULT;
 
+    // latest snapshot acquired from exchange, owned by UI thread until next acquire
     private int[] mCellStates;
 
+    private CellStatesExchange mCellStatesExchange;
+
+    // sequence of snapshot in mCellStates, including deltas applied to it
+    private long mCellStatesSequence;
+
+    // board fitted into the view
     private float mOffsetHorizontal;
     private float mOffsetVertical;
     private float mChunk;
 
+    // viewport: fitted board scaled and moved so that top left corner of cell (0, 0) is at mOriginX, mOriginY
+    private float mScale = 1.0f;
+    private float mCellSize;
+    private float mOriginX;
+    private float mOriginY;
+
+    // cells intersecting the view, right and bottom are exclusive
+    private int mVisibleLeft;
+    private int mVisibleTop;
+    private int mVisibleRight;
+    private int mVisibleBottom;
+
+    // part of the board reported to listener: visible cells with a margin, so that small pans keep within it
+    private int mRegionLeft;
+    private int mRegionTop;
+    private int mRegionRight;
+    private int mRegionBottom;
+
     private final Paint mAlivePaint = new Paint();
     private final Paint mDeadPaint  = new Paint();
+    private final Paint mDyingPaint = new Paint();
+
+    private int mRenderMode = RENDER_MODE_AUTO;
+
+    // bitmap with a pixel per cell, null when drawing rects
+    private Bitmap  mBitmap;
+    private int[]   mBitmapPixels;
+    private boolean mBitmapValid;
+
+    private final Rect  mBitmapSource      = new Rect();
+    private final RectF mBitmapDestination = new RectF();
+    private final Paint mBitmapPaint       = new Paint();
 
     private boolean mLifeDimensionsSet;
 
-    private GestureDetector     mGestureDetector;
-    private OnCellTouchListener mOnCellTouchListener;
+    // in paint mode one finger paints cells instead of panning, pinch still zooms
+    private boolean mPaintMode;
+    private boolean mPaintStrokeActive;
+
+    // state chosen at first cell of a stroke: painting over a dead cell paints alive cells, over an alive one erases
+    private int mPaintState = PAINT_STATE_UNDECIDED;
+
+    // cells painted by current stroke are stamped with its id, so that every cell is sent at most once per stroke
+    private int[] mPaintStamps;
+    private int   mPaintStrokeId;
+
+    private int     mPaintLastX;
+    private int     mPaintLastY;
+    private boolean mPaintLastValid;
+
+    // painted cells not yet accepted by listener, flushed at most once per frame
+    private int[]   mPaintPositions = new int[PAINT_BATCH_CAPACITY_INITIAL];
+    private int[]   mPaintStates    = new int[PAINT_BATCH_CAPACITY_INITIAL];
+    private int     mPaintCount;
+    private boolean mPaintFlushPosted;
+
+    private final Choreographer.FrameCallback mPaintFrameCallback = new Choreographer.FrameCallback() {
+
+        @Override
+        public void doFrame(final long pFrameTimeNanos) {
+
+            mPaintFlushPosted = false;
+
+            flushPaintedCells();
+
+        }
+
+    };
+
+    private GestureDetector          mGestureDetector;
+    private ScaleGestureDetector     mScaleGestureDetector;
+    private OnCellTouchListener      mOnCellTouchListener;
+    private OnCellsPaintListener     mOnCellsPaintListener;
+    private OnViewportChangeListener mOnViewportChangeListener;
+    private OnViewportMoveListener   mOnViewportMoveListener;
 
     public LifeDrawView(final Context pContext) {
         super(pContext);
@@ -69,6 +209,7 @@ public class LifeDrawView
 
             this.mLifeWidth = typedArray.getInteger(R.styleable.LifeDrawView_lifeWidth, this.mLifeWidth);
             this.mLifeHeight = typedArray.getInteger(R.styleable.LifeDrawView_lifeHeight, this.mLifeHeight);
+            this.mRenderMode = typedArray.getInt(R.styleable.LifeDrawView_renderMode, this.mRenderMode);
 
             typedArray.recycle();
 
@@ -85,6 +226,14 @@ public class LifeDrawView
         this.mAlivePaint.setStyle(Paint.Style.FILL);
         this.mAlivePaint.setColor(Color.BLACK);
 
+        this.mDyingPaint.setAntiAlias(true);
+        this.mDyingPaint.setStyle(Paint.Style.FILL);
+
+        // scale cells up as sharp blocks
+        this.mBitmapPaint.setAntiAlias(false);
+        this.mBitmapPaint.setFilterBitmap(false);
+        this.mBitmapPaint.setDither(false);
+
         this.mLifeDimensionsSet = false;
 
         final GestureDetector.SimpleOnGestureListener gestureListener = new GestureDetector.SimpleOnGestureListener() {
@@ -92,6 +241,13 @@ public class LifeDrawView
             @Override
             public boolean onDown(final MotionEvent pMotionEvent) {
 
+                // receive the rest of the gesture
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapUp(final MotionEvent pMotionEvent) {
+
                 if (mLifeDimensionsSet && mOnCellTouchListener != null) {
 
                     final int cellPosition = getCellPositionFromTouchCoordinates(pMotionEvent.getX(), pMotionEvent.getY());
@@ -100,17 +256,278 @@ public class LifeDrawView
 
                 }
 
-                return super.onDown(pMotionEvent);
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(final MotionEvent pDownEvent, final MotionEvent pMoveEvent, final float pDistanceX,
+                                    final float pDistanceY) {
+
+                if (!mLifeDimensionsSet) {
+                    return false;
+                }
+
+                mOriginX -= pDistanceX;
+                mOriginY -= pDistanceY;
+
+                updateViewport();
+
+                return true;
             }
 
         };
         this.mGestureDetector = new GestureDetector(this.getContext(), gestureListener);
 
+        final ScaleGestureDetector.SimpleOnScaleGestureListener scaleListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+
+            @Override
+            public boolean onScale(final ScaleGestureDetector pDetector) {
+
+                if (!mLifeDimensionsSet) {
+                    return false;
+                }
+
+                zoom(pDetector.getScaleFactor(), pDetector.getFocusX(), pDetector.getFocusY());
+
+                return true;
+            }
+
+        };
+        this.mScaleGestureDetector = new ScaleGestureDetector(this.getContext(), scaleListener);
+
     }
 
     @Override
     public boolean onTouchEvent(final MotionEvent pMotionEvent) {
-        return this.mGestureDetector.onTouchEvent(pMotionEvent);
+
+        final boolean scaleHandled = this.mScaleGestureDetector.onTouchEvent(pMotionEvent);
+
+        if (this.mPaintMode) {
+            return this.onPaintTouchEvent(pMotionEvent) || scaleHandled;
+        }
+
+        final boolean gestureHandled = this.mGestureDetector.onTouchEvent(pMotionEvent);
+
+        return scaleHandled || gestureHandled;
+    }
+
+    private boolean onPaintTouchEvent(final MotionEvent pMotionEvent) {
+
+        if (!this.mLifeDimensionsSet) {
+            return false;
+        }
+
+        switch (pMotionEvent.getActionMasked()) {
+
+            case MotionEvent.ACTION_DOWN: {
+
+                this.startPaintStroke();
+
+                this.paintTo(pMotionEvent.getX(), pMotionEvent.getY());
+
+                break;
+            }
+
+            case MotionEvent.ACTION_MOVE: {
+
+                if (!this.mPaintStrokeActive) {
+                    break;
+                }
+
+                // points batched into this event since the previous one, so that a fast stroke does not skip cells
+                for (int i = 0, size = pMotionEvent.getHistorySize(); i < size; i++) {
+                    this.paintTo(pMotionEvent.getHistoricalX(i), pMotionEvent.getHistoricalY(i));
+                }
+
+                this.paintTo(pMotionEvent.getX(), pMotionEvent.getY());
+
+                break;
+            }
+
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+
+                // second finger turns stroke into a pinch
+                this.mPaintStrokeActive = false;
+
+                break;
+            }
+
+        }
+
+        return true;
+    }
+
+    private void startPaintStroke() {
+
+        final int cells = this.mLifeWidth * this.mLifeHeight;
+
+        if (this.mPaintStamps == null || this.mPaintStamps.length != cells) {
+
+            this.mPaintStamps = new int[cells];
+            this.mPaintStrokeId = 0;
+
+        }
+
+        this.mPaintStrokeId++;
+
+        if (this.mPaintStrokeId == 0) {
+
+            // wrapped around, forget stamps of old strokes
+            Arrays.fill(this.mPaintStamps, 0);
+
+            this.mPaintStrokeId = 1;
+
+        }
+
+        this.mPaintState = PAINT_STATE_UNDECIDED;
+        this.mPaintLastValid = false;
+        this.mPaintStrokeActive = true;
+
+    }
+
+    /**
+     * Paints cells on the line from previous touch point of the stroke to given one
+     *
+     * @param pX view X of the touch point
+     * @param pY view Y of the touch point
+     */
+    private void paintTo(final float pX, final float pY) {
+
+        final int x = (int) Math.floor((pX - this.mOriginX) / this.mCellSize);
+        final int y = (int) Math.floor((pY - this.mOriginY) / this.mCellSize);
+
+        if (!this.mPaintLastValid) {
+
+            this.paintCell(x, y);
+
+        } else {
+
+            // Bresenham's line
+            final int dx = Math.abs(x - this.mPaintLastX);
+            final int dy = -Math.abs(y - this.mPaintLastY);
+            final int sx = this.mPaintLastX < x ? 1 : -1;
+            final int sy = this.mPaintLastY < y ? 1 : -1;
+
+            int cx = this.mPaintLastX;
+            int cy = this.mPaintLastY;
+            int error = dx + dy;
+
+            while (true) {
+
+                this.paintCell(cx, cy);
+
+                if (cx == x && cy == y) {
+                    break;
+                }
+
+                final int error2 = error * 2;
+
+                if (error2 >= dy) {
+                    error += dy;
+                    cx += sx;
+                }
+
+                if (error2 <= dx) {
+                    error += dx;
+                    cy += sy;
+                }
+
+            }
+
+        }
+
+        this.mPaintLastX = x;
+        this.mPaintLastY = y;
+        this.mPaintLastValid = true;
+
+    }
+
+    private void paintCell(final int pX, final int pY) {
+
+        if (pX < 0 || pX >= this.mLifeWidth || pY < 0 || pY >= this.mLifeHeight) {
+            return;
+        }
+
+        final int position = pY * this.mLifeWidth + pX;
+
+        if (this.mPaintStamps[position] == this.mPaintStrokeId) {
+            return;
+        }
+
+        this.mPaintStamps[position] = this.mPaintStrokeId;
+
+        if (this.mPaintState == PAINT_STATE_UNDECIDED) {
+            this.mPaintState = this.mCellStates[position] == LifeCompute.STATE_ALIVE ? LifeCompute.STATE_DEAD : LifeCompute.STATE_ALIVE;
+        }
+
+        if (this.mPaintCount == this.mPaintPositions.length) {
+
+            this.mPaintPositions = Arrays.copyOf(this.mPaintPositions, this.mPaintCount * 2);
+            this.mPaintStates = Arrays.copyOf(this.mPaintStates, this.mPaintCount * 2);
+
+        }
+
+        this.mPaintPositions[this.mPaintCount] = position;
+        this.mPaintStates[this.mPaintCount] = this.mPaintState;
+        this.mPaintCount++;
+
+        if (!this.mPaintFlushPosted) {
+
+            Choreographer.getInstance()
+                         .postFrameCallback(this.mPaintFrameCallback);
+
+            this.mPaintFlushPosted = true;
+
+        }
+
+    }
+
+    /**
+     * Hands all cells painted since previous flush to listener as one batch. Cells stay queued while listener does not accept them and
+     * the flush is retried on next frame, so that a slow compute never has more than the listener lets through
+     */
+    private void flushPaintedCells() {
+
+        if (this.mPaintCount == 0) {
+            return;
+        }
+
+        if (this.mOnCellsPaintListener == null) {
+
+            this.mPaintCount = 0;
+
+            return;
+        }
+
+        final int[] positions = Arrays.copyOf(this.mPaintPositions, this.mPaintCount);
+        final int[] states = Arrays.copyOf(this.mPaintStates, this.mPaintCount);
+
+        if (this.mOnCellsPaintListener.onCellsPainted(positions, states)) {
+
+            this.mPaintCount = 0;
+
+        } else if (!this.mPaintFlushPosted) {
+
+            Choreographer.getInstance()
+                         .postFrameCallback(this.mPaintFrameCallback);
+
+            this.mPaintFlushPosted = true;
+
+        }
+
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+
+        Choreographer.getInstance()
+                     .removeFrameCallback(this.mPaintFrameCallback);
+
+        this.mPaintFlushPosted = false;
+
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -134,29 +551,86 @@ public class LifeDrawView
             this.setLifeDimensionsOnDraw();
         }
 
+        if (this.mRenderMode == RENDER_MODE_NONE) {
+            return;
+        }
+
         pCanvas.drawColor(Color.LTGRAY);
 
-        boolean alive;
-        int chunksLeft;
-        int chunksTop;
+        if (this.mBitmap != null) {
+            this.drawBitmap(pCanvas);
+        } else {
+            this.drawRects(pCanvas);
+        }
+
+    }
+
+    private void drawRects(final Canvas pCanvas) {
+
+        float left;
+        float top;
+
+        for (int y = this.mVisibleTop; y < this.mVisibleBottom; y++) {
+
+            top = this.mOriginY + this.mCellSize * y;
+
+            for (int x = this.mVisibleLeft; x < this.mVisibleRight; x++) {
 
-        for (int i = this.mCellStates.length - 1; i >= 0; i--) {
+                left = this.mOriginX + this.mCellSize * x;
 
-            alive = this.mCellStates[i] == LifeCompute.STATE_ALIVE;
+                final int state = this.mCellStates[y * this.mLifeWidth + x];
 
-            chunksLeft = i % this.mLifeWidth;
-            chunksTop = i / this.mLifeWidth;
+                final Paint paint;
 
-            pCanvas.drawRect(this.mOffsetHorizontal + this.mChunk * chunksLeft,//
-                    this.mOffsetVertical + this.mChunk * chunksTop,//
-                    this.mOffsetHorizontal + this.mChunk * (chunksLeft + 1),//
-                    this.mOffsetVertical + this.mChunk * (chunksTop + 1),//
-                    alive ? this.mAlivePaint : this.mDeadPaint);
+                if (state == LifeCompute.STATE_ALIVE) {
+                    paint = this.mAlivePaint;
+                } else if (state == LifeCompute.STATE_DEAD) {
+                    paint = this.mDeadPaint;
+                } else {
+
+                    paint = this.mDyingPaint;
+
+                    paint.setColor(getStateColor(state));
+
+                }
+
+                pCanvas.drawRect(left, top, left + this.mCellSize, top + this.mCellSize, paint);
+
+            }
 
         }
 
     }
 
+    private void drawBitmap(final Canvas pCanvas) {
+
+        if (!this.mBitmapValid) {
+
+            // new snapshot, convert the part of it that is published and upload it in one call
+            for (int y = this.mRegionTop; y < this.mRegionBottom; y++) {
+
+                for (int i = y * this.mLifeWidth + this.mRegionLeft, to = y * this.mLifeWidth + this.mRegionRight; i < to; i++) {
+                    this.mBitmapPixels[i] = getStateColor(this.mCellStates[i]);
+                }
+
+            }
+
+            this.mBitmap.setPixels(this.mBitmapPixels, this.mRegionTop * this.mLifeWidth + this.mRegionLeft, this.mLifeWidth,
+                    this.mRegionLeft, this.mRegionTop, this.mRegionRight - this.mRegionLeft, this.mRegionBottom - this.mRegionTop);
+
+            this.mBitmapValid = true;
+
+        }
+
+        this.mBitmapSource.set(this.mVisibleLeft, this.mVisibleTop, this.mVisibleRight, this.mVisibleBottom);
+
+        this.mBitmapDestination.set(this.mOriginX + this.mCellSize * this.mVisibleLeft, this.mOriginY + this.mCellSize * this.mVisibleTop,
+                this.mOriginX + this.mCellSize * this.mVisibleRight, this.mOriginY + this.mCellSize * this.mVisibleBottom);
+
+        pCanvas.drawBitmap(this.mBitmap, this.mBitmapSource, this.mBitmapDestination, this.mBitmapPaint);
+
+    }
+
     public void setLifeDimensions(final int pLifeWidth, final int pLifeHeight) {
 
         if (pLifeWidth <= 0 || pLifeHeight <= 0) {
@@ -172,7 +646,18 @@ public class LifeDrawView
 
     private void setLifeDimensionsOnDraw() {
 
-        this.mCellStates = new int[this.mLifeWidth * this.mLifeHeight];
+        // keep snapshot acquired before first draw
+        if (this.mCellStates.length != this.mLifeWidth * this.mLifeHeight) {
+
+            this.mCellStates = new int[this.mLifeWidth * this.mLifeHeight];
+
+            this.mCellStatesExchange = null;
+
+            // painted positions belong to the old board
+            this.mPaintCount = 0;
+            this.mPaintStrokeActive = false;
+
+        }
 
         if (this.mLifeWidth >= this.mLifeHeight) {
 
@@ -190,38 +675,266 @@ public class LifeDrawView
 
         }
 
+        this.mScale = 1.0f;
+        this.mOriginX = this.mOffsetHorizontal;
+        this.mOriginY = this.mOffsetVertical;
+
+        this.createBitmap();
+
         this.mLifeDimensionsSet = true;
+
+        this.updateViewport();
+
+    }
+
+    /**
+     * Scales viewport keeping given point of the view in place
+     *
+     * @param pFactor scale factor
+     * @param pFocusX view X of the point
+     * @param pFocusY view Y of the point
+     */
+    private void zoom(final float pFactor, final float pFocusX, final float pFocusY) {
+
+        final float scaleMax = Math.max(1.0f, (float) Math.min(this.mLifeWidth, this.mLifeHeight) / VIEWPORT_VISIBLE_CELLS_MIN);
+
+        final float scale = Math.max(1.0f, Math.min(scaleMax, this.mScale * pFactor));
+
+        final float factor = scale / this.mScale;
+
+        this.mOriginX = pFocusX - (pFocusX - this.mOriginX) * factor;
+        this.mOriginY = pFocusY - (pFocusY - this.mOriginY) * factor;
+
+        this.mScale = scale;
+
+        this.updateViewport();
+
+    }
+
+    /**
+     * Keeps viewport on the board, finds visible cells and reports a new region to listener if they went outside of the old one
+     */
+    private void updateViewport() {
+
+        this.mCellSize = this.mChunk * this.mScale;
+
+        this.mOriginX = getClampedOrigin(this.mOriginX, this.mCellSize * this.mLifeWidth, this.getWidth());
+        this.mOriginY = getClampedOrigin(this.mOriginY, this.mCellSize * this.mLifeHeight, this.getHeight());
+
+        this.mVisibleLeft = Math.max(0, (int) Math.floor(-this.mOriginX / this.mCellSize));
+        this.mVisibleTop = Math.max(0, (int) Math.floor(-this.mOriginY / this.mCellSize));
+        this.mVisibleRight = Math.min(this.mLifeWidth, (int) Math.ceil((this.getWidth() - this.mOriginX) / this.mCellSize));
+        this.mVisibleBottom = Math.min(this.mLifeHeight, (int) Math.ceil((this.getHeight() - this.mOriginY) / this.mCellSize));
+
+        if (this.mVisibleLeft >= this.mVisibleRight || this.mVisibleTop >= this.mVisibleBottom) {
+
+            // view has no size yet, treat everything as visible
+            this.mVisibleLeft = 0;
+            this.mVisibleTop = 0;
+            this.mVisibleRight = this.mLifeWidth;
+            this.mVisibleBottom = this.mLifeHeight;
+
+        }
+
+        final int visibleWidth = this.mVisibleRight - this.mVisibleLeft;
+        final int visibleHeight = this.mVisibleBottom - this.mVisibleTop;
+
+        final boolean outside = this.mVisibleLeft < this.mRegionLeft || this.mVisibleTop < this.mRegionTop ||
+                this.mVisibleRight > this.mRegionRight || this.mVisibleBottom > this.mRegionBottom;
+
+        // after zooming in a lot most of the region is not visible anymore
+        final boolean tooLarge = this.mRegionRight - this.mRegionLeft > visibleWidth * 4 ||
+                this.mRegionBottom - this.mRegionTop > visibleHeight * 4;
+
+        if (outside || tooLarge) {
+
+            this.mRegionLeft = Math.max(0, this.mVisibleLeft - visibleWidth / 2);
+            this.mRegionTop = Math.max(0, this.mVisibleTop - visibleHeight / 2);
+            this.mRegionRight = Math.min(this.mLifeWidth, this.mVisibleRight + visibleWidth / 2);
+            this.mRegionBottom = Math.min(this.mLifeHeight, this.mVisibleBottom + visibleHeight / 2);
+
+            if (this.mOnViewportChangeListener != null) {
+                this.mOnViewportChangeListener.onViewportChanged(this.mRegionLeft, this.mRegionTop, this.mRegionRight, this.mRegionBottom);
+            }
+
+        }
+
+        if (this.mOnViewportMoveListener != null && this.mCellSize > 0.0f) {
+            this.mOnViewportMoveListener.onViewportMoved(-this.mOriginX / this.mCellSize, -this.mOriginY / this.mCellSize,
+                    (this.getWidth() - this.mOriginX) / this.mCellSize, (this.getHeight() - this.mOriginY) / this.mCellSize);
+        }
+
+        this.invalidate();
+
+    }
+
+    /**
+     * @param pOrigin    view coordinate of board's edge
+     * @param pBoardSize board size in pixels
+     * @param pViewSize  view size in pixels
+     * @return origin that centres board smaller than the view and does not let larger board leave gaps at view's edges
+     */
+    private static float getClampedOrigin(final float pOrigin, final float pBoardSize, final float pViewSize) {
+
+        if (pBoardSize <= pViewSize) {
+            return (pViewSize - pBoardSize) / 2.0f;
+        }
+
+        return Math.min(0.0f, Math.max(pViewSize - pBoardSize, pOrigin));
+    }
+
+    /**
+     * Creates or releases bitmap depending on render mode and board size
+     */
+    private void createBitmap() {
+
+        final int cells = this.mLifeWidth * this.mLifeHeight;
+
+        final boolean useBitmap = this.mRenderMode == RENDER_MODE_BITMAP ||
+                (this.mRenderMode == RENDER_MODE_AUTO && cells > RENDER_MODE_AUTO_BITMAP_CELLS_MIN);
+
+        if (this.mBitmap != null && (!useBitmap || this.mBitmap.getWidth() != this.mLifeWidth ||
+                this.mBitmap.getHeight() != this.mLifeHeight)) {
+
+            this.mBitmap.recycle();
+
+            this.mBitmap = null;
+            this.mBitmapPixels = null;
+
+        }
+
+        if (useBitmap && this.mBitmap == null) {
+
+            this.mBitmap = Bitmap.createBitmap(this.mLifeWidth, this.mLifeHeight, Bitmap.Config.ARGB_8888);
+            this.mBitmapPixels = new int[cells];
+
+        }
+
+        this.mBitmapValid = false;
+
+    }
+
+    /**
+     * @param pRenderMode one of {@link #RENDER_MODE_RECTS}, {@link #RENDER_MODE_BITMAP}, {@link #RENDER_MODE_AUTO},
+     *                    {@link #RENDER_MODE_NONE}
+     */
+    public void setRenderMode(final int pRenderMode) {
+
+        if (pRenderMode != RENDER_MODE_RECTS && pRenderMode != RENDER_MODE_BITMAP && pRenderMode != RENDER_MODE_AUTO &&
+                pRenderMode != RENDER_MODE_NONE) {
+            throw new IllegalArgumentException("Unknown render mode");
+        }
+
+        this.mRenderMode = pRenderMode;
+
+        if (this.mLifeDimensionsSet) {
+            this.createBitmap();
+        }
+
+        this.invalidate();
+
+    }
+
+    public int getRenderMode() {
+        return this.mRenderMode;
+    }
+
+    /**
+     * @param pPaintMode whether one finger paints cells instead of panning. Painted cells are reported to {@link OnCellsPaintListener}
+     */
+    public void setPaintMode(final boolean pPaintMode) {
+
+        this.mPaintMode = pPaintMode;
+
+        this.mPaintStrokeActive = false;
+
+    }
+
+    public boolean isPaintMode() {
+        return this.mPaintMode;
     }
 
     private int getCellPositionFromTouchCoordinates(final float pX, final float pY) {
 
-        if (pX - this.mOffsetHorizontal < 0.0f || pX + this.mOffsetHorizontal > this.getWidth() ||
-                pY - this.mOffsetVertical < 0 || pY + this.mOffsetVertical > this.getHeight()) {
+        final int x = (int) Math.floor((pX - this.mOriginX) / this.mCellSize);
+        final int y = (int) Math.floor((pY - this.mOriginY) / this.mCellSize);
+
+        if (x < this.mVisibleLeft || x >= this.mVisibleRight || y < this.mVisibleTop || y >= this.mVisibleBottom) {
             return CELL_POSITION_INVALID;
-        } else {
+        }
 
-            final int x = (int) (((pX - this.mOffsetHorizontal) / this.mChunk));
-            final int y = (int) (((pY - this.mOffsetVertical) / this.mChunk));
+        return y * this.mLifeWidth + x;
+    }
+
+    /**
+     * Sets exchange to draw cell states from and redraws with the latest snapshot published to it. Must be called on UI thread, which
+     * becomes the exchange's reader
+     *
+     * @param pCellStatesExchange exchange cell states are published to
+     */
+    public void setCellStates(@NonNull final CellStatesExchange pCellStatesExchange) {
 
-            return y * this.mLifeWidth + x;
+        if (this.mLifeWidth * this.mLifeHeight != pCellStatesExchange.getSize()) {
+            throw new IllegalArgumentException(
+                    String.format(Locale.US, "Cell states array size of %s is incorrect. Should be: %s", pCellStatesExchange.getSize(),
+                            this.mLifeWidth * this.mLifeHeight));
         }
 
+        this.mCellStatesExchange = pCellStatesExchange;
+
+        // acquire right away rather than on draw, so that deltas arriving after this call find the snapshot they are based on
+        if (pCellStatesExchange.acquire() || this.mCellStates != pCellStatesExchange.getReadBuffer()) {
+
+            this.mCellStates = pCellStatesExchange.getReadBuffer();
+            this.mCellStatesSequence = pCellStatesExchange.getReadSequence();
+
+            this.mBitmapValid = false;
+
+        }
+
+        this.invalidate();
+
     }
 
-    public void setCellStates(@NonNull final int[] pCellStates) {
+    /**
+     * Applies cells changed since previous publish to current snapshot and redraws. Must be called on UI thread in the order deltas
+     * were delivered. Deltas that are already included in acquired snapshot are skipped. Delta is not released
+     *
+     * @param pCellStatesDelta delta to apply
+     */
+    public void applyCellStatesDelta(@NonNull final CellStatesDelta pCellStatesDelta) {
 
-        if (this.mCellStates.length != pCellStates.length) {
-            throw new IllegalArgumentException(
-                    String.format(Locale.US, "Cell states array size of %s is incorrect. Should be: %s", pCellStates.length,
-                            this.mCellStates.length));
+        if (this.mCellStatesExchange == null || pCellStatesDelta.getBaseSequence() != this.mCellStatesSequence) {
+            return;
         }
 
-        this.mCellStates = pCellStates;
+        pCellStatesDelta.applyTo(this.mCellStates);
+
+        // a valid bitmap only needs changed pixels, otherwise it is converted as a whole on draw anyway
+        if (this.mBitmap != null && this.mBitmapValid) {
+
+            final int[] positions = pCellStatesDelta.getPositions();
+
+            for (int i = 0; i < pCellStatesDelta.getCount(); i++) {
+
+                final int position = positions[i];
+
+                this.mBitmap.setPixel(position % this.mLifeWidth, position / this.mLifeWidth, getStateColor(this.mCellStates[position]));
+
+            }
+
+        }
+
+        this.mCellStatesSequence = pCellStatesDelta.getSequence();
 
         this.invalidate();
 
     }
 
+    private static int getStateColor(final int pState) {
+        return pState >= 0 && pState < STATE_COLORS.length ? STATE_COLORS[pState] : BITMAP_COLOR_DEAD;
+    }
+
     public int getLifeWidth() {
         return this.mLifeWidth;
     }
@@ -238,8 +951,49 @@ public class LifeDrawView
         this.mOnCellTouchListener = pOnCellTouchListener;
     }
 
+    public void setOnCellsPaintListener(final OnCellsPaintListener pOnCellsPaintListener) {
+        this.mOnCellsPaintListener = pOnCellsPaintListener;
+    }
+
+    public void setOnViewportChangeListener(final OnViewportChangeListener pOnViewportChangeListener) {
+        this.mOnViewportChangeListener = pOnViewportChangeListener;
+    }
+
+    public void setOnViewportMoveListener(final OnViewportMoveListener pOnViewportMoveListener) {
+        this.mOnViewportMoveListener = pOnViewportMoveListener;
+    }
+
     public interface OnCellTouchListener {
         void onCellTouched(final int pCellPosition);
     }
 
+    /**
+     * Receives cells painted in paint mode, at most once per frame. Painted cells are not drawn until they come back from compute
+     */
+    public interface OnCellsPaintListener {
+
+        /**
+         * @param pCellPositions positions of painted cells, each one at most once per stroke
+         * @param pNewStates     states to set, one per position
+         * @return false to keep cells queued and get them again with newer ones on next frame
+         */
+        boolean onCellsPainted(@NonNull final int[] pCellPositions, @NonNull final int[] pNewStates);
+
+    }
+
+    /**
+     * Reports part of the board that should be published to this view after pan or zoom. Right and bottom are exclusive
+     */
+    public interface OnViewportChangeListener {
+        void onViewportChanged(final int pLeft, final int pTop, final int pRight, final int pBottom);
+    }
+
+    /**
+     * Reports part of the board the view covers after every pan or zoom, for drawing the board somewhere else with the same viewport.
+     * Edges are in cells, they may be fractional and lie outside of the board
+     */
+    public interface OnViewportMoveListener {
+        void onViewportMoved(final float pLeft, final float pTop, final float pRight, final float pBottom);
+    }
+
 }
@@ -0,0 +1,120 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assert;
+
+/**
+ * Checks that an engine computes exactly what {@link LifeComputeJava} does, for every rule and topology both of them support
+ */
+final class EngineEquivalence {
+
+    // {width, height}: partial words and tiles, exact ones, single row and column wide boards
+    static final int[][] SIZES = {{70, 37}, {64, 64}, {130, 3}, {5, 90}, {1, 17}, {33, 1}};
+
+    static final Rule[] RULES = {//
+            Rule.CONWAY,//
+            Rule.parse("B36/S23"),//
+            Rule.parse("B2n3/S23-q"),//
+            Rule.parse("B3/S2-i34q"),//
+            Rule.parse("B2/S/C3"),//
+            Rule.parse("B2/S345/C4"),//
+            Rule.parse("B2n3/S23-q/C5"),//
+            Rule.parse("B34/S12/C256")};
+
+    static final int[] TOPOLOGIES = {LifeCompute.TOPOLOGY_TORUS, LifeCompute.TOPOLOGY_BOUNDED, LifeCompute.TOPOLOGY_KLEIN_BOTTLE};
+
+    static final int GENERATIONS = 30;
+
+    // one call for many generations, which sparse engine spends mostly on stable areas
+    static final int JUMP_GENERATIONS = 50;
+
+    private static final long SEED = 21L;
+
+    private EngineEquivalence() {
+    }
+
+    /**
+     * Runs random boards of every size with every rule and topology engine supports, alongside Java engine
+     *
+     * @param pEngine one of {@link TestEngines} engine constants
+     */
+    static void assertMatchesJava(final int pEngine) {
+
+        for (final int[] size : SIZES) {
+
+            final LifeCompute reference = TestEngines.create(TestEngines.JAVA, size[0], size[1]);
+            final LifeCompute lifeCompute = TestEngines.create(pEngine, size[0], size[1]);
+
+            try {
+
+                for (final Rule rule : RULES) {
+
+                    if (!lifeCompute.isRuleSupported(rule)) {
+                        continue;
+                    }
+
+                    for (final int topology : TOPOLOGIES) {
+
+                        if (!lifeCompute.isTopologySupported(topology)) {
+                            continue;
+                        }
+
+                        final String message = String.format("%s %sx%s %s topology %s", TestEngines.getName(pEngine), size[0], size[1],
+                                rule, topology);
+
+                        TestEngines.setRuleAndTopology(reference, rule, topology);
+                        TestEngines.setRuleAndTopology(lifeCompute, rule, topology);
+
+                        reference.clearCells();
+                        lifeCompute.clearCells();
+
+                        TestEngines.seed(reference, 0, 0, size[0], size[1], rule.getStates(), SEED);
+                        TestEngines.seed(lifeCompute, 0, 0, size[0], size[1], rule.getStates(), SEED);
+
+                        assertSameGenerations(message, reference, lifeCompute);
+
+                    }
+
+                }
+
+            } finally {
+
+                TestEngines.destroy(reference);
+                TestEngines.destroy(lifeCompute);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Steps both boards {@link #GENERATIONS} times one by one and then {@link #JUMP_GENERATIONS} at once, comparing them every time
+     */
+    static void assertSameGenerations(@NonNull final String pMessage, @NonNull final LifeKernel pReference,
+                                      @NonNull final LifeKernel pLifeKernel) {
+
+        Assert.assertArrayEquals(pMessage, TestEngines.getCellStates(pReference), TestEngines.getCellStates(pLifeKernel));
+
+        for (int i = 0; i < GENERATIONS; i++) {
+
+            pReference.step(1);
+            pLifeKernel.step(1);
+
+            Assert.assertArrayEquals(pMessage + " generation " + pReference.getStep(), TestEngines.getCellStates(pReference),
+                    TestEngines.getCellStates(pLifeKernel));
+
+        }
+
+        pReference.step(JUMP_GENERATIONS);
+        pLifeKernel.step(JUMP_GENERATIONS);
+
+        Assert.assertEquals(pMessage, pReference.getStep(), pLifeKernel.getStep());
+
+        Assert.assertArrayEquals(pMessage + " generation " + pReference.getStep(), TestEngines.getCellStates(pReference),
+                TestEngines.getCellStates(pLifeKernel));
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.aviadmini.nogamenolife.compute;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Generations rules on engines that keep a byte per cell, against {@link ReferenceLife}
+ */
+public class GenerationsTest {
+
+    // not a multiple of 64 or of sparse tile size, so that partial words and tiles are covered
+    private static final int WIDTH  = 70;
+    private static final int HEIGHT = 37;
+
+    private static final int GENERATIONS = 40;
+
+    private static final Rule[] RULES = {//
+            Rule.parse("B2/S/C3"),//
+            Rule.parse("B2/S345/C4"),//
+            Rule.parse("B2n3/S23-q/C5"),//
+            Rule.parse("B34/S12/C256")};
+
+    private static final int[] ENGINES = {TestEngines.JAVA, TestEngines.JAVA_PARALLEL, TestEngines.JAVA_SPARSE};
+
+    private static final long SEED = 23L;
+
+    @Test
+    public void matchesReference() {
+
+        for (final int engine : ENGINES) {
+
+            final LifeCompute lifeCompute = TestEngines.create(engine, WIDTH, HEIGHT);
+
+            try {
+
+                for (final Rule rule : RULES) {
+
+                    for (final int topology : new int[]{LifeCompute.TOPOLOGY_TORUS, LifeCompute.TOPOLOGY_BOUNDED}) {
+
+                        final String message = TestEngines.getName(engine) + " " + rule + " topology " + topology;
+
+                        TestEngines.setRuleAndTopology(lifeCompute, rule, topology);
+
+                        lifeCompute.clearCells();
+
+                        TestEngines.seed(lifeCompute, 0, 0, WIDTH, HEIGHT, rule.getStates(), SEED);
+
+                        int[] expected = TestEngines.getCellStates(lifeCompute);
+
+                        for (int i = 0; i < GENERATIONS; i++) {
+
+                            expected = ReferenceLife.step(expected, WIDTH, HEIGHT, rule, topology);
+
+                            lifeCompute.step(1);
+
+                            Assert.assertArrayEquals(message + " generation " + lifeCompute.getStep(), expected,
+                                    TestEngines.getCellStates(lifeCompute));
+
+                        }
+
+                    }
+
+                }
+
+            } finally {
+                TestEngines.destroy(lifeCompute);
+            }
+
+        }
+
+    }
+
+    /**
+     * States above 127 do not fit a signed byte, they must not come back negative or decay the wrong way
+     */
+    @Test
+    public void keepsStatesAboveSignedByteRange() {
+
+        final Rule rule = Rule.parse("B34/S12/C256");
+
+        for (final int engine : ENGINES) {
+
+            final LifeCompute lifeCompute = TestEngines.create(engine, WIDTH, HEIGHT);
+
+            try {
+
+                TestEngines.setRuleAndTopology(lifeCompute, rule, LifeCompute.TOPOLOGY_TORUS);
+
+                lifeCompute.setCellState(0, 128);
+                lifeCompute.setCellState(1, 200);
+                lifeCompute.setCellState(2, 255);
+
+                Assert.assertEquals(200, lifeCompute.getCellState(1));
+
+                lifeCompute.step(1);
+
+                final int[] cellStates = TestEngines.getCellStates(lifeCompute);
+
+                Assert.assertEquals(TestEngines.getName(engine), 129, cellStates[0]);
+                Assert.assertEquals(TestEngines.getName(engine), 201, cellStates[1]);
+                Assert.assertEquals(TestEngines.getName(engine), LifeCompute.STATE_DEAD, cellStates[2]);
+
+            } finally {
+                TestEngines.destroy(lifeCompute);
+            }
+
+        }
+
+    }
+
+}
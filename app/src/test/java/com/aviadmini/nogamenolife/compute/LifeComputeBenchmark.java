@@ -0,0 +1,497 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless benchmark of compute engines. Engines run on {@link ConcurrentComputeExecutor}, which only initializes and destroys them,
+ * ticks are run on the test thread through {@link LifeKernel} methods.
+ * <p>
+ * Skipped unless enabled, run with:
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest -Dnogamenolife.benchmark=true
+ * </pre>
+ * Optional properties: {@code nogamenolife.benchmark.engines} and {@code nogamenolife.benchmark.sizes} (comma separated filters),
+ * {@code nogamenolife.benchmark.millis} (duration of one iteration, 500 by default), {@code nogamenolife.benchmark.generations}
+ * (generations per tick call, 1 by default, like generations per tick in the app)
+ * <p>
+ * Every run starts from freshly seeded pattern and is limited to {@link #RUN_GENERATIONS_MAX} generations, so that all engines and
+ * iterations measure the same part of pattern's evolution rather than whatever it settles to
+ */
+public class LifeComputeBenchmark {
+
+    private static final String PROPERTY_ENABLED     = "nogamenolife.benchmark";
+    private static final String PROPERTY_ENGINES     = "nogamenolife.benchmark.engines";
+    private static final String PROPERTY_SIZES       = "nogamenolife.benchmark.sizes";
+    private static final String PROPERTY_MILLIS      = "nogamenolife.benchmark.millis";
+    private static final String PROPERTY_GENERATIONS = "nogamenolife.benchmark.generations";
+
+    private static final int[] SIZES = {64, 512, 4096};
+
+    private static final int WARMUP_ITERATIONS      = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    private static final long ITERATION_MILLIS_DEFAULT = 500L;
+
+    private static final int RUN_GENERATIONS_MAX = 1000;
+
+    private static final long RANDOM_SEED = 42L;
+
+    private static final long LIFECYCLE_TIMEOUT_SECONDS = 60L;
+
+    private static final int[][] R_PENTOMINO = {{1, 0}, {2, 0}, {0, 1}, {1, 1}, {1, 2}};
+
+    private static final int[][] GOSPER_GLIDER_GUN = {//
+            {24, 0},//
+            {22, 1}, {24, 1},//
+            {12, 2}, {13, 2}, {20, 2}, {21, 2}, {34, 2}, {35, 2},//
+            {11, 3}, {15, 3}, {20, 3}, {21, 3}, {34, 3}, {35, 3},//
+            {0, 4}, {1, 4}, {10, 4}, {16, 4}, {20, 4}, {21, 4},//
+            {0, 5}, {1, 5}, {10, 5}, {14, 5}, {16, 5}, {17, 5}, {22, 5}, {24, 5},//
+            {10, 6}, {16, 6}, {24, 6},//
+            {11, 7}, {15, 7},//
+            {12, 8}, {13, 8}};
+
+    private final ThreadMXBean mThreadMXBean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void benchmark()
+            throws InterruptedException {
+
+        Assume.assumeTrue("Benchmark is disabled, set -D" + PROPERTY_ENABLED + "=true to run it", Boolean.getBoolean(PROPERTY_ENABLED));
+
+        final long iterationMillis = Long.getLong(PROPERTY_MILLIS, ITERATION_MILLIS_DEFAULT);
+        final int generationsPerTick = Integer.getInteger(PROPERTY_GENERATIONS, 1);
+
+        System.out.println(String.format(Locale.US, "%-14s %6s %-14s %12s %12s %14s %14s", "engine", "size", "pattern", "gens/s", "ns/cell",
+                "alloc B/gen", "alloc MB/s"));
+
+        for (final Engine engine : this.getEngines()) {
+
+            if (!isSelected(PROPERTY_ENGINES, engine.getName())) {
+                continue;
+            }
+
+            for (final int size : SIZES) {
+
+                if (!isSelected(PROPERTY_SIZES, String.valueOf(size))) {
+                    continue;
+                }
+
+                for (final Pattern pattern : this.getPatterns()) {
+                    this.run(engine, size, pattern, iterationMillis, generationsPerTick);
+                }
+
+            }
+
+        }
+
+    }
+
+    private void run(@NonNull final Engine pEngine, final int pSize, @NonNull final Pattern pPattern, final long pIterationMillis,
+                     final int pGenerationsPerTick)
+            throws InterruptedException {
+
+        final LifecycleCallback callback = new LifecycleCallback();
+
+        final LifeCompute lifeCompute = pEngine.create(pSize, pSize, callback);
+
+        try {
+
+            // nothing else is queued on engine's executor after init, so its kernel can be driven from this thread
+            await(callback.mInitialized);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                this.iterate(lifeCompute, pPattern, pGenerationsPerTick, pIterationMillis);
+            }
+
+            final Result[] results = new Result[MEASUREMENT_ITERATIONS];
+
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                results[i] = this.iterate(lifeCompute, pPattern, pGenerationsPerTick, pIterationMillis);
+            }
+
+            // median by speed is less sensitive to GC pauses than mean
+            Arrays.sort(results);
+            final Result median = results[MEASUREMENT_ITERATIONS / 2];
+
+            final double seconds = median.mNanos / 1e9;
+            final double cells = (double) pSize * pSize;
+
+            final boolean allocationKnown = median.mAllocatedBytes >= 0L;
+
+            System.out.println(
+                    String.format(Locale.US, "%-14s %6d %-14s %12.1f %12.3f %14s %14s", pEngine.getName(), pSize, pPattern.getName(),
+                            median.mGenerations / seconds, median.mNanos / (median.mGenerations * cells),
+                            allocationKnown ? String.format(Locale.US, "%.1f", (double) median.mAllocatedBytes / median.mGenerations) : "n/a",
+                            allocationKnown ? String.format(Locale.US, "%.2f", median.mAllocatedBytes / seconds / (1024 * 1024)) : "n/a"));
+
+        } finally {
+
+            lifeCompute.destroy();
+
+            await(callback.mDestroyed);
+
+        }
+
+    }
+
+    /**
+     * Runs pattern from the start over and over until iteration time is over. Only ticks are measured, seeding is not
+     */
+    @NonNull
+    private Result iterate(@NonNull final LifeKernel pLifeKernel, @NonNull final Pattern pPattern, final int pGenerationsPerTick,
+                           final long pIterationMillis) {
+
+        final long threadId = Thread.currentThread()
+                                    .getId();
+
+        final long iterationNanos = pIterationMillis * 1000000L;
+
+        long generations = 0L;
+        long nanos = 0L;
+        long allocatedBytes = 0L;
+
+        while (nanos < iterationNanos) {
+
+            pLifeKernel.clearCells();
+
+            pPattern.seed(pLifeKernel);
+
+            final long allocatedBefore = this.getAllocatedBytes(threadId);
+
+            final long start = System.nanoTime();
+
+            long now;
+            int runGenerations = 0;
+
+            do {
+
+                pLifeKernel.step(pGenerationsPerTick);
+
+                runGenerations += pGenerationsPerTick;
+
+                now = System.nanoTime();
+
+            } while (runGenerations < RUN_GENERATIONS_MAX && nanos + now - start < iterationNanos);
+
+            final long allocatedAfter = this.getAllocatedBytes(threadId);
+
+            generations += runGenerations;
+            nanos += now - start;
+
+            allocatedBytes = allocatedBefore < 0L || allocatedBytes < 0L ? -1L : allocatedBytes + allocatedAfter - allocatedBefore;
+
+        }
+
+        return new Result(generations, nanos, allocatedBytes);
+    }
+
+    /**
+     * Only allocations of calling thread are counted, worker threads of parallel engines are not
+     *
+     * @return bytes allocated by thread so far or -1 if JVM can't tell
+     */
+    private long getAllocatedBytes(final long pThreadId) {
+
+        if (this.mThreadMXBean instanceof com.sun.management.ThreadMXBean) {
+
+            final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) this.mThreadMXBean;
+
+            if (threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return threadMXBean.getThreadAllocatedBytes(pThreadId);
+            }
+
+        }
+
+        return -1L;
+    }
+
+    private static void await(@NonNull final CountDownLatch pLatch)
+            throws InterruptedException {
+
+        if (!pLatch.await(LIFECYCLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Engine did not respond in time");
+        }
+
+    }
+
+    private static boolean isSelected(@NonNull final String pProperty, @NonNull final String pValue) {
+
+        final String filter = System.getProperty(pProperty);
+
+        if (filter == null || filter.trim()
+                                    .isEmpty()) {
+            return true;
+        }
+
+        for (final String item : filter.split(",")) {
+
+            if (item.trim()
+                    .equalsIgnoreCase(pValue)) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    @NonNull
+    private List<Engine> getEngines() {
+
+        final List<Engine> engines = new ArrayList<Engine>();
+
+        engines.add(new Engine("java") {
+
+            @NonNull
+            @Override
+            LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback) {
+                return new LifeComputeJava(pWidth, pHeight, pCallback, ConcurrentComputeExecutor.FACTORY);
+            }
+
+        });
+
+        engines.add(new Engine("java_parallel") {
+
+            @NonNull
+            @Override
+            LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback) {
+                return new LifeComputeJavaParallel(pWidth, pHeight, LifeComputeJavaParallel.getDefaultParallelism(), pCallback,
+                        ConcurrentComputeExecutor.FACTORY);
+            }
+
+        });
+
+        engines.add(new Engine("java_sparse") {
+
+            @NonNull
+            @Override
+            LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback) {
+                return new LifeComputeJavaSparse(pWidth, pHeight, pCallback, ConcurrentComputeExecutor.FACTORY);
+            }
+
+        });
+
+        engines.add(new Engine("bits") {
+
+            @NonNull
+            @Override
+            LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback) {
+                return new LifeComputeBits(pWidth, pHeight, pCallback, ConcurrentComputeExecutor.FACTORY);
+            }
+
+        });
+
+        engines.add(new Engine("hashlife") {
+
+            @NonNull
+            @Override
+            LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback) {
+                return new LifeComputeHashLife(pWidth, pHeight, LifeComputeHashLife.MEMORY_BUDGET_DEFAULT, pCallback,
+                        ConcurrentComputeExecutor.FACTORY);
+            }
+
+        });
+
+        return engines;
+    }
+
+    @NonNull
+    private List<Pattern> getPatterns() {
+
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+
+        patterns.add(new Pattern("r_pentomino") {
+
+            @Override
+            void seed(@NonNull final LifeKernel pLifeKernel) {
+                this.seedCentred(pLifeKernel, R_PENTOMINO);
+            }
+
+        });
+
+        patterns.add(new Pattern("glider_gun") {
+
+            @Override
+            void seed(@NonNull final LifeKernel pLifeKernel) {
+                this.seedCentred(pLifeKernel, GOSPER_GLIDER_GUN);
+            }
+
+        });
+
+        for (final int density : new int[]{10, 30, 50}) {
+
+            patterns.add(new Pattern("soup_" + density) {
+
+                @Override
+                void seed(@NonNull final LifeKernel pLifeKernel) {
+
+                    final Random random = new Random(RANDOM_SEED);
+
+                    final int cells = pLifeKernel.getWidth() * pLifeKernel.getHeight();
+
+                    for (int i = 0; i < cells; i++) {
+
+                        if (random.nextInt(100) < density) {
+                            pLifeKernel.setCellState(i, LifeCompute.STATE_ALIVE);
+                        }
+
+                    }
+
+                }
+
+            });
+
+        }
+
+        return patterns;
+    }
+
+    private static abstract class Engine {
+
+        private final String mName;
+
+        Engine(@NonNull final String pName) {
+            this.mName = pName;
+        }
+
+        @NonNull
+        abstract LifeCompute create(final int pWidth, final int pHeight, @NonNull final LifeCompute.Callback pCallback);
+
+        @NonNull
+        String getName() {
+            return this.mName;
+        }
+
+    }
+
+    private static abstract class Pattern {
+
+        private final String mName;
+
+        Pattern(@NonNull final String pName) {
+            this.mName = pName;
+        }
+
+        abstract void seed(@NonNull final LifeKernel pLifeKernel);
+
+        void seedCentred(@NonNull final LifeKernel pLifeKernel, @NonNull final int[][] pCells) {
+
+            final int left = pLifeKernel.getWidth() / 2 - 18;
+            final int top = pLifeKernel.getHeight() / 2 - 5;
+
+            for (final int[] cell : pCells) {
+                pLifeKernel.setCellState((top + cell[1]) * pLifeKernel.getWidth() + left + cell[0], LifeCompute.STATE_ALIVE);
+            }
+
+        }
+
+        @NonNull
+        String getName() {
+            return this.mName;
+        }
+
+    }
+
+    private static class Result
+            implements Comparable<Result> {
+
+        private final long mGenerations;
+        private final long mNanos;
+        private final long mAllocatedBytes;
+
+        Result(final long pGenerations, final long pNanos, final long pAllocatedBytes) {
+
+            this.mGenerations = pGenerations;
+            this.mNanos = pNanos;
+            this.mAllocatedBytes = pAllocatedBytes;
+
+        }
+
+        @Override
+        public int compareTo(@NonNull final Result pOther) {
+            return Double.compare((double) this.mNanos / this.mGenerations, (double) pOther.mNanos / pOther.mGenerations);
+        }
+
+    }
+
+    private static class LifecycleCallback
+            implements LifeCompute.Callback {
+
+        private final CountDownLatch mInitialized = new CountDownLatch(1);
+        private final CountDownLatch mDestroyed   = new CountDownLatch(1);
+
+        @Override
+        public void onInit() {
+            this.mInitialized.countDown();
+        }
+
+        @Override
+        public void onTick() {
+        }
+
+        @Override
+        public void onCleared() {
+        }
+
+        @Override
+        public void onCellState(final int pCellPosition, final int pCellState) {
+        }
+
+        @Override
+        public void onCellStates(@NonNull final CellStatesExchange pCellStatesExchange) {
+        }
+
+        @Override
+        public void onCellStatesDelta(@NonNull final CellStatesDelta pCellStatesDelta) {
+            pCellStatesDelta.release();
+        }
+
+        @Override
+        public void onDestroyed() {
+            this.mDestroyed.countDown();
+        }
+
+        @Override
+        public void onCellStateChanged(final int pCellPosition, final int pNewState) {
+        }
+
+        @Override
+        public void onCellStatesChanged(final int pCount) {
+        }
+
+        @Override
+        public void onSnapshotSaved(@NonNull final File pFile, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onSnapshotLoaded(@NonNull final File pFile, @NonNull final Rule pRule, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onPatternLoaded(@NonNull final Rule pRule, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onPatternSaved(@Nullable final IOException pError) {
+        }
+
+    }
+
+}
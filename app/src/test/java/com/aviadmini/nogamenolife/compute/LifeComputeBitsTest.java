@@ -0,0 +1,39 @@
+package com.aviadmini.nogamenolife.compute;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Bit-packed engine against {@link LifeComputeJava}
+ */
+public class LifeComputeBitsTest {
+
+    @Test
+    public void matchesJava() {
+        EngineEquivalence.assertMatchesJava(TestEngines.BITS);
+    }
+
+    @Test
+    public void supportsTwoStateTotalisticRulesOnTorusOnly() {
+
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.BITS, 70, 37);
+
+        try {
+
+            Assert.assertTrue(lifeCompute.isRuleSupported(Rule.CONWAY));
+            Assert.assertTrue(lifeCompute.isRuleSupported(Rule.parse("B36/S23")));
+
+            Assert.assertFalse(lifeCompute.isRuleSupported(Rule.parse("B2n3/S23-q")));
+            Assert.assertFalse(lifeCompute.isRuleSupported(Rule.parse("B2/S/C3")));
+
+            Assert.assertTrue(lifeCompute.isTopologySupported(LifeCompute.TOPOLOGY_TORUS));
+            Assert.assertFalse(lifeCompute.isTopologySupported(LifeCompute.TOPOLOGY_BOUNDED));
+            Assert.assertFalse(lifeCompute.isTopologySupported(LifeCompute.TOPOLOGY_KLEIN_BOTTLE));
+
+        } finally {
+            TestEngines.destroy(lifeCompute);
+        }
+
+    }
+
+}
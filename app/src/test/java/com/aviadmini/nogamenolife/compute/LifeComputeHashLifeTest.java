@@ -0,0 +1,106 @@
+package com.aviadmini.nogamenolife.compute;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * HashLife engine against {@link LifeComputeJava} and against itself with a node cache that has to be collected
+ */
+public class LifeComputeHashLifeTest {
+
+    // pattern in the middle, far enough from the edges for anything to reach them in the generations compared
+    private static final int SIZE         = 256;
+    private static final int PATTERN_SIZE = 16;
+    private static final int MARGIN       = (SIZE - PATTERN_SIZE) / 2;
+
+    // smallest budget engine takes, its cache is collected over and over during long jumps
+    private static final long MEMORY_BUDGET_MIN = 256L * 1024L;
+
+    private static final int JUMPS = 4;
+
+    private static final long SEED = 4L;
+
+    /**
+     * HashLife runs an unbounded plane, so it is compared with bounded board on a pattern that stays away from the edges
+     */
+    @Test
+    public void matchesJavaAwayFromEdges() {
+
+        // nothing moves faster than a cell per generation
+        Assert.assertTrue(MARGIN > EngineEquivalence.GENERATIONS + EngineEquivalence.JUMP_GENERATIONS);
+
+        final LifeCompute reference = TestEngines.create(TestEngines.JAVA, SIZE, SIZE);
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.HASHLIFE, SIZE, SIZE);
+
+        try {
+
+            for (final Rule rule : EngineEquivalence.RULES) {
+
+                if (!lifeCompute.isRuleSupported(rule)) {
+                    continue;
+                }
+
+                TestEngines.setRuleAndTopology(reference, rule, LifeCompute.TOPOLOGY_BOUNDED);
+                TestEngines.setRuleAndTopology(lifeCompute, rule, LifeCompute.TOPOLOGY_PLANE);
+
+                reference.clearCells();
+                lifeCompute.clearCells();
+
+                TestEngines.seed(reference, MARGIN, MARGIN, MARGIN + PATTERN_SIZE, MARGIN + PATTERN_SIZE, rule.getStates(), SEED);
+                TestEngines.seed(lifeCompute, MARGIN, MARGIN, MARGIN + PATTERN_SIZE, MARGIN + PATTERN_SIZE, rule.getStates(), SEED);
+
+                EngineEquivalence.assertSameGenerations(rule.toString(), reference, lifeCompute);
+
+            }
+
+        } finally {
+
+            TestEngines.destroy(reference);
+            TestEngines.destroy(lifeCompute);
+
+        }
+
+    }
+
+    /**
+     * Collecting nodes in the middle of long jumps must not change what the jumps come to
+     */
+    @Test
+    public void keepsResultsWhenCacheIsCollected() {
+
+        final LifeCompute reference = TestEngines.create(TestEngines.HASHLIFE, SIZE, SIZE);
+        final LifeCompute lifeCompute = TestEngines.createHashLife(SIZE, SIZE, MEMORY_BUDGET_MIN);
+
+        try {
+
+            TestEngines.seed(reference, MARGIN, MARGIN, MARGIN + PATTERN_SIZE, MARGIN + PATTERN_SIZE, 2, SEED);
+            TestEngines.seed(lifeCompute, MARGIN, MARGIN, MARGIN + PATTERN_SIZE, MARGIN + PATTERN_SIZE, 2, SEED);
+
+            for (int i = 0; i < JUMPS; i++) {
+
+                reference.step(1 << 12);
+                lifeCompute.step(1 << 12);
+
+                Assert.assertArrayEquals("jump " + i, TestEngines.getCellStates(reference), TestEngines.getCellStates(lifeCompute));
+
+            }
+
+            // rule change drops results computed with the old rule
+            TestEngines.setRuleAndTopology(reference, Rule.parse("B36/S23"), LifeCompute.TOPOLOGY_PLANE);
+            TestEngines.setRuleAndTopology(lifeCompute, Rule.parse("B36/S23"), LifeCompute.TOPOLOGY_PLANE);
+
+            reference.step(1 << 12);
+            lifeCompute.step(1 << 12);
+
+            Assert.assertArrayEquals(TestEngines.getCellStates(reference), TestEngines.getCellStates(lifeCompute));
+
+        } finally {
+
+            TestEngines.destroy(reference);
+            TestEngines.destroy(lifeCompute);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.aviadmini.nogamenolife.compute;
+
+import org.junit.Test;
+
+/**
+ * Multi-threaded engine against {@link LifeComputeJava}
+ */
+public class LifeComputeJavaParallelTest {
+
+    private static final long SEED = 2L;
+
+    @Test
+    public void matchesJava() {
+        EngineEquivalence.assertMatchesJava(TestEngines.JAVA_PARALLEL);
+    }
+
+    /**
+     * A single band, bands of a single row and more threads than there are rows to split
+     */
+    @Test
+    public void matchesJavaWhateverTheBands() {
+
+        final int width = 70;
+        final int height = 5;
+
+        for (final int parallelism : new int[]{1, 5, 8}) {
+
+            final LifeCompute reference = TestEngines.create(TestEngines.JAVA, width, height);
+            final LifeCompute lifeCompute = TestEngines.createParallel(width, height, parallelism);
+
+            try {
+
+                for (final Rule rule : new Rule[]{Rule.CONWAY, Rule.parse("B2n3/S23-q/C5")}) {
+
+                    for (final int topology : EngineEquivalence.TOPOLOGIES) {
+
+                        TestEngines.setRuleAndTopology(reference, rule, topology);
+                        TestEngines.setRuleAndTopology(lifeCompute, rule, topology);
+
+                        reference.clearCells();
+                        lifeCompute.clearCells();
+
+                        TestEngines.seed(reference, 0, 0, width, height, rule.getStates(), SEED);
+                        TestEngines.seed(lifeCompute, 0, 0, width, height, rule.getStates(), SEED);
+
+                        EngineEquivalence.assertSameGenerations("parallelism " + parallelism + " " + rule + " topology " + topology,
+                                reference, lifeCompute);
+
+                    }
+
+                }
+
+            } finally {
+
+                TestEngines.destroy(reference);
+                TestEngines.destroy(lifeCompute);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Sparse engine against {@link LifeComputeJava}, mostly on boards where few tiles are active
+ */
+public class LifeComputeJavaSparseTest {
+
+    // several tiles each way, not a multiple of tile size
+    private static final int WIDTH  = 90;
+    private static final int HEIGHT = 70;
+
+    private static final long SEED = 3L;
+
+    // glider heading south-east, {x, y} of its cells
+    private static final int[][] GLIDER = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+
+    @Test
+    public void matchesJava() {
+        EngineEquivalence.assertMatchesJava(TestEngines.JAVA_SPARSE);
+    }
+
+    /**
+     * Gliders on tile corners and across board edges keep waking up the tiles they move into
+     */
+    @Test
+    public void followsPatternsAcrossTiles() {
+
+        final LifeCompute reference = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.JAVA_SPARSE, WIDTH, HEIGHT);
+
+        try {
+
+            for (final int topology : EngineEquivalence.TOPOLOGIES) {
+
+                TestEngines.setRuleAndTopology(reference, Rule.CONWAY, topology);
+                TestEngines.setRuleAndTopology(lifeCompute, Rule.CONWAY, topology);
+
+                reference.clearCells();
+                lifeCompute.clearCells();
+
+                for (final LifeKernel lifeKernel : new LifeKernel[]{reference, lifeCompute}) {
+
+                    putGlider(lifeKernel, 14, 14);
+                    putGlider(lifeKernel, 40, 31);
+                    putGlider(lifeKernel, WIDTH - 2, HEIGHT - 2);
+
+                }
+
+                EngineEquivalence.assertSameGenerations("topology " + topology, reference, lifeCompute);
+
+            }
+
+        } finally {
+
+            TestEngines.destroy(reference);
+            TestEngines.destroy(lifeCompute);
+
+        }
+
+    }
+
+    /**
+     * Edits in tiles that have been stable for a long time have to bring them back to life
+     */
+    @Test
+    public void wakesTilesUpOnEdits() {
+
+        final LifeCompute reference = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.JAVA_SPARSE, WIDTH, HEIGHT);
+
+        try {
+
+            TestEngines.seed(reference, 0, 0, 20, 20, 2, SEED);
+            TestEngines.seed(lifeCompute, 0, 0, 20, 20, 2, SEED);
+
+            reference.step(300);
+            lifeCompute.step(300);
+
+            Assert.assertArrayEquals(TestEngines.getCellStates(reference), TestEngines.getCellStates(lifeCompute));
+
+            for (final LifeKernel lifeKernel : new LifeKernel[]{reference, lifeCompute}) {
+
+                putGlider(lifeKernel, 60, 40);
+
+                lifeKernel.setCellState(HEIGHT / 2 * WIDTH + WIDTH - 1, LifeCompute.STATE_ALIVE);
+                lifeKernel.setCellState(HEIGHT / 2 * WIDTH, LifeCompute.STATE_ALIVE);
+                lifeKernel.setCellState(HEIGHT / 2 * WIDTH + 1, LifeCompute.STATE_ALIVE);
+
+            }
+
+            EngineEquivalence.assertSameGenerations("edits", reference, lifeCompute);
+
+        } finally {
+
+            TestEngines.destroy(reference);
+            TestEngines.destroy(lifeCompute);
+
+        }
+
+    }
+
+    private static void putGlider(@NonNull final LifeKernel pLifeKernel, final int pX, final int pY) {
+
+        for (final int[] cell : GLIDER) {
+
+            final int x = (pX + cell[0]) % WIDTH;
+            final int y = (pY + cell[1]) % HEIGHT;
+
+            pLifeKernel.setCellState(y * WIDTH + x, LifeCompute.STATE_ALIVE);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * RLE and Macrocell import and export, round trips through every engine and malformed input
+ */
+public class PatternTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int WIDTH  = 10;
+    private static final int HEIGHT = 6;
+
+    // not a multiple of 64 or of sparse tile size, so that partial words and tiles are covered
+    private static final int ROUND_TRIP_WIDTH  = 70;
+    private static final int ROUND_TRIP_HEIGHT = 37;
+
+    private static final long SEED = 25L;
+
+    private static final String GLIDER_RLE = "x = 3, y = 3, rule = B3/S23\nbo$2bo$3o!\n";
+
+    // glider centred on WIDTH x HEIGHT board
+    private static final int[] GLIDER_CELLS = {//
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0,//
+            0, 0, 0, 0, 1, 0, 0, 0, 0, 0,//
+            0, 0, 0, 0, 0, 1, 0, 0, 0, 0,//
+            0, 0, 0, 1, 1, 1, 0, 0, 0, 0,//
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0,//
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private LifeCompute mLifeCompute;
+
+    @Before
+    public void setUp() {
+        this.mLifeCompute = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+    }
+
+    @After
+    public void tearDown() {
+        TestEngines.destroy(this.mLifeCompute);
+    }
+
+    @Test
+    public void readsRleCentred()
+            throws IOException {
+
+        load(this.mLifeCompute, "#N Glider\n#C comments and blank lines come before the header\n\n" + GLIDER_RLE);
+
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+        // runs may wrap anywhere and trailing dead cells and rows may be left out
+        load(this.mLifeCompute, "x = 3, y = 4\nb\no$2b\no$\n3\no$!");
+
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+    }
+
+    @Test
+    public void writesRle()
+            throws IOException {
+
+        load(this.mLifeCompute, GLIDER_RLE);
+
+        Assert.assertEquals(GLIDER_RLE, save(this.mLifeCompute, LifeCompute.PATTERN_FORMAT_RLE));
+
+        this.mLifeCompute.clearCells();
+
+        Assert.assertEquals("x = 0, y = 0, rule = B3/S23\n!\n", save(this.mLifeCompute, LifeCompute.PATTERN_FORMAT_RLE));
+
+    }
+
+    @Test
+    public void roundTripsGenerationsRle()
+            throws IOException {
+
+        final String pattern = "x = 5, y = 2, rule = B34/S12/C40\n.AB2A$pA3.B!\n";
+
+        load(this.mLifeCompute, pattern);
+
+        Assert.assertEquals(Rule.parse("B34/S12/C40"), this.mLifeCompute.getRule());
+
+        Assert.assertEquals(25, this.mLifeCompute.getCellState(3 * WIDTH + 2));
+
+        Assert.assertEquals(pattern, save(this.mLifeCompute, LifeCompute.PATTERN_FORMAT_RLE));
+
+    }
+
+    @Test
+    public void readsMacrocellCentred()
+            throws IOException {
+
+        load(this.mLifeCompute, "[M2] (golly 2.8)\n#R B3/S23\n.*$..*$***$\n");
+
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+        // empty quadrants do not count towards the size
+        load(this.mLifeCompute, "[M2] (golly 2.8)\n#R B3/S23\n.*$..*$***$\n4 0 0 0 1\n5 2 0 0 0\n");
+
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+    }
+
+    @Test
+    public void ignoresBoundedGridSuffixOfRule()
+            throws IOException {
+
+        load(this.mLifeCompute, "x = 3, y = 3, rule = B36/S23:T20,20\nbo$2bo$3o!\n");
+
+        Assert.assertEquals(Rule.parse("B36/S23"), this.mLifeCompute.getRule());
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+        load(this.mLifeCompute, "[M2] (golly 3.0)\n#R B3/S23:P30,20\n.*$..*$***$\n");
+
+        Assert.assertEquals(Rule.CONWAY, this.mLifeCompute.getRule());
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+    }
+
+    @Test
+    public void roundTripsThroughEveryEngine()
+            throws IOException {
+
+        final Rule generations = Rule.parse("B2n3/S23-q/C5");
+
+        for (final int engine : TestEngines.ALL) {
+
+            for (final int format : new int[]{LifeCompute.PATTERN_FORMAT_RLE, LifeCompute.PATTERN_FORMAT_MACROCELL}) {
+
+                final String message = TestEngines.getName(engine) + ", format " + format;
+
+                final LifeCompute saving = TestEngines.create(engine, ROUND_TRIP_WIDTH, ROUND_TRIP_HEIGHT);
+                final LifeCompute loading = TestEngines.create(TestEngines.JAVA, ROUND_TRIP_WIDTH, ROUND_TRIP_HEIGHT);
+
+                try {
+
+                    final Rule rule = saving.isRuleSupported(generations) ? generations : Rule.CONWAY;
+
+                    TestEngines.setRuleAndTopology(saving, rule, saving.getDefaultTopology());
+
+                    TestEngines.seed(saving, 3, 2, ROUND_TRIP_WIDTH - 1, ROUND_TRIP_HEIGHT - 4, rule.getStates(), SEED);
+
+                    load(loading, save(saving, format));
+
+                    Assert.assertEquals(message, rule, loading.getRule());
+
+                    // patterns are centred when loaded, RLE of both boards is the same wherever their cells are
+                    Assert.assertEquals(message, save(saving, LifeCompute.PATTERN_FORMAT_RLE),
+                            save(loading, LifeCompute.PATTERN_FORMAT_RLE));
+
+                } finally {
+
+                    TestEngines.destroy(saving);
+                    TestEngines.destroy(loading);
+
+                }
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void rejectsMalformedRle() {
+
+        assertRejected("");
+        assertRejected("#C only comments\n");
+        assertRejected("bo$2bo$3o!\n");
+        assertRejected("x = 3\nbo$2bo$3o!\n");
+        assertRejected("x = three, y = 3\nbo$2bo$3o!\n");
+        assertRejected("x = 3, y = 3, rule = B3/S23/C999\nbo$2bo$3o!\n");
+
+        // truncated
+        assertRejected("x = 3, y = 3\nbo$2bo$3o");
+
+        // cells outside of pattern size
+        assertRejected("x = 2, y = 3\nbo$2bo$3o!\n");
+        assertRejected("x = 3, y = 2\nbo$2bo$3o!\n");
+
+        assertRejected("x = 3, y = 3\nbo$2bz$3o!\n");
+        assertRejected("x = 3, y = 3\nbo$2bo$3pz!\n");
+
+    }
+
+    @Test
+    public void rejectsMalformedMacrocell() {
+
+        assertRejected("[M1]\n.*$..*$***$\n");
+        assertRejected("[M2]\n#R B3/S23/C999\n.*$..*$***$\n");
+
+        // leaf larger than 8x8
+        assertRejected("[M2]\n.........*$\n");
+        assertRejected("[M2]\n$$$$$$$$*$\n");
+
+        // children that are not defined before or are of wrong level
+        assertRejected("[M2]\n4 1 0 0 0\n");
+        assertRejected("[M2]\n.*$\n5 1 0 0 0\n");
+        assertRejected("[M2]\n99 0 0 0 0\n");
+
+        assertRejected("[M2]\n.*$\n4 1 x 0 0\n");
+        assertRejected("[M2]\n?\n");
+
+    }
+
+    @Test
+    public void keepsBoardIfPatternDoesNotFit()
+            throws IOException {
+
+        load(this.mLifeCompute, GLIDER_RLE);
+
+        assertRejected("x = 11, y = 1\n11o!\n");
+        assertRejected("[M2]\n********$\n4 1 1 0 0\n");
+
+        Assert.assertArrayEquals(GLIDER_CELLS, TestEngines.getCellStates(this.mLifeCompute));
+
+    }
+
+    private void assertRejected(@NonNull final String pPattern) {
+
+        try {
+
+            load(this.mLifeCompute, pPattern);
+
+            Assert.fail("Pattern should be rejected: " + pPattern);
+
+        } catch (final IOException e) {
+            // expected
+        }
+
+    }
+
+    private static void load(@NonNull final LifeKernel pLifeKernel, @NonNull final String pPattern)
+            throws IOException {
+        pLifeKernel.loadPattern(new ByteArrayInputStream(pPattern.getBytes(ASCII)));
+    }
+
+    @NonNull
+    private static String save(@NonNull final LifeKernel pLifeKernel, final int pFormat)
+            throws IOException {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        pLifeKernel.savePattern(outputStream, pFormat);
+
+        return new String(outputStream.toByteArray(), ASCII);
+    }
+
+}
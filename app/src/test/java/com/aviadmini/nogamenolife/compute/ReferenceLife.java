@@ -0,0 +1,87 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Straightforward generation stepping, neighbour by neighbour, that engines are checked against. Topologies are applied to coordinates
+ * as documented on their {@link LifeCompute} constants rather than through a halo
+ */
+final class ReferenceLife {
+
+    private ReferenceLife() {
+    }
+
+    /**
+     * @param pCellStates cell states, width * height in size
+     * @param pTopology   one of {@link LifeCompute#TOPOLOGY_TORUS}, {@link LifeCompute#TOPOLOGY_BOUNDED} and
+     *                    {@link LifeCompute#TOPOLOGY_KLEIN_BOTTLE}
+     * @return next generation
+     */
+    @NonNull
+    static int[] step(@NonNull final int[] pCellStates, final int pWidth, final int pHeight, @NonNull final Rule pRule,
+                      final int pTopology) {
+
+        final int[] next = new int[pCellStates.length];
+
+        for (int y = 0; y < pHeight; y++) {
+
+            for (int x = 0; x < pWidth; x++) {
+
+                final int state = pCellStates[y * pWidth + x];
+
+                if (state >= 2) {
+
+                    next[y * pWidth + x] = pRule.getNextDyingState(state);
+
+                    continue;
+                }
+
+                int neighbourhood = 0;
+
+                for (int dy = -1; dy <= 1; dy++) {
+
+                    for (int dx = -1; dx <= 1; dx++) {
+
+                        if (getCellState(pCellStates, pWidth, pHeight, pTopology, x + dx, y + dy) == LifeCompute.STATE_ALIVE) {
+                            neighbourhood |= 1 << ((dy + 1) * 3 + dx + 1);
+                        }
+
+                    }
+
+                }
+
+                next[y * pWidth + x] = pRule.getNextState(neighbourhood);
+
+            }
+
+        }
+
+        return next;
+    }
+
+    /**
+     * @return state of the cell at given coordinates, which may be off board by one
+     */
+    private static int getCellState(@NonNull final int[] pCellStates, final int pWidth, final int pHeight, final int pTopology, int pX,
+                                    int pY) {
+
+        if (pX >= 0 && pX < pWidth && pY >= 0 && pY < pHeight) {
+            return pCellStates[pY * pWidth + pX];
+        }
+
+        if (pTopology == LifeCompute.TOPOLOGY_BOUNDED) {
+            return LifeCompute.STATE_DEAD;
+        }
+
+        // leaving at the top or bottom of Klein bottle comes back on the opposite side
+        if (pTopology == LifeCompute.TOPOLOGY_KLEIN_BOTTLE && (pY < 0 || pY >= pHeight)) {
+            pX = pWidth - 1 - pX;
+        }
+
+        pX = (pX % pWidth + pWidth) % pWidth;
+        pY = (pY % pHeight + pHeight) % pHeight;
+
+        return pCellStates[pY * pWidth + pX];
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Rule parsing, canonical notation and compiled lookup tables
+ */
+public class RuleTest {
+
+    // Hensel letters of every neighbour count, configurations of 5 and more are complements of the ones of 8 - count
+    private static final String[] LETTERS = {"", "ce", "aceikn", "aceijknqry", "aceijknqrtwyz", "aceijknqry", "aceikn", "ce", ""};
+
+    // neighbourhood bits of 3x3 neighbourhood around the cell, see Rule#getNextState(int)
+    private static final int N  = 1 << 1;
+    private static final int NE = 1 << 2;
+    private static final int E  = 1 << 5;
+    private static final int S  = 1 << 7;
+    private static final int SW = 1 << 6;
+    private static final int W  = 1 << 3;
+
+    private static final int CELL = 1 << Rule.NEIGHBOURHOOD_BIT_CELL;
+
+    @Test
+    public void parsesToCanonicalNotation() {
+
+        assertCanonical("B3/S23", "B3/S23");
+        assertCanonical("b36/s23", "B36/S23");
+        assertCanonical("B 3 / S 2 3", "B3/S23");
+        assertCanonical("S23/B3", "B3/S23");
+        assertCanonical("B3S23", "B3/S23");
+
+        // legacy S/B
+        assertCanonical("23/3", "B3/S23");
+        assertCanonical("/2", "B2/S");
+
+        // generations
+        assertCanonical("B2/S/C3", "B2/S/C3");
+        assertCanonical("B2/S/G3", "B2/S/C3");
+        assertCanonical("B2S/C3", "B2/S/C3");
+        assertCanonical("/2/3", "B2/S/C3");
+        assertCanonical("345/2/4", "B2/S345/C4");
+        assertCanonical("B3/S23/C2", "B3/S23");
+
+        // Hensel, whichever of picking and excluding letters is shorter
+        assertCanonical("B2n3/S23-q", "B2n3/S23-q");
+        assertCanonical("B3/S2-i34q", "B3/S2-i34q");
+        assertCanonical("B2acein/S", "B2-k/S");
+        assertCanonical("B3aceijknqry/S23", "B3/S23");
+        assertCanonical("B3-q/S2ik", "B3-q/S2ik");
+        assertCanonical("B2n3/S23-q/C5", "B2n3/S23-q/C5");
+
+    }
+
+    @Test
+    public void canonicalNotationParsesToEqualRule() {
+
+        for (final String notation : new String[]{"B36/S23", "B2n3/S23-q", "B3/S2-i34q", "B2-k/S", "B34/S12/C256", "B1e/S", "B3/S78"}) {
+
+            final Rule rule = Rule.parse(notation);
+
+            final Rule reparsed = Rule.parse(rule.toString());
+
+            Assert.assertEquals(rule, reparsed);
+            Assert.assertEquals(rule.hashCode(), reparsed.hashCode());
+
+            for (int neighbourhood = 0; neighbourhood < 1 << 9; neighbourhood++) {
+                Assert.assertEquals(rule.getNextState(neighbourhood), reparsed.getNextState(neighbourhood));
+            }
+
+        }
+
+        Assert.assertEquals(Rule.CONWAY, Rule.parse("23/3"));
+        Assert.assertNotEquals(Rule.CONWAY, Rule.parse("B3/S23/C3"));
+
+    }
+
+    @Test
+    public void rejectsInvalidRules() {
+
+        for (final String notation : new String[]{"", "B3", "S23", "3", "B9/S", "B0/S23", "B3x/S23", "B3-/S23", "B1a/S", "B2/S/C1",
+                "B2/S/C257", "B2/S/Cx", "B3/S23:T20,20"}) {
+
+            try {
+
+                Rule.parse(notation);
+
+                Assert.fail("Rule should be rejected: " + notation);
+
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+
+        }
+
+    }
+
+    @Test
+    public void totalisticRulesCountNeighbours() {
+
+        final Rule rule = Rule.parse("B36/S23");
+
+        Assert.assertTrue(rule.isTotalistic());
+
+        Assert.assertEquals((1 << 3) | (1 << 6), rule.getBirthCounts());
+        Assert.assertEquals((1 << 2) | (1 << 3), rule.getSurvivalCounts());
+
+        for (int neighbourhood = 0; neighbourhood < 1 << 9; neighbourhood++) {
+
+            final boolean alive = (neighbourhood & CELL) != 0;
+
+            final int count = Integer.bitCount(neighbourhood & ~CELL);
+
+            final boolean next = alive ? count == 2 || count == 3 : count == 3 || count == 6;
+
+            Assert.assertEquals(next ? LifeCompute.STATE_ALIVE : LifeCompute.STATE_DEAD, rule.getNextState(neighbourhood));
+
+        }
+
+    }
+
+    @Test
+    public void henselLettersPartitionEveryNeighbourCount() {
+
+        for (int count = 1; count < 8; count++) {
+
+            final String letters = LETTERS[count];
+
+            // neighbourhoods of this count picked by every letter, each one by exactly one letter
+            final int[] picks = new int[1 << 9];
+
+            for (int l = 0; l < letters.length(); l++) {
+
+                final Rule rule = Rule.parse("B" + count + letters.charAt(l) + "/S");
+
+                Assert.assertFalse(rule.isTotalistic());
+
+                for (int neighbourhood = 0; neighbourhood < 1 << 9; neighbourhood++) {
+
+                    if (rule.getNextState(neighbourhood) != LifeCompute.STATE_ALIVE) {
+                        continue;
+                    }
+
+                    Assert.assertEquals(0, neighbourhood & CELL);
+                    Assert.assertEquals(count, Integer.bitCount(neighbourhood));
+
+                    picks[neighbourhood]++;
+
+                }
+
+            }
+
+            final Rule whole = Rule.parse("B" + count + "/S");
+
+            for (int neighbourhood = 0; neighbourhood < 1 << 9; neighbourhood++) {
+
+                final boolean picked = whole.getNextState(neighbourhood) == LifeCompute.STATE_ALIVE;
+
+                Assert.assertEquals("count " + count + ", neighbourhood " + neighbourhood, picked ? 1 : 0, picks[neighbourhood]);
+
+            }
+
+            // excluding a letter picks exactly the configurations the other letters do
+            for (int l = 0; l < letters.length(); l++) {
+
+                final Rule excluding = Rule.parse("B" + count + "-" + letters.charAt(l) + "/S");
+                final Rule letter = Rule.parse("B" + count + letters.charAt(l) + "/S");
+
+                for (int neighbourhood = 0; neighbourhood < 1 << 9; neighbourhood++) {
+
+                    final boolean inWhole = whole.getNextState(neighbourhood) == LifeCompute.STATE_ALIVE;
+                    final boolean inLetter = letter.getNextState(neighbourhood) == LifeCompute.STATE_ALIVE;
+
+                    Assert.assertEquals(inWhole && !inLetter, excluding.getNextState(neighbourhood) == LifeCompute.STATE_ALIVE);
+
+                }
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void henselLettersPickTheirConfigurations() {
+
+        // 2i is two opposite edge neighbours, 2n two opposite corners, 2e two edges at a right angle
+        final Rule rule = Rule.parse("B2i/S1e");
+
+        Assert.assertEquals(LifeCompute.STATE_ALIVE, rule.getNextState(N | S));
+        Assert.assertEquals(LifeCompute.STATE_ALIVE, rule.getNextState(E | W));
+        Assert.assertEquals(LifeCompute.STATE_DEAD, rule.getNextState(N | E));
+        Assert.assertEquals(LifeCompute.STATE_DEAD, rule.getNextState(NE | SW));
+
+        Assert.assertEquals(LifeCompute.STATE_ALIVE, Rule.parse("B2n/S")
+                                                         .getNextState(NE | SW));
+        Assert.assertEquals(LifeCompute.STATE_ALIVE, Rule.parse("B2e/S")
+                                                         .getNextState(N | E));
+
+        // 1e survives on an edge neighbour, not on a corner one
+        Assert.assertEquals(LifeCompute.STATE_ALIVE, rule.getNextState(CELL | W));
+        Assert.assertEquals(LifeCompute.STATE_DEAD, rule.getNextState(CELL | NE));
+
+    }
+
+    @Test
+    public void generationsCellsDecay() {
+
+        final Rule rule = Rule.parse("B2/S/C4");
+
+        Assert.assertEquals(4, rule.getStates());
+
+        // alive cell with no neighbours does not survive and starts dying
+        Assert.assertEquals(2, rule.getNextState(CELL));
+
+        Assert.assertEquals(3, rule.getNextDyingState(2));
+        Assert.assertEquals(LifeCompute.STATE_DEAD, rule.getNextDyingState(3));
+
+        // two state rules kill cells that do not survive
+        Assert.assertEquals(LifeCompute.STATE_DEAD, Rule.CONWAY.getNextState(CELL));
+
+    }
+
+    private static void assertCanonical(@NonNull final String pNotation, @NonNull final String pCanonical) {
+        Assert.assertEquals(pNotation, pCanonical, Rule.parse(pNotation)
+                                                       .toString());
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Snapshots saved by every engine and loaded by every other one
+ */
+public class SnapshotTest {
+
+    // not a multiple of 64 or of sparse tile size, so that partial words and tiles are covered
+    private static final int WIDTH  = 70;
+    private static final int HEIGHT = 37;
+
+    private static final int GENERATIONS = 12;
+
+    private static final long SEED = 24L;
+
+    // the first one both engines can compute is used
+    private static final Rule[] RULES = {Rule.parse("B2n3/S23-q/C5"), Rule.parse("B36/S23"), Rule.CONWAY};
+
+    private File mFile;
+
+    @Before
+    public void setUp()
+            throws IOException {
+        this.mFile = File.createTempFile("board", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+
+        if (!this.mFile.delete()) {
+            this.mFile.deleteOnExit();
+        }
+
+    }
+
+    @Test
+    public void roundTripsAcrossEngines()
+            throws IOException {
+
+        for (final int savingEngine : TestEngines.ALL) {
+
+            for (final int loadingEngine : TestEngines.ALL) {
+                this.roundTrip(savingEngine, loadingEngine);
+            }
+
+        }
+
+    }
+
+    private void roundTrip(final int pSavingEngine, final int pLoadingEngine)
+            throws IOException {
+
+        final String message = TestEngines.getName(pSavingEngine) + " to " + TestEngines.getName(pLoadingEngine);
+
+        final LifeCompute saving = TestEngines.create(pSavingEngine, WIDTH, HEIGHT);
+        final LifeCompute loading = TestEngines.create(pLoadingEngine, WIDTH, HEIGHT);
+
+        try {
+
+            final Rule rule = getCommonRule(saving, loading);
+
+            final int topology = getCommonTopology(saving, loading);
+
+            TestEngines.setRuleAndTopology(saving, rule, topology);
+
+            // away from the edges, so that unbounded plane does not lose anything in the window over these generations
+            TestEngines.seed(saving, 20, 10, WIDTH - 20, HEIGHT - 10, rule.getStates(), SEED);
+
+            saving.step(GENERATIONS);
+
+            saving.saveSnapshot(this.mFile);
+
+            // something to overwrite
+            TestEngines.seed(loading, 0, 0, WIDTH, HEIGHT, 2, SEED + 1L);
+
+            loading.loadSnapshot(this.mFile);
+
+            Assert.assertEquals(message, rule, loading.getRule());
+            Assert.assertEquals(message, GENERATIONS, loading.getStep());
+
+            Assert.assertArrayEquals(message, TestEngines.getCellStates(saving), TestEngines.getCellStates(loading));
+
+            // engines that share topology have to carry on the same
+            if (loading.getTopology() == topology) {
+
+                saving.step(GENERATIONS);
+                loading.step(GENERATIONS);
+
+                Assert.assertEquals(message, saving.getStep(), loading.getStep());
+
+                Assert.assertArrayEquals(message, TestEngines.getCellStates(saving), TestEngines.getCellStates(loading));
+
+            }
+
+        } finally {
+
+            TestEngines.destroy(saving);
+            TestEngines.destroy(loading);
+
+        }
+
+    }
+
+    @Test
+    public void takesRuleAndTopologyIfSupported()
+            throws IOException {
+
+        final LifeCompute saving = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+        final LifeCompute loading = TestEngines.create(TestEngines.JAVA_SPARSE, WIDTH, HEIGHT);
+        final LifeCompute bits = TestEngines.create(TestEngines.BITS, WIDTH, HEIGHT);
+
+        try {
+
+            TestEngines.setRuleAndTopology(saving, Rule.parse("B36/S23"), LifeCompute.TOPOLOGY_KLEIN_BOTTLE);
+
+            saving.saveSnapshot(this.mFile);
+
+            loading.loadSnapshot(this.mFile);
+
+            Assert.assertEquals(Rule.parse("B36/S23"), loading.getRule());
+            Assert.assertEquals(LifeCompute.TOPOLOGY_KLEIN_BOTTLE, loading.getTopology());
+
+            // torus only engine keeps its own topology
+            bits.loadSnapshot(this.mFile);
+
+            Assert.assertEquals(Rule.parse("B36/S23"), bits.getRule());
+            Assert.assertEquals(LifeCompute.TOPOLOGY_TORUS, bits.getTopology());
+
+        } finally {
+
+            TestEngines.destroy(saving);
+            TestEngines.destroy(loading);
+            TestEngines.destroy(bits);
+
+        }
+
+    }
+
+    @Test
+    public void keepsBoardIfSnapshotIsOfOtherSize()
+            throws IOException {
+
+        final LifeCompute saving = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+        final LifeCompute loading = TestEngines.create(TestEngines.JAVA, HEIGHT, WIDTH);
+
+        try {
+
+            saving.saveSnapshot(this.mFile);
+
+            TestEngines.seed(loading, 0, 0, HEIGHT, WIDTH, 2, SEED);
+
+            final int[] cellStates = TestEngines.getCellStates(loading);
+
+            try {
+
+                loading.loadSnapshot(this.mFile);
+
+                Assert.fail("Snapshot of other size should be rejected");
+
+            } catch (final IOException e) {
+                // expected
+            }
+
+            Assert.assertArrayEquals(cellStates, TestEngines.getCellStates(loading));
+
+        } finally {
+
+            TestEngines.destroy(saving);
+            TestEngines.destroy(loading);
+
+        }
+
+    }
+
+    @Test
+    public void rejectsCorruptSnapshots()
+            throws IOException {
+
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.JAVA, WIDTH, HEIGHT);
+
+        try {
+
+            this.writeFile(new byte[0]);
+            assertRejected(lifeCompute, this.mFile);
+
+            final byte[] garbage = new byte[4096];
+            Arrays.fill(garbage, (byte) 0x5A);
+
+            this.writeFile(garbage);
+            assertRejected(lifeCompute, this.mFile);
+
+            lifeCompute.saveSnapshot(this.mFile);
+
+            // header is intact, body is cut short
+            final RandomAccessFile file = new RandomAccessFile(this.mFile, "rw");
+
+            try {
+                file.setLength(file.length() - 8L);
+            } finally {
+                file.close();
+            }
+
+            assertRejected(lifeCompute, this.mFile);
+
+        } finally {
+            TestEngines.destroy(lifeCompute);
+        }
+
+    }
+
+    private void writeFile(@NonNull final byte[] pBytes)
+            throws IOException {
+
+        final FileOutputStream outputStream = new FileOutputStream(this.mFile);
+
+        try {
+            outputStream.write(pBytes);
+        } finally {
+            outputStream.close();
+        }
+
+    }
+
+    private static void assertRejected(@NonNull final LifeKernel pLifeKernel, @NonNull final File pFile) {
+
+        try {
+
+            pLifeKernel.loadSnapshot(pFile);
+
+            Assert.fail("Corrupt snapshot should be rejected");
+
+        } catch (final IOException e) {
+            // expected
+        }
+
+    }
+
+    @NonNull
+    private static Rule getCommonRule(@NonNull final LifeCompute pFirst, @NonNull final LifeCompute pSecond) {
+
+        for (final Rule rule : RULES) {
+
+            if (pFirst.isRuleSupported(rule) && pSecond.isRuleSupported(rule)) {
+                return rule;
+            }
+
+        }
+
+        return Rule.CONWAY;
+    }
+
+    /**
+     * @return bounded if both engines support it, default topology of the first one otherwise
+     */
+    private static int getCommonTopology(@NonNull final LifeCompute pFirst, @NonNull final LifeCompute pSecond) {
+
+        if (pFirst.isTopologySupported(LifeCompute.TOPOLOGY_BOUNDED) && pSecond.isTopologySupported(LifeCompute.TOPOLOGY_BOUNDED)) {
+            return LifeCompute.TOPOLOGY_BOUNDED;
+        }
+
+        return pFirst.getDefaultTopology();
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engines that run on plain JVM for tests. They are created on {@link ConcurrentComputeExecutor} and, once nothing is queued on it,
+ * driven from the test thread through {@link LifeKernel} methods
+ */
+final class TestEngines {
+
+    static final int JAVA          = 0;
+    static final int JAVA_PARALLEL = 1;
+    static final int JAVA_SPARSE   = 2;
+    static final int BITS          = 3;
+    static final int HASHLIFE      = 4;
+
+    static final int[] ALL = {JAVA, JAVA_PARALLEL, JAVA_SPARSE, BITS, HASHLIFE};
+
+    private static final String[] NAMES = {"java", "java_parallel", "java_sparse", "bits", "hashlife"};
+
+    // more bands than most test boards have rows of tiles, so that band edges are crossed whatever the machine
+    private static final int PARALLELISM = 3;
+
+    private static final long TIMEOUT_SECONDS = 60L;
+
+    private TestEngines() {
+    }
+
+    /**
+     * Creates engine and waits until it is initialized
+     *
+     * @param pEngine one of engine constants
+     */
+    @NonNull
+    static LifeCompute create(final int pEngine, final int pWidth, final int pHeight) {
+
+        final Callback callback = new Callback();
+
+        final LifeCompute lifeCompute;
+
+        switch (pEngine) {
+
+            case JAVA: {
+                lifeCompute = new LifeComputeJava(pWidth, pHeight, callback, ConcurrentComputeExecutor.FACTORY);
+                break;
+            }
+
+            case JAVA_PARALLEL: {
+                lifeCompute = new LifeComputeJavaParallel(pWidth, pHeight, PARALLELISM, callback, ConcurrentComputeExecutor.FACTORY);
+                break;
+            }
+
+            case JAVA_SPARSE: {
+                lifeCompute = new LifeComputeJavaSparse(pWidth, pHeight, callback, ConcurrentComputeExecutor.FACTORY);
+                break;
+            }
+
+            case BITS: {
+                lifeCompute = new LifeComputeBits(pWidth, pHeight, callback, ConcurrentComputeExecutor.FACTORY);
+                break;
+            }
+
+            case HASHLIFE: {
+                lifeCompute = new LifeComputeHashLife(pWidth, pHeight, LifeComputeHashLife.MEMORY_BUDGET_DEFAULT, callback,
+                        ConcurrentComputeExecutor.FACTORY);
+                break;
+            }
+
+            default: {
+                throw new IllegalArgumentException("Unknown engine");
+            }
+
+        }
+
+        return awaitInit(lifeCompute, callback);
+    }
+
+    /**
+     * Creates parallel engine with given number of bands and waits until it is initialized
+     */
+    @NonNull
+    static LifeCompute createParallel(final int pWidth, final int pHeight, final int pParallelism) {
+
+        final Callback callback = new Callback();
+
+        return awaitInit(new LifeComputeJavaParallel(pWidth, pHeight, pParallelism, callback, ConcurrentComputeExecutor.FACTORY), callback);
+    }
+
+    /**
+     * Creates HashLife engine with given node cache budget and waits until it is initialized
+     */
+    @NonNull
+    static LifeCompute createHashLife(final int pWidth, final int pHeight, final long pMemoryBudget) {
+
+        final Callback callback = new Callback();
+
+        return awaitInit(new LifeComputeHashLife(pWidth, pHeight, pMemoryBudget, callback, ConcurrentComputeExecutor.FACTORY), callback);
+    }
+
+    @NonNull
+    private static LifeCompute awaitInit(@NonNull final LifeCompute pLifeCompute, @NonNull final Callback pCallback) {
+
+        await(pCallback.mInitialized);
+
+        // constructors may queue more than init, e.g. clearing the board
+        awaitIdle(pLifeCompute);
+
+        return pLifeCompute;
+    }
+
+    @NonNull
+    static String getName(final int pEngine) {
+        return NAMES[pEngine];
+    }
+
+    /**
+     * Waits until every request queued on engine's executor so far, like rule or topology change, is done
+     */
+    static void awaitIdle(@NonNull final LifeCompute pLifeCompute) {
+
+        final Callback callback = (Callback) pLifeCompute.getCallback();
+
+        pLifeCompute.requestCellStates();
+
+        try {
+
+            if (!callback.mCellStatesPublished.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Engine did not respond in time");
+            }
+
+        } catch (final InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    /**
+     * Sets rule and topology and waits until they are applied
+     */
+    static void setRuleAndTopology(@NonNull final LifeCompute pLifeCompute, @NonNull final Rule pRule, final int pTopology) {
+
+        pLifeCompute.setRule(pRule);
+        pLifeCompute.setTopology(pTopology);
+
+        awaitIdle(pLifeCompute);
+
+    }
+
+    static void destroy(@NonNull final LifeCompute pLifeCompute) {
+
+        pLifeCompute.destroy();
+
+        await(((Callback) pLifeCompute.getCallback()).mDestroyed);
+
+    }
+
+    /**
+     * Makes random cells in given part of the board alive or, for generations rules, dying
+     *
+     * @param pStates number of states of the rule
+     */
+    static void seed(@NonNull final LifeKernel pLifeKernel, final int pLeft, final int pTop, final int pRight, final int pBottom,
+                     final int pStates, final long pSeed) {
+
+        final Random random = new Random(pSeed);
+
+        for (int y = pTop; y < pBottom; y++) {
+
+            for (int x = pLeft; x < pRight; x++) {
+
+                int state = LifeCompute.STATE_DEAD;
+
+                if (random.nextInt(3) == 0) {
+                    state = LifeCompute.STATE_ALIVE;
+                } else if (random.nextInt(4) == 0) {
+                    state = random.nextInt(pStates);
+                }
+
+                pLifeKernel.setCellState(y * pLifeKernel.getWidth() + x, state);
+
+            }
+
+        }
+
+    }
+
+    @NonNull
+    static int[] getCellStates(@NonNull final LifeKernel pLifeKernel) {
+
+        final int[] cellStates = new int[pLifeKernel.getWidth() * pLifeKernel.getHeight()];
+
+        pLifeKernel.getCellStates(cellStates);
+
+        return cellStates;
+    }
+
+    private static void await(@NonNull final CountDownLatch pLatch) {
+
+        try {
+
+            if (!pLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Engine did not respond in time");
+            }
+
+        } catch (final InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private static class Callback
+            implements LifeCompute.Callback {
+
+        private final CountDownLatch mInitialized = new CountDownLatch(1);
+        private final CountDownLatch mDestroyed   = new CountDownLatch(1);
+
+        private final Semaphore mCellStatesPublished = new Semaphore(0);
+
+        @Override
+        public void onInit() {
+            this.mInitialized.countDown();
+        }
+
+        @Override
+        public void onTick() {
+        }
+
+        @Override
+        public void onCleared() {
+        }
+
+        @Override
+        public void onCellState(final int pCellPosition, final int pCellState) {
+        }
+
+        @Override
+        public void onCellStates(@NonNull final CellStatesExchange pCellStatesExchange) {
+            this.mCellStatesPublished.release();
+        }
+
+        @Override
+        public void onCellStatesDelta(@NonNull final CellStatesDelta pCellStatesDelta) {
+            pCellStatesDelta.release();
+        }
+
+        @Override
+        public void onDestroyed() {
+            this.mDestroyed.countDown();
+        }
+
+        @Override
+        public void onCellStateChanged(final int pCellPosition, final int pNewState) {
+        }
+
+        @Override
+        public void onCellStatesChanged(final int pCount) {
+        }
+
+        @Override
+        public void onSnapshotSaved(@NonNull final File pFile, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onSnapshotLoaded(@NonNull final File pFile, @NonNull final Rule pRule, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onPatternLoaded(@NonNull final Rule pRule, @Nullable final IOException pError) {
+        }
+
+        @Override
+        public void onPatternSaved(@Nullable final IOException pError) {
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.aviadmini.nogamenolife.compute;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Halo of Java engine against plain coordinate wrapping of {@link ReferenceLife}, for every topology
+ */
+public class TopologyTest {
+
+    private static final int GENERATIONS = 40;
+
+    private static final long SEED = 21L;
+
+    @Test
+    public void javaMatchesReference() {
+
+        for (final int[] size : EngineEquivalence.SIZES) {
+
+            final LifeCompute lifeCompute = TestEngines.create(TestEngines.JAVA, size[0], size[1]);
+
+            try {
+
+                for (final Rule rule : new Rule[]{Rule.CONWAY, Rule.parse("B2n3/S23-q")}) {
+
+                    for (final int topology : EngineEquivalence.TOPOLOGIES) {
+
+                        final String message = String.format("%sx%s %s topology %s", size[0], size[1], rule, topology);
+
+                        TestEngines.setRuleAndTopology(lifeCompute, rule, topology);
+
+                        lifeCompute.clearCells();
+
+                        TestEngines.seed(lifeCompute, 0, 0, size[0], size[1], rule.getStates(), SEED);
+
+                        assertMatchesReference(message, lifeCompute, rule, topology);
+
+                    }
+
+                }
+
+            } finally {
+                TestEngines.destroy(lifeCompute);
+            }
+
+        }
+
+    }
+
+    /**
+     * A glider leaving Klein bottle at the bottom comes back at the top, mirrored and on the opposite side
+     */
+    @Test
+    public void kleinBottleMirrorsAcrossTopAndBottom() {
+
+        final int width = 12;
+        final int height = 10;
+
+        final LifeCompute lifeCompute = TestEngines.create(TestEngines.JAVA, width, height);
+
+        try {
+
+            TestEngines.setRuleAndTopology(lifeCompute, Rule.CONWAY, LifeCompute.TOPOLOGY_KLEIN_BOTTLE);
+
+            // glider heading south-east near the left edge
+            for (final int[] cell : new int[][]{{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}}) {
+                lifeCompute.setCellState((cell[1] + 4) * width + cell[0] + 1, LifeCompute.STATE_ALIVE);
+            }
+
+            assertMatchesReference("klein bottle", lifeCompute, Rule.CONWAY, LifeCompute.TOPOLOGY_KLEIN_BOTTLE);
+
+        } finally {
+            TestEngines.destroy(lifeCompute);
+        }
+
+    }
+
+    @Test
+    public void enginesStartWithTheirDefaultTopologyAndRejectOthers() {
+
+        final LifeCompute java = TestEngines.create(TestEngines.JAVA, 8, 8);
+        final LifeCompute hashLife = TestEngines.create(TestEngines.HASHLIFE, 8, 8);
+
+        try {
+
+            Assert.assertEquals(LifeCompute.TOPOLOGY_TORUS, java.getTopology());
+            Assert.assertEquals(LifeCompute.TOPOLOGY_PLANE, hashLife.getTopology());
+
+            try {
+
+                hashLife.setTopology(LifeCompute.TOPOLOGY_TORUS);
+
+                Assert.fail("Topology engine does not support should be rejected");
+
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+
+        } finally {
+
+            TestEngines.destroy(java);
+            TestEngines.destroy(hashLife);
+
+        }
+
+    }
+
+    private static void assertMatchesReference(@NonNull final String pMessage, @NonNull final LifeKernel pLifeKernel,
+                                               @NonNull final Rule pRule, final int pTopology) {
+
+        final int width = pLifeKernel.getWidth();
+        final int height = pLifeKernel.getHeight();
+
+        int[] expected = TestEngines.getCellStates(pLifeKernel);
+
+        for (int i = 0; i < GENERATIONS; i++) {
+
+            expected = ReferenceLife.step(expected, width, height, pRule, pTopology);
+
+            pLifeKernel.step(1);
+
+            Assert.assertArrayEquals(pMessage + " generation " + pLifeKernel.getStep(), expected, TestEngines.getCellStates(pLifeKernel));
+
+        }
+
+    }
+
+}